@@ -0,0 +1,32 @@
+#!/usr/bin/env bash
+# Mide la latencia de /api/mediciones/rango y /api/mediciones/ultimas contra un backend en ejecución.
+# Pensado para correr antes y después de aplicar la migración V2 (índice id_central, fecha)
+# sobre una tabla cargada con benchmarks/sql/generar_mediciones.sql.
+#
+# Uso: CORREO=admin@x.cl PASSWORD=... ./benchmarks/consultas.sh [central] [repeticiones]
+set -euo pipefail
+
+URL=${URL:-http://localhost:8080}
+CENTRAL=${1:-LIA}
+REPETICIONES=${2:-20}
+
+TOKEN=$(curl -s -X POST "$URL/api/auth/jwt-login" -H 'Content-Type: application/json' \
+  -d "{\"correo\":\"$CORREO\",\"password\":\"$PASSWORD\"}" | sed -E 's/.*"token":"([^"]+)".*/\1/')
+
+medir() {
+  local nombre=$1 ruta=$2
+  local tiempos=()
+  for _ in $(seq "$REPETICIONES"); do
+    tiempos+=("$(curl -s -o /dev/null -w '%{time_total}' -H "Authorization: Bearer $TOKEN" "$URL$ruta")")
+  done
+  printf '%s\n' "${tiempos[@]}" | sort -n | awk -v n="$nombre" '
+    { v[NR] = $1; s += $1 }
+    END { printf "%-32s n=%d  media=%.1f ms  p50=%.1f ms  p95=%.1f ms\n", n, NR, s / NR * 1000,
+          v[int(NR * 0.5 + 0.5)] * 1000, v[int(NR * 0.95 + 0.5)] * 1000 }'
+}
+
+medir "ultimas limit=60"            "/api/mediciones/ultimas?central=$CENTRAL&limit=60"
+medir "rango 1 dia, pagina 0"       "/api/mediciones/rango?central=$CENTRAL&fechaInicio=2020-06-01&fechaFin=2020-06-01&page=0&size=100"
+medir "rango 1 mes, pagina 0"       "/api/mediciones/rango?central=$CENTRAL&fechaInicio=2020-06-01&fechaFin=2020-06-30&page=0&size=100"
+medir "rango 1 mes, pagina 400"     "/api/mediciones/rango?central=$CENTRAL&fechaInicio=2020-06-01&fechaFin=2020-06-30&page=400&size=100"
+medir "rango 1 anio + filtro pm25"  "/api/mediciones/rango?central=$CENTRAL&fechaInicio=2020-01-01&fechaFin=2020-12-31&pm25Min=50&page=0&size=100"
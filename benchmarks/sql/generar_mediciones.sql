@@ -0,0 +1,39 @@
+-- Genera mediciones sintéticas para medir consultas sobre una tabla grande.
+-- Uso (50 millones de filas, una lectura por minuto repartida entre las centrales existentes):
+--   mysql -u root -p aire < benchmarks/sql/generar_mediciones.sql
+--   mysql -u root -p aire -e "CALL generar_mediciones(50000000, '2015-01-01 00:00:00')"
+-- Inserta en bloques de 10.000 filas para no crecer el undo log.
+
+DROP PROCEDURE IF EXISTS generar_mediciones;
+
+DELIMITER //
+CREATE PROCEDURE generar_mediciones(IN total BIGINT, IN desde DATETIME)
+BEGIN
+  DECLARE hechas BIGINT DEFAULT 0;
+  DECLARE centrales INT;
+  SELECT COUNT(*) INTO centrales FROM central;
+  SET @centrales = centrales;
+  WHILE hechas < total DO
+    INSERT INTO medicion (fecha, temperatura, humedad, pm25, pm10, id_central)
+    SELECT DATE_ADD(desde, INTERVAL FLOOR((hechas + n) / @centrales) MINUTE),
+           10 + RAND() * 20,
+           30 + RAND() * 50,
+           RAND() * 60,
+           ROUND(RAND() * 120, 2),
+           c.id_central
+    FROM (SELECT a.d + b.d * 10 + c.d * 100 + d.d * 1000 AS n
+          FROM (SELECT 0 d UNION ALL SELECT 1 UNION ALL SELECT 2 UNION ALL SELECT 3 UNION ALL SELECT 4
+                UNION ALL SELECT 5 UNION ALL SELECT 6 UNION ALL SELECT 7 UNION ALL SELECT 8 UNION ALL SELECT 9) a,
+               (SELECT 0 d UNION ALL SELECT 1 UNION ALL SELECT 2 UNION ALL SELECT 3 UNION ALL SELECT 4
+                UNION ALL SELECT 5 UNION ALL SELECT 6 UNION ALL SELECT 7 UNION ALL SELECT 8 UNION ALL SELECT 9) b,
+               (SELECT 0 d UNION ALL SELECT 1 UNION ALL SELECT 2 UNION ALL SELECT 3 UNION ALL SELECT 4
+                UNION ALL SELECT 5 UNION ALL SELECT 6 UNION ALL SELECT 7 UNION ALL SELECT 8 UNION ALL SELECT 9) c,
+               (SELECT 0 d UNION ALL SELECT 1 UNION ALL SELECT 2 UNION ALL SELECT 3 UNION ALL SELECT 4
+                UNION ALL SELECT 5 UNION ALL SELECT 6 UNION ALL SELECT 7 UNION ALL SELECT 8 UNION ALL SELECT 9) d) s
+    JOIN (SELECT id_central, ROW_NUMBER() OVER (ORDER BY id_central) - 1 AS k FROM central) c
+      ON c.k = (hechas + s.n) MOD @centrales
+    WHERE hechas + s.n < total;
+    SET hechas = hechas + 10000;
+  END WHILE;
+END //
+DELIMITER ;
@@ -0,0 +1,58 @@
+#!/usr/bin/env bash
+# Plan y latencia en el servidor de las consultas que emiten /rango y /ultimas, sin pasar por el
+# backend. Cada consulta se muestra con EXPLAIN y luego se ejecuta REPETICIONES veces en una misma
+# sesión; los tiempos salen de SHOW PROFILES. Pensado para correr sobre la tabla cargada con
+# generar_mediciones.sql antes de V2, después de V2 y con el diseño particionado (V3).
+#
+# MySQL 8 muestra las particiones usadas en EXPLAIN; en MariaDB hay que pedirlas con
+# EXPLAIN="EXPLAIN PARTITIONS".
+#
+# Uso: MYSQL="mysql -u root -pclave aire" ./benchmarks/sql/medir_consultas.sh [id_central] [repeticiones]
+set -euo pipefail
+
+MYSQL=${MYSQL:-mysql -u root aire}
+EXPLAIN=${EXPLAIN:-EXPLAIN}
+CENTRAL=${1:-2}
+REPETICIONES=${2:-15}
+
+COLUMNAS="id, fecha, temperatura, humedad, pm25, pm10, ica, ica_contaminante"
+# Los filtros opcionales de /rango llegan como NULL y el optimizador los descarta
+FILTROS="AND (NULL IS NULL OR temperatura >= NULL) AND (NULL IS NULL OR humedad >= NULL)"
+
+medir() {
+  local nombre=$1 sql=$2
+  echo "== $nombre"
+  echo "$sql"
+  $MYSQL --table -e "$EXPLAIN $sql"
+  local lote="SET profiling_history_size = 100; SET profiling = 1;"
+  for _ in $(seq "$REPETICIONES"); do lote+=" $sql;"; done
+  $MYSQL --batch --skip-column-names -e "$lote SHOW PROFILES;" \
+    | awk -F'\t' 'NF == 3 && $1 ~ /^[0-9]+$/ { print $2 }' | sort -g | awk -v n="$nombre" '
+      { v[NR] = $1; s += $1 }
+      END { printf "-> n=%d  min=%.2f ms  p50=%.2f ms  p95=%.2f ms  media=%.2f ms\n\n", NR, v[1] * 1000,
+            v[int(NR * 0.5 + 0.5)] * 1000, v[int(NR * 0.95 + 0.5)] * 1000, s / NR * 1000 }'
+}
+
+rango() {
+  local inicio=$1 fin=$2 extra=${3:-}
+  echo "FROM medicion WHERE id_central IN ($CENTRAL) AND fecha >= '$inicio 00:00:00' AND fecha <= '$fin 23:59:59' $FILTROS $extra"
+}
+
+medir "ultimas limit=60" \
+  "SELECT $COLUMNAS FROM medicion WHERE id_central = $CENTRAL AND fecha IS NOT NULL ORDER BY fecha DESC, id DESC LIMIT 60"
+medir "rango 1 dia, pagina 0" \
+  "SELECT $COLUMNAS $(rango 2020-06-01 2020-06-01) ORDER BY fecha DESC, id DESC LIMIT 100"
+medir "rango 1 mes, pagina 0" \
+  "SELECT $COLUMNAS $(rango 2020-06-01 2020-06-30) ORDER BY fecha DESC, id DESC LIMIT 100"
+medir "rango 1 mes, pagina 400 (offset)" \
+  "SELECT $COLUMNAS $(rango 2020-06-01 2020-06-30) ORDER BY fecha DESC, id DESC LIMIT 40000, 100"
+# La misma página con cursor: el backend acota el fin a la fecha del cursor y compara el id en esa fecha
+CURSOR_FECHA="2020-06-03 05:20:00"
+CURSOR_ID=$($MYSQL --batch --skip-column-names -e \
+  "SELECT id FROM medicion WHERE id_central = $CENTRAL AND fecha = '$CURSOR_FECHA' ORDER BY id DESC LIMIT 1")
+medir "rango 1 mes, pagina 400 (cursor)" \
+  "SELECT $COLUMNAS FROM medicion WHERE id_central IN ($CENTRAL) AND fecha >= '2020-06-01 00:00:00' AND fecha <= '$CURSOR_FECHA' $FILTROS AND (fecha < '$CURSOR_FECHA' OR id < $CURSOR_ID) ORDER BY fecha DESC, id DESC LIMIT 100"
+medir "rango 1 mes, conteo" \
+  "SELECT COUNT(id) $(rango 2020-06-01 2020-06-30)"
+medir "rango 1 anio + filtro pm25, pagina 0" \
+  "SELECT $COLUMNAS $(rango 2020-01-01 2020-12-31 'AND pm25 >= 50') ORDER BY fecha DESC, id DESC LIMIT 100"
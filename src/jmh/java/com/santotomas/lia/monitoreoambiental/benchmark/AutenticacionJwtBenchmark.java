@@ -0,0 +1,105 @@
+package com.santotomas.lia.monitoreoambiental.benchmark;
+
+import com.santotomas.lia.monitoreoambiental.model.Usuario;
+import com.santotomas.lia.monitoreoambiental.repository.UsuarioRepository;
+import com.santotomas.lia.monitoreoambiental.security.JwtUtil;
+import com.santotomas.lia.monitoreoambiental.security.SesionesJwt;
+import com.santotomas.lia.monitoreoambiental.security.UsuarioDetailsService;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Keys;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Autenticación de una petición con JWT, con {@code usuarios} usuarios distintos enviando su token.
+ * {@code filtroAnterior} repite lo que hacía el filtro antes: crear la clave y el parser en cada
+ * lectura, leer el token tres veces y buscar al usuario en la base de datos. {@code sesiones} usa
+ * {@link SesionesJwt}. La base de datos se reemplaza por un repositorio en memoria; el contador
+ * {@code consultas} da las consultas por segundo que recibiría.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+public class AutenticacionJwtBenchmark {
+
+    private static final String SECRETO = "monitoreo-ambiental-super-secreto-2024-06-20";
+
+    @Param({"100"})
+    public int usuarios;
+
+    private String[] tokens;
+    private int siguiente;
+    private UsuarioDetailsService usuarioDetailsService;
+    private SesionesJwt sesiones;
+    private long consultasRealizadas;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Consultas {
+        public long consultas;
+
+        @Setup(Level.Iteration)
+        public void reiniciar() {
+            consultas = 0;
+        }
+    }
+
+    @Setup
+    public void setup() {
+        UsuarioRepository repositorio = (UsuarioRepository) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{UsuarioRepository.class}, (proxy, metodo, args) -> {
+                    consultasRealizadas++;
+                    return new Usuario(1L, true, "Pérez", (String) args[0], "Ana", "x", 0, null, 0);
+                });
+        JwtUtil jwtUtil = new JwtUtil();
+        usuarioDetailsService = new UsuarioDetailsService(repositorio);
+        sesiones = new SesionesJwt(jwtUtil, repositorio);
+        ReflectionTestUtils.setField(sesiones, "revalidacionSegundos", 5L);
+        ReflectionTestUtils.setField(sesiones, "maxTokens", 10000);
+        tokens = new String[usuarios];
+        for (int i = 0; i < usuarios; i++) {
+            tokens[i] = jwtUtil.generateToken("usuario" + i + "@lia.cl", 0, 0);
+        }
+    }
+
+    private String siguienteToken() {
+        String token = tokens[siguiente];
+        siguiente = (siguiente + 1) % tokens.length;
+        return token;
+    }
+
+    private static Claims leer(String token) {
+        return Jwts.parserBuilder()
+                .setSigningKey(Keys.hmacShaKeyFor(SECRETO.getBytes()))
+                .build()
+                .parseClaimsJws(token)
+                .getBody();
+    }
+
+    @Benchmark
+    public Object filtroAnterior(Consultas c) {
+        long antes = consultasRealizadas;
+        String token = siguienteToken();
+        String correo = leer(token).getSubject();
+        UserDetails userDetails = usuarioDetailsService.loadUserByUsername(correo);
+        boolean valido = leer(token).getSubject().equals(userDetails.getUsername())
+                && !leer(token).getExpiration().before(new Date());
+        c.consultas += consultasRealizadas - antes;
+        return valido ? userDetails : null;
+    }
+
+    @Benchmark
+    public Object sesiones(Consultas c) {
+        long antes = consultasRealizadas;
+        Object principal = sesiones.autenticar(siguienteToken());
+        c.consultas += consultasRealizadas - antes;
+        return principal;
+    }
+}
@@ -0,0 +1,30 @@
+package com.santotomas.lia.monitoreoambiental.benchmark;
+
+import com.santotomas.lia.monitoreoambiental.service.EnsambladorMediciones;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.TimeUnit;
+
+/** Parseo del payload del tópico {@code fecha}. */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+public class FechaBenchmark {
+
+    /** Formato con el que se parseaba la fecha antes del ensamblador. */
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm:ss");
+
+    private String payload = "21/01/2025 09:16:30";
+
+    @Benchmark
+    public LocalDateTime conDateTimeFormatter() {
+        return LocalDateTime.parse(payload, DATE_FORMATTER);
+    }
+
+    @Benchmark
+    public long conEnsamblador() {
+        return EnsambladorMediciones.parsearFecha(payload);
+    }
+}
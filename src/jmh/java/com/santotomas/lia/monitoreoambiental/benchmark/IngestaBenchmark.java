@@ -0,0 +1,133 @@
+package com.santotomas.lia.monitoreoambiental.benchmark;
+
+import com.santotomas.lia.monitoreoambiental.dto.FiltroMediciones;
+import com.santotomas.lia.monitoreoambiental.dto.MedicionDTO;
+import com.santotomas.lia.monitoreoambiental.model.Central;
+import com.santotomas.lia.monitoreoambiental.model.Medicion;
+import com.santotomas.lia.monitoreoambiental.repository.MedicionCursorRepository;
+import com.santotomas.lia.monitoreoambiental.repository.MedicionStore;
+import com.santotomas.lia.monitoreoambiental.repository.RollupRepository;
+import com.santotomas.lia.monitoreoambiental.service.CalidadAireService;
+import com.santotomas.lia.monitoreoambiental.service.EscrituraMedicionesService;
+import com.santotomas.lia.monitoreoambiental.service.MedicionAmbientalService;
+import com.santotomas.lia.monitoreoambiental.service.RegistroCentrales;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Camino de ingesta MQTT: cada invocación entrega los cinco mensajes de una medición
+ * (tt, hh, pm25, pm10 y fecha) de una de {@code estaciones} centrales, que es lo que hace
+ * el adaptador MQTT en producción. La escritura en base de datos queda fuera: la cola de
+ * escritura se reemplaza por un {@link Blackhole}. El índice de calidad del aire sí se calcula,
+ * con ventanas que parten sin historial. Las variantes {@code empaquetado*} entregan
+ * la misma medición en un solo mensaje del tópico {@code /packed}, en texto y en binario.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+public class IngestaBenchmark {
+
+    @Param({"1", "64"})
+    public int estaciones;
+
+    private MedicionAmbientalService service;
+    private String[][] topicos;
+    private final String[] payloads = {"21.5", "40.25", "3.1", "7.75", "21/01/2025 09:16:30"};
+    private String[] topicosEmpaquetados;
+    private final byte[] empaquetadoTexto = "21/01/2025 09:16:30,21.5,40.25,3.1,7.75".getBytes(StandardCharsets.UTF_8);
+    private byte[] empaquetadoBinario;
+    private int siguiente;
+
+    @Setup
+    public void setup(Blackhole bh) {
+        Central central = new Central(1, "LIA", "/colegio1/Aire/", null, null, null);
+        RegistroCentrales registro = new RegistroCentrales(null) {
+            @Override
+            public Central porPrefijoTopico(String prefijo) {
+                return central;
+            }
+        };
+        EscrituraMedicionesService escritura = new EscrituraMedicionesService(null, null, null, null) {
+            @Override
+            public boolean encolar(Medicion medicion) {
+                bh.consume(medicion);
+                return true;
+            }
+
+            @Override
+            public int encolarLote(List<Medicion> mediciones) {
+                bh.consume(mediciones);
+                return mediciones.size();
+            }
+        };
+        CalidadAireService calidadAire = new CalidadAireService(new SinHistorial(), registro, null, null);
+        service = new MedicionAmbientalService(escritura, registro, calidadAire, new SimpleMeterRegistry());
+        topicos = new String[estaciones][];
+        for (int i = 0; i < estaciones; i++) {
+            String base = "/colegio" + i + "/Aire/";
+            topicos[i] = new String[]{base + "tt", base + "hh", base + "pm25", base + "pm10", base + "fecha"};
+        }
+        topicosEmpaquetados = new String[estaciones];
+        for (int i = 0; i < estaciones; i++) {
+            topicosEmpaquetados[i] = "/colegio" + i + "/Aire/packed";
+        }
+        empaquetadoBinario = ByteBuffer.allocate(25).put((byte) 1).putLong(1737451000L)
+                .putFloat(21.5f).putFloat(40.25f).putFloat(3.1f).putFloat(7.75f).array();
+    }
+
+    @Benchmark
+    public void procesarMedicionCompleta() {
+        String[] t = topicos[siguiente];
+        siguiente = (siguiente + 1) % topicos.length;
+        for (int i = 0; i < t.length; i++) {
+            service.processMqttMessage(t[i], payloads[i]);
+        }
+    }
+
+    @Benchmark
+    public void empaquetadoTexto() {
+        String t = topicosEmpaquetados[siguiente];
+        siguiente = (siguiente + 1) % topicosEmpaquetados.length;
+        service.processMqttMessage(t, empaquetadoTexto);
+    }
+
+    @Benchmark
+    public void empaquetadoBinario() {
+        String t = topicosEmpaquetados[siguiente];
+        siguiente = (siguiente + 1) % topicosEmpaquetados.length;
+        service.processMqttMessage(t, empaquetadoBinario);
+    }
+
+    /** Almacenamiento vacío: solo se usa para precargar la ventana del índice. */
+    private static final class SinHistorial implements MedicionStore {
+        @Override
+        public void agregar(List<Medicion> lote) {
+        }
+
+        @Override
+        public void actualizarIndices(int idCentral, List<NuevoIndice> indices) {
+        }
+
+        @Override
+        public List<MedicionDTO> ultimas(int idCentral, int limite) {
+            return List.of();
+        }
+
+        @Override
+        public void recorrer(FiltroMediciones filtro, boolean ascendente, MedicionCursorRepository.Visitante visitante) {
+        }
+
+        @Override
+        public List<RollupRepository.FilaAgrupada> agrupadas(List<Integer> centrales, String variable, String intervalo,
+                                                             LocalDate inicio, LocalDate fin) {
+            return List.of();
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.santotomas.lia.monitoreoambiental.benchmark;
+
+import ch.qos.logback.classic.AsyncAppender;
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.encoder.PatternLayoutEncoder;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.Appender;
+import ch.qos.logback.core.OutputStreamAppender;
+import com.santotomas.lia.monitoreoambiental.config.MqttConfig;
+import com.santotomas.lia.monitoreoambiental.model.Central;
+import com.santotomas.lia.monitoreoambiental.model.Medicion;
+import com.santotomas.lia.monitoreoambiental.service.CalidadAireService;
+import com.santotomas.lia.monitoreoambiental.service.EscrituraMedicionesService;
+import com.santotomas.lia.monitoreoambiental.service.MedicionAmbientalService;
+import com.santotomas.lia.monitoreoambiental.service.RegistroCentrales;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.slf4j.LoggerFactory;
+
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Costo del log en el camino de ingesta: cada operación entrega los cinco mensajes de una medición
+ * a {@link MqttConfig#handleMqttMessage}, con el log escrito en {@code /dev/null} (llamadas al
+ * sistema reales, sin depender de la terminal).
+ * <ul>
+ *   <li>{@code sincrono}: los logs por mensaje activos (TRACE) y escritos en el hilo de ingesta,
+ *   como ocurría antes con los {@code System.out.println} y los INFO por mensaje.</li>
+ *   <li>{@code asincrono}: los mismos logs a través del {@link AsyncAppender} de
+ *   {@code logback-spring.xml}; con la cola llena se descartan.</li>
+ *   <li>{@code produccion}: nivel INFO con el appender asíncrono, la configuración del perfil prod.</li>
+ * </ul>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+public class LogIngestaBenchmark {
+
+    @Param({"sincrono", "asincrono", "produccion"})
+    public String modo;
+
+    private MqttConfig mqttConfig;
+    private final String[] topicos = {"/colegio1/Aire/tt", "/colegio1/Aire/hh", "/colegio1/Aire/pm25",
+            "/colegio1/Aire/pm10", "/colegio1/Aire/fecha"};
+    private final byte[][] payloads = {bytes("21.5"), bytes("40.25"), bytes("3.1"), bytes("7.75"),
+            bytes("21/01/2025 09:16:30")};
+    private OutputStream destino;
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Setup
+    public void setup(Blackhole bh) throws FileNotFoundException {
+        configurarLog();
+
+        Central central = new Central(1, "LIA", "/colegio1/Aire/", null, null, null);
+        RegistroCentrales registro = new RegistroCentrales(null) {
+            @Override
+            public Central porPrefijoTopico(String prefijo) {
+                return central;
+            }
+        };
+        EscrituraMedicionesService escritura = new EscrituraMedicionesService(null, null, null, null) {
+            @Override
+            public boolean encolar(Medicion medicion) {
+                bh.consume(medicion);
+                return true;
+            }
+        };
+        CalidadAireService calidadAire = new CalidadAireService(null, null, null, null) {
+            @Override
+            public void asignar(Medicion medicion) {
+            }
+        };
+        MedicionAmbientalService service = new MedicionAmbientalService(escritura, registro, calidadAire, new SimpleMeterRegistry());
+        mqttConfig = new MqttConfig(service, registro, null);
+    }
+
+    private void configurarLog() throws FileNotFoundException {
+        LoggerContext contexto = (LoggerContext) LoggerFactory.getILoggerFactory();
+        contexto.reset();
+
+        PatternLayoutEncoder encoder = new PatternLayoutEncoder();
+        encoder.setContext(contexto);
+        // Patrón de consola de Spring Boot sin colores
+        encoder.setPattern("%d{yyyy-MM-dd'T'HH:mm:ss.SSSXXX} %5p --- [%15.15t] %-40.40logger{39} : %m%n");
+        encoder.start();
+
+        destino = new FileOutputStream("/dev/null");
+        OutputStreamAppender<ILoggingEvent> salida = new OutputStreamAppender<>();
+        salida.setContext(contexto);
+        salida.setEncoder(encoder);
+        salida.setOutputStream(destino);
+        salida.start();
+
+        Appender<ILoggingEvent> appender = salida;
+        if (!modo.equals("sincrono")) {
+            AsyncAppender asincrono = new AsyncAppender();
+            asincrono.setContext(contexto);
+            asincrono.setQueueSize(8192);
+            asincrono.setNeverBlock(true);
+            asincrono.addAppender(salida);
+            asincrono.start();
+            appender = asincrono;
+        }
+        Logger raiz = contexto.getLogger(Logger.ROOT_LOGGER_NAME);
+        raiz.setLevel(Level.INFO);
+        raiz.addAppender(appender);
+        contexto.getLogger("com.santotomas.lia.monitoreoambiental")
+                .setLevel(modo.equals("produccion") ? Level.INFO : Level.TRACE);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        ((LoggerContext) LoggerFactory.getILoggerFactory()).stop();
+        destino.close();
+    }
+
+    @Benchmark
+    public void procesarMedicionCompleta() {
+        for (int i = 0; i < topicos.length; i++) {
+            mqttConfig.handleMqttMessage(payloads[i], topicos[i]);
+        }
+    }
+}
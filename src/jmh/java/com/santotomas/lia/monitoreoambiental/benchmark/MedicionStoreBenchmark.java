@@ -0,0 +1,142 @@
+package com.santotomas.lia.monitoreoambiental.benchmark;
+
+import com.santotomas.lia.monitoreoambiental.dto.FiltroMediciones;
+import com.santotomas.lia.monitoreoambiental.dto.MedicionDTO;
+import com.santotomas.lia.monitoreoambiental.model.Central;
+import com.santotomas.lia.monitoreoambiental.model.Medicion;
+import com.santotomas.lia.monitoreoambiental.repository.EmbebidoMedicionStore;
+import com.santotomas.lia.monitoreoambiental.repository.MedicionStore;
+import com.santotomas.lia.monitoreoambiental.repository.RollupRepository;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Almacenamiento embebido: escritura por lotes, últimas N, recorrido de un día y promedio
+ * por hora. Los datos de lectura son 5 centrales con una medición por minuto durante 30 días.
+ * La implementación MySQL se mide con benchmarks/consultas.sh contra un backend en ejecución.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class MedicionStoreBenchmark {
+
+    private static final int CENTRALES = 5;
+    private static final int DIAS = 30;
+    private static final LocalDateTime INICIO = LocalDateTime.of(2025, 1, 1, 0, 0);
+
+    static EmbebidoMedicionStore abrir(Path directorio) throws IOException {
+        EmbebidoMedicionStore store = new EmbebidoMedicionStore();
+        ReflectionTestUtils.setField(store, "directorio", directorio.toString());
+        ReflectionTestUtils.setField(store, "filasPorSegmento", 262144);
+        ReflectionTestUtils.setField(store, "forzarEscritura", false);
+        store.abrir();
+        return store;
+    }
+
+    static void borrar(Path directorio) throws IOException {
+        try (Stream<Path> archivos = Files.walk(directorio)) {
+            for (Path p : archivos.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(p);
+            }
+        }
+    }
+
+    static Medicion medicion(Central c, LocalDateTime fecha, int i) {
+        return new Medicion(null, fecha, 18f + (i % 50) / 10f, 55f, 12f, 20.5f, c);
+    }
+
+    @State(Scope.Benchmark)
+    public static class Lectura {
+        Path directorio;
+        EmbebidoMedicionStore store;
+        FiltroMediciones unDia;
+
+        @Setup(Level.Trial)
+        public void cargar() throws IOException {
+            directorio = Files.createTempDirectory("jmh-store");
+            store = abrir(directorio);
+            for (int c = 1; c <= CENTRALES; c++) {
+                Central central = new Central(c, "C" + c, "/c" + c + "/", null, null, null);
+                List<Medicion> lote = new ArrayList<>(1440);
+                for (int m = 0; m < DIAS * 1440; m++) {
+                    lote.add(medicion(central, INICIO.plusMinutes(m), m));
+                    if (lote.size() == 1440) {
+                        store.agregar(lote);
+                        lote = new ArrayList<>(1440);
+                    }
+                }
+            }
+            LocalDateTime dia = INICIO.plusDays(DIAS / 2);
+            unDia = new FiltroMediciones(List.of(3), dia, dia.plusDays(1).minusSeconds(1),
+                    null, null, null, null, null, null, null, null);
+        }
+
+        @TearDown(Level.Trial)
+        public void cerrar() throws IOException {
+            store.cerrar();
+            borrar(directorio);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Escritura {
+        Path directorio;
+        EmbebidoMedicionStore store;
+        Central central = new Central(1, "C1", "/c1/", null, null, null);
+        LocalDateTime siguiente;
+        int n;
+
+        @Setup(Level.Iteration)
+        public void abrirVacio() throws IOException {
+            directorio = Files.createTempDirectory("jmh-store");
+            store = abrir(directorio);
+            siguiente = INICIO;
+        }
+
+        @TearDown(Level.Iteration)
+        public void cerrar() throws IOException {
+            store.cerrar();
+            borrar(directorio);
+        }
+    }
+
+    /** Un lote de 500 mediciones, el tamaño por defecto de la escritura diferida. */
+    @Benchmark
+    public int agregarLote500(Escritura e) {
+        List<Medicion> lote = new ArrayList<>(500);
+        for (int i = 0; i < 500; i++) {
+            lote.add(medicion(e.central, e.siguiente, e.n++));
+            e.siguiente = e.siguiente.plusSeconds(60);
+        }
+        e.store.agregar(lote);
+        return lote.size();
+    }
+
+    @Benchmark
+    public List<MedicionDTO> ultimas60(Lectura l) {
+        return l.store.ultimas(3, 60);
+    }
+
+    /** 1440 filas de una central en medio de 30 días. */
+    @Benchmark
+    public long contarUnDia(Lectura l) {
+        return l.store.contar(l.unDia);
+    }
+
+    @Benchmark
+    public List<RollupRepository.FilaAgrupada> agrupadasPorHoraUnDia(Lectura l) {
+        LocalDate dia = INICIO.plusDays(DIAS / 2).toLocalDate();
+        MedicionStore store = l.store;
+        return store.agrupadas(List.of(3), "temperatura", "hora", dia, dia);
+    }
+}
@@ -0,0 +1,59 @@
+package com.santotomas.lia.monitoreoambiental.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.santotomas.lia.monitoreoambiental.dto.MedicionDTO;
+import com.santotomas.lia.monitoreoambiental.model.Medicion;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Respuesta típica de /ultimas y /rango: entidades {@link Medicion} a {@link MedicionDTO}
+ * y la lista de DTOs a JSON, con un ObjectMapper configurado como el de Spring MVC.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+public class SerializacionBenchmark {
+
+    @Param({"60", "1000"})
+    public int filas;
+
+    private List<Medicion> mediciones;
+    private List<MedicionDTO> dtos;
+    private ObjectMapper objectMapper;
+
+    @Setup
+    public void setup() {
+        objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        LocalDateTime inicio = LocalDateTime.of(2025, 1, 21, 9, 0);
+        mediciones = new ArrayList<>(filas);
+        for (int i = 0; i < filas; i++) {
+            mediciones.add(new Medicion(i, inicio.plusSeconds(30L * i), 20f + i % 10, 40f + i % 7,
+                    3.5f + i % 5, 7.25f + i % 3, null));
+        }
+        dtos = mapear();
+    }
+
+    @Benchmark
+    public List<MedicionDTO> mapear() {
+        return mediciones.stream()
+                .map(m -> new MedicionDTO(m.getId(), m.getFecha(), m.getTemperatura(), m.getHumedad(), m.getPm25(), m.getPm10()))
+                .collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public byte[] serializar() throws Exception {
+        return objectMapper.writeValueAsBytes(dtos);
+    }
+
+    @Benchmark
+    public byte[] mapearYSerializar() throws Exception {
+        return objectMapper.writeValueAsBytes(mapear());
+    }
+}
@@ -0,0 +1,121 @@
+package com.santotomas.lia.monitoreoambiental.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.integration.channel.AbstractSubscribableChannel;
+import org.springframework.integration.dispatcher.AbstractDispatcher;
+import org.springframework.integration.dispatcher.MessageDispatcher;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageDeliveryException;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Canal que reparte los mensajes entre {@code particiones} hilos según una clave: los mensajes
+ * con la misma clave se procesan en orden y en el mismo hilo, y los de claves distintas en
+ * paralelo. Cada partición tiene una cola acotada; cuando se llena, quien envía espera, así que
+ * un consumidor lento frena a los clientes MQTT en vez de acumular memoria.
+ */
+public class CanalParticionado extends AbstractSubscribableChannel {
+
+    private static final Logger logger = LoggerFactory.getLogger(CanalParticionado.class);
+
+    private final Despachador despachador;
+
+    /**
+     * @param clave de qué depende el orden; los mensajes sin clave van a la partición 0
+     */
+    public CanalParticionado(String nombre, int particiones, int capacidadCola, Function<Message<?>, Object> clave) {
+        this.despachador = new Despachador(nombre, particiones, capacidadCola, clave);
+    }
+
+    @Override
+    protected MessageDispatcher getDispatcher() {
+        return despachador;
+    }
+
+    public int getParticiones() {
+        return despachador.hilos.length;
+    }
+
+    /** Mensajes esperando en las colas de todas las particiones. */
+    public int getPendientes() {
+        int total = 0;
+        for (ThreadPoolExecutor hilo : despachador.hilos) {
+            total += hilo.getQueue().size();
+        }
+        return total;
+    }
+
+    @Override
+    public void destroy() {
+        super.destroy();
+        for (ThreadPoolExecutor hilo : despachador.hilos) {
+            hilo.shutdown();
+        }
+        try {
+            for (ThreadPoolExecutor hilo : despachador.hilos) {
+                hilo.awaitTermination(5, TimeUnit.SECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static final class Despachador extends AbstractDispatcher {
+
+        private final ThreadPoolExecutor[] hilos;
+        private final Function<Message<?>, Object> clave;
+
+        Despachador(String nombre, int particiones, int capacidadCola, Function<Message<?>, Object> clave) {
+            this.clave = clave;
+            this.hilos = new ThreadPoolExecutor[particiones];
+            for (int i = 0; i < particiones; i++) {
+                String nombreHilo = nombre + "-" + i;
+                hilos[i] = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                        new ArrayBlockingQueue<>(capacidadCola),
+                        r -> {
+                            Thread t = new Thread(r, nombreHilo);
+                            t.setDaemon(true);
+                            return t;
+                        },
+                        (tarea, ejecutor) -> {
+                            // Cola llena: se espera un lugar para no alterar el orden de la partición
+                            if (ejecutor.isShutdown()) throw new RejectedExecutionException("Canal detenido");
+                            try {
+                                ejecutor.getQueue().put(tarea);
+                            } catch (InterruptedException e) {
+                                Thread.currentThread().interrupt();
+                                throw new RejectedExecutionException(e);
+                            }
+                        });
+            }
+        }
+
+        @Override
+        public boolean dispatch(Message<?> message) {
+            Object k = clave.apply(message);
+            int particion = k == null ? 0 : Math.floorMod(k.hashCode(), hilos.length);
+            try {
+                hilos[particion].execute(() -> entregar(message));
+            } catch (RejectedExecutionException e) {
+                throw new MessageDeliveryException(message, "Partición " + particion + " no disponible", e);
+            }
+            return true;
+        }
+
+        private void entregar(Message<?> message) {
+            try {
+                if (!tryOptimizedDispatch(message)) {
+                    getHandlers().iterator().next().handleMessage(message);
+                }
+            } catch (Exception e) {
+                CanalParticionado.logger.error("Error al procesar un mensaje del canal particionado: {}", e.getMessage(), e);
+            }
+        }
+    }
+}
@@ -4,16 +4,21 @@ import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.security.access.prepost.PreAuthorize;
+import com.santotomas.lia.monitoreoambiental.service.RegistroCentrales;
 
 @RestController
 @RequestMapping("/api/admin/mqtt")
 public class MqttAdminController {
     private final MqttConfig mqttConfig;
-    public MqttAdminController(MqttConfig mqttConfig) { this.mqttConfig = mqttConfig; }
+    private final RegistroCentrales registroCentrales;
+    public MqttAdminController(MqttConfig mqttConfig, RegistroCentrales registroCentrales) {
+        this.mqttConfig = mqttConfig;
+        this.registroCentrales = registroCentrales;
+    }
     @PostMapping("/recargar")
     @PreAuthorize("hasRole('ADMIN')")
-    public String recargar() {
-        mqttConfig.recargarSuscripcionesMqtt();
-        return "Suscripciones MQTT recargadas";
+    public MqttConfig.CambioSuscripciones recargar() {
+        registroCentrales.refrescar();
+        return mqttConfig.recargarSuscripcionesMqtt();
     }
 }
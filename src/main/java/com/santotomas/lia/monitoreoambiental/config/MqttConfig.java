@@ -1,47 +1,101 @@
 package com.santotomas.lia.monitoreoambiental.config;
 
+import com.santotomas.lia.monitoreoambiental.service.CentralesActualizadasEvent;
+import com.santotomas.lia.monitoreoambiental.service.AsignacionIngesta;
 import com.santotomas.lia.monitoreoambiental.service.MedicionAmbientalService;
-import com.santotomas.lia.monitoreoambiental.repository.CentralRepository;
+import com.santotomas.lia.monitoreoambiental.service.RegistroCentrales;
 import com.santotomas.lia.monitoreoambiental.model.Central;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
 import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.BeanFactory;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.event.EventListener;
 import org.springframework.integration.annotation.ServiceActivator;
-import org.springframework.integration.channel.DirectChannel;
-import org.springframework.integration.core.MessageProducer;
 import org.springframework.integration.mqtt.core.DefaultMqttPahoClientFactory;
 import org.springframework.integration.mqtt.core.MqttPahoClientFactory;
 import org.springframework.integration.mqtt.inbound.MqttPahoMessageDrivenChannelAdapter;
 import org.springframework.integration.mqtt.support.DefaultPahoMessageConverter;
 import org.springframework.integration.mqtt.support.MqttHeaders;
-import org.springframework.messaging.MessageChannel;
 import org.springframework.messaging.handler.annotation.Header;
-import org.springframework.beans.factory.DisposableBean;
 
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Ingesta MQTT. Las centrales se reparten entre {@code mqtt.ingesta.clientes} conexiones (todas
+ * las variables de una central van por la misma conexión) y, con {@code mqtt.ingesta.instancias}
+ * mayor que 1, entre varias instancias del backend según el id de la central. Con
+ * {@code mqtt.ingesta.grupo-compartido} el tópico {@code packed} de todas las centrales se suscribe
+ * compartido ({@code $share/grupo/...}) y el broker reparte esos mensajes entre las instancias del
+ * grupo; los tópicos por variable siguen repartidos por id, porque el broker podría entregar las
+ * variables de una misma medición a suscriptores distintos y ninguno la completaría.
+ * <p>
+ * Los mensajes se procesan en un {@link CanalParticionado} por estación: cada estación se
+ * ensambla en orden en un solo hilo y las estaciones distintas usan todos los núcleos.
+ * <p>
+ * Al cambiar las centrales solo se suscriben y desuscriben los tópicos que cambiaron; las
+ * conexiones siguen abiertas y el resto de las estaciones no pierde mensajes.
+ */
 @Configuration
-public class MqttConfig implements DisposableBean {
+public class MqttConfig implements SmartLifecycle {
 
     private static final Logger logger = LoggerFactory.getLogger(MqttConfig.class);
 
+    /**
+     * Resultado de sincronizar las suscripciones con el registro de centrales.
+     *
+     * @param incompletasDescartadas mediciones a medio ensamblar de estaciones quitadas, que se pierden
+     */
+    public record CambioSuscripciones(List<String> agregados, List<String> quitados, long latenciaMs,
+                                      int incompletasDescartadas) {
+    }
+
     @Value("${mqtt.broker.url}")
     private String brokerUrl;
 
     @Value("${mqtt.client.id}")
     private String clientId;
 
+    @Value("${mqtt.ingesta.clientes:1}")
+    private int clientes;
+
+    @Value("${mqtt.ingesta.instancias:1}")
+    private int instancias;
+
+    @Value("${mqtt.ingesta.instancia:0}")
+    private int instancia;
+
+    @Value("${mqtt.ingesta.grupo-compartido:}")
+    private String grupoCompartido;
+
+    /** 0 usa un hilo por núcleo. */
+    @Value("${mqtt.ingesta.particiones:0}")
+    private int particiones;
+
+    @Value("${mqtt.ingesta.capacidad-particion:1000}")
+    private int capacidadParticion;
+
     private final MedicionAmbientalService medicionAmbientalService;
-    private final CentralRepository centralRepository;
-    private MqttPahoMessageDrivenChannelAdapter mqttAdapter;
+    private final RegistroCentrales registroCentrales;
+    private final BeanFactory beanFactory;
+    private List<MqttPahoMessageDrivenChannelAdapter> adaptadores = List.of();
+    private volatile boolean iniciado;
 
-    public MqttConfig(MedicionAmbientalService medicionAmbientalService, CentralRepository centralRepository) {
+    public MqttConfig(MedicionAmbientalService medicionAmbientalService, RegistroCentrales registroCentrales,
+                      BeanFactory beanFactory) {
         this.medicionAmbientalService = medicionAmbientalService;
-        this.centralRepository = centralRepository;
+        this.registroCentrales = registroCentrales;
+        this.beanFactory = beanFactory;
     }
 
     @Bean
@@ -55,81 +109,191 @@ public class MqttConfig implements DisposableBean {
     }
 
     @Bean
-    public MessageChannel mqttInputChannel() {
-        return new DirectChannel();
+    public CanalParticionado mqttInputChannel() {
+        int n = particiones > 0 ? particiones : Runtime.getRuntime().availableProcessors();
+        return new CanalParticionado("mqtt-estacion", n, capacidadParticion,
+                m -> prefijoEstacion(m.getHeaders().get(MqttHeaders.RECEIVED_TOPIC, String.class)));
     }
 
     @Bean
-    public MessageProducer inboundMqttAdapter() {
-        this.mqttAdapter = crearNuevoAdapter();
-        return this.mqttAdapter;
+    public MeterBinder metricasCanalMqtt() {
+        CanalParticionado canal = mqttInputChannel();
+        return registry -> Gauge.builder("mediciones.mqtt.pendientes", canal, CanalParticionado::getPendientes)
+                .description("Mensajes MQTT esperando en las particiones")
+                .register(registry);
+    }
+
+    @Override
+    public synchronized void start() {
+        adaptadores = crearAdaptadores();
+        adaptadores.forEach(MqttPahoMessageDrivenChannelAdapter::start);
+        iniciado = true;
+    }
+
+    @Override
+    public synchronized void stop() {
+        adaptadores.forEach(MqttPahoMessageDrivenChannelAdapter::stop);
+        iniciado = false;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return iniciado;
+    }
+
+    public CambioSuscripciones recargarSuscripcionesMqtt() {
+        return sincronizarSuscripciones();
+    }
+
+    @EventListener
+    public void onCentralesActualizadas(CentralesActualizadasEvent event) {
+        sincronizarSuscripciones();
     }
 
-    public synchronized void recargarSuscripcionesMqtt() {
-        if (mqttAdapter != null) {
-            logger.info("Desuscribiendo y cerrando adaptador MQTT anterior...");
-            mqttAdapter.stop();
+    /**
+     * Compara los tópicos de cada conexión con los que corresponden al registro de centrales y
+     * agrega o quita solo la diferencia, sin reconectar.
+     */
+    public synchronized CambioSuscripciones sincronizarSuscripciones() {
+        if (!iniciado) return new CambioSuscripciones(List.of(), List.of(), 0, 0);
+        long inicio = System.nanoTime();
+        List<List<String>> deseados = repartirTopicos(registroCentrales.todas(), clientes, instancias, instancia, grupoCompartido);
+        List<String> agregados = new ArrayList<>();
+        List<String> quitados = new ArrayList<>();
+        Set<String> estacionesDeseadas = new HashSet<>();
+        for (int i = 0; i < adaptadores.size(); i++) {
+            MqttPahoMessageDrivenChannelAdapter adapter = adaptadores.get(i);
+            Set<String> deseadosCliente = new HashSet<>(deseados.get(i));
+            deseadosCliente.forEach(t -> estacionesDeseadas.add(prefijoEstacion(sinGrupo(t))));
+            Set<String> actuales = new HashSet<>(Arrays.asList(adapter.getTopic()));
+            String[] sobrantes = actuales.stream().filter(t -> !deseadosCliente.contains(t)).toArray(String[]::new);
+            try {
+                if (sobrantes.length > 0) {
+                    adapter.removeTopic(sobrantes);
+                    quitados.addAll(Arrays.asList(sobrantes));
+                }
+                for (String t : deseados.get(i)) {
+                    if (!actuales.contains(t)) {
+                        adapter.addTopic(t, 0);
+                        agregados.add(t);
+                    }
+                }
+            } catch (Exception e) {
+                logger.error("Error al actualizar las suscripciones del cliente MQTT {}: {}", i, e.getMessage(), e);
+            }
+        }
+        int incompletas = 0;
+        Set<String> estacionesQuitadas = new HashSet<>();
+        quitados.forEach(t -> estacionesQuitadas.add(prefijoEstacion(sinGrupo(t))));
+        estacionesQuitadas.removeAll(estacionesDeseadas);
+        for (String estacion : estacionesQuitadas) {
+            if (medicionAmbientalService.olvidarEstacion(estacion)) incompletas++;
+        }
+        long latenciaMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - inicio);
+        if (!agregados.isEmpty() || !quitados.isEmpty()) {
+            logger.info("Suscripciones MQTT actualizadas en {} ms: {} tópicos agregados {}, {} quitados {}",
+                    latenciaMs, agregados.size(), agregados, quitados.size(), quitados);
+        }
+        if (incompletas > 0) {
+            logger.warn("Se descartaron {} mediciones incompletas de estaciones que dejaron de estar suscritas.", incompletas);
         }
-        this.mqttAdapter = crearNuevoAdapter();
-        this.mqttAdapter.start();
-        logger.info("Suscripciones MQTT recargadas dinámicamente.");
+        return new CambioSuscripciones(agregados, quitados, latenciaMs, incompletas);
     }
 
-    private MqttPahoMessageDrivenChannelAdapter crearNuevoAdapter() {
-        List<Central> centrales = centralRepository.findAll();
-        List<String> topics = new ArrayList<>();
-        for (Central c : centrales) {
-            String base = c.getTopicoBase();
-            if (base != null && !base.isBlank()) {
-                String baseClean = base.replaceAll("/+$", "");
-                topics.add(baseClean + "/tt");
-                topics.add(baseClean + "/hh");
-                topics.add(baseClean + "/pm10");
-                topics.add(baseClean + "/pm25");
-                topics.add(baseClean + "/fecha");
+    /** Quita el prefijo {@code $share/grupo/} de un tópico de suscripción compartida. */
+    static String sinGrupo(String topic) {
+        if (!topic.startsWith("$share/")) return topic;
+        int barra = topic.indexOf('/', "$share/".length());
+        return barra < 0 ? topic : topic.substring(barra + 1);
+    }
+
+    private List<MqttPahoMessageDrivenChannelAdapter> crearAdaptadores() {
+        List<List<String>> porCliente = repartirTopicos(registroCentrales.todas(), clientes, instancias, instancia, grupoCompartido);
+        List<MqttPahoMessageDrivenChannelAdapter> nuevos = new ArrayList<>(porCliente.size());
+        for (int i = 0; i < porCliente.size(); i++) {
+            List<String> topics = porCliente.get(i);
+            // Con una sola conexión se conserva el clientId configurado
+            String id = porCliente.size() == 1 ? clientId : clientId + "-" + instancia + "-" + i;
+            if (topics.isEmpty()) {
+                logger.warn("No hay tópicos para el cliente MQTT {}.", id);
+            } else {
+                logger.info("Cliente MQTT {} suscrito a: {}", id, topics);
             }
+            MqttPahoMessageDrivenChannelAdapter adapter =
+                    new MqttPahoMessageDrivenChannelAdapter(id, mqttClientFactory(), topics.toArray(new String[0]));
+            adapter.setCompletionTimeout(5000);
+            // Los bytes se convierten a texto en MedicionAmbientalService; el formato empaquetado puede ser binario
+            DefaultPahoMessageConverter converter = new DefaultPahoMessageConverter();
+            converter.setPayloadAsBytes(true);
+            adapter.setConverter(converter);
+            adapter.setQos(0);
+            adapter.setOutputChannel(mqttInputChannel());
+            adapter.setBeanFactory(beanFactory);
+            adapter.afterPropertiesSet();
+            logger.info("Conectando a MQTT broker: {} con clientId: {}", brokerUrl, id);
+            nuevos.add(adapter);
         }
-        if (topics.isEmpty()) {
-            logger.warn("No se encontraron tópicos base en la base de datos para suscribirse a MQTT.");
-        } else {
-            logger.info("Suscribiéndose dinámicamente a los siguientes tópicos MQTT: {}", topics);
+        return nuevos;
+    }
+
+    /**
+     * Tópicos de cada conexión de esta instancia. Las centrales se asignan a una instancia y a
+     * una conexión según su id, de modo que las cinco variables de una estación llegan siempre
+     * por la misma conexión. Con grupo compartido cada instancia suscribe además el tópico
+     * {@code packed} de todas las centrales con el prefijo del grupo: cada mensaje empaquetado
+     * trae mediciones completas y puede procesarlo cualquier instancia.
+     */
+    static List<List<String>> repartirTopicos(List<Central> centrales, int clientes, int instancias, int instancia,
+                                              String grupoCompartido) {
+        int n = Math.max(clientes, 1);
+        int totalInstancias = Math.max(instancias, 1);
+        String prefijoGrupo = grupoCompartido == null || grupoCompartido.isBlank() ? "" : "$share/" + grupoCompartido + "/";
+        List<List<String>> porCliente = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) porCliente.add(new ArrayList<>());
+        for (Central c : centrales) {
+            String baseClean = RegistroCentrales.prefijoTopico(c.getTopicoBase());
+            if (baseClean == null || c.getIdCentral() == null) continue;
+            int id = c.getIdCentral();
+            boolean asignada = AsignacionIngesta.asignada(id, totalInstancias, instancia);
+            if (!asignada && prefijoGrupo.isEmpty()) continue;
+            List<String> topics = porCliente.get(Math.floorMod(id / totalInstancias, n));
+            if (asignada) {
+                for (String variable : new String[]{"tt", "hh", "pm10", "pm25", "fecha"}) {
+                    topics.add(baseClean + "/" + variable);
+                }
+            }
+            topics.add(prefijoGrupo + baseClean + "/packed");
         }
-        MqttPahoMessageDrivenChannelAdapter adapter =
-                new MqttPahoMessageDrivenChannelAdapter(clientId, mqttClientFactory(), topics.toArray(new String[0]));
-        adapter.setCompletionTimeout(5000);
-        adapter.setConverter(new DefaultPahoMessageConverter());
-        adapter.setQos(0);
-        adapter.setOutputChannel(mqttInputChannel());
-        logger.info("Conectando a MQTT broker: {} con clientId: {}", brokerUrl, clientId);
-        return adapter;
+        return porCliente;
+    }
+
+    /** Estación a la que pertenece un tópico: todo hasta la última barra. */
+    static String prefijoEstacion(String topic) {
+        if (topic == null) return null;
+        int ultimaBarra = topic.lastIndexOf('/');
+        return ultimaBarra > 0 ? topic.substring(0, ultimaBarra) : topic;
     }
 
     @ServiceActivator(inputChannel = "mqttInputChannel")
-    public void handleMqttMessage(String payload, @Header(MqttHeaders.RECEIVED_TOPIC) String topic) {
-        logger.trace("MQTT recibido - Tópico: [{}], Payload: [{}]", topic, payload);
-        // Depuración: log de ingreso de datos por tópico
-        logger.info("[MQTT] Mensaje recibido del tópico: {} | Payload: {}", topic, payload);
+    public void handleMqttMessage(byte[] payload, @Header(MqttHeaders.RECEIVED_TOPIC) String topic) {
+        if (logger.isTraceEnabled()) {
+            logger.trace("MQTT recibido - Tópico: [{}], Payload: [{} bytes]", topic, payload.length);
+        }
         try {
             medicionAmbientalService.processMqttMessage(topic, payload);
-            logger.debug("Mensaje MQTT procesado correctamente para tópico [{}]", topic);
         } catch (Exception e) {
-            logger.error("Error procesando mensaje MQTT. Tópico: [{}], Payload: [{}], Error: {}", topic, payload, e.getMessage(), e);
+            logger.error("Error procesando mensaje MQTT. Tópico: [{}], Payload: [{} bytes], Error: {}", topic, payload.length, e.getMessage(), e);
         }
     }
 
-    // Devuelve los tópicos actuales a los que está suscrito el adaptador MQTT
+    // Devuelve los tópicos actuales a los que están suscritos los adaptadores MQTT
     public List<String> getCurrentTopicsDebug() {
-        if (mqttAdapter == null) return List.of();
-        String[] topics = mqttAdapter.getTopic();
-        if (topics == null) return List.of();
-        return java.util.Arrays.asList(topics);
-    }
-
-    @Override
-    public void destroy() {
-        if (mqttAdapter != null) {
-            mqttAdapter.stop();
+        List<String> topics = new ArrayList<>();
+        for (MqttPahoMessageDrivenChannelAdapter adapter : adaptadores) {
+            String[] deAdapter = adapter.getTopic();
+            if (deAdapter != null) topics.addAll(java.util.Arrays.asList(deAdapter));
         }
+        return topics;
     }
 }
 
@@ -3,6 +3,7 @@ package com.santotomas.lia.monitoreoambiental.config;
 import com.santotomas.lia.monitoreoambiental.security.JwtAuthenticationFilter;
 import com.santotomas.lia.monitoreoambiental.security.UsuarioDetailsService;
 import org.springframework.boot.actuate.autoconfigure.security.servlet.EndpointRequest;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
@@ -21,6 +22,10 @@ public class WebSecurityConfig {
     private final UsuarioDetailsService usuarioDetailsService;
     private final JwtAuthenticationFilter jwtAuthenticationFilter;
 
+    /** Permite que Prometheus lea /actuator/prometheus sin token, p. ej. desde una red interna. */
+    @Value("${mediciones.metricas.prometheus-sin-autenticacion:false}")
+    private boolean prometheusSinAutenticacion;
+
     public WebSecurityConfig(UsuarioDetailsService usuarioDetailsService, JwtAuthenticationFilter jwtAuthenticationFilter) {
         this.usuarioDetailsService = usuarioDetailsService;
         this.jwtAuthenticationFilter = jwtAuthenticationFilter;
@@ -39,13 +44,17 @@ public class WebSecurityConfig {
                     // Exponer cabeceras personalizadas para paginación
                     config.addExposedHeader("X-Total-Pages");
                     config.addExposedHeader("X-Total-Elements");
+                    config.addExposedHeader("X-Next-Cursor");
                     return config;
                 }))
-                .authorizeHttpRequests(auth -> auth
-                        .requestMatchers("/api/auth/login", "/api/auth/logout").permitAll()
-                        .requestMatchers(EndpointRequest.toAnyEndpoint()).hasRole("ADMIN")
-                        .anyRequest().authenticated()
-                )
+                .authorizeHttpRequests(auth -> {
+                    auth.requestMatchers("/api/auth/login", "/api/auth/logout").permitAll();
+                    if (prometheusSinAutenticacion) {
+                        auth.requestMatchers(EndpointRequest.to("prometheus")).permitAll();
+                    }
+                    auth.requestMatchers(EndpointRequest.toAnyEndpoint()).hasRole("ADMIN")
+                            .anyRequest().authenticated();
+                })
                 .formLogin(form -> form
                         .loginProcessingUrl("/api/auth/login")
                         .usernameParameter("correo")
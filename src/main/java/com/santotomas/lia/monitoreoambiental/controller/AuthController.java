@@ -71,7 +71,7 @@ public class AuthController {
         if (usuario == null || !usuario.isActivo() || !passwordEncoder.matches(loginRequest.getPassword(), usuario.getPassword())) {
             return ResponseEntity.status(401).body(Map.of("error", "Credenciales inválidas"));
         }
-        String token = jwtUtil.generateToken(usuario.getCorreo(), usuario.getRol());
+        String token = jwtUtil.generateToken(usuario.getCorreo(), usuario.getRol(), usuario.getVersionToken());
         LoginResponse response = usuarioMapper.usuarioToLoginResponse(usuario);
         return ResponseEntity.ok(Map.of(
             "token", token,
@@ -0,0 +1,25 @@
+package com.santotomas.lia.monitoreoambiental.controller;
+
+import com.santotomas.lia.monitoreoambiental.service.CalidadAireService;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequestMapping("/api/admin/calidad-aire")
+public class CalidadAireAdminController {
+    private final CalidadAireService calidadAireService;
+    public CalidadAireAdminController(CalidadAireService calidadAireService) {
+        this.calidadAireService = calidadAireService;
+    }
+
+    @PostMapping("/recalcular")
+    @PreAuthorize("hasRole('ADMIN')")
+    public String recalcular(@RequestParam(required = false) Integer idCentral) {
+        long cambios = calidadAireService.recalcular(idCentral);
+        String alcance = idCentral != null ? "la central " + idCentral : "todas las centrales";
+        return "Índice de calidad del aire recalculado para " + alcance + ": " + cambios + " mediciones actualizadas";
+    }
+}
@@ -1,20 +1,28 @@
 package com.santotomas.lia.monitoreoambiental.controller;
 
+import com.santotomas.lia.monitoreoambiental.dto.CursorMedicion;
+import com.santotomas.lia.monitoreoambiental.dto.FiltroMediciones;
 import com.santotomas.lia.monitoreoambiental.dto.MedicionAgrupadaDTO;
 import com.santotomas.lia.monitoreoambiental.dto.MedicionDTO;
+import com.santotomas.lia.monitoreoambiental.dto.PuntoSerieDTO;
+import com.santotomas.lia.monitoreoambiental.dto.ResumenMedicionesDTO;
 import com.santotomas.lia.monitoreoambiental.model.Central;
-import com.santotomas.lia.monitoreoambiental.model.Medicion;
-import com.santotomas.lia.monitoreoambiental.repository.CentralRepository;
-import com.santotomas.lia.monitoreoambiental.repository.MedicionRepository;
-import org.springframework.data.domain.PageRequest;
+import com.santotomas.lia.monitoreoambiental.repository.MedicionStore;
+import com.santotomas.lia.monitoreoambiental.service.AgrupadasCache;
+import com.santotomas.lia.monitoreoambiental.service.ConteoMedicionesCache;
+import com.santotomas.lia.monitoreoambiental.service.RegistroCentrales;
+import com.santotomas.lia.monitoreoambiental.service.ResumenMedicionesService;
+import com.santotomas.lia.monitoreoambiental.service.SerieMedicionesService;
+import com.santotomas.lia.monitoreoambiental.service.UltimasMedicionesCache;
+import com.santotomas.lia.monitoreoambiental.service.VersionesMediciones;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.ServletWebRequest;
 
-import jakarta.persistence.EntityManager;
-import jakarta.persistence.PersistenceContext;
-import jakarta.persistence.Query;
-
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.Arrays;
@@ -26,27 +34,70 @@ import java.util.stream.Collectors;
 @RequestMapping("/api/mediciones")
 public class MedicionAmbientalController {
 
-    private final MedicionRepository medicionRepo;
-    private final CentralRepository centralRepo;
+    /** El navegador guarda la respuesta pero la revalida con el ETag antes de cada uso. */
+    private static final CacheControl REVALIDAR = CacheControl.noCache().cachePrivate();
 
-    @PersistenceContext
-    private EntityManager entityManager;
+    private final MedicionStore medicionStore;
+    private final RegistroCentrales registroCentrales;
+    private final ConteoMedicionesCache conteoMedicionesCache;
+    private final UltimasMedicionesCache ultimasMedicionesCache;
+    private final ResumenMedicionesService resumenMedicionesService;
+    private final SerieMedicionesService serieMedicionesService;
+    private final AgrupadasCache agrupadasCache;
+    private final VersionesMediciones versionesMediciones;
 
-    public MedicionAmbientalController(MedicionRepository medicionRepo, CentralRepository centralRepo) {
-        this.medicionRepo = medicionRepo;
-        this.centralRepo = centralRepo;
+    public MedicionAmbientalController(MedicionStore medicionStore, RegistroCentrales registroCentrales,
+                                       ConteoMedicionesCache conteoMedicionesCache,
+                                       UltimasMedicionesCache ultimasMedicionesCache,
+                                       ResumenMedicionesService resumenMedicionesService,
+                                       SerieMedicionesService serieMedicionesService,
+                                       AgrupadasCache agrupadasCache,
+                                       VersionesMediciones versionesMediciones) {
+        this.medicionStore = medicionStore;
+        this.registroCentrales = registroCentrales;
+        this.conteoMedicionesCache = conteoMedicionesCache;
+        this.ultimasMedicionesCache = ultimasMedicionesCache;
+        this.resumenMedicionesService = resumenMedicionesService;
+        this.serieMedicionesService = serieMedicionesService;
+        this.agrupadasCache = agrupadasCache;
+        this.versionesMediciones = versionesMediciones;
     }
 
+    /**
+     * Últimos N registros de una central, servidos desde memoria. Lleva ETag, así que un
+     * sondeo con {@code If-None-Match} recibe 304 mientras no llegue una medición nueva.
+     */
     @GetMapping("/ultimas")
-    public List<MedicionDTO> ultimasMediciones(@RequestParam String central, @RequestParam(required = false, defaultValue = "60") int limit) {
-        Central c = centralRepo.findByNombreCentral(central);
-        // Consulta dinámica para obtener los últimos N registros
-        var lista = medicionRepo.findTopNByCentralOrderByFechaDesc(c, limit);
-        return lista.stream()
-                .map(m -> new MedicionDTO(m.getId(), m.getFecha(), m.getTemperatura(), m.getHumedad(), m.getPm25(), m.getPm10()))
-                .collect(Collectors.toList());
+    public ResponseEntity<List<MedicionDTO>> ultimasMediciones(@RequestParam String central, @RequestParam(required = false, defaultValue = "60") int limit,
+                                                               ServletWebRequest request) {
+        Central c = registroCentrales.porNombre(central);
+        if (c == null) {
+            return ResponseEntity.ok(List.of());
+        }
+        if (limit > ultimasMedicionesCache.getCapacidad()) {
+            // Más de lo que guarda la caché: se consultan los últimos N registros
+            VersionesMediciones.Validador v = validador(request, List.of(c.getIdCentral()), null);
+            if (request.checkNotModified(v.etag())) {
+                return noModificado(v);
+            }
+            return respuesta(v).body(medicionStore.ultimas(c.getIdCentral(), limit));
+        }
+        UltimasMedicionesCache.Instantanea ultimas = ultimasMedicionesCache.ultimas(c.getIdCentral(), limit);
+        return ResponseEntity.ok().eTag(ultimas.etag()).cacheControl(REVALIDAR).body(ultimas.mediciones());
     }
 
+    /**
+     * Mediciones de una o más centrales en un rango de fechas, paginadas.
+     * <p>
+     * Por defecto pagina con {@code page}/{@code size}. Si se envía {@code cursor} (vacío para la
+     * primera página) pagina por clave (fecha, id): cada respuesta trae en {@code X-Next-Cursor}
+     * el cursor de la página siguiente y el costo no crece con la profundidad. El total
+     * ({@code X-Total-Elements}) se calcula solo si {@code contar} es verdadero, por defecto
+     * en el modo por página, y se reutiliza entre páginas del mismo filtro.
+     * <p>
+     * Como las demás consultas por rango, lleva un ETag que cambia solo al persistirse mediciones
+     * de esas centrales; con {@code If-None-Match} vigente responde 304 sin ir a la base de datos.
+     */
     @GetMapping("/rango")
     public ResponseEntity<List<MedicionDTO>> medicionesPorRango(
             @RequestParam String central,
@@ -54,6 +105,8 @@ public class MedicionAmbientalController {
             @RequestParam String fechaFin,
             @RequestParam(defaultValue = "0") int page,
             @RequestParam(defaultValue = "100") int size,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Boolean contar,
             @RequestParam(required = false) Float temperaturaMin,
             @RequestParam(required = false) Float temperaturaMax,
             @RequestParam(required = false) Float humedadMin,
@@ -61,103 +114,74 @@ public class MedicionAmbientalController {
             @RequestParam(required = false) Float pm25Min,
             @RequestParam(required = false) Float pm25Max,
             @RequestParam(required = false) Float pm10Min,
-            @RequestParam(required = false) Float pm10Max
+            @RequestParam(required = false) Float pm10Max,
+            ServletWebRequest request
     ) {
+        if (size < 1) {
+            throw new IllegalArgumentException("El tamaño de página debe ser mayor que 0");
+        }
+        if (page < 0) {
+            throw new IllegalArgumentException("El número de página no puede ser negativo");
+        }
+        if ((long) page * size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("La página pedida está fuera de rango; use el cursor para avanzar");
+        }
         // Permitir múltiples estaciones separadas por coma
-        String[] centralesArr = central.split(",");
-        List<Integer> centralesIds = java.util.Arrays.stream(centralesArr)
-                .map(nombre -> {
-                    Central c = centralRepo.findByNombreCentral(nombre);
-                    return c != null ? c.getIdCentral() : null;
-                })
-                .filter(java.util.Objects::nonNull)
-                .toList();
+        List<Integer> centralesIds = registroCentrales.idsPorNombres(central);
         if (centralesIds.isEmpty()) {
             return ResponseEntity.ok().body(List.of());
         }
         DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss");
         LocalDateTime inicio = LocalDateTime.parse(fechaInicio + "T00:00:00", formatter);
         LocalDateTime fin = LocalDateTime.parse(fechaFin + "T23:59:59", formatter);
-        // Consulta dinámica con JPQL
-        StringBuilder jpql = new StringBuilder("SELECT m FROM Medicion m WHERE m.central.idCentral IN :centrales AND m.fecha BETWEEN :inicio AND :fin");
-        if (temperaturaMin != null) jpql.append(" AND m.temperatura >= :temperaturaMin");
-        if (temperaturaMax != null) jpql.append(" AND m.temperatura <= :temperaturaMax");
-        if (humedadMin != null) jpql.append(" AND m.humedad >= :humedadMin");
-        if (humedadMax != null) jpql.append(" AND m.humedad <= :humedadMax");
-        if (pm25Min != null) jpql.append(" AND m.pm25 >= :pm25Min");
-        if (pm25Max != null) jpql.append(" AND m.pm25 <= :pm25Max");
-        if (pm10Min != null) jpql.append(" AND m.pm10 >= :pm10Min");
-        if (pm10Max != null) jpql.append(" AND m.pm10 <= :pm10Max");
-        jpql.append(" ORDER BY m.fecha DESC");
-        Query query = entityManager.createQuery(jpql.toString(), Medicion.class);
-        query.setParameter("centrales", centralesIds);
-        query.setParameter("inicio", inicio);
-        query.setParameter("fin", fin);
-        if (temperaturaMin != null) query.setParameter("temperaturaMin", temperaturaMin);
-        if (temperaturaMax != null) query.setParameter("temperaturaMax", temperaturaMax);
-        if (humedadMin != null) query.setParameter("humedadMin", humedadMin);
-        if (humedadMax != null) query.setParameter("humedadMax", humedadMax);
-        if (pm25Min != null) query.setParameter("pm25Min", pm25Min);
-        if (pm25Max != null) query.setParameter("pm25Max", pm25Max);
-        if (pm10Min != null) query.setParameter("pm10Min", pm10Min);
-        if (pm10Max != null) query.setParameter("pm10Max", pm10Max);
-        query.setFirstResult(page * size);
-        query.setMaxResults(size);
-        List<Medicion> result = query.getResultList();
-        // Para paginación total
-        // Corregir la consulta de conteo para incluir FROM Medicion m
-        String countJpqlStr = jpql.toString().replaceFirst("SELECT m FROM Medicion m", "SELECT COUNT(m) FROM Medicion m").replaceFirst("ORDER BY m.fecha DESC", "");
-        // Si la consulta no contiene FROM Medicion m, asegúrate de agregarlo correctamente
-        if (!countJpqlStr.contains("FROM Medicion m")) {
-            int idx = countJpqlStr.indexOf("WHERE");
-            if (idx != -1) {
-                countJpqlStr = "SELECT COUNT(m) FROM Medicion m " + countJpqlStr.substring(idx);
-            } else {
-                countJpqlStr = "SELECT COUNT(m) FROM Medicion m";
-            }
+        VersionesMediciones.Validador v = validador(request, centralesIds, fin.toLocalDate());
+        if (request.checkNotModified(v.etag())) {
+            return noModificado(v);
         }
-        Query countQuery = entityManager.createQuery(countJpqlStr);
-        countQuery.setParameter("centrales", centralesIds);
-        countQuery.setParameter("inicio", inicio);
-        countQuery.setParameter("fin", fin);
-        if (temperaturaMin != null) countQuery.setParameter("temperaturaMin", temperaturaMin);
-        if (temperaturaMax != null) countQuery.setParameter("temperaturaMax", temperaturaMax);
-        if (humedadMin != null) countQuery.setParameter("humedadMin", humedadMin);
-        if (humedadMax != null) countQuery.setParameter("humedadMax", humedadMax);
-        if (pm25Min != null) countQuery.setParameter("pm25Min", pm25Min);
-        if (pm25Max != null) countQuery.setParameter("pm25Max", pm25Max);
-        if (pm10Min != null) countQuery.setParameter("pm10Min", pm10Min);
-        if (pm10Max != null) countQuery.setParameter("pm10Max", pm10Max);
-        long totalElements = (long) countQuery.getSingleResult();
-        int totalPages = (int) Math.ceil((double) totalElements / size);
-        List<MedicionDTO> dtos = result.stream()
-            .map(m -> new MedicionDTO(m.getId(), m.getFecha(), m.getTemperatura(), m.getHumedad(), m.getPm25(), m.getPm10()))
-            .collect(Collectors.toList());
+        FiltroMediciones filtro = new FiltroMediciones(centralesIds, inicio, fin,
+                temperaturaMin, temperaturaMax, humedadMin, humedadMax, pm25Min, pm25Max, pm10Min, pm10Max);
+        boolean porCursor = cursor != null;
+        CursorMedicion desde = porCursor ? CursorMedicion.decodificar(cursor) : null;
+
+        // En modo cursor se pide una fila extra para saber si existe una página siguiente
+        List<MedicionDTO> dtos = medicionStore.pagina(filtro, desde, porCursor ? 0 : (long) page * size,
+                porCursor ? size + 1 : size);
+
         HttpHeaders headers = new HttpHeaders();
-        headers.add("X-Total-Pages", String.valueOf(totalPages));
-        headers.add("X-Total-Elements", String.valueOf(totalElements));
-        return ResponseEntity.ok().headers(headers).body(dtos);
+        if (porCursor && dtos.size() > size) {
+            dtos = dtos.subList(0, size);
+            MedicionDTO ultima = dtos.get(size - 1);
+            headers.add("X-Next-Cursor", new CursorMedicion(ultima.getFecha(), ultima.getId()).codificar());
+        }
+        if (contar != null ? contar : !porCursor) {
+            long totalElements = conteoMedicionesCache.obtener(filtro, () -> medicionStore.contar(filtro));
+            int totalPages = (int) Math.ceil((double) totalElements / size);
+            headers.add("X-Total-Pages", String.valueOf(totalPages));
+            headers.add("X-Total-Elements", String.valueOf(totalElements));
+        }
+        return respuesta(v).headers(headers).body(dtos);
     }
 
     @GetMapping("/agrupadas")
-    public List<MedicionAgrupadaDTO> medicionesAgrupadas(
+    public ResponseEntity<List<MedicionAgrupadaDTO>> medicionesAgrupadas(
             @RequestParam String central,
             @RequestParam String topico,
             @RequestParam String intervalo,
             @RequestParam(required = false) String fechaInicio,
-            @RequestParam(required = false) String fechaFin
+            @RequestParam(required = false) String fechaFin,
+            ServletWebRequest request
     ) {
         String[] centralesArr = central.split(",");
         List<Integer> centralesIds = Arrays.stream(centralesArr)
                 .map(nombre -> {
-                    Central c = centralRepo.findByNombreCentral(nombre);
+                    Central c = registroCentrales.porNombre(nombre);
                     if (c == null) throw new IllegalArgumentException("Central no encontrada: " + nombre);
                     return c.getIdCentral();
                 })
                 .collect(Collectors.toList());
 
         if (centralesIds.isEmpty()) {
-            return List.of();
+            return ResponseEntity.ok(List.of());
         }
 
         String campo = switch (topico) {
@@ -168,50 +192,99 @@ public class MedicionAmbientalController {
             default -> throw new IllegalArgumentException("Tópico no válido: " + topico);
         };
 
-        String dateExpression;
-        switch (intervalo) {
-            case "hora" -> dateExpression = "DATE_FORMAT(fecha, '%Y-%m-%dT%H:00:00')";
-            case "dia" -> dateExpression = "DATE(fecha)";
-            case "semana" -> dateExpression = "DATE(DATE_SUB(fecha, INTERVAL WEEKDAY(fecha) DAY))";
-            case "mes" -> dateExpression = "DATE_FORMAT(fecha, '%Y-%m')";
-            default -> throw new IllegalArgumentException("Intervalo no válido: " + intervalo);
-        }
-
-        StringBuilder sql = new StringBuilder("SELECT id_central, ")
-                .append(dateExpression).append(" as fecha_agrupada, AVG(").append(campo).append(") as valor ")
-                .append("FROM medicion WHERE id_central IN (:centralesIds)");
-
+        LocalDate inicio = null;
+        LocalDate fin = null;
         if (fechaInicio != null && !fechaInicio.isEmpty() && fechaFin != null && !fechaFin.isEmpty()) {
-            sql.append(" AND fecha BETWEEN :inicio AND :fin");
+            inicio = LocalDate.parse(fechaInicio);
+            fin = LocalDate.parse(fechaFin);
+        }
+        VersionesMediciones.Validador v = validador(request, centralesIds, fin);
+        if (request.checkNotModified(v.etag())) {
+            return noModificado(v);
         }
 
-        sql.append(" GROUP BY id_central, fecha_agrupada ORDER BY id_central, fecha_agrupada ASC");
+        // Con MySQL se sirve desde los agregados por hora/día en lugar de recorrer medicion; los
+        // periodos ya cerrados salen de memoria y solo se consultan los que faltan
+        return respuesta(v).body(agrupadasCache.agrupadas(centralesIds, campo, intervalo, inicio, fin).stream()
+                .map(f -> new MedicionAgrupadaDTO(registroCentrales.nombrePorId(f.idCentral()), f.fecha(), f.valor()))
+                .collect(Collectors.toList()));
+    }
 
-        Query query = entityManager.createNativeQuery(sql.toString());
-        query.setParameter("centralesIds", centralesIds);
+    /**
+     * Cantidad, promedio, mínimo, máximo, desviación y percentiles aproximados de cada variable
+     * para una o más centrales (nombres separados por comas) en un rango de días.
+     */
+    @GetMapping("/resumen")
+    public ResponseEntity<ResumenMedicionesDTO> resumen(
+            @RequestParam String central,
+            @RequestParam String fechaInicio,
+            @RequestParam String fechaFin,
+            @RequestParam(required = false) String fuente,
+            ServletWebRequest request
+    ) {
+        List<Integer> centralesIds = registroCentrales.idsPorNombres(central);
+        if (centralesIds.isEmpty()) {
+            throw new IllegalArgumentException("Central no encontrada: " + central);
+        }
+        LocalDate fin = LocalDate.parse(fechaFin);
+        VersionesMediciones.Validador v = validador(request, centralesIds, fin);
+        if (request.checkNotModified(v.etag())) {
+            return noModificado(v);
+        }
+        List<String> nombres = centralesIds.stream().map(registroCentrales::nombrePorId).toList();
+        return respuesta(v).body(
+                resumenMedicionesService.resumir(centralesIds, nombres, LocalDate.parse(fechaInicio), fin, fuente));
+    }
 
-        if (fechaInicio != null && !fechaInicio.isEmpty() && fechaFin != null && !fechaFin.isEmpty()) {
-            query.setParameter("inicio", fechaInicio + " 00:00:00");
-            query.setParameter("fin", fechaFin + " 23:59:59");
+    /**
+     * Serie de una variable reducida a lo más {@code puntos} valores para graficar rangos largos.
+     * {@code metodo}: {@code lttb} (por defecto) o {@code minmax}.
+     */
+    @GetMapping("/serie")
+    public ResponseEntity<List<PuntoSerieDTO>> serie(
+            @RequestParam String central,
+            @RequestParam String variable,
+            @RequestParam String fechaInicio,
+            @RequestParam String fechaFin,
+            @RequestParam(defaultValue = "500") int puntos,
+            @RequestParam(defaultValue = "lttb") String metodo,
+            ServletWebRequest request
+    ) {
+        Central c = registroCentrales.porNombre(central);
+        if (c == null) {
+            throw new IllegalArgumentException("Central no encontrada: " + central);
+        }
+        LocalDate fin = LocalDate.parse(fechaFin);
+        VersionesMediciones.Validador v = validador(request, List.of(c.getIdCentral()), fin);
+        if (request.checkNotModified(v.etag())) {
+            return noModificado(v);
         }
+        return respuesta(v).body(serieMedicionesService.serie(c.getIdCentral(), variable,
+                LocalDate.parse(fechaInicio).atStartOfDay(), fin.atTime(23, 59, 59), puntos, metodo));
+    }
+
+    @GetMapping("/ultima")
+    public ResponseEntity<MedicionDTO> ultimaMedicion(@RequestParam String central) {
+        Central c = registroCentrales.porNombre(central);
+        if (c == null) return ResponseEntity.ok(null);
+        UltimasMedicionesCache.Instantanea ultima = ultimasMedicionesCache.ultimas(c.getIdCentral(), 1);
+        if (ultima.mediciones().isEmpty()) return ResponseEntity.ok(null);
+        return ResponseEntity.ok().eTag(ultima.etag()).cacheControl(REVALIDAR).body(ultima.mediciones().get(0));
+    }
 
-        List<Object[]> resultados = query.getResultList();
+    /** Validador de la petición: su ruta y parámetros junto a las versiones de las centrales consultadas. */
+    private VersionesMediciones.Validador validador(ServletWebRequest request, List<Integer> centrales, LocalDate fin) {
+        String query = request.getRequest().getQueryString();
+        String consulta = request.getRequest().getRequestURI() + (query != null ? "?" + query : "");
+        return versionesMediciones.validador(centrales, consulta, fin);
+    }
 
-        return resultados.stream()
-                .map(r -> {
-                    Integer idCentral = ((Number) r[0]).intValue();
-                    String nombreCentral = centralRepo.findById(idCentral).map(Central::getNombreCentral).orElse("?");
-                    return new MedicionAgrupadaDTO(nombreCentral, r[1].toString(), r[2] != null ? ((Number) r[2]).doubleValue() : null);
-                })
-                .collect(Collectors.toList());
+    private static ResponseEntity.BodyBuilder respuesta(VersionesMediciones.Validador v) {
+        return ResponseEntity.ok().eTag(v.etag()).header(HttpHeaders.CACHE_CONTROL, v.cacheControl());
     }
 
-    @GetMapping("/ultima")
-    public MedicionDTO ultimaMedicion(@RequestParam String central) {
-        Central c = centralRepo.findByNombreCentral(central);
-        var lista = medicionRepo.findTop10ByCentralOrderByFechaDesc(c);
-        if (lista.isEmpty()) return null;
-        var m = lista.get(0);
-        return new MedicionDTO(m.getId(), m.getFecha(), m.getTemperatura(), m.getHumedad(), m.getPm25(), m.getPm10());
+    /** El ETag del 304 ya lo escribió {@code checkNotModified}. */
+    private static <T> ResponseEntity<T> noModificado(VersionesMediciones.Validador v) {
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED).header(HttpHeaders.CACHE_CONTROL, v.cacheControl()).build();
     }
 }
\ No newline at end of file
@@ -0,0 +1,162 @@
+package com.santotomas.lia.monitoreoambiental.controller;
+
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+import com.santotomas.lia.monitoreoambiental.dto.FiltroMediciones;
+import com.santotomas.lia.monitoreoambiental.repository.MedicionStore;
+import com.santotomas.lia.monitoreoambiental.service.RegistroCentrales;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.BufferedWriter;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Exportación masiva de mediciones. Las filas se leen con un cursor JDBC y se escriben
+ * directamente en la respuesta, sin armar listas de entidades ni de DTOs.
+ */
+@CrossOrigin(origins = "http://localhost:3000")
+@RestController
+@RequestMapping("/api/mediciones")
+public class MedicionExportController {
+
+    private static final DateTimeFormatter FORMATO_FECHA = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss");
+    private static final MediaType NDJSON = MediaType.parseMediaType("application/x-ndjson");
+    private static final MediaType CSV = MediaType.parseMediaType("text/csv");
+
+    private final MedicionStore medicionStore;
+    private final RegistroCentrales registroCentrales;
+
+    public MedicionExportController(MedicionStore medicionStore, RegistroCentrales registroCentrales) {
+        this.medicionStore = medicionStore;
+        this.registroCentrales = registroCentrales;
+    }
+
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> exportar(
+            @RequestParam String central,
+            @RequestParam String fechaInicio,
+            @RequestParam String fechaFin,
+            @RequestParam(defaultValue = "csv") String formato,
+            @RequestParam(defaultValue = "false") boolean gzip,
+            @RequestParam(required = false) Float temperaturaMin,
+            @RequestParam(required = false) Float temperaturaMax,
+            @RequestParam(required = false) Float humedadMin,
+            @RequestParam(required = false) Float humedadMax,
+            @RequestParam(required = false) Float pm25Min,
+            @RequestParam(required = false) Float pm25Max,
+            @RequestParam(required = false) Float pm10Min,
+            @RequestParam(required = false) Float pm10Max
+    ) {
+        boolean csv = switch (formato) {
+            case "csv" -> true;
+            case "ndjson" -> false;
+            default -> throw new IllegalArgumentException("Formato no válido: " + formato);
+        };
+        List<Integer> centralesIds = registroCentrales.idsPorNombres(central);
+        if (centralesIds.isEmpty()) {
+            throw new IllegalArgumentException("Central no encontrada: " + central);
+        }
+        FiltroMediciones filtro = new FiltroMediciones(centralesIds,
+                LocalDate.parse(fechaInicio).atStartOfDay(), LocalDate.parse(fechaFin).atTime(23, 59, 59),
+                temperaturaMin, temperaturaMax, humedadMin, humedadMax, pm25Min, pm25Max, pm10Min, pm10Max);
+
+        StreamingResponseBody cuerpo = salida -> {
+            OutputStream destino = gzip ? new GZIPOutputStream(salida, 64 * 1024) : salida;
+            Writer writer = new BufferedWriter(new OutputStreamWriter(destino, StandardCharsets.UTF_8), 64 * 1024);
+            StringBuilder linea = new StringBuilder(160);
+            if (csv) {
+                writer.write("id,central,fecha,temperatura,humedad,pm25,pm10\n");
+            }
+            medicionStore.recorrer(filtro, true, (id, idCentral, fecha, tt, hh, pm25, pm10, ica) -> {
+                linea.setLength(0);
+                if (csv) {
+                    escribirCsv(linea, id, registroCentrales.nombrePorId(idCentral), fecha, tt, hh, pm25, pm10);
+                } else {
+                    escribirJson(linea, id, registroCentrales.nombrePorId(idCentral), fecha, tt, hh, pm25, pm10);
+                }
+                writer.append(linea);
+                return true;
+            });
+            writer.flush();
+            if (destino instanceof GZIPOutputStream g) {
+                g.finish();
+            }
+        };
+
+        String archivo = "mediciones-" + fechaInicio + "-" + fechaFin + (csv ? ".csv" : ".ndjson");
+        ResponseEntity.BodyBuilder respuesta = ResponseEntity.ok()
+                .contentType(csv ? CSV : NDJSON)
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + archivo + "\"");
+        if (gzip) {
+            respuesta.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        return respuesta.body(cuerpo);
+    }
+
+    static void escribirCsv(StringBuilder sb, int id, String central, LocalDateTime fecha,
+                            float tt, float hh, float pm25, float pm10) {
+        textoCsv(sb.append(id).append(','), central).append(',');
+        if (fecha != null) FORMATO_FECHA.formatTo(fecha, sb);
+        sb.append(',');
+        valor(sb, tt, "").append(',');
+        valor(sb, hh, "").append(',');
+        valor(sb, pm25, "").append(',');
+        valor(sb, pm10, "").append('\n');
+    }
+
+    static void escribirJson(StringBuilder sb, int id, String central, LocalDateTime fecha,
+                             float tt, float hh, float pm25, float pm10) {
+        sb.append("{\"id\":").append(id).append(",\"central\":");
+        if (central != null) {
+            JsonStringEncoder.getInstance().quoteAsString(central, sb.append('"'));
+            sb.append('"');
+        } else {
+            sb.append("null");
+        }
+        sb.append(",\"fecha\":");
+        if (fecha != null) {
+            sb.append('"');
+            FORMATO_FECHA.formatTo(fecha, sb);
+            sb.append('"');
+        } else {
+            sb.append("null");
+        }
+        valor(sb.append(",\"temperatura\":"), tt, "null");
+        valor(sb.append(",\"humedad\":"), hh, "null");
+        valor(sb.append(",\"pm25\":"), pm25, "null");
+        valor(sb.append(",\"pm10\":"), pm10, "null").append("}\n");
+    }
+
+    /** Campo de texto según RFC 4180: entre comillas si tiene coma, comillas o saltos de línea. */
+    private static StringBuilder textoCsv(StringBuilder sb, String texto) {
+        if (texto == null) return sb;
+        boolean comillas = false;
+        for (int i = 0; i < texto.length() && !comillas; i++) {
+            char c = texto.charAt(i);
+            comillas = c == ',' || c == '"' || c == '\r' || c == '\n';
+        }
+        if (!comillas) return sb.append(texto);
+        sb.append('"');
+        for (int i = 0; i < texto.length(); i++) {
+            char c = texto.charAt(i);
+            if (c == '"') sb.append('"');
+            sb.append(c);
+        }
+        return sb.append('"');
+    }
+
+    private static StringBuilder valor(StringBuilder sb, float v, String nulo) {
+        return Float.isNaN(v) ? sb.append(nulo) : sb.append(v);
+    }
+}
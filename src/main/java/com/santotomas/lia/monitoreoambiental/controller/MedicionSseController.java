@@ -1,37 +1,44 @@
 package com.santotomas.lia.monitoreoambiental.controller;
 
+import com.santotomas.lia.monitoreoambiental.service.DifusorMediciones;
+import com.santotomas.lia.monitoreoambiental.service.RegistroCentrales;
 import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.CrossOrigin;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
-import java.io.IOException;
+
 import java.util.Set;
-import java.util.concurrent.CopyOnWriteArraySet;
 
 @RestController
 @CrossOrigin(origins = "http://localhost:3000")
 public class MedicionSseController {
-    private static final Set<SseEmitter> emitters = new CopyOnWriteArraySet<>();
+    private final DifusorMediciones difusorMediciones;
+    private final RegistroCentrales registroCentrales;
 
-    @GetMapping(value = "/api/mediciones/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
-    public SseEmitter streamMediciones() {
-        SseEmitter emitter = new SseEmitter(0L); // Sin timeout
-        emitters.add(emitter);
-        emitter.onCompletion(() -> emitters.remove(emitter));
-        emitter.onTimeout(() -> emitters.remove(emitter));
-        return emitter;
+    public MedicionSseController(DifusorMediciones difusorMediciones, RegistroCentrales registroCentrales) {
+        this.difusorMediciones = difusorMediciones;
+        this.registroCentrales = registroCentrales;
     }
 
-    public static void enviarNuevaMedicion(Object medicion) {
-        for (SseEmitter emitter : emitters) {
-            try {
-                emitter.send(SseEmitter.event().name("nueva-medicion").data(medicion));
-            } catch (IOException e) {
-                emitter.complete();
-                emitters.remove(emitter);
+    /**
+     * Flujo de mediciones nuevas. Con {@code centrales} (nombres separados por comas) solo se
+     * reciben las de esas centrales; sin el parámetro se reciben todas.
+     */
+    @GetMapping(value = "/api/mediciones/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamMediciones(
+            @RequestParam(required = false) String centrales,
+            @RequestHeader(value = "Last-Event-ID", required = false) String ultimoId
+    ) {
+        Set<Integer> ids = null;
+        if (centrales != null && !centrales.isBlank()) {
+            ids = Set.copyOf(registroCentrales.idsPorNombres(centrales));
+            if (ids.isEmpty()) {
+                throw new IllegalArgumentException("Central no encontrada: " + centrales);
             }
         }
+        return difusorMediciones.suscribir(ids, ultimoId);
     }
 }
-
@@ -0,0 +1,28 @@
+package com.santotomas.lia.monitoreoambiental.controller;
+
+import com.santotomas.lia.monitoreoambiental.service.RollupMedicionesService;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequestMapping("/api/admin/rollups")
+public class RollupAdminController {
+    private final RollupMedicionesService rollupMedicionesService;
+    public RollupAdminController(RollupMedicionesService rollupMedicionesService) {
+        this.rollupMedicionesService = rollupMedicionesService;
+    }
+
+    @PostMapping("/reconstruir")
+    @PreAuthorize("hasRole('ADMIN')")
+    public String reconstruir(@RequestParam(required = false) Integer idCentral) {
+        if (idCentral != null) {
+            rollupMedicionesService.reconstruir(idCentral);
+            return "Agregados reconstruidos para la central " + idCentral;
+        }
+        int total = rollupMedicionesService.reconstruirTodas();
+        return "Agregados reconstruidos para " + total + " centrales";
+    }
+}
@@ -4,6 +4,7 @@ import com.santotomas.lia.monitoreoambiental.model.Usuario;
 import com.santotomas.lia.monitoreoambiental.repository.UsuarioRepository;
 import com.santotomas.lia.monitoreoambiental.mapper.UsuarioMapper;
 import com.santotomas.lia.monitoreoambiental.dto.LoginResponse;
+import com.santotomas.lia.monitoreoambiental.security.SesionesJwt;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
@@ -32,6 +33,9 @@ public class UsuarioController {
     @Autowired
     private UsuarioMapper usuarioMapper;
 
+    @Autowired
+    private SesionesJwt sesionesJwt;
+
     @GetMapping
     public Page<LoginResponse> listar(
             @RequestParam(required = false) String search,
@@ -114,6 +118,13 @@ public class UsuarioController {
             }
         }
 
+        // Los tokens emitidos antes dejan de valer si cambia algo de lo que depende el acceso
+        String correoAnterior = existente.getCorreo();
+        boolean revocar = existente.isActivo() != usuario.isActivo()
+                || existente.getRol() != usuario.getRol()
+                || !correoAnterior.equals(usuario.getCorreo())
+                || (usuario.getPassword() != null && !usuario.getPassword().isBlank());
+
         existente.setNombre(usuario.getNombre());
         existente.setApellido(usuario.getApellido());
         existente.setCorreo(usuario.getCorreo());
@@ -126,8 +137,15 @@ public class UsuarioController {
         if (usuario.getPassword() != null && !usuario.getPassword().isBlank()) {
             existente.setPassword(passwordEncoder.encode(usuario.getPassword()));
         }
+        if (revocar) {
+            existente.setVersionToken(existente.getVersionToken() + 1);
+        }
 
-        return usuarioMapper.usuarioToLoginResponse(usuarioRepository.save(existente));
+        LoginResponse respuesta = usuarioMapper.usuarioToLoginResponse(usuarioRepository.save(existente));
+        if (revocar) {
+            sesionesJwt.invalidar(correoAnterior);
+        }
+        return respuesta;
     }
 
     // Eliminado lógico
@@ -135,6 +153,9 @@ public class UsuarioController {
     public LoginResponse eliminar(@PathVariable Long id) {
         Usuario usuario = usuarioRepository.findById(id).orElseThrow();
         usuario.setActivo(false);
-        return usuarioMapper.usuarioToLoginResponse(usuarioRepository.save(usuario));
+        usuario.setVersionToken(usuario.getVersionToken() + 1);
+        LoginResponse respuesta = usuarioMapper.usuarioToLoginResponse(usuarioRepository.save(usuario));
+        sesionesJwt.invalidar(usuario.getCorreo());
+        return respuesta;
     }
 }
\ No newline at end of file
@@ -0,0 +1,35 @@
+package com.santotomas.lia.monitoreoambiental.dto;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Base64;
+
+/**
+ * Posición de la paginación por cursor: la fecha y el id de la última medición entregada.
+ * Se envía al cliente como un texto opaco en base64.
+ */
+public record CursorMedicion(LocalDateTime fecha, int id) {
+
+    public String codificar() {
+        String plano = fecha.toEpochSecond(ZoneOffset.UTC) + ":" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(plano.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * @return el cursor, o {@code null} si el texto está vacío (primera página)
+     * @throws IllegalArgumentException si el cursor no es válido
+     */
+    public static CursorMedicion decodificar(String texto) {
+        if (texto == null || texto.isBlank()) return null;
+        try {
+            String plano = new String(Base64.getUrlDecoder().decode(texto), StandardCharsets.US_ASCII);
+            int sep = plano.indexOf(':');
+            long segundos = Long.parseLong(plano.substring(0, sep));
+            int id = Integer.parseInt(plano.substring(sep + 1));
+            return new CursorMedicion(LocalDateTime.ofEpochSecond(segundos, 0, ZoneOffset.UTC), id);
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Cursor inválido");
+        }
+    }
+}
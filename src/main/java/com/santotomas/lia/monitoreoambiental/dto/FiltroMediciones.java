@@ -0,0 +1,46 @@
+package com.santotomas.lia.monitoreoambiental.dto;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Filtros de las consultas de mediciones por rango: centrales, fechas y mínimos/máximos
+ * opcionales de cada variable. Su {@code toString()} sirve como firma del filtro.
+ */
+public record FiltroMediciones(
+        List<Integer> centrales,
+        LocalDateTime inicio,
+        LocalDateTime fin,
+        Float temperaturaMin,
+        Float temperaturaMax,
+        Float humedadMin,
+        Float humedadMax,
+        Float pm25Min,
+        Float pm25Max,
+        Float pm10Min,
+        Float pm10Max
+) {
+
+    /** El mismo filtro con otra fecha final. */
+    public FiltroMediciones hasta(LocalDateTime nuevoFin) {
+        return new FiltroMediciones(centrales, inicio, nuevoFin, temperaturaMin, temperaturaMax,
+                humedadMin, humedadMax, pm25Min, pm25Max, pm10Min, pm10Max);
+    }
+
+    public boolean sinFiltrosDeValor() {
+        return temperaturaMin == null && temperaturaMax == null && humedadMin == null && humedadMax == null
+                && pm25Min == null && pm25Max == null && pm10Min == null && pm10Max == null;
+    }
+
+    /** Evalúa los mínimos y máximos en memoria; un valor nulo ({@code NaN}) no cumple ninguna condición, como en SQL. */
+    public boolean cumple(float temperatura, float humedad, float pm25, float pm10) {
+        return dentro(temperatura, temperaturaMin, temperaturaMax) && dentro(humedad, humedadMin, humedadMax)
+                && dentro(pm25, pm25Min, pm25Max) && dentro(pm10, pm10Min, pm10Max);
+    }
+
+    private static boolean dentro(float v, Float min, Float max) {
+        if (min == null && max == null) return true;
+        if (Float.isNaN(v)) return false;
+        return (min == null || v >= min) && (max == null || v <= max);
+    }
+}
@@ -1,5 +1,7 @@
 package com.santotomas.lia.monitoreoambiental.dto;
 
+import com.santotomas.lia.monitoreoambiental.model.CodigoCalidadAire;
+
 import java.time.LocalDateTime;
 
 public class MedicionDTO {
@@ -15,41 +17,34 @@ public class MedicionDTO {
     private Float valorMedido;
 
     public MedicionDTO(Integer id, LocalDateTime fecha, Float temperatura, Float humedad, Float pm25, Float pm10) {
+        this(id, fecha, temperatura, humedad, pm25, pm10, null, null);
+    }
+
+    /** Con el código de {@link CodigoCalidadAire} con que se guardó la medición. */
+    public MedicionDTO(Integer id, LocalDateTime fecha, Float temperatura, Float humedad, Float pm25, Float pm10,
+                       int codigoIca) {
+        this(id, fecha, temperatura, humedad, pm25, pm10,
+                CodigoCalidadAire.indice(codigoIca), CodigoCalidadAire.contaminante(codigoIca));
+    }
+
+    /**
+     * El índice de calidad del aire se calcula al recibir la medición y llega ya guardado; valorMedido
+     * es la lectura del contaminante primario.
+     */
+    public MedicionDTO(Integer id, LocalDateTime fecha, Float temperatura, Float humedad, Float pm25, Float pm10,
+                       Integer indiceCalidadAire, Integer contaminante) {
         this.id = id;
         this.fecha = fecha;
         this.temperatura = temperatura;
         this.humedad = humedad;
         this.pm25 = pm25;
         this.pm10 = pm10;
-        // Cálculo de índice de calidad del aire y contaminante primario
-        calcularCalidadAire();
-    }
-
-    private void calcularCalidadAire() {
-        // Determinar contaminante primario y valor medido
-        if (pm25 != null && pm10 != null) {
-            if (pm25 > pm10) {
-                contaminantePrimario = "PM2.5";
-                valorMedido = pm25;
-            } else {
-                contaminantePrimario = "PM10";
-                valorMedido = pm10;
-            }
-        } else if (pm25 != null) {
-            contaminantePrimario = "PM2.5";
-            valorMedido = pm25;
-        } else if (pm10 != null) {
-            contaminantePrimario = "PM10";
-            valorMedido = pm10;
-        } else {
-            contaminantePrimario = "-";
-            valorMedido = null;
-        }
-        // Índice de calidad del aire (ejemplo: usar valorMedido redondeado)
-        if (valorMedido != null) {
-            indiceCalidadAire = Math.round(valorMedido);
+        this.indiceCalidadAire = contaminante != null ? indiceCalidadAire : null;
+        this.contaminantePrimario = CodigoCalidadAire.nombre(contaminante);
+        if (contaminante == null) {
+            this.valorMedido = null;
         } else {
-            indiceCalidadAire = null;
+            this.valorMedido = contaminante == CodigoCalidadAire.PM25 ? pm25 : pm10;
         }
     }
 
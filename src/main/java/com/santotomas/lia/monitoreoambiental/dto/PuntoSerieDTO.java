@@ -0,0 +1,5 @@
+package com.santotomas.lia.monitoreoambiental.dto;
+
+import java.time.LocalDateTime;
+
+public record PuntoSerieDTO(LocalDateTime fecha, Double valor) {}
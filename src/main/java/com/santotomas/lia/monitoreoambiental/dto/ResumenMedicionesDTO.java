@@ -0,0 +1,22 @@
+package com.santotomas.lia.monitoreoambiental.dto;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Resumen estadístico de un rango.
+ *
+ * @param fuente    {@code crudo} si se recorrieron las mediciones, {@code agregado} si se usaron
+ *                  los agregados por hora (percentiles sobre promedios horarios)
+ * @param variables clave: temperatura, humedad, pm25 o pm10
+ */
+public record ResumenMedicionesDTO(List<String> centrales,
+                                   LocalDate fechaInicio,
+                                   LocalDate fechaFin,
+                                   String fuente,
+                                   Map<String, Variable> variables) {
+
+    public record Variable(long cantidad, Double promedio, Double minimo, Double maximo,
+                           Double desviacion, Double p50, Double p95, Double p99) {}
+}
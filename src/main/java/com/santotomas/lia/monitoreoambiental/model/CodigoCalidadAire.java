@@ -0,0 +1,42 @@
+package com.santotomas.lia.monitoreoambiental.model;
+
+/**
+ * Código entero con que se guarda y transporta el índice de calidad del aire de una medición:
+ * {@code indice * 4 + contaminante}, con {@link #SIN_INDICE} cuando no hay datos suficientes.
+ * El cálculo del índice está en {@code service.IndiceCalidadAire}.
+ */
+public final class CodigoCalidadAire {
+
+    public static final int SIN_INDICE = 0;
+    public static final int PM25 = 1;
+    public static final int PM10 = 2;
+
+    private CodigoCalidadAire() {
+    }
+
+    public static int codificar(int indice, int contaminante) {
+        return contaminante == 0 ? SIN_INDICE : indice << 2 | contaminante;
+    }
+
+    /** Código de los valores guardados con una medición; nulos si aún no se calculó. */
+    public static int codificar(Integer indice, Integer contaminante) {
+        return indice == null || contaminante == null ? SIN_INDICE : codificar(indice.intValue(), contaminante.intValue());
+    }
+
+    public static Integer indice(int codigo) {
+        return codigo == SIN_INDICE ? null : codigo >>> 2;
+    }
+
+    public static Integer contaminante(int codigo) {
+        return codigo == SIN_INDICE ? null : codigo & 3;
+    }
+
+    public static String nombre(Integer contaminante) {
+        if (contaminante == null) return "-";
+        return switch (contaminante) {
+            case PM25 -> "PM2.5";
+            case PM10 -> "PM10";
+            default -> "-";
+        };
+    }
+}
@@ -32,8 +32,21 @@ public class Medicion {
     @Column(name = "pm10")
     private Float pm10;
 
+    /** Índice de calidad del aire NowCast calculado al recibir la medición (ver IndiceCalidadAire). */
+    @Column(name = "ica")
+    private Integer ica;
+
+    /** Contaminante primario del índice: 1 PM2.5, 2 PM10. */
+    @Column(name = "ica_contaminante")
+    private Integer icaContaminante;
+
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "id_central")
     @JsonBackReference
     private Central central;
+
+    public Medicion(Integer id, LocalDateTime fecha, Float temperatura, Float humedad, Float pm25, Float pm10,
+                    Central central) {
+        this(id, fecha, temperatura, humedad, pm25, pm10, null, null, central);
+    }
 }
@@ -1,5 +1,6 @@
 package com.santotomas.lia.monitoreoambiental.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
 import jakarta.validation.constraints.Email;
 import jakarta.validation.constraints.NotBlank;
@@ -43,4 +44,9 @@ public class Usuario {
 
     @Column(length = 255, unique = true)
     private String rut;
+
+    /** Se incrementa para invalidar los JWT ya emitidos (claim {@code ver}). */
+    @JsonIgnore
+    @Column(name = "version_token", nullable = false)
+    private int versionToken;
 }
\ No newline at end of file
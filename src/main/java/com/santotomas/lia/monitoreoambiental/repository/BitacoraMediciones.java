@@ -0,0 +1,474 @@
+package com.santotomas.lia.monitoreoambiental.repository;
+
+import com.santotomas.lia.monitoreoambiental.model.Central;
+import com.santotomas.lia.monitoreoambiental.model.Medicion;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Repository;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Bitácora local (write-ahead log) de las mediciones completas. Cada medición se escribe y se
+ * sincroniza con el disco antes de entrar a la escritura diferida, de modo que ni una caída de
+ * MySQL ni un reinicio del proceso la pierden: lo que no llegó a confirmarse se vuelve a
+ * insertar con {@link #pendientesDeReproducir}.
+ * <p>
+ * La bitácora se divide en segmentos {@code <secuencia>.wal}, nombrados por la secuencia de su
+ * primer registro. Cada registro lleva su largo, un CRC32C y los datos de la medición; al leer,
+ * el primer registro incompleto o con CRC inválido marca el fin del segmento. Un hilo escribe
+ * juntos los registros que llegan mientras se sincroniza el grupo anterior (group commit), así
+ * que un solo fsync cubre a todos. El archivo {@code confirmado} guarda hasta qué secuencia todo
+ * está en la base de datos y los segmentos anteriores se borran.
+ */
+@Repository
+public class BitacoraMediciones {
+
+    private static final Logger logger = LoggerFactory.getLogger(BitacoraMediciones.class);
+
+    static final String EXTENSION = ".wal";
+    static final String CONFIRMADO = "confirmado";
+    /** secuencia, central, fecha y las cuatro variables. */
+    static final int LARGO_DATOS = 8 + 4 + 8 + 4 * 4;
+    static final int LARGO_REGISTRO = 4 + 4 + LARGO_DATOS;
+
+    /** Un registro leído de la bitácora; la central solo trae el id. */
+    public record Registro(long secuencia, Medicion medicion) {
+    }
+
+    @Value("${mediciones.wal.habilitado:false}")
+    private boolean habilitada;
+
+    @Value("${mediciones.wal.directorio:datos/wal}")
+    private String directorio;
+
+    @Value("${mediciones.wal.bytes-por-segmento:16777216}")
+    private long bytesPorSegmento;
+
+    @Value("${mediciones.wal.espera-grupo-ms:0}")
+    private long esperaGrupoMs;
+
+    private Path carpeta;
+    private final NavigableMap<Long, Path> segmentos = new ConcurrentSkipListMap<>();
+
+    // Estado compartido entre quienes agregan y el hilo de sincronización, protegido por bloqueo
+    private final Object bloqueo = new Object();
+    private ByteBuffer porEscribir = ByteBuffer.allocate(64 * 1024);
+    private ByteBuffer reserva = ByteBuffer.allocate(64 * 1024);
+    private volatile long ultimaSecuencia;
+    private long sincronizadaHasta;
+    private long fallidaHasta;
+    private IOException ultimoFallo;
+    private boolean activa;
+    private Thread hiloSincronizacion;
+    private final CRC32C crc = new CRC32C();
+
+    // Solo lo usa el hilo de sincronización
+    private FileChannel canal;
+
+    /** Agregadas y aún no confirmadas: en la cola de escritura, en un lote en curso o fallidas. */
+    private final ConcurrentSkipListSet<Long> enCurso = new ConcurrentSkipListSet<>();
+    /** Las que la escritura diferida no pudo guardar; las inserta la reproducción. */
+    private final ConcurrentSkipListSet<Long> fallidas = new ConcurrentSkipListSet<>();
+    /** Rango que quedó sin confirmar de la ejecución anterior. */
+    private volatile long reproducirDesde = 1;
+    private volatile long reproducirHasta;
+    private long confirmadaEnDisco;
+
+    @PostConstruct
+    public void abrir() throws IOException {
+        if (!habilitada) return;
+        carpeta = Paths.get(directorio);
+        Files.createDirectories(carpeta);
+        Path archivoConfirmado = carpeta.resolve(CONFIRMADO);
+        long confirmada = Files.exists(archivoConfirmado)
+                ? Long.parseLong(Files.readString(archivoConfirmado, StandardCharsets.US_ASCII).trim())
+                : 0;
+        try (Stream<Path> archivos = Files.list(carpeta)) {
+            archivos.filter(p -> p.getFileName().toString().endsWith(EXTENSION))
+                    .forEach(p -> segmentos.put(primeraDe(p), p));
+        }
+        long ultima = confirmada;
+        if (!segmentos.isEmpty()) {
+            Map.Entry<Long, Path> ultimo = segmentos.lastEntry();
+            ultima = Math.max(ultima, ultimo.getKey() - 1);
+            long[] maxima = {ultima};
+            leer(ultimo.getValue(), r -> {
+                maxima[0] = Math.max(maxima[0], r.secuencia());
+                return true;
+            });
+            if (maxima[0] < ultimo.getKey()) {
+                // Creado justo antes de una caída, sin registros válidos: su nombre se vuelve a usar
+                Files.delete(ultimo.getValue());
+                segmentos.remove(ultimo.getKey());
+            }
+            ultima = maxima[0];
+        }
+        ultimaSecuencia = ultima;
+        sincronizadaHasta = ultima;
+        fallidaHasta = ultima;
+        confirmadaEnDisco = confirmada;
+        reproducirDesde = confirmada + 1;
+        reproducirHasta = ultima;
+        if (ultima > confirmada) {
+            logger.warn("La bitácora tiene mediciones sin confirmar (secuencias {} a {}); se reproducirán en la base de datos.",
+                    confirmada + 1, ultima);
+        }
+        activa = true;
+        hiloSincronizacion = new Thread(this::bucleSincronizacion, "mediciones-wal");
+        hiloSincronizacion.setDaemon(true);
+        hiloSincronizacion.start();
+        logger.info("Bitácora de mediciones abierta en {} ({} segmentos, última secuencia {})",
+                carpeta.toAbsolutePath(), segmentos.size(), ultima);
+    }
+
+    public boolean isHabilitada() {
+        return habilitada;
+    }
+
+    /**
+     * Agrega la medición y espera a que su grupo quede sincronizado en el disco.
+     *
+     * @return la secuencia asignada, o -1 si la bitácora está deshabilitada
+     * @throws IOException si no se pudo escribir; la medición no quedó en la bitácora
+     */
+    public long agregar(Medicion medicion) throws IOException {
+        return agregar(List.of(medicion))[0];
+    }
+
+    /**
+     * Agrega las mediciones en un mismo grupo y espera una sola vez a que quede sincronizado en el
+     * disco, como hace falta para un mensaje empaquetado con muchas lecturas.
+     *
+     * @return la secuencia de cada medición, en el mismo orden, o -1 si la bitácora está deshabilitada
+     * @throws IOException si no se pudo escribir; ninguna medición quedó en la bitácora
+     */
+    public long[] agregar(List<Medicion> mediciones) throws IOException {
+        long[] secuencias = new long[mediciones.size()];
+        if (!habilitada) {
+            Arrays.fill(secuencias, -1);
+            return secuencias;
+        }
+        if (secuencias.length == 0) return secuencias;
+        synchronized (bloqueo) {
+            if (!activa) throw new IOException("La bitácora está cerrada");
+            int faltante = mediciones.size() * LARGO_REGISTRO;
+            if (porEscribir.remaining() < faltante) {
+                int capacidad = porEscribir.capacity() * 2;
+                while (capacidad - porEscribir.position() < faltante) capacidad *= 2;
+                ByteBuffer mayor = ByteBuffer.allocate(capacidad);
+                porEscribir.flip();
+                mayor.put(porEscribir);
+                porEscribir = mayor;
+            }
+            long secuencia = ultimaSecuencia;
+            for (int i = 0; i < secuencias.length; i++) {
+                secuencia++;
+                codificar(porEscribir, secuencia, mediciones.get(i));
+                // Se registra en curso antes de publicar la secuencia, ver confirmadaHasta()
+                enCurso.add(secuencia);
+                secuencias[i] = secuencia;
+            }
+            ultimaSecuencia = secuencia;
+            bloqueo.notifyAll();
+            boolean interrumpido = false;
+            while (sincronizadaHasta < secuencia && fallidaHasta < secuencia) {
+                try {
+                    bloqueo.wait();
+                } catch (InterruptedException e) {
+                    interrumpido = true;
+                }
+            }
+            if (interrumpido) Thread.currentThread().interrupt();
+            if (sincronizadaHasta < secuencia) {
+                for (long s : secuencias) enCurso.remove(s);
+                throw new IOException("No se pudo sincronizar la bitácora", ultimoFallo);
+            }
+        }
+        return secuencias;
+    }
+
+    /** Las mediciones ya están en la base de datos: dejan de estar pendientes. */
+    public void confirmar(long... secuencias) {
+        if (!habilitada || secuencias.length == 0) return;
+        for (long s : secuencias) {
+            fallidas.remove(s);
+            enCurso.remove(s);
+        }
+        truncar();
+    }
+
+    /** La escritura diferida no pudo guardarlas; quedan en la bitácora para la reproducción. */
+    public void marcarFallidas(long... secuencias) {
+        for (long s : secuencias) {
+            if (s >= 0) fallidas.add(s);
+        }
+    }
+
+    public boolean hayQueReproducir() {
+        return habilitada && (!fallidas.isEmpty() || reproducirDesde <= reproducirHasta);
+    }
+
+    /**
+     * Hasta {@code limite} registros que deben insertarse de nuevo, en orden de secuencia: los
+     * que quedaron sin confirmar en la ejecución anterior y los marcados como fallidos.
+     */
+    public List<Registro> pendientesDeReproducir(int limite) throws IOException {
+        List<Registro> lote = new ArrayList<>();
+        if (!hayQueReproducir()) return lote;
+        long desde = Long.MAX_VALUE;
+        if (reproducirDesde <= reproducirHasta) desde = reproducirDesde;
+        if (!fallidas.isEmpty()) desde = Math.min(desde, fallidas.first());
+        Long inicio = segmentos.floorKey(desde);
+        for (Path segmento : segmentos.tailMap(inicio != null ? inicio : desde, true).values()) {
+            try {
+                leer(segmento, r -> {
+                    if (debeReproducirse(r.secuencia())) lote.add(r);
+                    return lote.size() < limite;
+                });
+            } catch (NoSuchFileException e) {
+                // Se truncó mientras se buscaba: sus registros ya estaban confirmados
+            }
+            if (lote.size() >= limite) break;
+        }
+        return lote;
+    }
+
+    /** Confirma un lote reproducido y avanza el rango heredado de la ejecución anterior. */
+    public void confirmarReproducidas(List<Registro> lote) {
+        long[] secuencias = new long[lote.size()];
+        long hastaHeredada = -1;
+        for (int i = 0; i < secuencias.length; i++) {
+            long s = lote.get(i).secuencia();
+            secuencias[i] = s;
+            if (s >= reproducirDesde && s <= reproducirHasta) hastaHeredada = s;
+        }
+        if (hastaHeredada >= 0) reproducirDesde = hastaHeredada + 1;
+        confirmar(secuencias);
+    }
+
+    private boolean debeReproducirse(long secuencia) {
+        return (secuencia >= reproducirDesde && secuencia <= reproducirHasta) || fallidas.contains(secuencia);
+    }
+
+    /** Última secuencia tal que ella y todas las anteriores están confirmadas. */
+    long confirmadaHasta() {
+        // La última se lee antes que enCurso: una secuencia publicada ya está registrada en curso
+        long limite = ultimaSecuencia + 1;
+        if (!enCurso.isEmpty()) limite = Math.min(limite, enCurso.first());
+        long desde = reproducirDesde;
+        if (desde <= reproducirHasta) limite = Math.min(limite, desde);
+        return limite - 1;
+    }
+
+    /** Guarda el punto confirmado y borra los segmentos que quedaron completamente atrás. */
+    private synchronized void truncar() {
+        long confirmada = confirmadaHasta();
+        if (confirmada <= confirmadaEnDisco) return;
+        try {
+            Path temporal = carpeta.resolve(CONFIRMADO + ".tmp");
+            Files.writeString(temporal, Long.toString(confirmada), StandardCharsets.US_ASCII);
+            Files.move(temporal, carpeta.resolve(CONFIRMADO), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            confirmadaEnDisco = confirmada;
+        } catch (IOException e) {
+            logger.warn("No se pudo guardar el punto confirmado de la bitácora: {}", e.getMessage());
+            return;
+        }
+        // Un segmento termina donde empieza el siguiente; el último nunca se borra
+        Map.Entry<Long, Path> actual = segmentos.firstEntry();
+        while (actual != null) {
+            Map.Entry<Long, Path> siguiente = segmentos.higherEntry(actual.getKey());
+            if (siguiente == null || siguiente.getKey() - 1 > confirmada) break;
+            try {
+                Files.deleteIfExists(actual.getValue());
+                segmentos.remove(actual.getKey());
+            } catch (IOException e) {
+                logger.warn("No se pudo borrar el segmento {} de la bitácora: {}", actual.getValue(), e.getMessage());
+                break;
+            }
+            actual = siguiente;
+        }
+    }
+
+    private void bucleSincronizacion() {
+        while (true) {
+            ByteBuffer grupo;
+            long desde;
+            long hasta;
+            synchronized (bloqueo) {
+                while (activa && porEscribir.position() == 0) {
+                    try {
+                        bloqueo.wait();
+                    } catch (InterruptedException e) {
+                        // Se revisa activa en la siguiente vuelta
+                    }
+                }
+                if (porEscribir.position() == 0) return;
+                if (esperaGrupoMs > 0 && activa) {
+                    // Da tiempo a que se sumen más registros al grupo
+                    try {
+                        bloqueo.wait(esperaGrupoMs);
+                    } catch (InterruptedException e) {
+                        // Se escribe lo que haya
+                    }
+                }
+                grupo = porEscribir;
+                porEscribir = reserva;
+                desde = Math.max(sincronizadaHasta, fallidaHasta) + 1;
+                hasta = ultimaSecuencia;
+            }
+            IOException fallo = null;
+            grupo.flip();
+            try {
+                escribir(grupo, desde);
+            } catch (IOException e) {
+                fallo = e;
+                logger.error("Error al escribir la bitácora de mediciones: {}", e.getMessage(), e);
+                cerrarCanal();
+            }
+            grupo.clear();
+            synchronized (bloqueo) {
+                reserva = grupo;
+                if (fallo == null) {
+                    sincronizadaHasta = hasta;
+                } else {
+                    fallidaHasta = hasta;
+                    ultimoFallo = fallo;
+                }
+                bloqueo.notifyAll();
+            }
+        }
+    }
+
+    private void escribir(ByteBuffer grupo, long primera) throws IOException {
+        if (canal == null) {
+            Path segmento = carpeta.resolve(nombreSegmento(primera));
+            canal = FileChannel.open(segmento, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+            segmentos.put(primera, segmento);
+            sincronizarCarpeta();
+        }
+        while (grupo.hasRemaining()) {
+            canal.write(grupo);
+        }
+        canal.force(false);
+        if (canal.size() >= bytesPorSegmento) {
+            cerrarCanal();
+        }
+    }
+
+    /** Sin esto un segmento recién creado podría no aparecer en la carpeta tras un corte de luz. */
+    private void sincronizarCarpeta() {
+        try (FileChannel c = FileChannel.open(carpeta, StandardOpenOption.READ)) {
+            c.force(true);
+        } catch (IOException e) {
+            // No todos los sistemas permiten abrir una carpeta
+        }
+    }
+
+    private void cerrarCanal() {
+        if (canal == null) return;
+        try {
+            canal.close();
+        } catch (IOException e) {
+            logger.warn("Error al cerrar el segmento de la bitácora: {}", e.getMessage());
+        }
+        canal = null;
+    }
+
+    private void codificar(ByteBuffer destino, long secuencia, Medicion m) {
+        int inicio = destino.position();
+        destino.putInt(LARGO_DATOS).putInt(0)
+                .putLong(secuencia)
+                .putInt(m.getCentral().getIdCentral())
+                .putLong(m.getFecha().toEpochSecond(ZoneOffset.UTC))
+                .putFloat(valor(m.getTemperatura()))
+                .putFloat(valor(m.getHumedad()))
+                .putFloat(valor(m.getPm25()))
+                .putFloat(valor(m.getPm10()));
+        crc.reset();
+        crc.update(destino.array(), inicio + 8, LARGO_DATOS);
+        destino.putInt(inicio + 4, (int) crc.getValue());
+    }
+
+    /**
+     * Lee los registros válidos de un segmento hasta el primero dañado o hasta que el
+     * consumidor devuelve {@code false}.
+     */
+    static void leer(Path segmento, Predicate<Registro> consumidor) throws IOException {
+        ByteBuffer b = ByteBuffer.wrap(Files.readAllBytes(segmento));
+        CRC32C crc = new CRC32C();
+        while (b.remaining() >= LARGO_REGISTRO) {
+            int largo = b.getInt();
+            int esperado = b.getInt();
+            if (largo != LARGO_DATOS) return;
+            crc.reset();
+            crc.update(b.array(), b.position(), LARGO_DATOS);
+            if ((int) crc.getValue() != esperado) return;
+            long secuencia = b.getLong();
+            Central central = new Central();
+            central.setIdCentral(b.getInt());
+            Medicion m = new Medicion();
+            m.setCentral(central);
+            m.setFecha(LocalDateTime.ofEpochSecond(b.getLong(), 0, ZoneOffset.UTC));
+            m.setTemperatura(nulo(b.getFloat()));
+            m.setHumedad(nulo(b.getFloat()));
+            m.setPm25(nulo(b.getFloat()));
+            m.setPm10(nulo(b.getFloat()));
+            if (!consumidor.test(new Registro(secuencia, m))) return;
+        }
+    }
+
+    static String nombreSegmento(long primera) {
+        return String.format("%019d%s", primera, EXTENSION);
+    }
+
+    private static long primeraDe(Path segmento) {
+        String nombre = segmento.getFileName().toString();
+        return Long.parseLong(nombre.substring(0, nombre.length() - EXTENSION.length()));
+    }
+
+    private static float valor(Float f) {
+        return f == null ? Float.NaN : f;
+    }
+
+    private static Float nulo(float v) {
+        return Float.isNaN(v) ? null : v;
+    }
+
+    @PreDestroy
+    public void cerrar() throws InterruptedException {
+        if (!habilitada) return;
+        synchronized (bloqueo) {
+            activa = false;
+            bloqueo.notifyAll();
+        }
+        hiloSincronizacion.join(5000);
+        cerrarCanal();
+        truncar();
+    }
+}
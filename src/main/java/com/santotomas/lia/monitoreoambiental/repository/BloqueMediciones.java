@@ -0,0 +1,310 @@
+package com.santotomas.lia.monitoreoambiental.repository;
+
+import java.util.Arrays;
+
+/**
+ * Formato columnar comprimido de las mediciones archivadas (un bloque por central y día).
+ * <p>
+ * Las columnas se guardan una tras otra en un flujo de bits:
+ * <ul>
+ *   <li>fecha e id: primer valor completo y luego delta de deltas con códigos de largo
+ *       variable; con lecturas cada minuto casi todas las filas ocupan un bit;</li>
+ *   <li>temperatura, humedad, pm25 y pm10: XOR con el valor anterior al estilo Gorilla,
+ *       guardando solo los bits significativos. Los nulos se guardan como NaN;</li>
+ *   <li>código del índice de calidad del aire (desde la versión 2): delta de deltas, como el id.
+ *       Los bloques de la versión 1 se leen sin índice.</li>
+ * </ul>
+ * Las filas deben venir ordenadas por fecha e id.
+ */
+public final class BloqueMediciones {
+
+    private static final byte VERSION = 2;
+    private static final byte VERSION_SIN_INDICE = 1;
+    private static final int NULO = Float.floatToIntBits(Float.NaN);
+
+    private BloqueMediciones() {
+    }
+
+    /** Filas de un bloque en arreglos paralelos; la fecha va en segundos desde la época, hora local. */
+    public static final class Columnas {
+        private int n;
+        private int[] id;
+        private long[] fecha;
+        private final float[][] valores = new float[4][];
+        private int[] ica;
+
+        public Columnas(int capacidad) {
+            capacidad = Math.max(capacidad, 1);
+            id = new int[capacidad];
+            fecha = new long[capacidad];
+            ica = new int[capacidad];
+            for (int v = 0; v < 4; v++) valores[v] = new float[capacidad];
+        }
+
+        /** Los valores nulos se pasan como {@code NaN}; {@code codigoIca} es un código de {@code CodigoCalidadAire}. */
+        public void agregar(int idMedicion, long fechaSegundos, float temperatura, float humedad, float pm25, float pm10,
+                            int codigoIca) {
+            if (n == id.length) {
+                int nueva = n * 2;
+                id = Arrays.copyOf(id, nueva);
+                fecha = Arrays.copyOf(fecha, nueva);
+                ica = Arrays.copyOf(ica, nueva);
+                for (int v = 0; v < 4; v++) valores[v] = Arrays.copyOf(valores[v], nueva);
+            }
+            id[n] = idMedicion;
+            fecha[n] = fechaSegundos;
+            valores[0][n] = temperatura;
+            valores[1][n] = humedad;
+            valores[2][n] = pm25;
+            valores[3][n] = pm10;
+            ica[n] = codigoIca;
+            n++;
+        }
+
+        public int tamano() {
+            return n;
+        }
+
+        public int id(int i) {
+            return id[i];
+        }
+
+        public long fecha(int i) {
+            return fecha[i];
+        }
+
+        /** Valor de la variable {@code v} (orden de {@link RollupRepository#VARIABLES}); NaN si es nulo. */
+        public float valor(int v, int i) {
+            return valores[v][i];
+        }
+
+        public int ica(int i) {
+            return ica[i];
+        }
+    }
+
+    public static byte[] codificar(Columnas c) {
+        EscritorBits out = new EscritorBits(16 + c.n * 8);
+        out.byteCompleto(VERSION);
+        out.varint(c.n);
+        if (c.n > 0) {
+            escribirEnteros(out, c.fecha, c.n);
+            long[] ids = new long[c.n];
+            for (int i = 0; i < c.n; i++) ids[i] = c.id[i];
+            escribirEnteros(out, ids, c.n);
+            for (int v = 0; v < 4; v++) {
+                escribirFloats(out, c.valores[v], c.n);
+            }
+            long[] codigos = new long[c.n];
+            for (int i = 0; i < c.n; i++) codigos[i] = c.ica[i];
+            escribirEnteros(out, codigos, c.n);
+        }
+        return out.bytes();
+    }
+
+    public static Columnas decodificar(byte[] bloque) {
+        LectorBits in = new LectorBits(bloque);
+        int version = in.byteCompleto();
+        if (version != VERSION && version != VERSION_SIN_INDICE) {
+            throw new IllegalStateException("Versión de bloque desconocida: " + version);
+        }
+        int n = in.varint();
+        Columnas c = new Columnas(n);
+        c.n = n;
+        if (n > 0) {
+            leerEnteros(in, c.fecha, n);
+            long[] ids = new long[n];
+            leerEnteros(in, ids, n);
+            for (int i = 0; i < n; i++) c.id[i] = (int) ids[i];
+            for (int v = 0; v < 4; v++) {
+                leerFloats(in, c.valores[v], n);
+            }
+            if (version == VERSION) {
+                long[] codigos = new long[n];
+                leerEnteros(in, codigos, n);
+                for (int i = 0; i < n; i++) c.ica[i] = (int) codigos[i];
+            }
+        }
+        return c;
+    }
+
+    // Delta de deltas: 0 → "0"; luego prefijos 10, 110, 1110, 11110 y 11111 con 7, 9, 12, 32 y 64 bits (zigzag)
+    private static void escribirEnteros(EscritorBits out, long[] valores, int n) {
+        out.bits(valores[0], 64);
+        long deltaPrevio = 0;
+        for (int i = 1; i < n; i++) {
+            long delta = valores[i] - valores[i - 1];
+            long dod = delta - deltaPrevio;
+            deltaPrevio = delta;
+            long z = (dod << 1) ^ (dod >> 63);
+            if (z == 0) {
+                out.bits(0, 1);
+            } else if (z < 1L << 7) {
+                out.bits(0b10, 2);
+                out.bits(z, 7);
+            } else if (z < 1L << 9) {
+                out.bits(0b110, 3);
+                out.bits(z, 9);
+            } else if (z < 1L << 12) {
+                out.bits(0b1110, 4);
+                out.bits(z, 12);
+            } else if (z >>> 32 == 0) {
+                out.bits(0b11110, 5);
+                out.bits(z, 32);
+            } else {
+                out.bits(0b11111, 5);
+                out.bits(z, 64);
+            }
+        }
+    }
+
+    private static void leerEnteros(LectorBits in, long[] destino, int n) {
+        destino[0] = in.bits(64);
+        long deltaPrevio = 0;
+        for (int i = 1; i < n; i++) {
+            long z;
+            if (in.bit() == 0) {
+                z = 0;
+            } else if (in.bit() == 0) {
+                z = in.bits(7);
+            } else if (in.bit() == 0) {
+                z = in.bits(9);
+            } else if (in.bit() == 0) {
+                z = in.bits(12);
+            } else if (in.bit() == 0) {
+                z = in.bits(32);
+            } else {
+                z = in.bits(64);
+            }
+            long dod = (z >>> 1) ^ -(z & 1);
+            deltaPrevio += dod;
+            destino[i] = destino[i - 1] + deltaPrevio;
+        }
+    }
+
+    // XOR: igual → "0"; dentro de la ventana anterior → "10" + bits; si no → "11" + ceros a la izquierda (5) + largo-1 (5) + bits
+    private static void escribirFloats(EscritorBits out, float[] valores, int n) {
+        int previo = bitsDe(valores[0]);
+        out.bits(previo, 32);
+        int ceros = -1;
+        int finales = 0;
+        for (int i = 1; i < n; i++) {
+            int actual = bitsDe(valores[i]);
+            int xor = actual ^ previo;
+            previo = actual;
+            if (xor == 0) {
+                out.bits(0, 1);
+                continue;
+            }
+            int lz = Integer.numberOfLeadingZeros(xor);
+            int tz = Integer.numberOfTrailingZeros(xor);
+            if (ceros >= 0 && lz >= ceros && tz >= finales) {
+                out.bits(0b10, 2);
+                out.bits((xor & 0xFFFFFFFFL) >>> finales, 32 - ceros - finales);
+            } else {
+                int significativos = 32 - lz - tz;
+                out.bits(0b11, 2);
+                out.bits(lz, 5);
+                out.bits(significativos - 1, 5);
+                out.bits((xor & 0xFFFFFFFFL) >>> tz, significativos);
+                ceros = lz;
+                finales = tz;
+            }
+        }
+    }
+
+    private static void leerFloats(LectorBits in, float[] destino, int n) {
+        int previo = (int) in.bits(32);
+        destino[0] = Float.intBitsToFloat(previo);
+        int ceros = 0;
+        int finales = 0;
+        for (int i = 1; i < n; i++) {
+            if (in.bit() != 0) {
+                if (in.bit() != 0) {
+                    ceros = (int) in.bits(5);
+                    int significativos = (int) in.bits(5) + 1;
+                    finales = 32 - ceros - significativos;
+                }
+                int xor = (int) (in.bits(32 - ceros - finales) << finales);
+                previo ^= xor;
+            }
+            destino[i] = Float.intBitsToFloat(previo);
+        }
+    }
+
+    private static int bitsDe(float v) {
+        return Float.isNaN(v) ? NULO : Float.floatToRawIntBits(v);
+    }
+
+    private static final class EscritorBits {
+        private byte[] buf;
+        private int posBit;
+
+        EscritorBits(int capacidad) {
+            buf = new byte[capacidad];
+        }
+
+        void bits(long valor, int cantidad) {
+            for (int i = cantidad - 1; i >= 0; i--) {
+                int byteIdx = posBit >>> 3;
+                if (byteIdx == buf.length) buf = Arrays.copyOf(buf, buf.length * 2);
+                if (((valor >>> i) & 1) != 0) {
+                    buf[byteIdx] |= (byte) (0x80 >>> (posBit & 7));
+                }
+                posBit++;
+            }
+        }
+
+        void byteCompleto(int b) {
+            bits(b & 0xFF, 8);
+        }
+
+        void varint(int v) {
+            while ((v & ~0x7F) != 0) {
+                byteCompleto((v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            byteCompleto(v);
+        }
+
+        byte[] bytes() {
+            return Arrays.copyOf(buf, (posBit + 7) >>> 3);
+        }
+    }
+
+    private static final class LectorBits {
+        private final byte[] buf;
+        private int posBit;
+
+        LectorBits(byte[] buf) {
+            this.buf = buf;
+        }
+
+        int bit() {
+            int b = (buf[posBit >>> 3] >>> (7 - (posBit & 7))) & 1;
+            posBit++;
+            return b;
+        }
+
+        long bits(int cantidad) {
+            long v = 0;
+            for (int i = 0; i < cantidad; i++) {
+                v = (v << 1) | bit();
+            }
+            return v;
+        }
+
+        int byteCompleto() {
+            return (int) bits(8);
+        }
+
+        int varint() {
+            int v = 0;
+            for (int desplazamiento = 0; ; desplazamiento += 7) {
+                int b = byteCompleto();
+                v |= (b & 0x7F) << desplazamiento;
+                if ((b & 0x80) == 0) return v;
+            }
+        }
+    }
+}
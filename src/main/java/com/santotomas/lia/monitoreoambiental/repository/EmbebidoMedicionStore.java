@@ -0,0 +1,525 @@
+package com.santotomas.lia.monitoreoambiental.repository;
+
+import com.santotomas.lia.monitoreoambiental.dto.FiltroMediciones;
+import com.santotomas.lia.monitoreoambiental.dto.MedicionDTO;
+import com.santotomas.lia.monitoreoambiental.model.Medicion;
+import com.santotomas.lia.monitoreoambiental.model.CodigoCalidadAire;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Mediciones en archivos locales, sin pasar por MySQL ({@code mediciones.store.tipo=embebido}).
+ * Cada central tiene un directorio {@code central-<id>} con segmentos de solo agregado
+ * mapeados en memoria ({@link SegmentoMediciones}); al llenarse uno se crea el siguiente.
+ * <p>
+ * Las lecturas toman una vista de las filas escritas hasta ese momento y la recorren sin
+ * bloquear la escritura. Mientras las mediciones de una central lleguen en orden de fecha, el
+ * índice por bloques permite empezar y terminar el recorrido sin leer filas de más; si llegó
+ * alguna atrasada, las filas del rango se ordenan en memoria antes de entregarlas.
+ * Los promedios por periodo se calculan recorriendo el rango.
+ */
+@Repository
+@ConditionalOnProperty(name = "mediciones.store.tipo", havingValue = "embebido")
+public class EmbebidoMedicionStore implements MedicionStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(EmbebidoMedicionStore.class);
+    private static final String PREFIJO_CENTRAL = "central-";
+    private static final int MAX_FILAS_POR_SEGMENTO = 1 << 24;
+    private static final DateTimeFormatter FORMATO_HORA = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:00:00");
+    private static final DateTimeFormatter FORMATO_MES = DateTimeFormatter.ofPattern("yyyy-MM");
+
+    @Value("${mediciones.store.directorio:datos/mediciones}")
+    private String directorio;
+
+    @Value("${mediciones.store.filas-por-segmento:262144}")
+    private int filasPorSegmento;
+
+    /** Si es verdadero, cada lote se baja a disco antes de volver; si no, queda a cargo del sistema operativo. */
+    @Value("${mediciones.store.forzar-escritura:true}")
+    private boolean forzarEscritura;
+
+    private final Map<Integer, Serie> series = new ConcurrentHashMap<>();
+    private final AtomicInteger ultimoId = new AtomicInteger();
+
+    @PostConstruct
+    public void abrir() throws IOException {
+        if (filasPorSegmento < 1 || filasPorSegmento > MAX_FILAS_POR_SEGMENTO) {
+            throw new IllegalStateException("mediciones.store.filas-por-segmento debe estar entre 1 y " + MAX_FILAS_POR_SEGMENTO);
+        }
+        Path raiz = Path.of(directorio);
+        Files.createDirectories(raiz);
+        long filas = 0;
+        try (DirectoryStream<Path> dirs = Files.newDirectoryStream(raiz, PREFIJO_CENTRAL + "*")) {
+            for (Path dir : dirs) {
+                int idCentral = Integer.parseInt(dir.getFileName().toString().substring(PREFIJO_CENTRAL.length()));
+                Serie serie = new Serie(dir);
+                serie.abrir();
+                series.put(idCentral, serie);
+                ultimoId.accumulateAndGet(serie.maxId, Math::max);
+                filas += serie.filas();
+            }
+        }
+        logger.info("Almacenamiento embebido abierto en {}: {} centrales, {} mediciones", raiz.toAbsolutePath(),
+                series.size(), filas);
+    }
+
+    @PreDestroy
+    public void cerrar() {
+        for (Serie serie : series.values()) {
+            serie.cerrar();
+        }
+    }
+
+    /** Asigna ids consecutivos y agrega las filas de cada central ordenadas por fecha. */
+    @Override
+    public void agregar(List<Medicion> lote) {
+        Map<Integer, List<Medicion>> porCentral = new LinkedHashMap<>();
+        for (Medicion m : lote) {
+            if (m.getCentral() == null || m.getFecha() == null) continue;
+            m.setId(ultimoId.incrementAndGet());
+            porCentral.computeIfAbsent(m.getCentral().getIdCentral(), k -> new ArrayList<>()).add(m);
+        }
+        for (Map.Entry<Integer, List<Medicion>> e : porCentral.entrySet()) {
+            List<Medicion> filas = e.getValue();
+            filas.sort(Comparator.comparing(Medicion::getFecha).thenComparing(Medicion::getId));
+            try {
+                serie(e.getKey()).agregar(filas);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+    }
+
+    private Serie serie(int idCentral) {
+        return series.computeIfAbsent(idCentral, id -> {
+            try {
+                Path dir = Path.of(directorio, PREFIJO_CENTRAL + id);
+                Files.createDirectories(dir);
+                return new Serie(dir);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    @Override
+    public List<MedicionDTO> ultimas(int idCentral, int limite) {
+        List<MedicionDTO> ultimas = new ArrayList<>(Math.min(limite, 1024));
+        if (limite < 1) return ultimas;
+        recorrer(new FiltroMediciones(List.of(idCentral), LocalDateTime.MIN, LocalDateTime.MAX,
+                null, null, null, null, null, null, null, null), false, (id, central, fecha, tt, hh, pm25, pm10, ica) -> {
+            ultimas.add(new MedicionDTO(id, fecha, nulo(tt), nulo(hh), nulo(pm25), nulo(pm10), ica));
+            return ultimas.size() < limite;
+        });
+        return ultimas;
+    }
+
+    @Override
+    public void recorrer(FiltroMediciones filtro, boolean ascendente, MedicionCursorRepository.Visitante visitante) {
+        long inicio = filtro.inicio().toEpochSecond(ZoneOffset.UTC);
+        long fin = filtro.fin().toEpochSecond(ZoneOffset.UTC);
+        Comparator<Cursor> orden = Comparator.comparingLong(Cursor::fecha).thenComparingInt(Cursor::id);
+        PriorityQueue<Cursor> cola = new PriorityQueue<>(ascendente ? orden : orden.reversed());
+        for (Integer idCentral : new LinkedHashSet<>(filtro.centrales())) {
+            Serie serie = series.get(idCentral);
+            if (serie == null) continue;
+            Cursor cursor = serie.vista().cursor(idCentral, inicio, fin, filtro, ascendente);
+            if (cursor.disponible()) cola.add(cursor);
+        }
+        try {
+            while (!cola.isEmpty()) {
+                Cursor c = cola.poll();
+                if (!visitante.fila(c.id(), c.idCentral, LocalDateTime.ofEpochSecond(c.fecha(), 0, ZoneOffset.UTC),
+                        c.valor(0), c.valor(1), c.valor(2), c.valor(3), c.ica())) {
+                    return;
+                }
+                c.avanzar();
+                if (c.disponible()) cola.add(c);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void actualizarIndices(int idCentral, List<NuevoIndice> indices) {
+        Serie serie = series.get(idCentral);
+        if (serie == null || indices.isEmpty()) return;
+        serie.actualizarIndices(indices);
+    }
+
+    @Override
+    public List<RollupRepository.FilaAgrupada> agrupadas(List<Integer> centrales, String variable, String intervalo,
+                                                         LocalDate inicio, LocalDate fin) {
+        int indice = RollupRepository.VARIABLES.indexOf(variable);
+        if (indice < 0) {
+            throw new IllegalArgumentException("Tópico no válido: " + variable);
+        }
+        if (!List.of("hora", "dia", "semana", "mes").contains(intervalo)) {
+            throw new IllegalArgumentException("Intervalo no válido: " + intervalo);
+        }
+        boolean conFechas = inicio != null && fin != null;
+        FiltroMediciones filtro = new FiltroMediciones(centrales,
+                conFechas ? inicio.atStartOfDay() : LocalDateTime.MIN, conFechas ? fin.atTime(23, 59, 59) : LocalDateTime.MAX,
+                null, null, null, null, null, null, null, null);
+        // Por central y comienzo del periodo: suma y cantidad de valores
+        Map<Integer, TreeMap<LocalDateTime, double[]>> acumulados = new TreeMap<>();
+        float[] valores = new float[4];
+        recorrer(filtro, true, (id, idCentral, fecha, tt, hh, pm25, pm10, ica) -> {
+            valores[0] = tt;
+            valores[1] = hh;
+            valores[2] = pm25;
+            valores[3] = pm10;
+            double[] a = acumulados.computeIfAbsent(idCentral, k -> new TreeMap<>())
+                    .computeIfAbsent(inicioPeriodo(fecha, intervalo), k -> new double[2]);
+            if (!Float.isNaN(valores[indice])) {
+                a[0] += valores[indice];
+                a[1]++;
+            }
+            return true;
+        });
+        List<RollupRepository.FilaAgrupada> filas = new ArrayList<>();
+        acumulados.forEach((idCentral, periodos) -> periodos.forEach((periodo, a) ->
+                filas.add(new RollupRepository.FilaAgrupada(idCentral, formatoPeriodo(periodo, intervalo),
+                        a[1] > 0 ? a[0] / a[1] : null))));
+        return filas;
+    }
+
+    private static LocalDateTime inicioPeriodo(LocalDateTime fecha, String intervalo) {
+        return switch (intervalo) {
+            case "hora" -> fecha.truncatedTo(ChronoUnit.HOURS);
+            case "dia" -> fecha.truncatedTo(ChronoUnit.DAYS);
+            case "semana" -> fecha.truncatedTo(ChronoUnit.DAYS).with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+            default -> fecha.truncatedTo(ChronoUnit.DAYS).withDayOfMonth(1);
+        };
+    }
+
+    /** Mismo formato de periodo que {@link RollupRepository#agrupadas}. */
+    private static String formatoPeriodo(LocalDateTime inicio, String intervalo) {
+        return switch (intervalo) {
+            case "hora" -> FORMATO_HORA.format(inicio);
+            case "mes" -> FORMATO_MES.format(inicio);
+            default -> inicio.toLocalDate().toString();
+        };
+    }
+
+    private static Float nulo(float v) {
+        return Float.isNaN(v) ? null : v;
+    }
+
+    /** Segmentos de una central. Solo un hilo escribe a la vez; las lecturas usan {@link #vista()}. */
+    private final class Serie {
+        private final Path dir;
+        private final List<SegmentoMediciones> segmentos = new ArrayList<>();
+        private long ultimaFecha = Long.MIN_VALUE;
+        private int ultimoIdSerie = Integer.MIN_VALUE;
+        private boolean ordenada = true;
+        private int maxId;
+
+        Serie(Path dir) {
+            this.dir = dir;
+        }
+
+        synchronized void abrir() throws IOException {
+            List<Path> archivos = new ArrayList<>();
+            try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir, "*.seg")) {
+                ds.forEach(archivos::add);
+            }
+            archivos.sort(Comparator.comparing(p -> p.getFileName().toString()));
+            for (Path archivo : archivos) {
+                SegmentoMediciones s = SegmentoMediciones.abrir(archivo);
+                segmentos.add(s);
+                for (int i = 0; i < s.filas(); i++) {
+                    registrarOrden(s.fecha(i), s.id(i));
+                }
+            }
+        }
+
+        synchronized long filas() {
+            long total = 0;
+            for (SegmentoMediciones s : segmentos) total += s.filas();
+            return total;
+        }
+
+        synchronized void agregar(List<Medicion> filas) throws IOException {
+            int primerSegmento = Math.max(0, segmentos.size() - 1);
+            for (Medicion m : filas) {
+                SegmentoMediciones s = activo();
+                long fecha = m.getFecha().toEpochSecond(ZoneOffset.UTC);
+                s.agregar(m.getId(), fecha, valor(m.getTemperatura()), valor(m.getHumedad()),
+                        valor(m.getPm25()), m.getPm10() != null ? Math.round(m.getPm10() * 100.0) / 100f : Float.NaN,
+                        CodigoCalidadAire.codificar(m.getIca(), m.getIcaContaminante()));
+                registrarOrden(fecha, m.getId());
+            }
+            if (forzarEscritura) {
+                for (int i = primerSegmento; i < segmentos.size(); i++) {
+                    segmentos.get(i).forzar();
+                }
+            }
+        }
+
+        /**
+         * Ubica cada fila por su fecha con el índice por bloques (los ids no siguen el orden del
+         * segmento si un lote llegó desordenado) y reescribe su código.
+         */
+        synchronized void actualizarIndices(List<NuevoIndice> indices) {
+            Set<SegmentoMediciones> modificados = new HashSet<>();
+            for (NuevoIndice n : indices) {
+                long fecha = n.fecha().toEpochSecond(ZoneOffset.UTC);
+                buscar:
+                for (SegmentoMediciones s : segmentos) {
+                    for (int b = 0; b * SegmentoMediciones.PASO_INDICE < s.filas(); b++) {
+                        if (s.minBloque(b) > fecha || s.maxBloque(b) < fecha) continue;
+                        int hasta = Math.min(s.filas(), (b + 1) * SegmentoMediciones.PASO_INDICE);
+                        for (int i = b * SegmentoMediciones.PASO_INDICE; i < hasta; i++) {
+                            if (s.id(i) == n.id() && s.fecha(i) == fecha) {
+                                s.fijarIca(i, n.ica());
+                                modificados.add(s);
+                                break buscar;
+                            }
+                        }
+                    }
+                }
+            }
+            if (forzarEscritura) {
+                for (SegmentoMediciones s : modificados) s.forzar();
+            }
+        }
+
+        private SegmentoMediciones activo() throws IOException {
+            SegmentoMediciones ultimo = segmentos.isEmpty() ? null : segmentos.get(segmentos.size() - 1);
+            if (ultimo == null || ultimo.lleno()) {
+                ultimo = SegmentoMediciones.crear(dir.resolve(String.format("%010d.seg", segmentos.size())), filasPorSegmento);
+                segmentos.add(ultimo);
+            }
+            return ultimo;
+        }
+
+        private void registrarOrden(long fecha, int id) {
+            if (fecha < ultimaFecha || (fecha == ultimaFecha && id < ultimoIdSerie)) {
+                ordenada = false;
+            } else {
+                ultimaFecha = fecha;
+                ultimoIdSerie = id;
+            }
+            maxId = Math.max(maxId, id);
+        }
+
+        synchronized Vista vista() {
+            SegmentoMediciones[] s = segmentos.toArray(new SegmentoMediciones[0]);
+            int[] filas = new int[s.length];
+            for (int i = 0; i < s.length; i++) filas[i] = s[i].filas();
+            return new Vista(s, filas, ordenada);
+        }
+
+        synchronized void cerrar() {
+            for (SegmentoMediciones s : segmentos) {
+                try {
+                    s.close();
+                } catch (IOException e) {
+                    logger.warn("No se pudo cerrar {}: {}", s.archivo(), e.getMessage());
+                }
+            }
+        }
+
+        private static float valor(Float v) {
+            return v != null ? v : Float.NaN;
+        }
+    }
+
+    /** Filas de una central escritas hasta el momento en que se tomó la vista. */
+    private record Vista(SegmentoMediciones[] segmentos, int[] filas, boolean ordenada) {
+
+        Cursor cursor(int idCentral, long inicio, long fin, FiltroMediciones filtro, boolean ascendente) {
+            return ordenada ? new CursorOrdenado(idCentral, this, inicio, fin, filtro, ascendente)
+                    : CursorOrdenadoEnMemoria.crear(idCentral, this, inicio, fin, filtro, ascendente);
+        }
+    }
+
+    /** Posición en las filas de una central que cumplen el filtro. */
+    private abstract static class Cursor {
+        final int idCentral;
+        SegmentoMediciones segmento;
+        int fila;
+
+        Cursor(int idCentral) {
+            this.idCentral = idCentral;
+        }
+
+        abstract boolean disponible();
+
+        abstract void avanzar();
+
+        long fecha() {
+            return segmento.fecha(fila);
+        }
+
+        int id() {
+            return segmento.id(fila);
+        }
+
+        float valor(int v) {
+            return segmento.valor(v, fila);
+        }
+
+        int ica() {
+            return segmento.ica(fila);
+        }
+
+        static boolean cumple(SegmentoMediciones s, int i, FiltroMediciones filtro) {
+            return filtro.cumple(s.valor(0, i), s.valor(1, i), s.valor(2, i), s.valor(3, i));
+        }
+    }
+
+    /** Recorrido directo cuando las filas de la central están en orden de fecha e id. */
+    private static final class CursorOrdenado extends Cursor {
+        private final Vista vista;
+        private final long inicio;
+        private final long fin;
+        private final FiltroMediciones filtro;
+        private final boolean ascendente;
+        private int indiceSegmento;
+        private boolean terminado;
+
+        CursorOrdenado(int idCentral, Vista vista, long inicio, long fin, FiltroMediciones filtro, boolean ascendente) {
+            super(idCentral);
+            this.vista = vista;
+            this.inicio = inicio;
+            this.fin = fin;
+            this.filtro = filtro;
+            this.ascendente = ascendente;
+            this.indiceSegmento = ascendente ? -1 : vista.segmentos().length;
+            this.fila = -1;
+        }
+
+        @Override
+        boolean disponible() {
+            while (!terminado) {
+                if (segmento == null && !siguienteSegmento()) {
+                    terminado = true;
+                    break;
+                }
+                int n = vista.filas()[indiceSegmento];
+                if (ascendente ? fila >= n : fila < 0) {
+                    segmento = null;
+                    continue;
+                }
+                long f = segmento.fecha(fila);
+                if (ascendente ? f > fin : f < inicio) {
+                    terminado = true;
+                    break;
+                }
+                if (f >= inicio && f <= fin && cumple(segmento, fila, filtro)) {
+                    return true;
+                }
+                fila += ascendente ? 1 : -1;
+            }
+            return false;
+        }
+
+        @Override
+        void avanzar() {
+            fila += ascendente ? 1 : -1;
+        }
+
+        /** Pasa al siguiente segmento con filas y se ubica con el índice en el primer bloque útil. */
+        private boolean siguienteSegmento() {
+            while (true) {
+                indiceSegmento += ascendente ? 1 : -1;
+                if (indiceSegmento < 0 || indiceSegmento >= vista.segmentos().length) return false;
+                SegmentoMediciones s = vista.segmentos()[indiceSegmento];
+                int n = vista.filas()[indiceSegmento];
+                if (n == 0) continue;
+                segmento = s;
+                if (ascendente) {
+                    fila = s.primerBloqueDesde(inicio, n) * SegmentoMediciones.PASO_INDICE;
+                } else {
+                    int b = fin == Long.MAX_VALUE ? Integer.MAX_VALUE : s.primerBloqueDesde(fin + 1, n);
+                    fila = (int) Math.min(n, (long) b * SegmentoMediciones.PASO_INDICE + SegmentoMediciones.PASO_INDICE) - 1;
+                }
+                return true;
+            }
+        }
+    }
+
+    /** Filas del rango reunidas y ordenadas en memoria; se usa si la central recibió filas atrasadas. */
+    private static final class CursorOrdenadoEnMemoria extends Cursor {
+        private record Posicion(long fecha, int id, int segmento, int fila) {}
+
+        private final Vista vista;
+        private final List<Posicion> posiciones;
+        private int actual;
+
+        private CursorOrdenadoEnMemoria(int idCentral, Vista vista, List<Posicion> posiciones) {
+            super(idCentral);
+            this.vista = vista;
+            this.posiciones = posiciones;
+        }
+
+        static CursorOrdenadoEnMemoria crear(int idCentral, Vista vista, long inicio, long fin,
+                                             FiltroMediciones filtro, boolean ascendente) {
+            List<Posicion> posiciones = new ArrayList<>();
+            for (int s = 0; s < vista.segmentos().length; s++) {
+                SegmentoMediciones seg = vista.segmentos()[s];
+                int n = vista.filas()[s];
+                for (int b = 0; b * SegmentoMediciones.PASO_INDICE < n; b++) {
+                    if (seg.minBloque(b) > fin || seg.maxBloque(b) < inicio) continue;
+                    int hasta = Math.min(n, (b + 1) * SegmentoMediciones.PASO_INDICE);
+                    for (int i = b * SegmentoMediciones.PASO_INDICE; i < hasta; i++) {
+                        long f = seg.fecha(i);
+                        if (f >= inicio && f <= fin && cumple(seg, i, filtro)) {
+                            posiciones.add(new Posicion(f, seg.id(i), s, i));
+                        }
+                    }
+                }
+            }
+            Comparator<Posicion> orden = Comparator.comparingLong(Posicion::fecha).thenComparingInt(Posicion::id);
+            posiciones.sort(ascendente ? orden : orden.reversed());
+            return new CursorOrdenadoEnMemoria(idCentral, vista, posiciones);
+        }
+
+        @Override
+        boolean disponible() {
+            if (actual >= posiciones.size()) return false;
+            Posicion p = posiciones.get(actual);
+            segmento = vista.segmentos()[p.segmento()];
+            fila = p.fila();
+            return true;
+        }
+
+        @Override
+        void avanzar() {
+            actual++;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.santotomas.lia.monitoreoambiental.repository;
+
+import com.santotomas.lia.monitoreoambiental.dto.CursorMedicion;
+import com.santotomas.lia.monitoreoambiental.dto.FiltroMediciones;
+import com.santotomas.lia.monitoreoambiental.dto.MedicionDTO;
+import com.santotomas.lia.monitoreoambiental.model.Medicion;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Mediciones en MySQL: tabla medicion, agregados por hora y día y, si está activo, el
+ * archivo comprimido de días antiguos.
+ */
+@Repository
+@ConditionalOnProperty(name = "mediciones.store.tipo", havingValue = "jpa", matchIfMissing = true)
+public class JpaMedicionStore implements MedicionStore {
+
+    private final MedicionJdbcRepository medicionJdbcRepository;
+    private final MedicionCursorRepository medicionCursorRepository;
+    private final MedicionLecturaRepository lecturaRepository;
+    private final MedicionArchivoRepository archivoRepository;
+    private final RollupRepository rollupRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    public JpaMedicionStore(MedicionJdbcRepository medicionJdbcRepository, MedicionCursorRepository medicionCursorRepository,
+                            MedicionLecturaRepository lecturaRepository, MedicionArchivoRepository archivoRepository, RollupRepository rollupRepository,
+                            JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager) {
+        this.medicionJdbcRepository = medicionJdbcRepository;
+        this.medicionCursorRepository = medicionCursorRepository;
+        this.lecturaRepository = lecturaRepository;
+        this.archivoRepository = archivoRepository;
+        this.rollupRepository = rollupRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /** Inserta el lote y actualiza los agregados por hora y día en la misma transacción. */
+    @Override
+    public void agregar(List<Medicion> lote) {
+        transactionTemplate.executeWithoutResult(status -> {
+            medicionJdbcRepository.insertarLote(lote);
+            rollupRepository.acumular(lote);
+        });
+    }
+
+    @Override
+    public List<MedicionDTO> ultimas(int idCentral, int limite) {
+        return jdbcTemplate.query(
+                "SELECT id, fecha, temperatura, humedad, pm25, pm10, ica, ica_contaminante FROM medicion"
+                        + " WHERE id_central = ? AND fecha IS NOT NULL ORDER BY fecha DESC, id DESC LIMIT ?",
+                (rs, i) -> new MedicionDTO(rs.getInt(1), rs.getObject(2, LocalDateTime.class),
+                        rs.getObject(3, Float.class), rs.getObject(4, Float.class),
+                        rs.getObject(5, Float.class), rs.getObject(6, Float.class),
+                        rs.getObject(7, Integer.class), rs.getObject(8, Integer.class)),
+                idCentral, limite);
+    }
+
+    @Override
+    public void recorrer(FiltroMediciones filtro, boolean ascendente, MedicionCursorRepository.Visitante visitante) {
+        medicionCursorRepository.recorrer(filtro, ascendente, visitante);
+    }
+
+    /** Solo la tabla medicion: los bloques archivados conservan el índice con que se archivaron. */
+    @Override
+    public void actualizarIndices(int idCentral, List<NuevoIndice> indices) {
+        if (!indices.isEmpty()) medicionJdbcRepository.actualizarIndices(indices);
+    }
+
+    @Override
+    public List<RollupRepository.FilaAgrupada> agrupadas(List<Integer> centrales, String variable, String intervalo,
+                                                         LocalDate inicio, LocalDate fin) {
+        return rollupRepository.agrupadas(centrales, variable, intervalo, inicio, fin);
+    }
+
+    @Override
+    public boolean mantieneAgregados() {
+        return true;
+    }
+
+    @Override
+    public void recorrerVariable(int idCentral, String variable, LocalDateTime inicio, LocalDateTime fin,
+                                 MedicionCursorRepository.VisitanteValor visitante) {
+        medicionCursorRepository.recorrerVariable(idCentral, variable, inicio, fin, visitante);
+    }
+
+    /** Con días archivados en el rango se recorren ambas tablas; si no, una consulta con límite. */
+    @Override
+    public List<MedicionDTO> pagina(FiltroMediciones filtro, CursorMedicion desde, long saltar, int limite) {
+        if (archivoRepository.hayArchivadas(filtro)) {
+            return MedicionStore.super.pagina(filtro, desde, saltar, limite);
+        }
+        return lecturaRepository.pagina(filtro, desde, saltar, limite);
+    }
+
+    @Override
+    public long contar(FiltroMediciones filtro) {
+        return lecturaRepository.contar(filtro) + archivoRepository.contar(filtro);
+    }
+}
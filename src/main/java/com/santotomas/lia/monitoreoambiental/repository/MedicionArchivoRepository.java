@@ -0,0 +1,322 @@
+package com.santotomas.lia.monitoreoambiental.repository;
+
+import com.santotomas.lia.monitoreoambiental.dto.FiltroMediciones;
+import com.santotomas.lia.monitoreoambiental.model.CodigoCalidadAire;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneOffset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Tabla medicion_archivo: mediciones antiguas comprimidas en un bloque por central y día
+ * (ver {@link BloqueMediciones}). Además de guardar y leer bloques, ofrece un {@link Lector}
+ * que recorre las filas archivadas en orden de fecha para combinarlas con la tabla medicion.
+ */
+@Repository
+public class MedicionArchivoRepository {
+
+    /** Días que se leen por consulta al recorrer el archivo. */
+    private static final int DIAS_POR_CONSULTA = 7;
+    private static final int BORRADOS_POR_SENTENCIA = 1000;
+    private static final LocalTime FIN_DEL_DIA = LocalTime.of(23, 59, 59);
+
+    public record Bloque(int idCentral, LocalDate dia, BloqueMediciones.Columnas filas) {}
+
+    public record DiaPendiente(int idCentral, LocalDate dia) {}
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedJdbcTemplate;
+
+    public MedicionArchivoRepository(JdbcTemplate jdbcTemplate, NamedParameterJdbcTemplate namedJdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.namedJdbcTemplate = namedJdbcTemplate;
+    }
+
+    public void guardar(int idCentral, LocalDate dia, BloqueMediciones.Columnas filas) {
+        jdbcTemplate.update("INSERT INTO medicion_archivo (id_central, dia, n, bloque) VALUES (?, ?, ?, ?)"
+                        + " AS nueva ON DUPLICATE KEY UPDATE n = nueva.n, bloque = nueva.bloque",
+                idCentral, Date.valueOf(dia), filas.tamano(), BloqueMediciones.codificar(filas));
+    }
+
+    /** Bloque de un día bloqueado para actualizarlo, o {@code null} si no existe. */
+    public BloqueMediciones.Columnas leerParaActualizar(int idCentral, LocalDate dia) {
+        List<byte[]> bloques = jdbcTemplate.query(
+                "SELECT bloque FROM medicion_archivo WHERE id_central = ? AND dia = ? FOR UPDATE",
+                (rs, i) -> rs.getBytes(1), idCentral, Date.valueOf(dia));
+        return bloques.isEmpty() ? null : BloqueMediciones.decodificar(bloques.get(0));
+    }
+
+    /** Días con filas en medicion anteriores a {@code limite}, del más antiguo al más reciente. */
+    public List<DiaPendiente> diasPendientes(LocalDate limite, int maximo) {
+        return jdbcTemplate.query("SELECT id_central, DATE(fecha) AS dia FROM medicion"
+                        + " WHERE fecha < ? AND id_central IS NOT NULL GROUP BY id_central, dia ORDER BY dia LIMIT ?",
+                (rs, i) -> new DiaPendiente(rs.getInt(1), rs.getDate(2).toLocalDate()),
+                Timestamp.valueOf(limite.atStartOfDay()), maximo);
+    }
+
+    /** Filas de un día de la tabla medicion, ordenadas por fecha e id. */
+    public BloqueMediciones.Columnas filasDelDia(int idCentral, LocalDate dia) {
+        BloqueMediciones.Columnas filas = new BloqueMediciones.Columnas(1440);
+        jdbcTemplate.query("SELECT id, fecha, temperatura, humedad, pm25, pm10, ica, ica_contaminante FROM medicion"
+                        + " WHERE id_central = ? AND fecha >= ? AND fecha < ? ORDER BY fecha, id",
+                (RowCallbackHandler) rs -> filas.agregar(rs.getInt(1),
+                        rs.getObject(2, LocalDateTime.class).toEpochSecond(ZoneOffset.UTC),
+                        leer(rs.getFloat(3), rs.wasNull()), leer(rs.getFloat(4), rs.wasNull()),
+                        leer(rs.getFloat(5), rs.wasNull()), leer(rs.getFloat(6), rs.wasNull()),
+                        CodigoCalidadAire.codificar(rs.getInt(7), rs.getInt(8))),
+                idCentral, Timestamp.valueOf(dia.atStartOfDay()), Timestamp.valueOf(dia.plusDays(1).atStartOfDay()));
+        return filas;
+    }
+
+    private static float leer(float v, boolean nulo) {
+        return nulo ? Float.NaN : v;
+    }
+
+    public void borrarDeMedicion(int[] ids) {
+        for (int desde = 0; desde < ids.length; desde += BORRADOS_POR_SENTENCIA) {
+            int hasta = Math.min(ids.length, desde + BORRADOS_POR_SENTENCIA);
+            StringBuilder sql = new StringBuilder("DELETE FROM medicion WHERE id IN (");
+            Object[] args = new Object[hasta - desde];
+            for (int i = desde; i < hasta; i++) {
+                sql.append(i == desde ? "?" : ", ?");
+                args[i - desde] = ids[i];
+            }
+            jdbcTemplate.update(sql.append(")").toString(), args);
+        }
+    }
+
+    /**
+     * Todos los bloques de una central (o de todas si {@code idCentral} es null), central por
+     * central y en orden de día. El consumidor puede usar la misma conexión.
+     */
+    public void recorrerBloques(Integer idCentral, Consumer<Bloque> consumidor) {
+        List<Integer> centrales = idCentral != null ? List.of(idCentral)
+                : jdbcTemplate.queryForList("SELECT DISTINCT id_central FROM medicion_archivo", Integer.class);
+        for (Integer central : centrales) {
+            jdbcTemplate.query("SELECT dia, bloque FROM medicion_archivo WHERE id_central = ? ORDER BY dia",
+                    (RowCallbackHandler) rs -> consumidor.accept(new Bloque(central, rs.getDate(1).toLocalDate(),
+                            BloqueMediciones.decodificar(rs.getBytes(2)))),
+                    central);
+        }
+    }
+
+    /** Indica si algún día del rango del filtro está archivado. */
+    public boolean hayArchivadas(FiltroMediciones filtro) {
+        return extremos(filtro) != null;
+    }
+
+    /** Filas archivadas que cumplen el filtro. */
+    public long contar(FiltroMediciones filtro) {
+        LocalDate[] extremos = extremos(filtro);
+        if (extremos == null) return 0;
+        boolean diasCompletos = filtro.inicio().toLocalTime().equals(LocalTime.MIDNIGHT)
+                && filtro.fin().toLocalTime().equals(FIN_DEL_DIA);
+        if (diasCompletos && filtro.sinFiltrosDeValor()) {
+            Long total = namedJdbcTemplate.queryForObject("SELECT COALESCE(SUM(n), 0) FROM medicion_archivo"
+                    + " WHERE id_central IN (:centrales) AND dia BETWEEN :desde AND :hasta", parametros(filtro), Long.class);
+            return total != null ? total : 0;
+        }
+        long total = 0;
+        for (Lector lector = new Lector(filtro, true, extremos[0], extremos[1]); lector.disponible(); lector.avanzar()) {
+            total++;
+        }
+        return total;
+    }
+
+    /** Lector de las filas archivadas del filtro, o {@code null} si no hay días archivados en el rango. */
+    public Lector lector(FiltroMediciones filtro, boolean ascendente) {
+        LocalDate[] extremos = extremos(filtro);
+        return extremos == null ? null : new Lector(filtro, ascendente, extremos[0], extremos[1]);
+    }
+
+    private LocalDate[] extremos(FiltroMediciones filtro) {
+        return namedJdbcTemplate.query("SELECT MIN(dia), MAX(dia) FROM medicion_archivo"
+                + " WHERE id_central IN (:centrales) AND dia BETWEEN :desde AND :hasta", parametros(filtro), rs -> {
+            rs.next();
+            Date min = rs.getDate(1);
+            return min == null ? null : new LocalDate[]{min.toLocalDate(), rs.getDate(2).toLocalDate()};
+        });
+    }
+
+    private static MapSqlParameterSource parametros(FiltroMediciones filtro) {
+        return new MapSqlParameterSource("centrales", filtro.centrales())
+                .addValue("desde", Date.valueOf(filtro.inicio().toLocalDate()))
+                .addValue("hasta", Date.valueOf(filtro.fin().toLocalDate()));
+    }
+
+    /**
+     * Recorre las filas archivadas que cumplen un filtro, ordenadas por fecha e id (ascendente
+     * o descendente). Los bloques se leen de a {@value #DIAS_POR_CONSULTA} días y se
+     * descomprimen de a un día, así que la memoria no depende del largo del rango.
+     * Cada consulta se ejecuta y se cierra antes de devolver filas, de modo que el lector
+     * puede usarse mientras hay otro resultado abierto.
+     */
+    public final class Lector {
+        private final FiltroMediciones filtro;
+        private final boolean ascendente;
+        private final long inicio;
+        private final long fin;
+        private final LocalDate primerDia;
+        private final LocalDate ultimoDia;
+        private LocalDate siguienteVentana;
+        private final Deque<Dia> pendientes = new ArrayDeque<>();
+        private Dia dia;
+        private int k;
+
+        private Lector(FiltroMediciones filtro, boolean ascendente, LocalDate primerDia, LocalDate ultimoDia) {
+            this.filtro = filtro;
+            this.ascendente = ascendente;
+            this.inicio = filtro.inicio().toEpochSecond(ZoneOffset.UTC);
+            this.fin = filtro.fin().toEpochSecond(ZoneOffset.UTC);
+            this.primerDia = primerDia;
+            this.ultimoDia = ultimoDia;
+            this.siguienteVentana = ascendente ? primerDia : ultimoDia;
+        }
+
+        /** Posiciona el lector en la próxima fila que cumple el filtro; {@code false} si no quedan. */
+        public boolean disponible() {
+            while (true) {
+                if (dia != null && k < dia.filas.tamano()) {
+                    int i = indice();
+                    long f = dia.filas.fecha(i);
+                    if (f >= inicio && f <= fin && filtro.cumple(dia.filas.valor(0, i), dia.filas.valor(1, i),
+                            dia.filas.valor(2, i), dia.filas.valor(3, i))) {
+                        return true;
+                    }
+                    k++;
+                    continue;
+                }
+                if (pendientes.isEmpty() && !cargarVentana()) {
+                    return false;
+                }
+                dia = pendientes.poll();
+                k = 0;
+            }
+        }
+
+        public void avanzar() {
+            k++;
+        }
+
+        private int indice() {
+            return ascendente ? k : dia.filas.tamano() - 1 - k;
+        }
+
+        public int id() {
+            return dia.filas.id(indice());
+        }
+
+        public int idCentral() {
+            return dia.centrales[indice()];
+        }
+
+        /** Segundos desde la época, hora local. */
+        public long fecha() {
+            return dia.filas.fecha(indice());
+        }
+
+        public float valor(int variable) {
+            return dia.filas.valor(variable, indice());
+        }
+
+        /** Código del índice de calidad del aire; {@link CodigoCalidadAire#SIN_INDICE} en bloques antiguos. */
+        public int ica() {
+            return dia.filas.ica(indice());
+        }
+
+        private boolean cargarVentana() {
+            while (ascendente ? !siguienteVentana.isAfter(ultimoDia) : !siguienteVentana.isBefore(primerDia)) {
+                LocalDate desde, hasta;
+                if (ascendente) {
+                    desde = siguienteVentana;
+                    hasta = min(siguienteVentana.plusDays(DIAS_POR_CONSULTA - 1), ultimoDia);
+                    siguienteVentana = hasta.plusDays(1);
+                } else {
+                    hasta = siguienteVentana;
+                    desde = max(siguienteVentana.minusDays(DIAS_POR_CONSULTA - 1), primerDia);
+                    siguienteVentana = desde.minusDays(1);
+                }
+                List<Bloque> bloques = new ArrayList<>();
+                MapSqlParameterSource params = new MapSqlParameterSource("centrales", filtro.centrales())
+                        .addValue("desde", Date.valueOf(desde))
+                        .addValue("hasta", Date.valueOf(hasta));
+                namedJdbcTemplate.query("SELECT id_central, dia, bloque FROM medicion_archivo"
+                        + " WHERE id_central IN (:centrales) AND dia BETWEEN :desde AND :hasta ORDER BY dia "
+                        + (ascendente ? "ASC" : "DESC"), params, (RowCallbackHandler) rs -> bloques.add(new Bloque(
+                        rs.getInt(1), rs.getDate(2).toLocalDate(), BloqueMediciones.decodificar(rs.getBytes(3)))));
+                for (int i = 0; i < bloques.size(); ) {
+                    int j = i;
+                    while (j < bloques.size() && bloques.get(j).dia().equals(bloques.get(i).dia())) j++;
+                    pendientes.add(Dia.combinar(bloques.subList(i, j)));
+                    i = j;
+                }
+                if (!pendientes.isEmpty()) return true;
+            }
+            return false;
+        }
+    }
+
+    /** Filas de un día de todas las centrales pedidas, ordenadas por fecha e id. */
+    private static final class Dia {
+        final BloqueMediciones.Columnas filas;
+        final int[] centrales;
+
+        private Dia(BloqueMediciones.Columnas filas, int[] centrales) {
+            this.filas = filas;
+            this.centrales = centrales;
+        }
+
+        static Dia combinar(List<Bloque> bloques) {
+            if (bloques.size() == 1) {
+                Bloque b = bloques.get(0);
+                int[] centrales = new int[b.filas().tamano()];
+                Arrays.fill(centrales, b.idCentral());
+                return new Dia(b.filas(), centrales);
+            }
+            // Cada bloque ya viene ordenado; se ordena la unión por fecha e id
+            List<int[]> refs = new ArrayList<>();
+            int total = 0;
+            for (int b = 0; b < bloques.size(); b++) {
+                for (int i = 0; i < bloques.get(b).filas().tamano(); i++) {
+                    refs.add(new int[]{b, i});
+                }
+                total += bloques.get(b).filas().tamano();
+            }
+            refs.sort(Comparator.<int[]>comparingLong(r -> bloques.get(r[0]).filas().fecha(r[1]))
+                    .thenComparingInt(r -> bloques.get(r[0]).filas().id(r[1])));
+            BloqueMediciones.Columnas filas = new BloqueMediciones.Columnas(total);
+            int[] centrales = new int[total];
+            for (int n = 0; n < total; n++) {
+                int[] r = refs.get(n);
+                BloqueMediciones.Columnas origen = bloques.get(r[0]).filas();
+                filas.agregar(origen.id(r[1]), origen.fecha(r[1]), origen.valor(0, r[1]), origen.valor(1, r[1]),
+                        origen.valor(2, r[1]), origen.valor(3, r[1]), origen.ica(r[1]));
+                centrales[n] = bloques.get(r[0]).idCentral();
+            }
+            return new Dia(filas, centrales);
+        }
+    }
+
+    private static LocalDate min(LocalDate a, LocalDate b) {
+        return a.isBefore(b) ? a : b;
+    }
+
+    private static LocalDate max(LocalDate a, LocalDate b) {
+        return a.isAfter(b) ? a : b;
+    }
+}
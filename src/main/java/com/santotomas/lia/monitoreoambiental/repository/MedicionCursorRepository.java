@@ -0,0 +1,208 @@
+package com.santotomas.lia.monitoreoambiental.repository;
+
+import com.santotomas.lia.monitoreoambiental.dto.FiltroMediciones;
+import com.santotomas.lia.monitoreoambiental.model.CodigoCalidadAire;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Recorrido secuencial de la tabla medicion con un cursor JDBC de solo avance.
+ * Las filas se entregan una a una a un {@link Visitante} sin crear entidades JPA,
+ * por lo que la memoria usada no depende de cuántas filas abarque el filtro.
+ * Si el rango incluye días archivados, sus filas se intercalan en orden con las de la tabla.
+ */
+@Repository
+public class MedicionCursorRepository {
+
+    /**
+     * Con Connector/J un fetch size de {@code Integer.MIN_VALUE} hace que el driver lea
+     * las filas de a una desde el socket en lugar de cargar el resultado completo.
+     */
+    private static final int FETCH_SIZE_STREAMING = Integer.MIN_VALUE;
+
+    /**
+     * Recibe cada fila; los valores nulos llegan como {@code NaN} y el índice de calidad del aire
+     * como código de {@link CodigoCalidadAire}. Devuelve {@code false} para terminar el recorrido.
+     */
+    @FunctionalInterface
+    public interface Visitante {
+        boolean fila(int id, int idCentral, LocalDateTime fecha,
+                  float temperatura, float humedad, float pm25, float pm10, int ica) throws IOException;
+    }
+
+    /** Recibe fecha y valor de una sola variable; solo llegan filas con valor. */
+    @FunctionalInterface
+    public interface VisitanteValor {
+        void valor(LocalDateTime fecha, float valor);
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final MedicionArchivoRepository archivoRepository;
+
+    public MedicionCursorRepository(JdbcTemplate jdbcTemplate, MedicionArchivoRepository archivoRepository) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.archivoRepository = archivoRepository;
+    }
+
+    /**
+     * Recorre las mediciones que cumplen el filtro ordenadas por fecha e id.
+     *
+     * @throws UncheckedIOException si el visitante falla al escribir (por ejemplo, el cliente cerró la conexión)
+     */
+    public void recorrer(FiltroMediciones filtro, boolean ascendente, Visitante visitante) {
+        MedicionArchivoRepository.Lector archivo = archivoRepository.lector(filtro, ascendente);
+        List<Object> args = new ArrayList<>();
+        String orden = ascendente ? "ASC" : "DESC";
+        String sql = "SELECT id, id_central, fecha, temperatura, humedad, pm25, pm10, ica, ica_contaminante FROM medicion"
+                + condiciones(filtro, args) + " ORDER BY fecha " + orden + ", id " + orden;
+        jdbcTemplate.execute((ConnectionCallback<Void>) con -> {
+            try (PreparedStatement ps = con.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                ps.setFetchSize(FETCH_SIZE_STREAMING);
+                for (int i = 0; i < args.size(); i++) {
+                    ps.setObject(i + 1, args.get(i));
+                }
+                ResultSet rs = ps.executeQuery();
+                boolean completo = false;
+                try {
+                    boolean seguir = true;
+                    while (seguir && rs.next()) {
+                        int id = rs.getInt(1);
+                        LocalDateTime fecha = rs.getObject(3, LocalDateTime.class);
+                        if (archivo != null) {
+                            seguir = archivadasAntes(archivo, ascendente, fecha.toEpochSecond(ZoneOffset.UTC), id, visitante);
+                        }
+                        seguir = seguir && visitante.fila(id, rs.getInt(2), fecha,
+                                leerFloat(rs, 4), leerFloat(rs, 5), leerFloat(rs, 6), leerFloat(rs, 7),
+                                CodigoCalidadAire.codificar(rs.getInt(8), rs.getInt(9)));
+                    }
+                    if (seguir && archivo != null) {
+                        archivadasAntes(archivo, ascendente, ascendente ? Long.MAX_VALUE : Long.MIN_VALUE, 0, visitante);
+                    }
+                    completo = seguir;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                } finally {
+                    if (completo) {
+                        rs.close();
+                    } else {
+                        cerrarCancelado(ps, rs);
+                    }
+                }
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Cerrar un resultado en streaming lee todas las filas pendientes, así que antes se cancela
+     * la consulta; el error de consulta interrumpida que devuelve el servidor se descarta.
+     */
+    private static void cerrarCancelado(PreparedStatement ps, ResultSet rs) {
+        try {
+            ps.cancel();
+            rs.close();
+        } catch (SQLException e) {
+            // La consulta ya no interesa
+        }
+    }
+
+    /** Entrega las filas archivadas que van antes de (fecha, id) en el orden pedido. */
+    private static boolean archivadasAntes(MedicionArchivoRepository.Lector archivo, boolean ascendente,
+                                           long fecha, int id, Visitante visitante) throws IOException {
+        while (archivo.disponible()) {
+            long f = archivo.fecha();
+            boolean antes = ascendente
+                    ? f < fecha || (f == fecha && archivo.id() < id)
+                    : f > fecha || (f == fecha && archivo.id() > id);
+            if (!antes) return true;
+            if (!visitante.fila(archivo.id(), archivo.idCentral(), LocalDateTime.ofEpochSecond(f, 0, ZoneOffset.UTC),
+                    archivo.valor(0), archivo.valor(1), archivo.valor(2), archivo.valor(3), archivo.ica())) {
+                return false;
+            }
+            archivo.avanzar();
+        }
+        return true;
+    }
+
+    /**
+     * Recorre fecha y {@code variable} de una central en orden de fecha, leyendo solo esas dos columnas
+     * (o las filas completas si el rango llega a días archivados).
+     */
+    public void recorrerVariable(int idCentral, String variable, LocalDateTime inicio, LocalDateTime fin,
+                                 VisitanteValor visitante) {
+        if (!RollupRepository.VARIABLES.contains(variable)) {
+            throw new IllegalArgumentException("Variable no válida: " + variable);
+        }
+        int indice = RollupRepository.VARIABLES.indexOf(variable);
+        FiltroMediciones filtro = new FiltroMediciones(List.of(idCentral), inicio, fin,
+                null, null, null, null, null, null, null, null);
+        if (archivoRepository.hayArchivadas(filtro)) {
+            float[] valores = new float[4];
+            recorrer(filtro, true, (id, central, fecha, tt, hh, pm25, pm10, ica) -> {
+                valores[0] = tt;
+                valores[1] = hh;
+                valores[2] = pm25;
+                valores[3] = pm10;
+                if (!Float.isNaN(valores[indice])) visitante.valor(fecha, valores[indice]);
+                return true;
+            });
+            return;
+        }
+        String sql = "SELECT fecha, " + variable + " FROM medicion WHERE id_central = ? AND fecha BETWEEN ? AND ?"
+                + " AND " + variable + " IS NOT NULL ORDER BY fecha, id";
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ps.setFetchSize(FETCH_SIZE_STREAMING);
+            ps.setInt(1, idCentral);
+            ps.setTimestamp(2, Timestamp.valueOf(inicio));
+            ps.setTimestamp(3, Timestamp.valueOf(fin));
+            return ps;
+        }, (RowCallbackHandler) rs -> visitante.valor(rs.getObject(1, LocalDateTime.class), rs.getFloat(2)));
+    }
+
+    private static float leerFloat(ResultSet rs, int col) throws SQLException {
+        float v = rs.getFloat(col);
+        return rs.wasNull() ? Float.NaN : v;
+    }
+
+    /** Versión SQL de los filtros de /rango; agrega los valores a {@code args} en orden. */
+    static String condiciones(FiltroMediciones f, List<Object> args) {
+        StringBuilder where = new StringBuilder(" WHERE id_central IN (");
+        for (int i = 0; i < f.centrales().size(); i++) {
+            where.append(i == 0 ? "?" : ", ?");
+            args.add(f.centrales().get(i));
+        }
+        where.append(") AND fecha BETWEEN ? AND ?");
+        args.add(Timestamp.valueOf(f.inicio()));
+        args.add(Timestamp.valueOf(f.fin()));
+        agregar(where, args, "temperatura >= ?", f.temperaturaMin());
+        agregar(where, args, "temperatura <= ?", f.temperaturaMax());
+        agregar(where, args, "humedad >= ?", f.humedadMin());
+        agregar(where, args, "humedad <= ?", f.humedadMax());
+        agregar(where, args, "pm25 >= ?", f.pm25Min());
+        agregar(where, args, "pm25 <= ?", f.pm25Max());
+        agregar(where, args, "pm10 >= ?", f.pm10Min());
+        agregar(where, args, "pm10 <= ?", f.pm10Max());
+        return where.toString();
+    }
+
+    private static void agregar(StringBuilder where, List<Object> args, String condicion, Float valor) {
+        if (valor != null) {
+            where.append(" AND ").append(condicion);
+            args.add(valor);
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.santotomas.lia.monitoreoambiental.repository;
+
+import com.santotomas.lia.monitoreoambiental.model.Medicion;
+import com.santotomas.lia.monitoreoambiental.model.CodigoCalidadAire;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.List;
+
+/**
+ * Acceso JDBC directo a la tabla medicion para la escritura por lotes.
+ * Con ids IDENTITY Hibernate no puede agrupar inserts, por lo que el lote
+ * se escribe como un único INSERT multi-fila.
+ */
+@Repository
+public class MedicionJdbcRepository {
+
+    private static final String INSERT_PREFIJO =
+            "INSERT INTO medicion (fecha, temperatura, humedad, pm25, pm10, ica, ica_contaminante, id_central) VALUES ";
+    private static final String FILA = "(?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public MedicionJdbcRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Inserta todas las mediciones en una sola sentencia y asigna a cada una el id generado.
+     */
+    public void insertarLote(List<Medicion> lote) {
+        if (lote.isEmpty()) return;
+        String sql = construirInsert(lote.size());
+        jdbcTemplate.execute((Connection con) -> {
+            try (PreparedStatement ps = con.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+                int i = 1;
+                for (Medicion m : lote) {
+                    ps.setTimestamp(i++, m.getFecha() != null ? Timestamp.valueOf(m.getFecha()) : null);
+                    setFloat(ps, i++, m.getTemperatura());
+                    setFloat(ps, i++, m.getHumedad());
+                    setFloat(ps, i++, m.getPm25());
+                    setFloat(ps, i++, m.getPm10());
+                    setInt(ps, i++, m.getIca());
+                    setInt(ps, i++, m.getIcaContaminante());
+                    ps.setInt(i++, m.getCentral().getIdCentral());
+                }
+                ps.executeUpdate();
+                try (ResultSet keys = ps.getGeneratedKeys()) {
+                    int idx = 0;
+                    while (keys.next() && idx < lote.size()) {
+                        lote.get(idx++).setId(keys.getInt(1));
+                    }
+                }
+            }
+            return null;
+        });
+    }
+
+    private static String construirInsert(int filas) {
+        StringBuilder sb = new StringBuilder(INSERT_PREFIJO.length() + filas * (FILA.length() + 1));
+        sb.append(INSERT_PREFIJO);
+        for (int i = 0; i < filas; i++) {
+            if (i > 0) sb.append(',');
+            sb.append(FILA);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Actualiza el índice de calidad del aire de mediciones ya guardadas, en lotes JDBC. La
+     * fecha va en la condición porque con la tabla particionada la clave primaria es (id, fecha).
+     */
+    public void actualizarIndices(List<MedicionStore.NuevoIndice> indices) {
+        jdbcTemplate.batchUpdate("UPDATE medicion SET ica = ?, ica_contaminante = ? WHERE id = ? AND fecha = ?",
+                indices, 1000, (ps, n) -> {
+                    setInt(ps, 1, CodigoCalidadAire.indice(n.ica()));
+                    setInt(ps, 2, CodigoCalidadAire.contaminante(n.ica()));
+                    ps.setInt(3, n.id());
+                    ps.setTimestamp(4, Timestamp.valueOf(n.fecha()));
+                });
+    }
+
+    private static void setInt(PreparedStatement ps, int idx, Integer valor) throws SQLException {
+        if (valor != null) {
+            ps.setInt(idx, valor);
+        } else {
+            ps.setNull(idx, Types.INTEGER);
+        }
+    }
+
+    private static void setFloat(PreparedStatement ps, int idx, Float valor) throws SQLException {
+        if (valor != null) {
+            ps.setFloat(idx, valor);
+        } else {
+            ps.setNull(idx, Types.FLOAT);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.santotomas.lia.monitoreoambiental.repository;
+
+import com.santotomas.lia.monitoreoambiental.dto.CursorMedicion;
+import com.santotomas.lia.monitoreoambiental.dto.FiltroMediciones;
+import com.santotomas.lia.monitoreoambiental.dto.MedicionDTO;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.Query;
+import jakarta.persistence.TypedQuery;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+/**
+ * Consultas de solo lectura de /rango sobre la tabla medicion. Devuelven {@link MedicionDTO}
+ * con una expresión constructora, sin cargar entidades en el contexto de persistencia.
+ * <p>
+ * Hay un texto JPQL fijo por forma de consulta (página, página desde un cursor y conteo); los
+ * filtros de valor opcionales van como {@code (:p IS NULL OR ...)}, así que cada forma se
+ * compila una vez y se reutiliza desde la caché de planes de Hibernate. Con
+ * {@code hibernate.query.in_clause_parameter_padding} la lista de centrales tampoco genera
+ * un SQL distinto por cada cantidad.
+ */
+@Repository
+public class MedicionLecturaRepository {
+
+    private static final String CONDICIONES = " WHERE m.central.idCentral IN :centrales AND m.fecha BETWEEN :inicio AND :fin"
+            + " AND (:temperaturaMin IS NULL OR m.temperatura >= :temperaturaMin)"
+            + " AND (:temperaturaMax IS NULL OR m.temperatura <= :temperaturaMax)"
+            + " AND (:humedadMin IS NULL OR m.humedad >= :humedadMin)"
+            + " AND (:humedadMax IS NULL OR m.humedad <= :humedadMax)"
+            + " AND (:pm25Min IS NULL OR m.pm25 >= :pm25Min)"
+            + " AND (:pm25Max IS NULL OR m.pm25 <= :pm25Max)"
+            + " AND (:pm10Min IS NULL OR m.pm10 >= :pm10Min)"
+            + " AND (:pm10Max IS NULL OR m.pm10 <= :pm10Max)";
+
+    private static final String SELECCION = "SELECT new com.santotomas.lia.monitoreoambiental.dto.MedicionDTO("
+            + "m.id, m.fecha, m.temperatura, m.humedad, m.pm25, m.pm10, m.ica, m.icaContaminante) FROM Medicion m";
+
+    private static final String ORDEN = " ORDER BY m.fecha DESC, m.id DESC";
+
+    static final String PAGINA = SELECCION + CONDICIONES + ORDEN;
+
+    static final String PAGINA_DESDE_CURSOR = SELECCION + CONDICIONES
+            + " AND (m.fecha < :cursorFecha OR m.id < :cursorId)" + ORDEN;
+
+    static final String CONTAR = "SELECT COUNT(m.id) FROM Medicion m" + CONDICIONES;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    /**
+     * Una página de mediciones, de la más reciente a la más antigua: desde el cursor (sin
+     * incluirlo) o, sin cursor, saltando las primeras {@code saltar}.
+     */
+    @Transactional(readOnly = true)
+    public List<MedicionDTO> pagina(FiltroMediciones filtro, CursorMedicion desde, long saltar, int limite) {
+        TypedQuery<MedicionDTO> query;
+        if (desde != null) {
+            // Con fin en la fecha del cursor basta comparar el id dentro de esa misma fecha
+            query = entityManager.createQuery(PAGINA_DESDE_CURSOR, MedicionDTO.class);
+            parametros(query, filtro.hasta(desde.fecha()));
+            query.setParameter("cursorFecha", desde.fecha());
+            query.setParameter("cursorId", desde.id());
+        } else {
+            query = entityManager.createQuery(PAGINA, MedicionDTO.class);
+            parametros(query, filtro);
+            query.setFirstResult(Math.toIntExact(saltar));
+        }
+        query.setMaxResults(limite);
+        query.setHint(HibernateHints.HINT_READ_ONLY, true);
+        return query.getResultList();
+    }
+
+    @Transactional(readOnly = true)
+    public long contar(FiltroMediciones filtro) {
+        TypedQuery<Long> query = entityManager.createQuery(CONTAR, Long.class);
+        parametros(query, filtro);
+        query.setHint(HibernateHints.HINT_READ_ONLY, true);
+        return query.getSingleResult();
+    }
+
+    private static void parametros(Query query, FiltroMediciones f) {
+        query.setParameter("centrales", f.centrales());
+        query.setParameter("inicio", f.inicio());
+        query.setParameter("fin", f.fin());
+        query.setParameter("temperaturaMin", f.temperaturaMin());
+        query.setParameter("temperaturaMax", f.temperaturaMax());
+        query.setParameter("humedadMin", f.humedadMin());
+        query.setParameter("humedadMax", f.humedadMax());
+        query.setParameter("pm25Min", f.pm25Min());
+        query.setParameter("pm25Max", f.pm25Max());
+        query.setParameter("pm10Min", f.pm10Min());
+        query.setParameter("pm10Max", f.pm10Max());
+    }
+}
@@ -12,7 +12,6 @@ import java.util.List;
 
 @Repository
 public interface MedicionRepository extends JpaRepository<Medicion, Integer> {
-    List<Medicion> findTop10ByCentralOrderByFechaDesc(Central central);
     List<Medicion> findByCentralAndFechaBetween(Central central, LocalDateTime start, LocalDateTime end);
     Page<Medicion> findByCentralAndFechaBetween(Central central, LocalDateTime start, LocalDateTime end, Pageable pageable);
 
@@ -0,0 +1,145 @@
+package com.santotomas.lia.monitoreoambiental.repository;
+
+import com.santotomas.lia.monitoreoambiental.dto.CursorMedicion;
+import com.santotomas.lia.monitoreoambiental.dto.FiltroMediciones;
+import com.santotomas.lia.monitoreoambiental.dto.MedicionDTO;
+import com.santotomas.lia.monitoreoambiental.model.Medicion;
+import com.santotomas.lia.monitoreoambiental.model.CodigoCalidadAire;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Almacenamiento de las mediciones: escritura por lotes, últimas N, recorrido por rango y
+ * promedios por periodo. La implementación se elige con {@code mediciones.store.tipo}:
+ * {@code jpa} (MySQL, por defecto) o {@code embebido} (archivos locales por central).
+ * <p>
+ * Los métodos con implementación por defecto se resuelven con {@link #recorrer}; cada
+ * implementación puede reemplazarlos por una consulta más directa.
+ */
+public interface MedicionStore {
+
+    /** Índice de calidad del aire recalculado para una medición, como código de {@link CodigoCalidadAire}. */
+    record NuevoIndice(int id, LocalDateTime fecha, int ica) {}
+
+    /** Guarda un lote de mediciones completas (con central y fecha) y asigna el id de cada una. */
+    void agregar(List<Medicion> lote);
+
+    /** Reemplaza el índice de calidad del aire de mediciones ya guardadas de una central. */
+    void actualizarIndices(int idCentral, List<NuevoIndice> indices);
+
+    /**
+     * Guarda solo las mediciones del lote que no estén ya guardadas, comparando central y fecha.
+     * Lo usa la reproducción de la bitácora, que puede volver a enviar mediciones que sí
+     * alcanzaron a insertarse antes de una caída.
+     *
+     * @return las mediciones insertadas
+     */
+    default List<Medicion> agregarNuevas(List<Medicion> lote) {
+        Map<Integer, List<Medicion>> porCentral = new HashMap<>();
+        for (Medicion m : lote) {
+            porCentral.computeIfAbsent(m.getCentral().getIdCentral(), k -> new ArrayList<>()).add(m);
+        }
+        List<Medicion> nuevas = new ArrayList<>(lote.size());
+        porCentral.forEach((idCentral, mediciones) -> {
+            LocalDateTime inicio = mediciones.get(0).getFecha();
+            LocalDateTime fin = inicio;
+            for (Medicion m : mediciones) {
+                if (m.getFecha().isBefore(inicio)) inicio = m.getFecha();
+                if (m.getFecha().isAfter(fin)) fin = m.getFecha();
+            }
+            Set<LocalDateTime> existentes = new HashSet<>();
+            recorrer(new FiltroMediciones(List.of(idCentral), inicio, fin, null, null, null, null, null, null, null, null),
+                    true, (id, central, fecha, tt, hh, pm25, pm10, ica) -> {
+                        existentes.add(fecha);
+                        return true;
+                    });
+            for (Medicion m : mediciones) {
+                if (existentes.add(m.getFecha())) nuevas.add(m);
+            }
+        });
+        if (!nuevas.isEmpty()) agregar(nuevas);
+        return nuevas;
+    }
+
+    /** Las {@code limite} mediciones más recientes de una central, de la más nueva a la más antigua. */
+    List<MedicionDTO> ultimas(int idCentral, int limite);
+
+    /**
+     * Recorre las mediciones que cumplen el filtro ordenadas por fecha e id.
+     *
+     * @throws java.io.UncheckedIOException si el visitante falla al escribir
+     */
+    void recorrer(FiltroMediciones filtro, boolean ascendente, MedicionCursorRepository.Visitante visitante);
+
+    /**
+     * Promedio de {@code variable} por central y periodo ({@code hora}, {@code dia}, {@code semana}
+     * o {@code mes}), ordenado por central y periodo. Sin fechas abarca todo el historial.
+     */
+    List<RollupRepository.FilaAgrupada> agrupadas(List<Integer> centrales, String variable, String intervalo,
+                                                  LocalDate inicio, LocalDate fin);
+
+    /** Indica si se mantienen los agregados de medicion_rollup_hora, que /resumen usa para rangos largos. */
+    default boolean mantieneAgregados() {
+        return false;
+    }
+
+    /** Fecha y valor de una variable de una central en orden de fecha; omite las filas sin valor. */
+    default void recorrerVariable(int idCentral, String variable, LocalDateTime inicio, LocalDateTime fin,
+                                  MedicionCursorRepository.VisitanteValor visitante) {
+        int indice = RollupRepository.VARIABLES.indexOf(variable);
+        if (indice < 0) {
+            throw new IllegalArgumentException("Variable no válida: " + variable);
+        }
+        float[] valores = new float[4];
+        recorrer(new FiltroMediciones(List.of(idCentral), inicio, fin, null, null, null, null, null, null, null, null),
+                true, (id, central, fecha, tt, hh, pm25, pm10, ica) -> {
+                    valores[0] = tt;
+                    valores[1] = hh;
+                    valores[2] = pm25;
+                    valores[3] = pm10;
+                    if (!Float.isNaN(valores[indice])) visitante.valor(fecha, valores[indice]);
+                    return true;
+                });
+    }
+
+    /**
+     * Una página de /rango, de la más reciente a la más antigua: se omiten las filas hasta el
+     * cursor {@code desde} (inclusive) o, sin cursor, las primeras {@code saltar}.
+     */
+    default List<MedicionDTO> pagina(FiltroMediciones filtro, CursorMedicion desde, long saltar, int limite) {
+        List<MedicionDTO> pagina = new ArrayList<>(limite);
+        long[] pendientes = {saltar};
+        recorrer(desde != null ? filtro.hasta(desde.fecha()) : filtro, false,
+                (id, idCentral, fecha, tt, hh, pm25, pm10, ica) -> {
+                    if (desde != null && fecha.equals(desde.fecha()) && id >= desde.id()) return true;
+                    if (pendientes[0] > 0) {
+                        pendientes[0]--;
+                        return true;
+                    }
+                    pagina.add(new MedicionDTO(id, fecha, nulo(tt), nulo(hh), nulo(pm25), nulo(pm10), ica));
+                    return pagina.size() < limite;
+                });
+        return pagina;
+    }
+
+    /** Cantidad de mediciones que cumplen el filtro. */
+    default long contar(FiltroMediciones filtro) {
+        long[] total = {0};
+        recorrer(filtro, true, (id, idCentral, fecha, tt, hh, pm25, pm10, ica) -> {
+            total[0]++;
+            return true;
+        });
+        return total[0];
+    }
+
+    private static Float nulo(float v) {
+        return Float.isNaN(v) ? null : v;
+    }
+}
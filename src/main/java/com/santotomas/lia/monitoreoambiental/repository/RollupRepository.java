@@ -0,0 +1,276 @@
+package com.santotomas.lia.monitoreoambiental.repository;
+
+import com.santotomas.lia.monitoreoambiental.model.Medicion;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tablas de agregados medicion_rollup_hora y medicion_rollup_dia.
+ * Cada fila guarda, por central y periodo, cantidad, suma, suma de cuadrados, mínimo y
+ * máximo de cada variable, de modo que promedios y desviaciones se obtienen sin leer medicion.
+ */
+@Repository
+public class RollupRepository {
+
+    public static final List<String> VARIABLES = List.of("temperatura", "humedad", "pm25", "pm10");
+
+    public record FilaAgrupada(int idCentral, String fecha, Double valor) {}
+
+    /** Recibe, por cada hora y variable, los agregados guardados; {@code min}/{@code max} son NaN si no hubo valores. */
+    @FunctionalInterface
+    public interface VisitanteHora {
+        void variable(int indice, long n, double suma, double sumaCuadrados, double min, double max);
+    }
+
+    private record Clave(int idCentral, LocalDateTime inicio) {}
+
+    /** Agregado parcial de un periodo, calculado en memoria a partir de un lote. */
+    private static final class Acumulado {
+        int n;
+        final int[] cuenta = new int[4];
+        final double[] suma = new double[4];
+        final double[] sumaCuad = new double[4];
+        final double[] min = {Double.NaN, Double.NaN, Double.NaN, Double.NaN};
+        final double[] max = {Double.NaN, Double.NaN, Double.NaN, Double.NaN};
+
+        void agregar(Medicion m) {
+            n++;
+            agregar(0, m.getTemperatura());
+            agregar(1, m.getHumedad());
+            agregar(2, m.getPm25());
+            // pm10 se guarda como decimal(6,2): se acumula el valor ya redondeado
+            agregar(3, m.getPm10() != null ? Math.round(m.getPm10() * 100.0) / 100.0 : null);
+        }
+
+        void agregar(BloqueMediciones.Columnas filas, int fila) {
+            n++;
+            for (int v = 0; v < 3; v++) {
+                float valor = filas.valor(v, fila);
+                agregar(v, Float.isNaN(valor) ? null : valor);
+            }
+            float pm10 = filas.valor(3, fila);
+            agregar(3, Float.isNaN(pm10) ? null : Math.round(pm10 * 100.0) / 100.0);
+        }
+
+        private void agregar(int i, Number valor) {
+            if (valor == null) return;
+            double v = valor.doubleValue();
+            cuenta[i]++;
+            suma[i] += v;
+            sumaCuad[i] += v * v;
+            if (Double.isNaN(min[i]) || v < min[i]) min[i] = v;
+            if (Double.isNaN(max[i]) || v > max[i]) max[i] = v;
+        }
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedJdbcTemplate;
+    private final MedicionArchivoRepository archivoRepository;
+
+    public RollupRepository(JdbcTemplate jdbcTemplate, NamedParameterJdbcTemplate namedJdbcTemplate,
+                            MedicionArchivoRepository archivoRepository) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.namedJdbcTemplate = namedJdbcTemplate;
+        this.archivoRepository = archivoRepository;
+    }
+
+    /**
+     * Suma un lote de mediciones recién insertadas a los agregados por hora y por día.
+     * Debe ejecutarse en la misma transacción que el INSERT de las mediciones.
+     */
+    public void acumular(List<Medicion> lote) {
+        Map<Clave, Acumulado> horas = new LinkedHashMap<>();
+        Map<Clave, Acumulado> dias = new LinkedHashMap<>();
+        for (Medicion m : lote) {
+            if (m.getFecha() == null || m.getCentral() == null) continue;
+            int id = m.getCentral().getIdCentral();
+            horas.computeIfAbsent(new Clave(id, m.getFecha().truncatedTo(ChronoUnit.HOURS)), k -> new Acumulado()).agregar(m);
+            dias.computeIfAbsent(new Clave(id, m.getFecha().truncatedTo(ChronoUnit.DAYS)), k -> new Acumulado()).agregar(m);
+        }
+        upsert("medicion_rollup_hora", "hora", horas, false);
+        upsert("medicion_rollup_dia", "dia", dias, true);
+    }
+
+    private void upsert(String tabla, String columnaPeriodo, Map<Clave, Acumulado> filas, boolean soloFecha) {
+        if (filas.isEmpty()) return;
+        String sql = construirUpsert(tabla, columnaPeriodo, filas.size());
+        jdbcTemplate.execute((Connection con) -> {
+            try (PreparedStatement ps = con.prepareStatement(sql)) {
+                int i = 1;
+                for (Map.Entry<Clave, Acumulado> e : filas.entrySet()) {
+                    Acumulado a = e.getValue();
+                    ps.setInt(i++, e.getKey().idCentral());
+                    if (soloFecha) {
+                        ps.setDate(i++, Date.valueOf(e.getKey().inicio().toLocalDate()));
+                    } else {
+                        ps.setTimestamp(i++, Timestamp.valueOf(e.getKey().inicio()));
+                    }
+                    ps.setInt(i++, a.n);
+                    for (int v = 0; v < VARIABLES.size(); v++) {
+                        ps.setInt(i++, a.cuenta[v]);
+                        ps.setDouble(i++, a.suma[v]);
+                        ps.setDouble(i++, a.sumaCuad[v]);
+                        setDouble(ps, i++, a.min[v]);
+                        setDouble(ps, i++, a.max[v]);
+                    }
+                }
+                ps.executeUpdate();
+            }
+            return null;
+        });
+    }
+
+    private static String construirUpsert(String tabla, String columnaPeriodo, int filas) {
+        StringBuilder columnas = new StringBuilder("id_central, ").append(columnaPeriodo).append(", n");
+        StringBuilder actualizacion = new StringBuilder("n = n + nueva.n");
+        for (String v : VARIABLES) {
+            columnas.append(", n_").append(v).append(", suma_").append(v).append(", suma_cuad_").append(v)
+                    .append(", min_").append(v).append(", max_").append(v);
+            actualizacion.append(", n_").append(v).append(" = n_").append(v).append(" + nueva.n_").append(v)
+                    .append(", suma_").append(v).append(" = suma_").append(v).append(" + nueva.suma_").append(v)
+                    .append(", suma_cuad_").append(v).append(" = suma_cuad_").append(v).append(" + nueva.suma_cuad_").append(v)
+                    .append(", min_").append(v).append(" = LEAST(COALESCE(min_").append(v).append(", nueva.min_").append(v)
+                    .append("), COALESCE(nueva.min_").append(v).append(", min_").append(v).append("))")
+                    .append(", max_").append(v).append(" = GREATEST(COALESCE(max_").append(v).append(", nueva.max_").append(v)
+                    .append("), COALESCE(nueva.max_").append(v).append(", max_").append(v).append("))");
+        }
+        String fila = "(" + "?, ".repeat(2 + 1 + VARIABLES.size() * 5 - 1) + "?)";
+        StringBuilder sql = new StringBuilder("INSERT INTO ").append(tabla).append(" (").append(columnas).append(") VALUES ");
+        for (int i = 0; i < filas; i++) {
+            if (i > 0) sql.append(", ");
+            sql.append(fila);
+        }
+        sql.append(" AS nueva ON DUPLICATE KEY UPDATE ").append(actualizacion);
+        return sql.toString();
+    }
+
+    private static void setDouble(PreparedStatement ps, int idx, double valor) throws SQLException {
+        if (Double.isNaN(valor)) {
+            ps.setNull(idx, Types.DOUBLE);
+        } else {
+            ps.setDouble(idx, valor);
+        }
+    }
+
+    /**
+     * Promedio de {@code campo} agrupado por hora, día, semana o mes, con el mismo formato de
+     * fecha que la consulta original sobre medicion.
+     */
+    public List<FilaAgrupada> agrupadas(List<Integer> centralesIds, String campo, String intervalo,
+                                        LocalDate inicio, LocalDate fin) {
+        if (!VARIABLES.contains(campo)) {
+            throw new IllegalArgumentException("Tópico no válido: " + campo);
+        }
+        String valor = "SUM(suma_" + campo + ") / NULLIF(SUM(n_" + campo + "), 0)";
+        String tabla;
+        String periodo;
+        String expresion;
+        switch (intervalo) {
+            case "hora" -> { tabla = "medicion_rollup_hora"; periodo = "hora"; expresion = "DATE_FORMAT(hora, '%Y-%m-%dT%H:00:00')"; }
+            case "dia" -> { tabla = "medicion_rollup_dia"; periodo = "dia"; expresion = "dia"; }
+            case "semana" -> { tabla = "medicion_rollup_dia"; periodo = "dia"; expresion = "DATE(DATE_SUB(dia, INTERVAL WEEKDAY(dia) DAY))"; }
+            case "mes" -> { tabla = "medicion_rollup_dia"; periodo = "dia"; expresion = "DATE_FORMAT(dia, '%Y-%m')"; }
+            default -> throw new IllegalArgumentException("Intervalo no válido: " + intervalo);
+        }
+        StringBuilder sql = new StringBuilder("SELECT id_central, ").append(expresion).append(" AS fecha_agrupada, ")
+                .append(valor).append(" AS valor FROM ").append(tabla).append(" WHERE id_central IN (:centralesIds)");
+        MapSqlParameterSource params = new MapSqlParameterSource("centralesIds", centralesIds);
+        if (inicio != null && fin != null) {
+            sql.append(" AND ").append(periodo).append(" BETWEEN :inicio AND :fin");
+            if (periodo.equals("hora")) {
+                params.addValue("inicio", Timestamp.valueOf(inicio.atStartOfDay()));
+                params.addValue("fin", Timestamp.valueOf(fin.atTime(23, 0)));
+            } else {
+                params.addValue("inicio", Date.valueOf(inicio));
+                params.addValue("fin", Date.valueOf(fin));
+            }
+        }
+        sql.append(" GROUP BY id_central, fecha_agrupada ORDER BY id_central, fecha_agrupada ASC");
+        return namedJdbcTemplate.query(sql.toString(), params, (rs, n) -> {
+            double v = rs.getDouble(3);
+            return new FilaAgrupada(rs.getInt(1), rs.getString(2), rs.wasNull() ? null : v);
+        });
+    }
+
+    /**
+     * Recorre los agregados por hora de las centrales entre {@code inicio} y {@code fin}
+     * (días completos). El índice de cada variable corresponde a {@link #VARIABLES}.
+     */
+    public void recorrerHoras(List<Integer> centralesIds, LocalDate inicio, LocalDate fin, VisitanteHora visitante) {
+        StringBuilder columnas = new StringBuilder();
+        for (String v : VARIABLES) {
+            columnas.append(columnas.isEmpty() ? "" : ", ").append("n_").append(v).append(", suma_").append(v)
+                    .append(", suma_cuad_").append(v).append(", min_").append(v).append(", max_").append(v);
+        }
+        MapSqlParameterSource params = new MapSqlParameterSource("centralesIds", centralesIds)
+                .addValue("inicio", Timestamp.valueOf(inicio.atStartOfDay()))
+                .addValue("fin", Timestamp.valueOf(fin.atTime(23, 0)));
+        namedJdbcTemplate.query("SELECT " + columnas + " FROM medicion_rollup_hora"
+                + " WHERE id_central IN (:centralesIds) AND hora BETWEEN :inicio AND :fin", params, rs -> {
+            for (int v = 0, col = 1; v < VARIABLES.size(); v++, col += 5) {
+                long n = rs.getLong(col);
+                if (n == 0) continue;
+                double min = rs.getDouble(col + 3);
+                if (rs.wasNull()) min = Double.NaN;
+                double max = rs.getDouble(col + 4);
+                if (rs.wasNull()) max = Double.NaN;
+                visitante.variable(v, n, rs.getDouble(col + 1), rs.getDouble(col + 2), min, max);
+            }
+        });
+    }
+
+    /**
+     * Recalcula desde cero los agregados de una central (o de todas si {@code idCentral} es null)
+     * a partir de la tabla medicion y de los días archivados.
+     */
+    public void reconstruir(Integer idCentral) {
+        String filtro = idCentral != null ? " AND id_central = ?" : "";
+        Object[] args = idCentral != null ? new Object[]{idCentral} : new Object[0];
+
+        StringBuilder agregadosCrudos = new StringBuilder();
+        StringBuilder agregadosHora = new StringBuilder();
+        for (String v : VARIABLES) {
+            agregadosCrudos.append(", COUNT(").append(v).append("), COALESCE(SUM(").append(v).append("), 0), COALESCE(SUM(")
+                    .append(v).append(" * ").append(v).append("), 0), MIN(").append(v).append("), MAX(").append(v).append(")");
+            agregadosHora.append(", SUM(n_").append(v).append("), SUM(suma_").append(v).append("), SUM(suma_cuad_").append(v)
+                    .append("), MIN(min_").append(v).append("), MAX(max_").append(v).append(")");
+        }
+        jdbcTemplate.update("DELETE FROM medicion_rollup_dia WHERE 1 = 1" + filtro, args);
+        jdbcTemplate.update("DELETE FROM medicion_rollup_hora WHERE 1 = 1" + filtro, args);
+        jdbcTemplate.update("INSERT INTO medicion_rollup_hora SELECT id_central, DATE_FORMAT(fecha, '%Y-%m-%d %H:00:00'), COUNT(*)"
+                + agregadosCrudos + " FROM medicion WHERE fecha IS NOT NULL AND id_central IS NOT NULL" + filtro
+                + " GROUP BY id_central, DATE_FORMAT(fecha, '%Y-%m-%d %H:00:00')", args);
+        archivoRepository.recorrerBloques(idCentral, this::acumularArchivadas);
+        jdbcTemplate.update("INSERT INTO medicion_rollup_dia SELECT id_central, DATE(hora), SUM(n)"
+                + agregadosHora + " FROM medicion_rollup_hora WHERE 1 = 1" + filtro
+                + " GROUP BY id_central, DATE(hora)", args);
+    }
+
+    /** Suma a medicion_rollup_hora las filas de un día archivado. */
+    private void acumularArchivadas(MedicionArchivoRepository.Bloque bloque) {
+        Map<Clave, Acumulado> horas = new LinkedHashMap<>();
+        BloqueMediciones.Columnas filas = bloque.filas();
+        for (int i = 0; i < filas.tamano(); i++) {
+            long hora = filas.fecha(i) - Math.floorMod(filas.fecha(i), 3600);
+            horas.computeIfAbsent(new Clave(bloque.idCentral(), LocalDateTime.ofEpochSecond(hora, 0, ZoneOffset.UTC)),
+                    k -> new Acumulado()).agregar(filas, i);
+        }
+        upsert("medicion_rollup_hora", "hora", horas, false);
+    }
+}
@@ -0,0 +1,166 @@
+package com.santotomas.lia.monitoreoambiental.repository;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Archivo de tamaño fijo con filas de mediciones de una central, mapeado en memoria y de solo
+ * agregado. Cada fila ocupa {@value #FILA} bytes: fecha (segundos desde la época, hora local),
+ * id, las cuatro variables como float ({@code NaN} para nulo) y el código del índice de calidad
+ * del aire, lo único que se puede reescribir. En segmentos anteriores al índice esos bytes
+ * quedaron en cero, que se lee como sin índice. La cabecera guarda la cantidad de filas
+ * escritas, que se actualiza después de escribir la fila.
+ * <p>
+ * Por cada bloque de {@value #PASO_INDICE} filas se guarda en memoria la menor y la mayor fecha,
+ * lo que permite saltar los bloques que quedan fuera de un rango.
+ */
+final class SegmentoMediciones implements Closeable {
+
+    static final int CABECERA = 64;
+    static final int FILA = 32;
+    static final int PASO_INDICE = 256;
+    private static final int MAGIA = 0x4D454453; // "MEDS"
+    private static final int VERSION = 1;
+    private static final int POS_CAPACIDAD = 8;
+    private static final int POS_FILAS = 12;
+
+    private final Path archivo;
+    private final FileChannel canal;
+    private final MappedByteBuffer buf;
+    private final int capacidad;
+    private final long[] minBloque;
+    private final long[] maxBloque;
+    private int filas;
+
+    private SegmentoMediciones(Path archivo, FileChannel canal, MappedByteBuffer buf, int capacidad) {
+        this.archivo = archivo;
+        this.canal = canal;
+        this.buf = buf;
+        this.capacidad = capacidad;
+        int bloques = (capacidad + PASO_INDICE - 1) / PASO_INDICE;
+        this.minBloque = new long[bloques];
+        this.maxBloque = new long[bloques];
+    }
+
+    static SegmentoMediciones crear(Path archivo, int capacidad) throws IOException {
+        FileChannel canal = FileChannel.open(archivo, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        MappedByteBuffer buf = canal.map(FileChannel.MapMode.READ_WRITE, 0, CABECERA + (long) capacidad * FILA);
+        buf.putInt(0, MAGIA);
+        buf.putInt(4, VERSION);
+        buf.putInt(POS_CAPACIDAD, capacidad);
+        buf.putInt(POS_FILAS, 0);
+        return new SegmentoMediciones(archivo, canal, buf, capacidad);
+    }
+
+    /** Abre un segmento existente y reconstruye su índice recorriendo las filas. */
+    static SegmentoMediciones abrir(Path archivo) throws IOException {
+        FileChannel canal = FileChannel.open(archivo, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        MappedByteBuffer buf = canal.map(FileChannel.MapMode.READ_WRITE, 0, canal.size());
+        if (buf.getInt(0) != MAGIA || buf.getInt(4) != VERSION) {
+            canal.close();
+            throw new IOException("Segmento de mediciones no válido: " + archivo);
+        }
+        int capacidad = buf.getInt(POS_CAPACIDAD);
+        int filas = Math.min(buf.getInt(POS_FILAS), capacidad);
+        SegmentoMediciones s = new SegmentoMediciones(archivo, canal, buf, capacidad);
+        for (int i = 0; i < filas; i++) {
+            s.indexar(i, s.fecha(i));
+        }
+        s.filas = filas;
+        return s;
+    }
+
+    void agregar(int id, long fecha, float temperatura, float humedad, float pm25, float pm10, int ica) {
+        int pos = CABECERA + filas * FILA;
+        buf.putLong(pos, fecha);
+        buf.putInt(pos + 8, id);
+        buf.putFloat(pos + 12, temperatura);
+        buf.putFloat(pos + 16, humedad);
+        buf.putFloat(pos + 20, pm25);
+        buf.putFloat(pos + 24, pm10);
+        buf.putInt(pos + 28, ica);
+        indexar(filas, fecha);
+        filas++;
+        buf.putInt(POS_FILAS, filas);
+    }
+
+    private void indexar(int fila, long fecha) {
+        int b = fila / PASO_INDICE;
+        if (fila % PASO_INDICE == 0) {
+            minBloque[b] = fecha;
+            maxBloque[b] = fecha;
+        } else {
+            minBloque[b] = Math.min(minBloque[b], fecha);
+            maxBloque[b] = Math.max(maxBloque[b], fecha);
+        }
+    }
+
+    int filas() {
+        return filas;
+    }
+
+    boolean lleno() {
+        return filas == capacidad;
+    }
+
+    long fecha(int i) {
+        return buf.getLong(CABECERA + i * FILA);
+    }
+
+    int id(int i) {
+        return buf.getInt(CABECERA + i * FILA + 8);
+    }
+
+    /** Valor de la variable {@code v} (orden de {@link RollupRepository#VARIABLES}); NaN si es nulo. */
+    float valor(int v, int i) {
+        return buf.getFloat(CABECERA + i * FILA + 12 + v * 4);
+    }
+
+    int ica(int i) {
+        return buf.getInt(CABECERA + i * FILA + 28);
+    }
+
+    void fijarIca(int i, int ica) {
+        buf.putInt(CABECERA + i * FILA + 28, ica);
+    }
+
+    long minBloque(int b) {
+        return minBloque[b];
+    }
+
+    long maxBloque(int b) {
+        return maxBloque[b];
+    }
+
+    /**
+     * Primer bloque cuya mayor fecha es al menos {@code fecha}, considerando las primeras
+     * {@code n} filas. Solo es válido si las filas están ordenadas por fecha.
+     */
+    int primerBloqueDesde(long fecha, int n) {
+        int bloques = (n + PASO_INDICE - 1) / PASO_INDICE;
+        int i = Arrays.binarySearch(maxBloque, 0, bloques, fecha);
+        if (i < 0) return -i - 1;
+        while (i > 0 && maxBloque[i - 1] == fecha) i--;
+        return i;
+    }
+
+    void forzar() {
+        buf.force();
+    }
+
+    Path archivo() {
+        return archivo;
+    }
+
+    @Override
+    public void close() throws IOException {
+        buf.force();
+        canal.close();
+    }
+}
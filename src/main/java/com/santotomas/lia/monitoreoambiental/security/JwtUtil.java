@@ -1,11 +1,13 @@
 package com.santotomas.lia.monitoreoambiental.security;
 
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
 import io.jsonwebtoken.security.Keys;
 import org.springframework.stereotype.Component;
 
+import java.nio.charset.StandardCharsets;
 import java.security.Key;
 import java.util.Date;
 import java.util.HashMap;
@@ -17,9 +19,12 @@ public class JwtUtil {
     private final String SECRET_KEY = "monitoreo-ambiental-super-secreto-2024-06-20";
     private final long EXPIRATION_MS = 1000 * 60 * 60 * 8; // 8 horas
 
-    private Key getSigningKey() {
-        return Keys.hmacShaKeyFor(SECRET_KEY.getBytes());
-    }
+    static final String CLAIM_ROL = "rol";
+    static final String CLAIM_VERSION = "ver";
+
+    // La clave y el parser son inmutables y seguros entre hilos: se crean una sola vez
+    private final Key signingKey = Keys.hmacShaKeyFor(SECRET_KEY.getBytes(StandardCharsets.UTF_8));
+    private final JwtParser parser = Jwts.parserBuilder().setSigningKey(signingKey).build();
 
     public String extractUsername(String token) {
         return extractClaim(token, Claims::getSubject);
@@ -30,17 +35,22 @@ public class JwtUtil {
         return claimsResolver.apply(claims);
     }
 
-    private Claims extractAllClaims(String token) {
-        return Jwts.parserBuilder()
-                .setSigningKey(getSigningKey())
-                .build()
-                .parseClaimsJws(token)
-                .getBody();
+    /**
+     * Verifica la firma y la expiración del token.
+     *
+     * @throws io.jsonwebtoken.JwtException si el token no es válido o ya expiró
+     */
+    public Claims extractAllClaims(String token) {
+        return parser.parseClaimsJws(token).getBody();
     }
 
-    public String generateToken(String username, int rol) {
+    /**
+     * @param version versión de token del usuario; si después cambia, el token deja de aceptarse
+     */
+    public String generateToken(String username, int rol, int version) {
         Map<String, Object> claims = new HashMap<>();
-        claims.put("rol", rol);
+        claims.put(CLAIM_ROL, rol);
+        claims.put(CLAIM_VERSION, version);
         return createToken(claims, username);
     }
 
@@ -50,7 +60,7 @@ public class JwtUtil {
                 .setSubject(subject)
                 .setIssuedAt(new Date(System.currentTimeMillis()))
                 .setExpiration(new Date(System.currentTimeMillis() + EXPIRATION_MS))
-                .signWith(getSigningKey(), SignatureAlgorithm.HS256)
+                .signWith(signingKey, SignatureAlgorithm.HS256)
                 .compact();
     }
 
@@ -68,11 +78,13 @@ public class JwtUtil {
     }
 
     public int extractRol(String token) {
-        final Claims claims = extractAllClaims(token);
-        Object rol = claims.get("rol");
-        if (rol instanceof Integer) return (Integer) rol;
-        if (rol instanceof Number) return ((Number) rol).intValue();
+        return entero(extractAllClaims(token), CLAIM_ROL);
+    }
+
+    /** Claim numérico; 0 si no está, como en los tokens emitidos antes de existir el claim. */
+    static int entero(Claims claims, String nombre) {
+        Object valor = claims.get(nombre);
+        if (valor instanceof Number) return ((Number) valor).intValue();
         return 0;
     }
 }
-
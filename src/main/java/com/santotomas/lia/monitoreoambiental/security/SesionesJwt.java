@@ -0,0 +1,112 @@
+package com.santotomas.lia.monitoreoambiental.security;
+
+import com.santotomas.lia.monitoreoambiental.model.Usuario;
+import com.santotomas.lia.monitoreoambiental.repository.UsuarioRepository;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Autentica las peticiones con JWT sin consultar la base de datos en cada una. Los tokens ya
+ * verificados se guardan hasta su expiración con el usuario y el rol de sus claims; cada
+ * {@code seguridad.jwt.revalidacion-segundos} se vuelve a comprobar en la base de datos que el
+ * usuario siga activo y que su rol y su versión de token ({@link Usuario#getVersionToken()}) no
+ * hayan cambiado. Así desactivar un usuario o cambiarle el rol o la contraseña invalida sus tokens
+ * en todas las instancias a más tardar en ese intervalo, y en esta al instante con {@link #invalidar}.
+ */
+@Component
+public class SesionesJwt {
+
+    private record Sesion(User principal, int rol, int version, long expira, long revalidar) {}
+
+    @Value("${seguridad.jwt.revalidacion-segundos:5}")
+    private long revalidacionSegundos;
+
+    @Value("${seguridad.jwt.cache-max-tokens:10000}")
+    private int maxTokens;
+
+    private final JwtUtil jwtUtil;
+    private final UsuarioRepository usuarioRepository;
+
+    private final Map<String, Sesion> sesiones = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Sesion> eldest) {
+            return size() > maxTokens;
+        }
+    };
+
+    public SesionesJwt(JwtUtil jwtUtil, UsuarioRepository usuarioRepository) {
+        this.jwtUtil = jwtUtil;
+        this.usuarioRepository = usuarioRepository;
+    }
+
+    /**
+     * @return el usuario del token, con la autoridad de su claim {@code rol}, o {@code null} si el
+     * token no es válido, expiró o fue revocado
+     */
+    public User autenticar(String token) {
+        long ahora = System.currentTimeMillis();
+        Sesion sesion;
+        synchronized (sesiones) {
+            sesion = sesiones.get(token);
+        }
+        if (sesion != null && ahora < sesion.revalidar()) {
+            return sesion.principal();
+        }
+        if (sesion == null) {
+            sesion = verificar(token);
+            if (sesion == null) return null;
+        }
+        if (ahora >= sesion.expira() || !vigente(sesion)) {
+            quitar(token);
+            return null;
+        }
+        long revalidar = Math.min(sesion.expira(), ahora + TimeUnit.SECONDS.toMillis(revalidacionSegundos));
+        synchronized (sesiones) {
+            sesiones.put(token, new Sesion(sesion.principal(), sesion.rol(), sesion.version(), sesion.expira(), revalidar));
+        }
+        return sesion.principal();
+    }
+
+    /** Firma y claims del token; la sesión devuelta aún no se comprobó contra la base de datos. */
+    private Sesion verificar(String token) {
+        Claims claims;
+        try {
+            claims = jwtUtil.extractAllClaims(token);
+        } catch (JwtException | IllegalArgumentException e) {
+            return null;
+        }
+        if (claims.getSubject() == null || claims.getExpiration() == null) return null;
+        int rol = JwtUtil.entero(claims, JwtUtil.CLAIM_ROL);
+        User principal = new User(claims.getSubject(), "",
+                Collections.singletonList(UsuarioDetailsService.autoridad(rol)));
+        return new Sesion(principal, rol, JwtUtil.entero(claims, JwtUtil.CLAIM_VERSION),
+                claims.getExpiration().getTime(), 0);
+    }
+
+    private boolean vigente(Sesion sesion) {
+        Usuario usuario = usuarioRepository.findByCorreo(sesion.principal().getUsername());
+        return usuario != null && usuario.isActivo() && usuario.getRol() == sesion.rol()
+                && usuario.getVersionToken() == sesion.version();
+    }
+
+    private void quitar(String token) {
+        synchronized (sesiones) {
+            sesiones.remove(token);
+        }
+    }
+
+    /** Descarta en esta instancia los tokens verificados del usuario; la próxima petición se revalida. */
+    public void invalidar(String correo) {
+        synchronized (sesiones) {
+            sesiones.values().removeIf(s -> s.principal().getUsername().equals(correo));
+        }
+    }
+}
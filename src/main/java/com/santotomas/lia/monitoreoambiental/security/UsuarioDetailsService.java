@@ -23,12 +23,16 @@ public class UsuarioDetailsService implements UserDetailsService {
         if (usuario == null || !usuario.isActivo()) {
             throw new UsernameNotFoundException("Usuario no encontrado o inactivo");
         }
-        // Mapea el rol int a nombre de rol
-        String roleName = usuario.getRol() == 1 ? "ADMIN" : "USER";
         return new User(
                 usuario.getCorreo(),
                 usuario.getPassword(),
-                Collections.singletonList(new SimpleGrantedAuthority("ROLE_" + roleName))
+                Collections.singletonList(autoridad(usuario.getRol()))
         );
     }
+
+    // Mapea el rol int a nombre de rol
+    static SimpleGrantedAuthority autoridad(int rol) {
+        String roleName = rol == 1 ? "ADMIN" : "USER";
+        return new SimpleGrantedAuthority("ROLE_" + roleName);
+    }
 }
@@ -0,0 +1,264 @@
+package com.santotomas.lia.monitoreoambiental.service;
+
+import com.santotomas.lia.monitoreoambiental.model.Medicion;
+import com.santotomas.lia.monitoreoambiental.repository.MedicionStore;
+import com.santotomas.lia.monitoreoambiental.repository.RollupRepository;
+import com.santotomas.lia.monitoreoambiental.repository.RollupRepository.FilaAgrupada;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.time.Clock;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Resultados de /agrupadas guardados por central, variable, intervalo y periodo. Un periodo
+ * cerrado (que terminó antes de ahora y cae completo dentro del rango pedido) no vuelve a
+ * cambiar, así que se guarda sin expiración hasta que lo desaloje el límite de entradas; la
+ * consulta a la base se hace solo para los periodos que faltan, que en un gráfico de un año
+ * suelen ser la hora o el día en curso. El periodo abierto y los periodos recortados por el
+ * rango nunca se guardan.
+ * <p>
+ * Si una medición llega atrasada (mensajes empaquetados, reproducción de la bitácora) se
+ * borran los periodos que la contienen. Solo se ven los lotes que persiste esta instancia, así que
+ * los periodos cerrados se guardan únicamente para las centrales que recibe completas
+ * ({@link AsignacionIngesta}); las demás, que también persisten otras instancias, se consultan
+ * siempre a la base.
+ */
+@Service
+public class AgrupadasCache {
+
+    public static final String NOMBRE = "agrupadas";
+    private static final List<String> INTERVALOS = List.of("hora", "dia", "semana", "mes");
+    private static final DateTimeFormatter FORMATO_HORA = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:00:00");
+    private static final DateTimeFormatter FORMATO_MES = DateTimeFormatter.ofPattern("yyyy-MM");
+
+    /** Periodo cerrado sin mediciones: la consulta no devuelve fila para él. */
+    private static final FilaAgrupada VACIO = new FilaAgrupada(0, "", null);
+
+    private record Clave(int idCentral, String variable, String intervalo, String periodo) {}
+
+    private record HoraCentral(int idCentral, LocalDateTime hora) {}
+
+    @Value("${mediciones.agrupadas.cache-max-periodos:200000}")
+    private int maxPeriodos;
+
+    private final MedicionStore medicionStore;
+    private final AsignacionIngesta asignacionIngesta;
+    private final Counter aciertos;
+    private final Counter fallos;
+    private final Counter desalojos;
+    Clock reloj = Clock.systemDefaultZone();
+
+    private final Map<Clave, FilaAgrupada> periodos = new LinkedHashMap<>(1024, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Clave, FilaAgrupada> eldest) {
+            if (size() > maxPeriodos) {
+                desalojos.increment();
+                return true;
+            }
+            return false;
+        }
+    };
+    /** Aumenta con cada invalidación; un resultado leído antes de una invalidación no se guarda. */
+    private long generacion;
+
+    public AgrupadasCache(MedicionStore medicionStore, AsignacionIngesta asignacionIngesta, MeterRegistry meterRegistry) {
+        this.medicionStore = medicionStore;
+        this.asignacionIngesta = asignacionIngesta;
+        this.aciertos = Counter.builder("cache.gets").tag("cache", NOMBRE).tag("result", "hit")
+                .description("Periodos de /agrupadas servidos desde memoria").register(meterRegistry);
+        this.fallos = Counter.builder("cache.gets").tag("cache", NOMBRE).tag("result", "miss")
+                .description("Periodos de /agrupadas consultados a la base").register(meterRegistry);
+        this.desalojos = Counter.builder("cache.evictions").tag("cache", NOMBRE)
+                .description("Periodos desalojados por el límite de entradas").register(meterRegistry);
+        Gauge.builder("cache.size", this, AgrupadasCache::tamano).tag("cache", NOMBRE)
+                .description("Periodos guardados").register(meterRegistry);
+    }
+
+    /**
+     * Igual que {@link MedicionStore#agrupadas}: filas ordenadas por central y periodo, sin fila
+     * para los periodos sin mediciones. Sin rango de fechas se consulta todo el historial
+     * directamente.
+     */
+    public List<FilaAgrupada> agrupadas(List<Integer> centrales, String variable, String intervalo,
+                                        LocalDate inicio, LocalDate fin) {
+        if (inicio == null || fin == null || fin.isBefore(inicio)
+                || !INTERVALOS.contains(intervalo) || !RollupRepository.VARIABLES.contains(variable)) {
+            return medicionStore.agrupadas(centrales, variable, intervalo, inicio, fin);
+        }
+        LocalDateTime desde = inicio.atStartOfDay();
+        LocalDateTime hasta = fin.plusDays(1).atStartOfDay();
+        LocalDateTime ahora = LocalDateTime.now(reloj);
+        List<LocalDateTime> inicios = new ArrayList<>();
+        for (LocalDateTime p = inicioPeriodo(desde, intervalo); p.isBefore(hasta); p = siguiente(p, intervalo)) {
+            inicios.add(p);
+        }
+        String[] etiquetas = new String[inicios.size()];
+        boolean[] guardable = new boolean[inicios.size()];
+        for (int i = 0; i < etiquetas.length; i++) {
+            LocalDateTime p = inicios.get(i);
+            LocalDateTime finPeriodo = siguiente(p, intervalo);
+            etiquetas[i] = formatoPeriodo(p, intervalo);
+            guardable[i] = !p.isBefore(desde) && !finPeriodo.isAfter(hasta) && !finPeriodo.isAfter(ahora);
+        }
+
+        List<Integer> ids = new ArrayList<>(new TreeSet<>(centrales));
+        boolean[] completa = new boolean[ids.size()];
+        for (int c = 0; c < completa.length; c++) {
+            completa[c] = asignacionIngesta.completa(ids.get(c));
+        }
+        FilaAgrupada[][] filas = new FilaAgrupada[ids.size()][];
+        List<Integer> faltantes = new ArrayList<>();
+        int primero = Integer.MAX_VALUE;
+        int ultimo = -1;
+        long generacionLeida;
+        int encontrados = 0;
+        synchronized (periodos) {
+            generacionLeida = generacion;
+            for (int c = 0; c < ids.size(); c++) {
+                filas[c] = new FilaAgrupada[etiquetas.length];
+                boolean falta = false;
+                for (int i = 0; i < etiquetas.length; i++) {
+                    FilaAgrupada f = guardable[i] && completa[c] ? periodos.get(new Clave(ids.get(c), variable, intervalo, etiquetas[i])) : null;
+                    if (f != null) {
+                        filas[c][i] = f;
+                        encontrados++;
+                    } else {
+                        falta = true;
+                        primero = Math.min(primero, i);
+                        ultimo = Math.max(ultimo, i);
+                    }
+                }
+                if (falta) faltantes.add(ids.get(c));
+            }
+        }
+        aciertos.increment(encontrados);
+        fallos.increment((long) ids.size() * etiquetas.length - encontrados);
+
+        if (!faltantes.isEmpty()) {
+            // Una sola consulta que cubre desde el primer periodo faltante hasta el último, recortada al rango
+            LocalDate consultaDesde = max(inicio, inicios.get(primero).toLocalDate());
+            LocalDate consultaHasta = min(fin, siguiente(inicios.get(ultimo), intervalo).minusNanos(1).toLocalDate());
+            Map<Integer, Map<String, FilaAgrupada>> leidas = new HashMap<>();
+            for (FilaAgrupada f : medicionStore.agrupadas(faltantes, variable, intervalo, consultaDesde, consultaHasta)) {
+                leidas.computeIfAbsent(f.idCentral(), k -> new HashMap<>()).put(f.fecha(), f);
+            }
+            Map<Clave, FilaAgrupada> nuevas = new HashMap<>();
+            for (int c = 0; c < ids.size(); c++) {
+                Map<String, FilaAgrupada> deCentral = leidas.getOrDefault(ids.get(c), Map.of());
+                for (int i = primero; i <= ultimo; i++) {
+                    if (filas[c][i] != null) continue;
+                    FilaAgrupada f = deCentral.getOrDefault(etiquetas[i], VACIO);
+                    filas[c][i] = f;
+                    if (guardable[i] && completa[c]) nuevas.put(new Clave(ids.get(c), variable, intervalo, etiquetas[i]), f);
+                }
+            }
+            synchronized (periodos) {
+                if (generacion == generacionLeida) {
+                    periodos.putAll(nuevas);
+                }
+            }
+        }
+
+        List<FilaAgrupada> resultado = new ArrayList<>();
+        for (FilaAgrupada[] deCentral : filas) {
+            for (FilaAgrupada f : deCentral) {
+                if (f != VACIO) resultado.add(f);
+            }
+        }
+        return resultado;
+    }
+
+    /** Borra los periodos de cada variable e intervalo que contienen alguna medición del lote. */
+    @EventListener
+    public void medicionesPersistidas(MedicionesPersistidasEvent evento) {
+        Set<HoraCentral> horas = new HashSet<>();
+        for (Medicion m : evento.mediciones()) {
+            if (m.getCentral() == null || m.getFecha() == null) continue;
+            horas.add(new HoraCentral(m.getCentral().getIdCentral(), m.getFecha().truncatedTo(ChronoUnit.HOURS)));
+        }
+        if (horas.isEmpty()) return;
+        synchronized (periodos) {
+            generacion++;
+            if (periodos.isEmpty()) return;
+            for (HoraCentral h : horas) {
+                for (String intervalo : INTERVALOS) {
+                    String periodo = formatoPeriodo(inicioPeriodo(h.hora(), intervalo), intervalo);
+                    for (String variable : RollupRepository.VARIABLES) {
+                        periodos.remove(new Clave(h.idCentral(), variable, intervalo, periodo));
+                    }
+                }
+            }
+        }
+    }
+
+    /** Olvida todo lo guardado de una central, o de todas con {@code null}; p. ej. tras reconstruir sus agregados. */
+    public void invalidar(Integer idCentral) {
+        synchronized (periodos) {
+            generacion++;
+            if (idCentral == null) {
+                periodos.clear();
+            } else {
+                periodos.keySet().removeIf(k -> k.idCentral() == idCentral);
+            }
+        }
+    }
+
+    private int tamano() {
+        synchronized (periodos) {
+            return periodos.size();
+        }
+    }
+
+    private static LocalDateTime inicioPeriodo(LocalDateTime fecha, String intervalo) {
+        return switch (intervalo) {
+            case "hora" -> fecha.truncatedTo(ChronoUnit.HOURS);
+            case "dia" -> fecha.truncatedTo(ChronoUnit.DAYS);
+            case "semana" -> fecha.truncatedTo(ChronoUnit.DAYS).with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+            default -> fecha.truncatedTo(ChronoUnit.DAYS).withDayOfMonth(1);
+        };
+    }
+
+    private static LocalDateTime siguiente(LocalDateTime inicio, String intervalo) {
+        return switch (intervalo) {
+            case "hora" -> inicio.plusHours(1);
+            case "dia" -> inicio.plusDays(1);
+            case "semana" -> inicio.plusWeeks(1);
+            default -> inicio.plusMonths(1);
+        };
+    }
+
+    /** Mismo formato de periodo que {@link RollupRepository#agrupadas}. */
+    private static String formatoPeriodo(LocalDateTime inicio, String intervalo) {
+        return switch (intervalo) {
+            case "hora" -> FORMATO_HORA.format(inicio);
+            case "mes" -> FORMATO_MES.format(inicio);
+            default -> inicio.toLocalDate().toString();
+        };
+    }
+
+    private static LocalDate max(LocalDate a, LocalDate b) {
+        return a.isAfter(b) ? a : b;
+    }
+
+    private static LocalDate min(LocalDate a, LocalDate b) {
+        return a.isBefore(b) ? a : b;
+    }
+}
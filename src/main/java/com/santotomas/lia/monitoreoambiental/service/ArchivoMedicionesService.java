@@ -0,0 +1,127 @@
+package com.santotomas.lia.monitoreoambiental.service;
+
+import com.santotomas.lia.monitoreoambiental.repository.BloqueMediciones;
+import com.santotomas.lia.monitoreoambiental.repository.MedicionArchivoRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Traslada a medicion_archivo las mediciones con más de {@code mediciones.archivo.dias} días.
+ * Cada central y día se comprime en un bloque columnar y sus filas se borran de medicion en
+ * la misma transacción. Los agregados por hora y día no cambian, y las lecturas por rango,
+ * exportación, resumen y serie combinan ambas tablas, así que el traslado es transparente.
+ * <p>
+ * Si llegan lecturas atrasadas de un día ya archivado, la siguiente ejecución las incorpora al bloque.
+ */
+@Service
+public class ArchivoMedicionesService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ArchivoMedicionesService.class);
+
+    private final MedicionArchivoRepository archivoRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+    @Value("${mediciones.archivo.habilitado:false}")
+    private boolean habilitado;
+
+    @Value("${mediciones.archivo.dias:90}")
+    private int dias;
+
+    @Value("${mediciones.archivo.dias-por-ejecucion:500}")
+    private int diasPorEjecucion;
+
+    public ArchivoMedicionesService(MedicionArchivoRepository archivoRepository,
+                                    PlatformTransactionManager transactionManager) {
+        this.archivoRepository = archivoRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @PostConstruct
+    public void init() {
+        if (!habilitado) return;
+        scheduler.scheduleAtFixedRate(this::archivar, 5, TimeUnit.DAYS.toMinutes(1), TimeUnit.MINUTES);
+    }
+
+    /**
+     * Archiva hasta {@code dias-por-ejecucion} días (central y fecha) anteriores al límite.
+     *
+     * @return cantidad de filas trasladadas
+     */
+    public synchronized long archivar() {
+        long total = 0;
+        try {
+            LocalDate limite = LocalDate.now().minusDays(dias);
+            List<MedicionArchivoRepository.DiaPendiente> pendientes = archivoRepository.diasPendientes(limite, diasPorEjecucion);
+            long inicio = System.currentTimeMillis();
+            for (MedicionArchivoRepository.DiaPendiente p : pendientes) {
+                total += archivarDia(p.idCentral(), p.dia());
+            }
+            if (!pendientes.isEmpty()) {
+                logger.info("Archivados {} días ({} mediciones) anteriores a {} en {} ms",
+                        pendientes.size(), total, limite, System.currentTimeMillis() - inicio);
+            }
+        } catch (Exception e) {
+            logger.error("Error al archivar mediciones: {}", e.getMessage(), e);
+        }
+        return total;
+    }
+
+    /** Combina las filas del día con el bloque existente (si lo hay), guarda el bloque y borra las filas. */
+    long archivarDia(int idCentral, LocalDate dia) {
+        Integer trasladadas = transactionTemplate.execute(status -> {
+            BloqueMediciones.Columnas nuevas = archivoRepository.filasDelDia(idCentral, dia);
+            if (nuevas.tamano() == 0) return 0;
+            BloqueMediciones.Columnas existentes = archivoRepository.leerParaActualizar(idCentral, dia);
+            archivoRepository.guardar(idCentral, dia, existentes == null ? nuevas : combinar(existentes, nuevas));
+            int[] ids = new int[nuevas.tamano()];
+            for (int i = 0; i < ids.length; i++) ids[i] = nuevas.id(i);
+            archivoRepository.borrarDeMedicion(ids);
+            return ids.length;
+        });
+        return trasladadas != null ? trasladadas : 0;
+    }
+
+    /** Mezcla dos bloques ordenados por fecha e id; si un id está en ambos queda la versión nueva. */
+    static BloqueMediciones.Columnas combinar(BloqueMediciones.Columnas a, BloqueMediciones.Columnas b) {
+        BloqueMediciones.Columnas r = new BloqueMediciones.Columnas(a.tamano() + b.tamano());
+        Set<Integer> idsNuevos = new HashSet<>();
+        for (int j = 0; j < b.tamano(); j++) idsNuevos.add(b.id(j));
+        int i = 0, j = 0;
+        while (i < a.tamano() || j < b.tamano()) {
+            boolean tomarA = j == b.tamano() || (i < a.tamano()
+                    && (a.fecha(i) < b.fecha(j) || (a.fecha(i) == b.fecha(j) && a.id(i) < b.id(j))));
+            if (tomarA) {
+                if (!idsNuevos.contains(a.id(i))) copiar(a, i, r);
+                i++;
+            } else {
+                copiar(b, j++, r);
+            }
+        }
+        return r;
+    }
+
+    private static void copiar(BloqueMediciones.Columnas origen, int i, BloqueMediciones.Columnas destino) {
+        destino.agregar(origen.id(i), origen.fecha(i), origen.valor(0, i), origen.valor(1, i),
+                origen.valor(2, i), origen.valor(3, i), origen.ica(i));
+    }
+
+    @PreDestroy
+    public void destroy() {
+        scheduler.shutdownNow();
+    }
+}
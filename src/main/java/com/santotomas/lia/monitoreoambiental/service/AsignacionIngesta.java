@@ -0,0 +1,33 @@
+package com.santotomas.lia.monitoreoambiental.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Centrales cuyas mediciones recibe completas esta instancia por MQTT. Con una sola instancia son
+ * todas y con {@code mqtt.ingesta.instancias} mayor que 1, las que le tocan según su id. Con grupo
+ * compartido el broker reparte los mensajes empaquetados de cada central entre las instancias y
+ * ninguna las ve todas; lo que no se persiste aquí solo se conoce leyendo la base de datos.
+ */
+@Component
+public class AsignacionIngesta {
+
+    @Value("${mqtt.ingesta.instancias:1}")
+    private int instancias;
+
+    @Value("${mqtt.ingesta.instancia:0}")
+    private int instancia;
+
+    @Value("${mqtt.ingesta.grupo-compartido:}")
+    private String grupoCompartido;
+
+    /** Si las mediciones nuevas de la central llegan todas a esta instancia. */
+    public boolean completa(int idCentral) {
+        return (grupoCompartido == null || grupoCompartido.isBlank()) && asignada(idCentral, instancias, instancia);
+    }
+
+    /** Si los tópicos por variable de la central se suscriben en la instancia {@code instancia}. */
+    public static boolean asignada(int idCentral, int instancias, int instancia) {
+        return Math.floorMod(idCentral, Math.max(instancias, 1)) == instancia;
+    }
+}
@@ -0,0 +1,228 @@
+package com.santotomas.lia.monitoreoambiental.service;
+
+import com.santotomas.lia.monitoreoambiental.dto.FiltroMediciones;
+import com.santotomas.lia.monitoreoambiental.model.Central;
+import com.santotomas.lia.monitoreoambiental.model.CodigoCalidadAire;
+import com.santotomas.lia.monitoreoambiental.model.Medicion;
+import com.santotomas.lia.monitoreoambiental.repository.MedicionStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Índice de calidad del aire de cada medición ({@link IndiceCalidadAire}), calculado al recibirla
+ * con una ventana de promedios por hora por central y guardado junto a la medición; las
+ * consultas lo devuelven tal cual. La ventana de una central se carga desde el almacenamiento
+ * con las últimas 12 horas la primera vez que llega una medición suya.
+ * <p>
+ * El historial se recalcula desde el endpoint de administración o al iniciar con
+ * {@code --recalcular-calidad-aire}, en tramos de {@code diasPorTramo} días procesados en paralelo.
+ */
+@Service
+public class CalidadAireService implements ApplicationRunner {
+
+    private static final Logger logger = LoggerFactory.getLogger(CalidadAireService.class);
+    static final String OPCION_RECALCULAR = "recalcular-calidad-aire";
+    /** Límites de DATETIME en MySQL, para buscar en todo el historial. */
+    private static final LocalDateTime PRIMERA_FECHA = LocalDateTime.of(1000, 1, 1, 0, 0);
+    private static final LocalDateTime ULTIMA_FECHA = LocalDateTime.of(9999, 12, 31, 23, 59, 59);
+
+    @Value("${mediciones.calidad-aire.hilos-recalculo:0}")
+    private int hilosRecalculo;
+
+    @Value("${mediciones.calidad-aire.dias-por-tramo:30}")
+    private int diasPorTramo;
+
+    private final MedicionStore medicionStore;
+    private final RegistroCentrales registroCentrales;
+    private final UltimasMedicionesCache ultimasMedicionesCache;
+    private final VersionesMediciones versionesMediciones;
+    private final Map<Integer, IndiceCalidadAire.Ventana> ventanas = new ConcurrentHashMap<>();
+
+    public CalidadAireService(MedicionStore medicionStore, RegistroCentrales registroCentrales,
+                              UltimasMedicionesCache ultimasMedicionesCache, VersionesMediciones versionesMediciones) {
+        this.medicionStore = medicionStore;
+        this.registroCentrales = registroCentrales;
+        this.ultimasMedicionesCache = ultimasMedicionesCache;
+        this.versionesMediciones = versionesMediciones;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (args.containsOption(OPCION_RECALCULAR)) {
+            recalcular(null);
+        }
+    }
+
+    /** Calcula el índice de una medición nueva (con central y fecha) y lo deja en ella. */
+    public void asignar(Medicion m) {
+        if (m.getCentral() == null || m.getFecha() == null) return;
+        int idCentral = m.getCentral().getIdCentral();
+        IndiceCalidadAire.Ventana ventana = ventanas.get(idCentral);
+        if (ventana == null) {
+            // Se carga fuera del mapa para no retener su bloqueo durante la consulta; si otro hilo
+            // cargó la misma central a la vez, se usa la suya y esta se descarta
+            IndiceCalidadAire.Ventana cargada = precargada(idCentral, m.getFecha());
+            ventana = ventanas.putIfAbsent(idCentral, cargada);
+            if (ventana == null) ventana = cargada;
+        }
+        int codigo;
+        synchronized (ventana) {
+            codigo = agregar(ventana, m);
+        }
+        fijar(m, codigo);
+    }
+
+    /**
+     * Calcula el índice de mediciones que llegan fuera del flujo normal, como las reproducidas
+     * desde la bitácora: cada central usa una ventana propia cargada antes de su primera
+     * medición, sin alterar la de la ingesta.
+     */
+    public void asignarLote(List<Medicion> lote) {
+        Map<Integer, List<Medicion>> porCentral = new HashMap<>();
+        for (Medicion m : lote) {
+            if (m.getCentral() == null || m.getFecha() == null) continue;
+            porCentral.computeIfAbsent(m.getCentral().getIdCentral(), k -> new ArrayList<>()).add(m);
+        }
+        porCentral.forEach((idCentral, mediciones) -> {
+            mediciones.sort(Comparator.comparing(Medicion::getFecha));
+            IndiceCalidadAire.Ventana ventana = precargada(idCentral, mediciones.get(0).getFecha());
+            for (Medicion m : mediciones) {
+                fijar(m, agregar(ventana, m));
+            }
+        });
+    }
+
+    /** Ventana con las mediciones guardadas de las horas previas a {@code fecha}. */
+    private IndiceCalidadAire.Ventana precargada(int idCentral, LocalDateTime fecha) {
+        IndiceCalidadAire.Ventana ventana = new IndiceCalidadAire.Ventana();
+        LocalDateTime desde = fecha.truncatedTo(ChronoUnit.HOURS)
+                .minusHours(IndiceCalidadAire.HORAS_NOWCAST - 1);
+        try {
+            medicionStore.recorrer(filtro(idCentral, desde, fecha.minusSeconds(1)), true,
+                    (id, central, f, tt, hh, pm25, pm10, ica) -> {
+                        ventana.agregar(f.toEpochSecond(ZoneOffset.UTC), pm25, pm10);
+                        return true;
+                    });
+        } catch (RuntimeException e) {
+            logger.warn("No se pudieron cargar las horas previas de la central {}; el índice parte sin historial: {}",
+                    idCentral, e.getMessage());
+        }
+        return ventana;
+    }
+
+    /**
+     * Recalcula el índice de todas las mediciones de una central, o de todas con {@code null},
+     * y guarda solo los que cambiaron. Cada tramo empieza con una ventana nueva que lee también
+     * las horas previas al tramo, así que los tramos son independientes entre sí.
+     *
+     * @return cantidad de mediciones cuyo índice cambió
+     */
+    public synchronized long recalcular(Integer idCentral) {
+        List<Integer> centrales = new ArrayList<>();
+        if (idCentral != null) {
+            centrales.add(idCentral);
+        } else {
+            for (Central c : registroCentrales.todas()) centrales.add(c.getIdCentral());
+        }
+        long inicio = System.currentTimeMillis();
+        int hilos = hilosRecalculo > 0 ? hilosRecalculo : Runtime.getRuntime().availableProcessors();
+        ExecutorService executor = Executors.newFixedThreadPool(hilos);
+        try {
+            List<Future<Integer>> tramos = new ArrayList<>();
+            for (int id : centrales) {
+                LocalDateTime primera = extremo(id, true);
+                if (primera == null) continue;
+                LocalDateTime ultima = extremo(id, false);
+                LocalDateTime fin = ultima.plusSeconds(1);
+                for (LocalDateTime desde = primera.truncatedTo(ChronoUnit.DAYS); desde.isBefore(fin); ) {
+                    LocalDateTime d = desde;
+                    LocalDateTime hasta = d.plusDays(diasPorTramo).isBefore(fin) ? d.plusDays(diasPorTramo) : fin;
+                    tramos.add(executor.submit(() -> recalcularTramo(id, d, hasta)));
+                    desde = hasta;
+                }
+            }
+            long cambios = 0;
+            for (Future<Integer> tramo : tramos) {
+                cambios += tramo.get();
+            }
+            for (int id : centrales) {
+                ultimasMedicionesCache.recargar(id);
+                versionesMediciones.invalidar(id);
+            }
+            logger.info("Índice de calidad del aire recalculado para {} centrales en {} tramos: {} mediciones cambiaron ({} ms)",
+                    centrales.size(), tramos.size(), cambios, System.currentTimeMillis() - inicio);
+            return cambios;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Recálculo del índice interrumpido", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("No se pudo recalcular el índice: " + e.getCause().getMessage(), e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /** Recalcula las mediciones de [desde, hasta) y guarda los índices que cambiaron. */
+    private int recalcularTramo(int idCentral, LocalDateTime desde, LocalDateTime hasta) {
+        IndiceCalidadAire.Ventana ventana = new IndiceCalidadAire.Ventana();
+        List<MedicionStore.NuevoIndice> cambios = new ArrayList<>();
+        LocalDateTime previas = desde.minusHours(IndiceCalidadAire.HORAS_NOWCAST);
+        medicionStore.recorrer(filtro(idCentral, previas, hasta.minusSeconds(1)), true,
+                (id, central, fecha, tt, hh, pm25, pm10, ica) -> {
+                    int codigo = ventana.agregar(fecha.toEpochSecond(ZoneOffset.UTC), pm25, pm10);
+                    if (codigo != ica && !fecha.isBefore(desde)) {
+                        cambios.add(new MedicionStore.NuevoIndice(id, fecha, codigo));
+                    }
+                    return true;
+                });
+        // Se escribe después de cerrar el recorrido, que puede tener un resultado en streaming abierto
+        medicionStore.actualizarIndices(idCentral, cambios);
+        return cambios.size();
+    }
+
+    /** Fecha de la primera o la última medición de una central; {@code null} si no tiene. */
+    private LocalDateTime extremo(int idCentral, boolean primera) {
+        LocalDateTime[] fecha = new LocalDateTime[1];
+        medicionStore.recorrer(filtro(idCentral, PRIMERA_FECHA, ULTIMA_FECHA), primera,
+                (id, central, f, tt, hh, pm25, pm10, ica) -> {
+                    fecha[0] = f;
+                    return false;
+                });
+        return fecha[0];
+    }
+
+    private static int agregar(IndiceCalidadAire.Ventana ventana, Medicion m) {
+        return ventana.agregar(m.getFecha().toEpochSecond(ZoneOffset.UTC), valor(m.getPm25()), valor(m.getPm10()));
+    }
+
+    private static void fijar(Medicion m, int codigo) {
+        m.setIca(CodigoCalidadAire.indice(codigo));
+        m.setIcaContaminante(CodigoCalidadAire.contaminante(codigo));
+    }
+
+    private static FiltroMediciones filtro(int idCentral, LocalDateTime inicio, LocalDateTime fin) {
+        return new FiltroMediciones(List.of(idCentral), inicio, fin, null, null, null, null, null, null, null, null);
+    }
+
+    private static float valor(Float v) {
+        return v != null ? v : Float.NaN;
+    }
+}
@@ -5,6 +5,7 @@ import com.santotomas.lia.monitoreoambiental.model.Central;
 import com.santotomas.lia.monitoreoambiental.repository.CentralRepository;
 import com.santotomas.lia.monitoreoambiental.mapper.CentralMapper;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 
 import java.util.List;
@@ -17,25 +18,35 @@ public class CentralService {
     @Autowired
     private CentralRepository centralRepository;
 
+    @Autowired
+    private RegistroCentrales registroCentrales;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
     public List<CentralDTO> findAll() {
-        return centralRepository.findAll().stream()
+        return registroCentrales.todas().stream()
                 .map(CentralMapper.INSTANCE::toCentralDTO)
                 .collect(Collectors.toList());
     }
 
     public Optional<CentralDTO> findById(Integer id) {
-        return centralRepository.findById(id)
+        return Optional.ofNullable(registroCentrales.porId(id))
                 .map(CentralMapper.INSTANCE::toCentralDTO);
     }
 
     public CentralDTO save(CentralDTO centralDTO) {
         Central central = CentralMapper.INSTANCE.toCentral(centralDTO);
         central = centralRepository.save(central);
+        registroCentrales.refrescar();
+        eventPublisher.publishEvent(new CentralesActualizadasEvent(central.getIdCentral()));
         return CentralMapper.INSTANCE.toCentralDTO(central);
     }
 
     public void deleteById(Integer id) {
         centralRepository.deleteById(id);
+        registroCentrales.refrescar();
+        eventPublisher.publishEvent(new CentralesActualizadasEvent(id));
     }
 }
 
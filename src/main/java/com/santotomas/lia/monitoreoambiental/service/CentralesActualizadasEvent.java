@@ -0,0 +1,7 @@
+package com.santotomas.lia.monitoreoambiental.service;
+
+/**
+ * Se publica después de crear, modificar o borrar una central, con el registro de centrales
+ * ya refrescado. {@code idCentral} es la central que cambió.
+ */
+public record CentralesActualizadasEvent(Integer idCentral) {}
@@ -0,0 +1,48 @@
+package com.santotomas.lia.monitoreoambiental.service;
+
+import com.santotomas.lia.monitoreoambiental.dto.FiltroMediciones;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Guarda por un tiempo corto el total de filas de cada filtro de /rango, para que
+ * recorrer las páginas de una misma consulta no repita el COUNT en cada petición.
+ */
+@Service
+public class ConteoMedicionesCache {
+
+    private record Entrada(long total, long expira) {}
+
+    @Value("${mediciones.rango.conteo-ttl-segundos:60}")
+    private long ttlSegundos;
+
+    @Value("${mediciones.rango.conteo-max-entradas:1000}")
+    private int maxEntradas;
+
+    private final Map<FiltroMediciones, Entrada> entradas = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<FiltroMediciones, Entrada> eldest) {
+            return size() > maxEntradas;
+        }
+    };
+
+    public long obtener(FiltroMediciones filtro, Supplier<Long> contar) {
+        long ahora = System.nanoTime();
+        synchronized (entradas) {
+            Entrada e = entradas.get(filtro);
+            if (e != null && e.expira - ahora > 0) {
+                return e.total;
+            }
+        }
+        long total = contar.get();
+        synchronized (entradas) {
+            entradas.put(filtro, new Entrada(total, ahora + TimeUnit.SECONDS.toNanos(ttlSegundos)));
+        }
+        return total;
+    }
+}
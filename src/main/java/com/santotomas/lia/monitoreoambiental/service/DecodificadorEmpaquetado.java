@@ -0,0 +1,224 @@
+package com.santotomas.lia.monitoreoambiental.service;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * Lee el payload del tópico {@code <topico_base>/packed}: una o varias mediciones completas en
+ * un solo mensaje, para que un equipo que acumuló lecturas sin conexión las envíe juntas.
+ * Acepta dos formatos:
+ * <ul>
+ *   <li>Texto: una medición por línea (o separadas por {@code ;}) con
+ *   {@code dd/MM/yyyy HH:mm:ss,tt,hh,pm25,pm10}. Un valor vacío o {@code nan} es un dato faltante.</li>
+ *   <li>Binario: un byte {@code 0x01} seguido de registros de 24 bytes big-endian con la fecha
+ *   (int64, segundos desde 1970-01-01T00:00 en hora local) y tt, hh, pm25 y pm10 (float32).</li>
+ * </ul>
+ * Se lee directamente de los bytes, sin crear cadenas. El mensaje se valida completo antes de
+ * entregar la primera medición: si una línea o registro es inválido, o tiene una fecha fuera del
+ * rango de DATETIME en MySQL (años 1000 a 9999), no se entrega ninguna.
+ */
+public final class DecodificadorEmpaquetado {
+
+    public static final String SUFIJO = "/packed";
+    static final byte VERSION_BINARIA = 1;
+    static final int LARGO_REGISTRO_BINARIO = 8 + 4 * 4;
+    /** Límites de DATETIME en MySQL: una fecha fuera de ellos haría fallar el lote completo al insertarlo. */
+    private static final long PRIMERA_FECHA = LocalDateTime.of(1000, 1, 1, 0, 0).toEpochSecond(ZoneOffset.UTC);
+    private static final long ULTIMA_FECHA = LocalDateTime.of(9999, 12, 31, 23, 59, 59).toEpochSecond(ZoneOffset.UTC);
+
+    private static final double[] POTENCIAS_10 = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private DecodificadorEmpaquetado() {
+    }
+
+    /**
+     * Entrega al receptor cada medición del mensaje, con los valores faltantes como {@code NaN}.
+     *
+     * @return cantidad de mediciones entregadas
+     * @throws NumberFormatException si el mensaje no es válido; en ese caso no se entrega ninguna
+     */
+    public static int decodificar(String prefijo, byte[] payload, EnsambladorMediciones.Receptor receptor) {
+        if (payload.length > 0 && payload[0] == VERSION_BINARIA) {
+            return binario(prefijo, payload, receptor);
+        }
+        Campo campo = new Campo(payload);
+        texto(campo, null, null);
+        return texto(campo, prefijo, receptor);
+    }
+
+    private static int binario(String prefijo, byte[] payload, EnsambladorMediciones.Receptor receptor) {
+        int largo = payload.length - 1;
+        if (largo == 0 || largo % LARGO_REGISTRO_BINARIO != 0) {
+            throw new NumberFormatException("Trama binaria de largo inválido: " + payload.length + " bytes");
+        }
+        ByteBuffer b = ByteBuffer.wrap(payload, 1, largo);
+        int n = largo / LARGO_REGISTRO_BINARIO;
+        for (int i = 0; i < n; i++) {
+            try {
+                validarFecha(b.getLong(1 + i * LARGO_REGISTRO_BINARIO));
+            } catch (NumberFormatException e) {
+                throw new NumberFormatException("Registro " + (i + 1) + ": " + e.getMessage());
+            }
+        }
+        for (int i = 0; i < n; i++) {
+            receptor.medicionCompleta(prefijo, b.getLong(), b.getFloat(), b.getFloat(), b.getFloat(), b.getFloat());
+        }
+        return n;
+    }
+
+    /** Recorre las líneas; sin receptor solo valida. */
+    private static int texto(Campo c, String prefijo, EnsambladorMediciones.Receptor receptor) {
+        byte[] b = c.bytes;
+        int n = 0;
+        int linea = 0;
+        int pos = 0;
+        while (pos < b.length) {
+            int finLinea = pos;
+            while (finLinea < b.length && b[finLinea] != '\n' && b[finLinea] != ';') finLinea++;
+            linea++;
+            if (!enBlanco(b, pos, finLinea)) {
+                long fecha = 0;
+                float tt = 0, hh = 0, pm25 = 0, pm10 = 0;
+                int ini = pos;
+                try {
+                    for (int k = 0; k < 5; k++) {
+                        int fin = ini;
+                        while (fin < finLinea && b[fin] != ',') fin++;
+                        if (k < 4 && fin == finLinea) {
+                            throw new NumberFormatException("se esperaban 5 campos");
+                        }
+                        c.limitar(ini, fin);
+                        switch (k) {
+                            case 0 -> fecha = validarFecha(EnsambladorMediciones.parsearFecha(c));
+                            case 1 -> tt = c.flotante();
+                            case 2 -> hh = c.flotante();
+                            case 3 -> pm25 = c.flotante();
+                            default -> pm10 = c.flotante();
+                        }
+                        ini = fin + 1;
+                    }
+                    if (ini <= finLinea) throw new NumberFormatException("sobran campos");
+                } catch (NumberFormatException e) {
+                    throw new NumberFormatException("Línea " + linea + ": " + e.getMessage());
+                }
+                if (receptor != null) receptor.medicionCompleta(prefijo, fecha, tt, hh, pm25, pm10);
+                n++;
+            }
+            pos = finLinea + 1;
+        }
+        if (n == 0) throw new NumberFormatException("Mensaje empaquetado sin mediciones");
+        return n;
+    }
+
+    private static long validarFecha(long fecha) {
+        if (fecha < PRIMERA_FECHA || fecha > ULTIMA_FECHA) {
+            throw new NumberFormatException("Fecha fuera de rango: " + fecha);
+        }
+        return fecha;
+    }
+
+    private static boolean enBlanco(byte[] b, int desde, int hasta) {
+        for (int i = desde; i < hasta; i++) {
+            if (b[i] > ' ') return false;
+        }
+        return true;
+    }
+
+    /** Vista de un campo del payload; como {@link CharSequence} sirve para leer la fecha sin copiarla. */
+    private static final class Campo implements CharSequence {
+        final byte[] bytes;
+        private int inicio;
+        private int fin;
+
+        Campo(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        void limitar(int desde, int hasta) {
+            while (desde < hasta && bytes[desde] <= ' ') desde++;
+            while (hasta > desde && bytes[hasta - 1] <= ' ') hasta--;
+            inicio = desde;
+            fin = hasta;
+        }
+
+        @Override
+        public int length() {
+            return fin - inicio;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return (char) (bytes[inicio + index] & 0xFF);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return toString().subSequence(start, end);
+        }
+
+        @Override
+        public String toString() {
+            return new String(bytes, inicio, fin - inicio, StandardCharsets.ISO_8859_1);
+        }
+
+        /** Decimal con signo, punto y exponente opcionales; vacío o {@code nan} es {@code NaN}. */
+        float flotante() {
+            int i = inicio;
+            if (i == fin) return Float.NaN;
+            if (fin - i == 3 && (bytes[i] | 0x20) == 'n' && (bytes[i + 1] | 0x20) == 'a' && (bytes[i + 2] | 0x20) == 'n') {
+                return Float.NaN;
+            }
+            boolean negativo = bytes[i] == '-';
+            if (negativo || bytes[i] == '+') i++;
+            long mantisa = 0;
+            int digitos = 0;
+            int escala = 0;
+            boolean punto = false;
+            boolean alguno = false;
+            for (; i < fin; i++) {
+                int d = bytes[i] - '0';
+                if (d >= 0 && d <= 9) {
+                    alguno = true;
+                    if (digitos < 18) {
+                        mantisa = mantisa * 10 + d;
+                        if (mantisa != 0) digitos++;
+                        if (punto) escala++;
+                    } else if (!punto) {
+                        escala--;
+                    }
+                } else if (bytes[i] == '.' && !punto) {
+                    punto = true;
+                } else {
+                    break;
+                }
+            }
+            if (!alguno) throw new NumberFormatException("Valor inválido: " + this);
+            if (i < fin) {
+                if ((bytes[i] | 0x20) != 'e' || i + 1 == fin) throw new NumberFormatException("Valor inválido: " + this);
+                i++;
+                boolean expNegativo = bytes[i] == '-';
+                if (expNegativo || bytes[i] == '+') i++;
+                if (i == fin) throw new NumberFormatException("Valor inválido: " + this);
+                int exponente = 0;
+                for (; i < fin; i++) {
+                    int d = bytes[i] - '0';
+                    if (d < 0 || d > 9) throw new NumberFormatException("Valor inválido: " + this);
+                    if (exponente < 1000) exponente = exponente * 10 + d;
+                }
+                escala -= expNegativo ? -exponente : exponente;
+            }
+            double valor = mantisa;
+            if (escala > 0) {
+                valor = escala < POTENCIAS_10.length ? valor / POTENCIAS_10[escala] : valor / Math.pow(10, escala);
+            } else if (escala < 0) {
+                valor = -escala < POTENCIAS_10.length ? valor * POTENCIAS_10[-escala] : valor * Math.pow(10, -escala);
+            }
+            return (float) (negativo ? -valor : valor);
+        }
+    }
+}
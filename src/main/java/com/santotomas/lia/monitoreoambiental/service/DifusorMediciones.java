@@ -0,0 +1,362 @@
+package com.santotomas.lia.monitoreoambiental.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.santotomas.lia.monitoreoambiental.dto.MedicionDTO;
+import com.santotomas.lia.monitoreoambiental.model.Medicion;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Difusión de mediciones nuevas a los clientes SSE.
+ * <p>
+ * Cada medición se serializa una sola vez y su evento SSE se arma una vez ({@link EventoPreparado}),
+ * y ese mismo evento se comparte entre todos los suscriptores interesados en su central. Cada suscriptor
+ * tiene una cola acotada que vacía su propia tarea; si un cliente lento llena su cola se le
+ * desconecta, de modo que nunca frena al hilo de escritura ni al resto de los clientes.
+ * Los últimos eventos quedan en un anillo para reenviarlos a quien reconecta con
+ * {@code Last-Event-ID}.
+ */
+@Service
+public class DifusorMediciones {
+
+    private static final Logger logger = LoggerFactory.getLogger(DifusorMediciones.class);
+
+    private static final String NOMBRE_EVENTO = "nueva-medicion";
+    private static final EventoPreparado LATIDO = EventoPreparado.nuevo().comment("latido");
+
+    private record Evento(long id, Integer idCentral, EventoPreparado sse) {}
+
+    @Value("${mediciones.sse.cola-suscriptor:256}")
+    private int capacidadCola;
+
+    @Value("${mediciones.sse.eventos-repeticion:512}")
+    private int capacidadRepeticion;
+
+    @Value("${mediciones.sse.latido-segundos:15}")
+    private long latidoSegundos;
+
+    private final ObjectMapper objectMapper;
+
+    /** Protege los índices de suscriptores, el anillo y la secuencia. */
+    private final Object lock = new Object();
+    private final Set<Suscriptor> suscriptores = new HashSet<>();
+    private final Set<Suscriptor> sinFiltro = new HashSet<>();
+    private final Map<Integer, Set<Suscriptor>> porCentral = new HashMap<>();
+    private Evento[] anillo;
+    /** Parte del reloj para que los ids no se repitan entre reinicios de la aplicación. */
+    private long secuencia = System.currentTimeMillis() * 1000;
+
+    private ExecutorService envios;
+    private ScheduledExecutorService latidos;
+    private final AtomicLong desconectados = new AtomicLong();
+
+    private final Timer difusion;
+
+    public DifusorMediciones(ObjectMapper objectMapper, MeterRegistry meterRegistry) {
+        this.objectMapper = objectMapper;
+        this.difusion = Timer.builder("mediciones.sse.difusion")
+                .description("Tiempo en serializar y encolar un lote de mediciones para los clientes SSE")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        Gauge.builder("mediciones.sse.suscriptores", this, DifusorMediciones::getSuscriptores)
+                .register(meterRegistry);
+        FunctionCounter.builder("mediciones.sse.desconectados", desconectados, AtomicLong::get)
+                .description("Clientes SSE desconectados por lentos")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void init() {
+        anillo = new Evento[capacidadRepeticion];
+        AtomicInteger hilos = new AtomicInteger();
+        envios = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "sse-envio-" + hilos.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        latidos = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "sse-latido");
+            t.setDaemon(true);
+            return t;
+        });
+        latidos.scheduleAtFixedRate(this::enviarLatidos, latidoSegundos, latidoSegundos, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Registra un cliente nuevo.
+     *
+     * @param centrales ids de las centrales que quiere recibir, o {@code null} para todas
+     * @param ultimoId  valor de {@code Last-Event-ID} si el navegador está reconectando
+     */
+    public SseEmitter suscribir(Set<Integer> centrales, String ultimoId) {
+        SseEmitter emitter = new SseEmitter(0L); // Sin timeout
+        Suscriptor s = new Suscriptor(emitter, centrales);
+        emitter.onCompletion(() -> quitar(s));
+        emitter.onTimeout(() -> quitar(s));
+        emitter.onError(e -> quitar(s));
+        long desde = parsearId(ultimoId);
+        synchronized (lock) {
+            if (desde >= 0) {
+                repetir(s, desde);
+            }
+            suscriptores.add(s);
+            if (centrales == null) {
+                sinFiltro.add(s);
+            } else {
+                for (Integer id : centrales) {
+                    porCentral.computeIfAbsent(id, k -> new HashSet<>()).add(s);
+                }
+            }
+        }
+        return emitter;
+    }
+
+    @EventListener
+    public void medicionesPersistidas(MedicionesPersistidasEvent evento) {
+        long inicio = System.nanoTime();
+        for (Medicion m : evento.mediciones()) {
+            publicar(m);
+        }
+        difusion.record(System.nanoTime() - inicio, TimeUnit.NANOSECONDS);
+    }
+
+    private void publicar(Medicion m) {
+        Integer idCentral = m.getCentral() != null ? m.getCentral().getIdCentral() : null;
+        byte[] json;
+        try {
+            json = objectMapper.writeValueAsBytes(new MedicionDTO(m.getId(), m.getFecha(),
+                    m.getTemperatura(), m.getHumedad(), m.getPm25(), m.getPm10(), m.getIca(), m.getIcaContaminante()));
+        } catch (JsonProcessingException e) {
+            logger.error("No se pudo serializar la medición {}: {}", m.getId(), e.getMessage());
+            return;
+        }
+        synchronized (lock) {
+            long id = ++secuencia;
+            Evento evento = new Evento(id, idCentral, EventoPreparado.nuevo()
+                    .id(Long.toString(id)).name(NOMBRE_EVENTO).data(json, MediaType.APPLICATION_JSON));
+            anillo[(int) (id % anillo.length)] = evento;
+            List<Suscriptor> lentos = entregar(sinFiltro, evento.sse(), null);
+            if (idCentral != null) {
+                lentos = entregar(porCentral.get(idCentral), evento.sse(), lentos);
+            }
+            if (lentos != null) {
+                lentos.forEach(s -> desconectar(s, "cola llena"));
+            }
+        }
+    }
+
+    private static List<Suscriptor> entregar(Set<Suscriptor> destino, EventoPreparado sse, List<Suscriptor> lentos) {
+        if (destino == null) return lentos;
+        for (Suscriptor s : destino) {
+            if (!s.encolar(sse)) {
+                if (lentos == null) lentos = new ArrayList<>();
+                lentos.add(s);
+            }
+        }
+        return lentos;
+    }
+
+    /** Encola los eventos del anillo posteriores a {@code desde}; se llama con el lock tomado. */
+    private void repetir(Suscriptor s, long desde) {
+        List<Evento> pendientes = new ArrayList<>();
+        long primero = Math.max(desde + 1, secuencia - anillo.length + 1);
+        for (long id = primero; id <= secuencia; id++) {
+            Evento e = anillo[(int) (id % anillo.length)];
+            if (e != null && e.id() == id && s.interesa(e.idCentral())) {
+                pendientes.add(e);
+            }
+        }
+        // Si hay más pendientes de los que caben en la cola se envían solo los más recientes
+        int inicio = Math.max(0, pendientes.size() - capacidadCola);
+        for (int i = inicio; i < pendientes.size(); i++) {
+            s.encolar(pendientes.get(i).sse());
+        }
+    }
+
+    private void enviarLatidos() {
+        synchronized (lock) {
+            List<Suscriptor> lentos = entregar(suscriptores, LATIDO, null);
+            if (lentos != null) {
+                lentos.forEach(s -> desconectar(s, "sin respuesta al latido"));
+            }
+        }
+    }
+
+    private void desconectar(Suscriptor s, String motivo) {
+        desconectados.incrementAndGet();
+        logger.warn("Cliente SSE desconectado: {}", motivo);
+        quitar(s);
+        // complete() espera a que termine un envío en curso; no debe bloquear a quien publica
+        envios.execute(s.emitter::complete);
+    }
+
+    private void quitar(Suscriptor s) {
+        s.cerrado = true;
+        s.cola.clear();
+        synchronized (lock) {
+            if (!suscriptores.remove(s)) return;
+            if (s.centrales == null) {
+                sinFiltro.remove(s);
+            } else {
+                for (Integer id : s.centrales) {
+                    Set<Suscriptor> set = porCentral.get(id);
+                    if (set != null && set.remove(s) && set.isEmpty()) {
+                        porCentral.remove(id);
+                    }
+                }
+            }
+        }
+    }
+
+    private static long parsearId(String ultimoId) {
+        if (ultimoId == null || ultimoId.isBlank()) return -1;
+        try {
+            return Long.parseLong(ultimoId.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    public int getSuscriptores() {
+        synchronized (lock) {
+            return suscriptores.size();
+        }
+    }
+
+    public long getDesconectados() {
+        return desconectados.get();
+    }
+
+    @PreDestroy
+    public void destroy() {
+        latidos.shutdownNow();
+        List<Suscriptor> activos;
+        synchronized (lock) {
+            activos = new ArrayList<>(suscriptores);
+        }
+        activos.forEach(s -> {
+            s.cerrado = true;
+            s.emitter.complete();
+        });
+        envios.shutdownNow();
+    }
+
+    private final class Suscriptor {
+        final SseEmitter emitter;
+        final Set<Integer> centrales;
+        final BlockingQueue<EventoPreparado> cola = new ArrayBlockingQueue<>(capacidadCola);
+        final AtomicBoolean programado = new AtomicBoolean();
+        volatile boolean cerrado;
+
+        Suscriptor(SseEmitter emitter, Set<Integer> centrales) {
+            this.emitter = emitter;
+            this.centrales = centrales;
+        }
+
+        boolean interesa(Integer idCentral) {
+            return centrales == null || (idCentral != null && centrales.contains(idCentral));
+        }
+
+        /** @return {@code false} si la cola está llena */
+        boolean encolar(EventoPreparado sse) {
+            if (cerrado) return true;
+            if (!cola.offer(sse)) return false;
+            if (programado.compareAndSet(false, true)) {
+                envios.execute(this::vaciar);
+            }
+            return true;
+        }
+
+        private void vaciar() {
+            try {
+                do {
+                    EventoPreparado sse;
+                    while (!cerrado && (sse = cola.poll()) != null) {
+                        emitter.send(sse);
+                    }
+                    programado.set(false);
+                    // Revisa si alguien encoló justo después del último poll
+                } while (!cerrado && !cola.isEmpty() && programado.compareAndSet(false, true));
+            } catch (IOException | IllegalStateException e) {
+                quitar(this);
+            }
+        }
+    }
+
+    /**
+     * Evento SSE inmutable que se arma una sola vez: cada método devuelve un evento nuevo con un
+     * paso más y {@link #build()} aplica los pasos a {@link SseEmitter#event()} la primera vez y
+     * luego devuelve siempre las mismas partes. Así un evento se envía a muchos clientes sin volver a armarlo, cosa que el
+     * builder de Spring no permite porque {@code build()} lo modifica.
+     */
+    static final class EventoPreparado implements SseEmitter.SseEventBuilder {
+        private final List<Consumer<SseEmitter.SseEventBuilder>> pasos;
+        /** Se arma al primer envío; si dos hilos lo arman a la vez, ambos obtienen el mismo contenido. */
+        private volatile Set<ResponseBodyEmitter.DataWithMediaType> partes;
+
+        private EventoPreparado(List<Consumer<SseEmitter.SseEventBuilder>> pasos) {
+            this.pasos = pasos;
+        }
+
+        static EventoPreparado nuevo() {
+            return new EventoPreparado(List.of());
+        }
+
+        private EventoPreparado con(Consumer<SseEmitter.SseEventBuilder> paso) {
+            List<Consumer<SseEmitter.SseEventBuilder>> siguientes = new ArrayList<>(pasos);
+            siguientes.add(paso);
+            return new EventoPreparado(List.copyOf(siguientes));
+        }
+
+        @Override public EventoPreparado id(String id) { return con(b -> b.id(id)); }
+        @Override public EventoPreparado name(String eventName) { return con(b -> b.name(eventName)); }
+        @Override public EventoPreparado reconnectTime(long reconnectTimeMillis) { return con(b -> b.reconnectTime(reconnectTimeMillis)); }
+        @Override public EventoPreparado comment(String comment) { return con(b -> b.comment(comment)); }
+        @Override public EventoPreparado data(Object object) { return con(b -> b.data(object)); }
+        @Override public EventoPreparado data(Object object, MediaType mediaType) { return con(b -> b.data(object, mediaType)); }
+
+        @Override
+        public Set<ResponseBodyEmitter.DataWithMediaType> build() {
+            Set<ResponseBodyEmitter.DataWithMediaType> armadas = partes;
+            if (armadas == null) {
+                SseEmitter.SseEventBuilder builder = SseEmitter.event();
+                pasos.forEach(p -> p.accept(builder));
+                armadas = Collections.unmodifiableSet(builder.build());
+                partes = armadas;
+            }
+            return armadas;
+        }
+    }
+}
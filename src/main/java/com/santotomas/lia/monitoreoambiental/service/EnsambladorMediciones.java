@@ -0,0 +1,282 @@
+package com.santotomas.lia.monitoreoambiental.service;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongConsumer;
+
+/**
+ * Ensambla las cinco partes de una medición (tt, hh, pm25, pm10, fecha) que llegan
+ * por tópicos MQTT separados. Cada estación tiene una ranura con los valores en campos
+ * primitivos y una máscara de bits atómica: el hilo que completa la máscara es el único
+ * que emite la medición, aunque lleguen mensajes de la misma estación en paralelo.
+ * <p>
+ * En el camino habitual no se reserva memoria: el tópico completo se resuelve contra
+ * una caché de rutas y el payload se convierte directamente a primitivos.
+ */
+public class EnsambladorMediciones {
+
+    public static final int CAMPO_TT = 1;
+    public static final int CAMPO_HH = 1 << 1;
+    public static final int CAMPO_PM25 = 1 << 2;
+    public static final int CAMPO_PM10 = 1 << 3;
+    public static final int CAMPO_FECHA = 1 << 4;
+    static final int COMPLETO = CAMPO_TT | CAMPO_HH | CAMPO_PM25 | CAMPO_PM10 | CAMPO_FECHA;
+    private static final int BLOQUEO = 1 << 30;
+
+    public enum Resultado {
+        PARCIAL,
+        COMPLETA,
+        TOPICO_INVALIDO,
+        CAMPO_DESCONOCIDO
+    }
+
+    /** Recibe cada medición completa exactamente una vez. */
+    @FunctionalInterface
+    public interface Receptor {
+        /**
+         * @param prefijo prefijo del tópico de la estación, p. ej. {@code /colegio1/Aire}
+         * @param fecha   segundos desde 1970-01-01T00:00 en hora local (sin zona)
+         */
+        void medicionCompleta(String prefijo, long fecha, float temperatura, float humedad, float pm25, float pm10);
+    }
+
+    /** Estado en ensamblaje de una estación. Los campos planos se protegen con el bit de bloqueo de {@code estado}. */
+    static final class Ranura {
+        private static final VarHandle ESTADO;
+
+        static {
+            try {
+                ESTADO = MethodHandles.lookup().findVarHandle(Ranura.class, "estado", int.class);
+            } catch (ReflectiveOperationException e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+
+        final String prefijo;
+        private volatile int estado;
+        private float temperatura;
+        private float humedad;
+        private float pm25;
+        private float pm10;
+        private long fecha;
+        private long primerCampoNanos;
+        private volatile long ultimaActualizacion;
+
+        Ranura(String prefijo) {
+            this.prefijo = prefijo;
+        }
+
+        /** Adquiere el bit de bloqueo y devuelve la máscara que había. */
+        private int bloquear() {
+            while (true) {
+                int s = estado;
+                if ((s & BLOQUEO) == 0 && ESTADO.compareAndSet(this, s, s | BLOQUEO)) {
+                    return s;
+                }
+                Thread.onSpinWait();
+            }
+        }
+
+        int mascara() {
+            return estado & ~BLOQUEO;
+        }
+    }
+
+    private record Ruta(Ranura ranura, int campo) {}
+
+    private static final Ruta RUTA_DESCONOCIDA = new Ruta(null, 0);
+
+    private final ConcurrentHashMap<String, Ranura> ranuras = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Ruta> rutas = new ConcurrentHashMap<>();
+    private final Receptor receptor;
+    private final LongConsumer latencias;
+
+    public EnsambladorMediciones(Receptor receptor) {
+        this(receptor, null);
+    }
+
+    /**
+     * @param latencias recibe, por cada medición completa, los nanosegundos entre la llegada de
+     *                  su primer y su último campo
+     */
+    public EnsambladorMediciones(Receptor receptor, LongConsumer latencias) {
+        this.receptor = receptor;
+        this.latencias = latencias;
+    }
+
+    /**
+     * Registra un valor recibido por MQTT.
+     *
+     * @throws NumberFormatException si el payload no es un número o una fecha {@code dd/MM/yyyy HH:mm:ss} válida
+     */
+    public Resultado procesar(String topic, String payload) {
+        Ruta ruta = rutas.get(topic);
+        if (ruta == null) {
+            ruta = resolverRuta(topic);
+            if (ruta == null) return Resultado.TOPICO_INVALIDO;
+        }
+        if (ruta.campo == 0) return Resultado.CAMPO_DESCONOCIDO;
+
+        // Convertir antes de tomar el bloqueo para mantener la sección crítica mínima
+        float valor = 0f;
+        long fecha = 0L;
+        if (ruta.campo == CAMPO_FECHA) {
+            fecha = parsearFecha(payload);
+        } else {
+            valor = Float.parseFloat(payload);
+        }
+
+        Ranura r = ruta.ranura;
+        int previo = r.bloquear();
+        switch (ruta.campo) {
+            case CAMPO_TT -> r.temperatura = valor;
+            case CAMPO_HH -> r.humedad = valor;
+            case CAMPO_PM25 -> r.pm25 = valor;
+            case CAMPO_PM10 -> r.pm10 = valor;
+            default -> r.fecha = fecha;
+        }
+        r.ultimaActualizacion = System.currentTimeMillis();
+        if (previo == 0 && latencias != null) r.primerCampoNanos = System.nanoTime();
+        int nueva = previo | ruta.campo;
+        if (nueva != COMPLETO) {
+            r.estado = nueva;
+            return Resultado.PARCIAL;
+        }
+        float tt = r.temperatura, hh = r.humedad, p25 = r.pm25, p10 = r.pm10;
+        long f = r.fecha;
+        long primerCampo = r.primerCampoNanos;
+        r.estado = 0;
+        if (latencias != null) latencias.accept(System.nanoTime() - primerCampo);
+        receptor.medicionCompleta(r.prefijo, f, tt, hh, p25, p10);
+        return Resultado.COMPLETA;
+    }
+
+    /**
+     * Descarta las mediciones incompletas sin actualizar desde antes de {@code umbralMillis}.
+     *
+     * @return cantidad de mediciones descartadas
+     */
+    public int limpiarIncompletas(long umbralMillis) {
+        int descartadas = 0;
+        for (Ranura r : ranuras.values()) {
+            if (r.mascara() == 0 || r.ultimaActualizacion >= umbralMillis) continue;
+            int previo = r.bloquear();
+            if (previo != 0 && r.ultimaActualizacion < umbralMillis) {
+                r.estado = 0;
+                descartadas++;
+            } else {
+                r.estado = previo;
+            }
+        }
+        return descartadas;
+    }
+
+    /**
+     * Quita una estación que dejó de estar suscrita.
+     *
+     * @return {@code true} si tenía una medición a medio ensamblar, que se pierde
+     */
+    public boolean olvidarEstacion(String prefijo) {
+        Ranura r = ranuras.remove(prefijo);
+        if (r == null) return false;
+        rutas.values().removeIf(ruta -> ruta.ranura == r);
+        int previo = r.bloquear();
+        r.estado = 0;
+        return previo != 0;
+    }
+
+    public int getEstacionesActivas() {
+        return ranuras.size();
+    }
+
+    private Ruta resolverRuta(String topic) {
+        int ultimaBarra = topic.lastIndexOf('/');
+        if (ultimaBarra <= 0 || ultimaBarra == topic.length() - 1) return null;
+        int inicio = topic.charAt(0) == '/' ? 1 : 0;
+        // Se exige al menos estación/Aire/tipo, igual que el formato de tópico de las centrales
+        if (topic.indexOf('/', inicio) >= ultimaBarra) return null;
+        int campo = campoDeSufijo(topic, ultimaBarra + 1);
+        if (campo == 0) {
+            return rutas.computeIfAbsent(topic, t -> RUTA_DESCONOCIDA);
+        }
+        String prefijo = topic.substring(0, ultimaBarra).intern();
+        Ranura ranura = ranuras.computeIfAbsent(prefijo, Ranura::new);
+        return rutas.computeIfAbsent(topic, t -> new Ruta(ranura, campo));
+    }
+
+    private static int campoDeSufijo(String topic, int desde) {
+        int largo = topic.length() - desde;
+        if (largo == 2) {
+            if (topic.startsWith("tt", desde)) return CAMPO_TT;
+            if (topic.startsWith("hh", desde)) return CAMPO_HH;
+        } else if (largo == 4) {
+            if (topic.startsWith("pm25", desde)) return CAMPO_PM25;
+            if (topic.startsWith("pm10", desde)) return CAMPO_PM10;
+        } else if (largo == 5 && topic.startsWith("fecha", desde)) {
+            return CAMPO_FECHA;
+        }
+        return 0;
+    }
+
+    /**
+     * Convierte {@code dd/MM/yyyy HH:mm:ss} a segundos desde la época sin crear objetos intermedios.
+     */
+    public static long parsearFecha(CharSequence s) {
+        int ini = 0, fin = s.length();
+        while (ini < fin && s.charAt(ini) <= ' ') ini++;
+        while (fin > ini && s.charAt(fin - 1) <= ' ') fin--;
+        if (fin - ini != 19
+                || s.charAt(ini + 2) != '/' || s.charAt(ini + 5) != '/' || s.charAt(ini + 10) != ' '
+                || s.charAt(ini + 13) != ':' || s.charAt(ini + 16) != ':') {
+            throw new NumberFormatException("Fecha con formato inválido: " + s);
+        }
+        int dia = digitos(s, ini, 2);
+        int mes = digitos(s, ini + 3, 2);
+        int anio = digitos(s, ini + 6, 4);
+        int hora = digitos(s, ini + 11, 2);
+        int minuto = digitos(s, ini + 14, 2);
+        int segundo = digitos(s, ini + 17, 2);
+        if (mes < 1 || mes > 12 || dia < 1 || dia > diasDelMes(anio, mes)
+                || hora > 23 || minuto > 59 || segundo > 59) {
+            throw new NumberFormatException("Fecha fuera de rango: " + s);
+        }
+        return diaEpoch(anio, mes, dia) * 86_400L + hora * 3_600L + minuto * 60L + segundo;
+    }
+
+    private static int digitos(CharSequence s, int desde, int cantidad) {
+        int v = 0;
+        for (int i = desde; i < desde + cantidad; i++) {
+            int d = s.charAt(i) - '0';
+            if (d < 0 || d > 9) throw new NumberFormatException("Dígito inválido en fecha: " + s);
+            v = v * 10 + d;
+        }
+        return v;
+    }
+
+    private static int diasDelMes(int anio, int mes) {
+        return switch (mes) {
+            case 2 -> ((anio % 4 == 0 && anio % 100 != 0) || anio % 400 == 0) ? 29 : 28;
+            case 4, 6, 9, 11 -> 30;
+            default -> 31;
+        };
+    }
+
+    /** Mismo cálculo que {@code LocalDate.toEpochDay()}. */
+    private static long diaEpoch(int anio, int mes, int dia) {
+        long y = anio;
+        long total = 365 * y;
+        if (y >= 0) {
+            total += (y + 3) / 4 - (y + 99) / 100 + (y + 399) / 400;
+        } else {
+            total -= y / -4 - y / -100 + y / -400;
+        }
+        total += (367 * mes - 362) / 12;
+        total += dia - 1;
+        if (mes > 2) {
+            total--;
+            if (!(((anio % 4 == 0 && anio % 100 != 0) || anio % 400 == 0))) total--;
+        }
+        return total - 719_528L;
+    }
+}
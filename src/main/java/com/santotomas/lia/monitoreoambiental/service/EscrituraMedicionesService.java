@@ -0,0 +1,329 @@
+package com.santotomas.lia.monitoreoambiental.service;
+
+import com.santotomas.lia.monitoreoambiental.model.Medicion;
+import com.santotomas.lia.monitoreoambiental.repository.BitacoraMediciones;
+import com.santotomas.lia.monitoreoambiental.repository.MedicionStore;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Etapa de escritura diferida (write-behind) para las mediciones completas.
+ * El hilo de MQTT solo encola; un hilo de vaciado agrupa las mediciones y las
+ * guarda por lotes en el {@link MedicionStore}, ya sea al alcanzar el tamaño de lote o al
+ * vencer el intervalo.
+ * <p>
+ * Con la bitácora habilitada ({@code mediciones.wal.habilitado}) cada medición queda en disco
+ * antes de encolarse. Lo que no se puede guardar (cola llena o base de datos caída tras los
+ * reintentos) no se descarta: queda en la bitácora y lo inserta {@link ReproduccionBitacoraService}.
+ */
+@Service
+public class EscrituraMedicionesService {
+
+    private static final Logger logger = LoggerFactory.getLogger(EscrituraMedicionesService.class);
+
+    /** Qué hacer cuando la cola está llena porque la base de datos no da abasto. */
+    public enum PoliticaDesborde {
+        /** Espera hasta {@code timeout-encolar-ms} y, si sigue llena, descarta la nueva. */
+        BLOQUEAR,
+        /** Descarta la medición que llega. */
+        DESCARTAR_NUEVA,
+        /** Descarta la medición más antigua de la cola para hacer espacio. */
+        DESCARTAR_ANTIGUA
+    }
+
+    private final MedicionStore medicionStore;
+    private final ApplicationEventPublisher eventPublisher;
+    private final BitacoraMediciones bitacora;
+    private final MeterRegistry meterRegistry;
+
+    /** Una medición encolada y su secuencia en la bitácora (-1 si no está en ella). */
+    private record Pendiente(Medicion medicion, long secuencia) {
+    }
+
+    @Value("${mediciones.escritura.capacidad-cola:10000}")
+    private int capacidadCola;
+
+    @Value("${mediciones.escritura.tamano-lote:500}")
+    private int tamanoLote;
+
+    @Value("${mediciones.escritura.intervalo-ms:1000}")
+    private long intervaloMs;
+
+    @Value("${mediciones.escritura.politica:BLOQUEAR}")
+    private PoliticaDesborde politica;
+
+    @Value("${mediciones.escritura.timeout-encolar-ms:50}")
+    private long timeoutEncolarMs;
+
+    @Value("${mediciones.escritura.reintentos:3}")
+    private int reintentos;
+
+    private BlockingQueue<Pendiente> cola;
+    private Thread hiloVaciado;
+    private volatile boolean activo;
+
+    private final AtomicLong descartadas = new AtomicLong();
+    private final AtomicLong persistidas = new AtomicLong();
+    private final AtomicLong diferidas = new AtomicLong();
+
+    private Timer persistencia;
+    private DistributionSummary tamanosLote;
+    private Counter intentosFallidos;
+
+    public EscrituraMedicionesService(MedicionStore medicionStore, ApplicationEventPublisher eventPublisher,
+                                      BitacoraMediciones bitacora, MeterRegistry meterRegistry) {
+        this.medicionStore = medicionStore;
+        this.eventPublisher = eventPublisher;
+        this.bitacora = bitacora;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void init() {
+        cola = new ArrayBlockingQueue<>(capacidadCola);
+        registrarMetricas();
+        activo = true;
+        hiloVaciado = new Thread(this::bucleVaciado, "mediciones-write-behind");
+        hiloVaciado.setDaemon(true);
+        hiloVaciado.start();
+        logger.info("Escritura diferida iniciada (cola={}, lote={}, intervalo={} ms, politica={})",
+                capacidadCola, tamanoLote, intervaloMs, politica);
+    }
+
+    private void registrarMetricas() {
+        Gauge.builder("mediciones.escritura.cola", cola, BlockingQueue::size)
+                .description("Mediciones esperando ser persistidas")
+                .register(meterRegistry);
+        FunctionCounter.builder("mediciones.escritura.persistidas", persistidas, AtomicLong::get)
+                .register(meterRegistry);
+        FunctionCounter.builder("mediciones.escritura.descartadas", descartadas, AtomicLong::get)
+                .description("Mediciones perdidas sin respaldo en la bitácora")
+                .register(meterRegistry);
+        FunctionCounter.builder("mediciones.escritura.diferidas", diferidas, AtomicLong::get)
+                .description("Mediciones que quedaron en la bitácora para la reproducción")
+                .register(meterRegistry);
+        persistencia = Timer.builder("mediciones.escritura.persistencia")
+                .description("Duración de cada inserción de un lote en la base de datos")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        tamanosLote = DistributionSummary.builder("mediciones.escritura.lote")
+                .description("Mediciones por lote persistido")
+                .baseUnit("mediciones")
+                .register(meterRegistry);
+        intentosFallidos = Counter.builder("mediciones.escritura.intentos_fallidos")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Escribe la medición en la bitácora, si está habilitada, y la encola. Nunca bloquea más
+     * de {@code timeout-encolar-ms} más la sincronización de la bitácora, de modo que una base
+     * de datos lenta no detiene el hilo de entrega de MQTT.
+     *
+     * @return {@code true} si la medición quedó en la cola
+     */
+    public boolean encolar(Medicion medicion) {
+        long secuencia = -1;
+        try {
+            secuencia = bitacora.agregar(medicion);
+        } catch (IOException e) {
+            logger.error("No se pudo escribir la medición en la bitácora, se encola sin respaldo: {}", e.getMessage());
+        }
+        return ofrecer(new Pendiente(medicion, secuencia));
+    }
+
+    /**
+     * Como {@link #encolar}, para las mediciones de un mensaje empaquetado: se escriben juntas en
+     * la bitácora con una sola sincronización y luego se encolan una a una.
+     *
+     * @return cantidad de mediciones que quedaron en la cola
+     */
+    public int encolarLote(List<Medicion> mediciones) {
+        long[] secuencias = null;
+        try {
+            secuencias = bitacora.agregar(mediciones);
+        } catch (IOException e) {
+            logger.error("No se pudieron escribir {} mediciones en la bitácora, se encolan sin respaldo: {}",
+                    mediciones.size(), e.getMessage());
+        }
+        int aceptadas = 0;
+        for (int i = 0; i < mediciones.size(); i++) {
+            if (ofrecer(new Pendiente(mediciones.get(i), secuencias != null ? secuencias[i] : -1))) aceptadas++;
+        }
+        return aceptadas;
+    }
+
+    /** Pone en la cola una medición ya escrita en la bitácora, según la política de desborde. */
+    private boolean ofrecer(Pendiente pendiente) {
+        boolean aceptada;
+        switch (politica) {
+            case DESCARTAR_NUEVA -> aceptada = cola.offer(pendiente);
+            case DESCARTAR_ANTIGUA -> {
+                while (!cola.offer(pendiente)) {
+                    Pendiente antigua = cola.poll();
+                    if (antigua != null) {
+                        descartar(antigua);
+                    }
+                }
+                aceptada = true;
+            }
+            default -> {
+                try {
+                    aceptada = cola.offer(pendiente, timeoutEncolarMs, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    aceptada = false;
+                }
+            }
+        }
+        if (!aceptada) {
+            if (descartar(pendiente)) {
+                logger.warn("Cola de escritura llena ({}). La medición queda en la bitácora para reproducirla.", capacidadCola);
+            } else {
+                logger.warn("Cola de escritura llena ({}). Medición descartada (total descartadas: {}).",
+                        capacidadCola, descartadas.get());
+            }
+        }
+        return aceptada;
+    }
+
+    /**
+     * Saca una medición del camino normal de escritura.
+     *
+     * @return {@code true} si quedó en la bitácora para la reproducción, {@code false} si se perdió
+     */
+    private boolean descartar(Pendiente pendiente) {
+        if (pendiente.secuencia() >= 0) {
+            bitacora.marcarFallidas(pendiente.secuencia());
+            diferidas.incrementAndGet();
+            return true;
+        }
+        descartadas.incrementAndGet();
+        return false;
+    }
+
+    private void bucleVaciado() {
+        List<Pendiente> lote = new ArrayList<>(tamanoLote);
+        while (activo || !cola.isEmpty()) {
+            try {
+                llenarLote(lote);
+                if (!lote.isEmpty()) {
+                    vaciar(lote);
+                    lote.clear();
+                }
+            } catch (InterruptedException e) {
+                if (!activo) break;
+            } catch (Exception e) {
+                logger.error("Error inesperado en el hilo de escritura diferida: {}", e.getMessage(), e);
+                lote.clear();
+            }
+        }
+        cola.drainTo(lote);
+        if (!lote.isEmpty()) {
+            vaciar(lote);
+        }
+    }
+
+    /** Espera la primera medición y luego completa el lote hasta su tamaño o hasta que vence el intervalo. */
+    private void llenarLote(List<Pendiente> lote) throws InterruptedException {
+        Pendiente primera = cola.poll(intervaloMs, TimeUnit.MILLISECONDS);
+        if (primera == null) return;
+        lote.add(primera);
+        long limite = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(intervaloMs);
+        while (lote.size() < tamanoLote) {
+            cola.drainTo(lote, tamanoLote - lote.size());
+            if (lote.size() >= tamanoLote) break;
+            long restante = limite - System.nanoTime();
+            if (restante <= 0) break;
+            Pendiente siguiente = cola.poll(restante, TimeUnit.NANOSECONDS);
+            if (siguiente == null) break;
+            lote.add(siguiente);
+        }
+    }
+
+    private void vaciar(List<Pendiente> lote) {
+        List<Medicion> mediciones = new ArrayList<>(lote.size());
+        for (Pendiente p : lote) {
+            mediciones.add(p.medicion());
+        }
+        long espera = 100;
+        for (int intento = 0; ; intento++) {
+            long inicio = System.nanoTime();
+            try {
+                medicionStore.agregar(mediciones);
+                persistencia.record(System.nanoTime() - inicio, TimeUnit.NANOSECONDS);
+                tamanosLote.record(lote.size());
+                persistidas.addAndGet(lote.size());
+                bitacora.confirmar(secuencias(lote));
+                logger.debug("Lote de {} mediciones persistido", lote.size());
+                break;
+            } catch (Exception e) {
+                intentosFallidos.increment();
+                if (intento >= reintentos) {
+                    long[] secuencias = secuencias(lote);
+                    bitacora.marcarFallidas(secuencias);
+                    diferidas.addAndGet(secuencias.length);
+                    descartadas.addAndGet(lote.size() - secuencias.length);
+                    logger.error("No se pudo persistir un lote de {} mediciones tras {} intentos ({} quedan en la bitácora): {}",
+                            lote.size(), intento + 1, secuencias.length, e.getMessage(), e);
+                    return;
+                }
+                logger.warn("Fallo al persistir lote de {} mediciones (intento {}), reintentando en {} ms: {}",
+                        lote.size(), intento + 1, espera, e.getMessage());
+                try {
+                    Thread.sleep(espera);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                }
+                espera = Math.min(espera * 2, 5000);
+            }
+        }
+        eventPublisher.publishEvent(new MedicionesPersistidasEvent(mediciones));
+    }
+
+    private static long[] secuencias(List<Pendiente> lote) {
+        return lote.stream().mapToLong(Pendiente::secuencia).filter(s -> s >= 0).toArray();
+    }
+
+    public int getTamanoCola() {
+        return cola.size();
+    }
+
+    public long getDescartadas() {
+        return descartadas.get();
+    }
+
+    public long getPersistidas() {
+        return persistidas.get();
+    }
+
+    /** Mediciones que no se pudieron guardar y quedaron en la bitácora para la reproducción. */
+    public long getDiferidas() {
+        return diferidas.get();
+    }
+
+    @PreDestroy
+    public void destroy() throws InterruptedException {
+        activo = false;
+        hiloVaciado.interrupt();
+        hiloVaciado.join(TimeUnit.SECONDS.toMillis(10));
+    }
+}
@@ -0,0 +1,162 @@
+package com.santotomas.lia.monitoreoambiental.service;
+
+/**
+ * Acumulador combinable de una variable: cantidad, media y varianza (Welford), mínimo,
+ * máximo y un histograma logarítmico para estimar percentiles con error relativo de ~1%.
+ * Dos acumuladores se pueden combinar con {@link #combinar}, por ejemplo uno por central.
+ * <p>
+ * El histograma usa cubetas de ancho geométrico {@code GAMMA}, separadas para valores
+ * positivos y negativos; los valores con magnitud menor a {@code MINIMO} cuentan como cero.
+ */
+public class EstadisticaVariable {
+
+    private static final double GAMMA = 1.02;
+    private static final double LOG_GAMMA = Math.log(GAMMA);
+    private static final double MINIMO = 1e-3;
+    private static final double MAXIMO = 1e6;
+    private static final int DESPLAZAMIENTO = (int) Math.ceil(Math.log(MINIMO) / LOG_GAMMA);
+    private static final int CUBETAS = (int) Math.ceil(Math.log(MAXIMO) / LOG_GAMMA) - DESPLAZAMIENTO + 1;
+
+    private long n;
+    private double media;
+    private double m2;
+    private double min = Double.NaN;
+    private double max = Double.NaN;
+
+    private long[] positivos;
+    private long[] negativos;
+    private long ceros;
+    private long totalSketch;
+
+    /** Agrega un valor a los momentos y al histograma. */
+    public void agregar(double v) {
+        if (Double.isNaN(v)) return;
+        n++;
+        double delta = v - media;
+        media += delta / n;
+        m2 += delta * (v - media);
+        actualizarExtremos(v, v);
+        agregarAlHistograma(v, 1);
+    }
+
+    /**
+     * Agrega un grupo ya resumido (por ejemplo, una fila de los agregados por hora) a los
+     * momentos y extremos. El histograma no cambia; para eso está {@link #agregarAlHistograma}.
+     */
+    public void agregarResumen(long nGrupo, double suma, double sumaCuadrados, double minGrupo, double maxGrupo) {
+        if (nGrupo <= 0) return;
+        double mediaGrupo = suma / nGrupo;
+        double m2Grupo = Math.max(0, sumaCuadrados - suma * mediaGrupo);
+        combinarMomentos(nGrupo, mediaGrupo, m2Grupo);
+        actualizarExtremos(minGrupo, maxGrupo);
+    }
+
+    /** Suma {@code peso} observaciones del valor {@code v} al histograma de percentiles. */
+    public void agregarAlHistograma(double v, long peso) {
+        if (Double.isNaN(v) || peso <= 0) return;
+        double abs = Math.abs(v);
+        if (abs < MINIMO) {
+            ceros += peso;
+        } else if (v > 0) {
+            if (positivos == null) positivos = new long[CUBETAS];
+            positivos[indice(abs)] += peso;
+        } else {
+            if (negativos == null) negativos = new long[CUBETAS];
+            negativos[indice(abs)] += peso;
+        }
+        totalSketch += peso;
+    }
+
+    /** Incorpora otro acumulador; el resultado es el mismo que si se hubieran agregado todos los valores aquí. */
+    public void combinar(EstadisticaVariable otra) {
+        combinarMomentos(otra.n, otra.media, otra.m2);
+        if (otra.n > 0) actualizarExtremos(otra.min, otra.max);
+        positivos = sumar(positivos, otra.positivos);
+        negativos = sumar(negativos, otra.negativos);
+        ceros += otra.ceros;
+        totalSketch += otra.totalSketch;
+    }
+
+    private void combinarMomentos(long nOtra, double mediaOtra, double m2Otra) {
+        if (nOtra == 0) return;
+        long total = n + nOtra;
+        double delta = mediaOtra - media;
+        media += delta * nOtra / total;
+        m2 += m2Otra + delta * delta * ((double) n * nOtra / total);
+        n = total;
+    }
+
+    private void actualizarExtremos(double minNuevo, double maxNuevo) {
+        if (!Double.isNaN(minNuevo) && (Double.isNaN(min) || minNuevo < min)) min = minNuevo;
+        if (!Double.isNaN(maxNuevo) && (Double.isNaN(max) || maxNuevo > max)) max = maxNuevo;
+    }
+
+    public long getN() {
+        return n;
+    }
+
+    public Double getMedia() {
+        return n > 0 ? media : null;
+    }
+
+    public Double getMin() {
+        return n > 0 ? min : null;
+    }
+
+    public Double getMax() {
+        return n > 0 ? max : null;
+    }
+
+    /** Desviación estándar muestral. */
+    public Double getDesviacion() {
+        if (n == 0) return null;
+        return n == 1 ? 0.0 : Math.sqrt(m2 / (n - 1));
+    }
+
+    /** Percentil aproximado, {@code q} entre 0 y 1; se acota al mínimo y máximo observados. */
+    public Double percentil(double q) {
+        if (totalSketch == 0) return null;
+        long rango = (long) Math.floor(q * (totalSketch - 1));
+        long acumulado = 0;
+        Double estimado = null;
+        if (negativos != null) {
+            for (int i = CUBETAS - 1; i >= 0 && estimado == null; i--) {
+                acumulado += negativos[i];
+                if (acumulado > rango) estimado = -valorCubeta(i);
+            }
+        }
+        if (estimado == null) {
+            acumulado += ceros;
+            if (acumulado > rango) estimado = 0.0;
+        }
+        if (estimado == null && positivos != null) {
+            for (int i = 0; i < CUBETAS && estimado == null; i++) {
+                acumulado += positivos[i];
+                if (acumulado > rango) estimado = valorCubeta(i);
+            }
+        }
+        if (estimado == null) return max;
+        if (!Double.isNaN(min) && estimado < min) return min;
+        if (!Double.isNaN(max) && estimado > max) return max;
+        return estimado;
+    }
+
+    private static int indice(double abs) {
+        int k = (int) Math.ceil(Math.log(Math.min(abs, MAXIMO)) / LOG_GAMMA) - DESPLAZAMIENTO;
+        return Math.max(0, Math.min(CUBETAS - 1, k));
+    }
+
+    /** Punto de la cubeta con el mismo error relativo hacia ambos bordes. */
+    private static double valorCubeta(int i) {
+        return 2 * Math.pow(GAMMA, i + DESPLAZAMIENTO) / (GAMMA + 1);
+    }
+
+    private static long[] sumar(long[] destino, long[] origen) {
+        if (origen == null) return destino;
+        if (destino == null) return origen.clone();
+        for (int i = 0; i < CUBETAS; i++) {
+            destino[i] += origen[i];
+        }
+        return destino;
+    }
+}
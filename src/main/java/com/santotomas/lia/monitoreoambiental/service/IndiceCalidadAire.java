@@ -0,0 +1,146 @@
+package com.santotomas.lia.monitoreoambiental.service;
+
+import com.santotomas.lia.monitoreoambiental.model.CodigoCalidadAire;
+
+import java.util.Arrays;
+
+import static com.santotomas.lia.monitoreoambiental.model.CodigoCalidadAire.PM10;
+import static com.santotomas.lia.monitoreoambiental.model.CodigoCalidadAire.PM25;
+import static com.santotomas.lia.monitoreoambiental.model.CodigoCalidadAire.SIN_INDICE;
+import static com.santotomas.lia.monitoreoambiental.model.CodigoCalidadAire.codificar;
+
+/**
+ * Índice de calidad del aire (escala AQI de la EPA, 0 a 500) calculado con NowCast sobre PM2.5 y
+ * PM10. Por cada contaminante se promedia cada hora y se ponderan las últimas 12 horas con un
+ * peso {@code w = max(mín/máx, 0.5)} elevado a la antigüedad de la hora; hacen falta datos en 2
+ * de las 3 horas más recientes. La concentración resultante se traduce a un subíndice con la
+ * tabla de cortes y el índice es el mayor de los dos; ese es el contaminante primario.
+ * <p>
+ * El índice y el contaminante viajan juntos como un código entero de {@link CodigoCalidadAire}.
+ */
+public final class IndiceCalidadAire {
+
+    static final int HORAS_NOWCAST = 12;
+
+    // Cortes de la EPA (revisión 2024 para PM2.5): concentración baja y alta, índice bajo y alto
+    private static final double[][] CORTES_PM25 = {
+            {0.0, 9.0, 0, 50}, {9.1, 35.4, 51, 100}, {35.5, 55.4, 101, 150},
+            {55.5, 125.4, 151, 200}, {125.5, 225.4, 201, 300}, {225.5, 325.4, 301, 500}};
+    private static final double[][] CORTES_PM10 = {
+            {0, 54, 0, 50}, {55, 154, 51, 100}, {155, 254, 101, 150},
+            {255, 354, 151, 200}, {355, 424, 201, 300}, {425, 604, 301, 500}};
+
+    private IndiceCalidadAire() {
+    }
+
+    /** Subíndice de una concentración NowCast (µg/m³); sobre el último corte vale 500. */
+    static int subindice(double concentracion, int contaminante) {
+        double[][] cortes;
+        double c;
+        if (contaminante == PM25) {
+            cortes = CORTES_PM25;
+            c = Math.floor(concentracion * 10 + 1e-9) / 10; // se trunca a 0,1 µg/m³
+        } else {
+            cortes = CORTES_PM10;
+            c = Math.floor(concentracion + 1e-9);
+        }
+        for (double[] k : cortes) {
+            if (c <= k[1]) {
+                return (int) Math.round((k[3] - k[2]) / (k[1] - k[0]) * (Math.max(c, k[0]) - k[0]) + k[2]);
+            }
+        }
+        return 500;
+    }
+
+    /**
+     * Promedios por hora de una estación en un arreglo circular de {@value #HORAS} horas. Con 24
+     * horas, una lectura que llega con hasta 12 horas de atraso todavía encuentra las 12 previas.
+     * Agregar una lectura y calcular su índice recorre a lo más {@value #HORAS_NOWCAST} horas.
+     * No es segura entre hilos.
+     */
+    public static final class Ventana {
+        static final int HORAS = 24;
+
+        // Suma y cantidad por hora: PM2.5 en [0, HORAS) y PM10 en [HORAS, 2 * HORAS)
+        private final double[] suma = new double[2 * HORAS];
+        private final int[] cantidad = new int[2 * HORAS];
+        private long horaReciente = Long.MIN_VALUE;
+
+        /**
+         * Agrega una lectura (valores faltantes como {@code NaN}) y devuelve el código del índice
+         * en su hora, o {@link #SIN_INDICE} si la lectura es más antigua que la ventana o no hay
+         * datos suficientes.
+         *
+         * @param fechaSegundos segundos desde la época, hora local
+         */
+        public int agregar(long fechaSegundos, float pm25, float pm10) {
+            long hora = Math.floorDiv(fechaSegundos, 3600);
+            if (horaReciente == Long.MIN_VALUE || hora - horaReciente >= HORAS) {
+                Arrays.fill(suma, 0);
+                Arrays.fill(cantidad, 0);
+                horaReciente = hora;
+            } else if (hora > horaReciente) {
+                for (long h = horaReciente + 1; h <= hora; h++) {
+                    int s = casilla(h);
+                    suma[s] = suma[HORAS + s] = 0;
+                    cantidad[s] = cantidad[HORAS + s] = 0;
+                }
+                horaReciente = hora;
+            } else if (horaReciente - hora >= HORAS) {
+                return SIN_INDICE;
+            }
+            int s = casilla(hora);
+            // Un sensor puede entregar valores levemente negativos cerca de cero
+            if (!Float.isNaN(pm25)) {
+                suma[s] += Math.max(pm25, 0f);
+                cantidad[s]++;
+            }
+            if (!Float.isNaN(pm10)) {
+                suma[HORAS + s] += Math.max(pm10, 0f);
+                cantidad[HORAS + s]++;
+            }
+            return indice(hora);
+        }
+
+        private int indice(long hora) {
+            long desde = Math.max(hora - (HORAS_NOWCAST - 1), horaReciente - (HORAS - 1));
+            double c25 = nowCast(0, hora, desde);
+            double c10 = nowCast(HORAS, hora, desde);
+            int i25 = Double.isNaN(c25) ? -1 : subindice(c25, PM25);
+            int i10 = Double.isNaN(c10) ? -1 : subindice(c10, PM10);
+            if (i25 < 0 && i10 < 0) return SIN_INDICE;
+            return i25 >= i10 ? codificar(i25, PM25) : codificar(i10, PM10);
+        }
+
+        /** Concentración NowCast en {@code hora} con las horas desde {@code desde}; NaN si faltan datos. */
+        private double nowCast(int base, long hora, long desde) {
+            int recientes = 0;
+            double max = Double.NEGATIVE_INFINITY;
+            double min = Double.POSITIVE_INFINITY;
+            for (long h = hora; h >= desde; h--) {
+                int s = base + casilla(h);
+                if (cantidad[s] == 0) continue;
+                double c = suma[s] / cantidad[s];
+                if (hora - h < 3) recientes++;
+                max = Math.max(max, c);
+                min = Math.min(min, c);
+            }
+            if (recientes < 2) return Double.NaN;
+            double w = max > 0 ? Math.max(min / max, 0.5) : 1;
+            double numerador = 0;
+            double denominador = 0;
+            double peso = 1;
+            for (long h = hora; h >= desde; h--, peso *= w) {
+                int s = base + casilla(h);
+                if (cantidad[s] == 0) continue;
+                numerador += peso * suma[s] / cantidad[s];
+                denominador += peso;
+            }
+            return numerador / denominador;
+        }
+
+        private static int casilla(long hora) {
+            return (int) Math.floorMod(hora, (long) HORAS);
+        }
+    }
+}
@@ -1,22 +1,26 @@
 package com.santotomas.lia.monitoreoambiental.service;
 
-import com.santotomas.lia.monitoreoambiental.controller.MedicionSseController;
 import com.santotomas.lia.monitoreoambiental.model.Central;
 import com.santotomas.lia.monitoreoambiental.model.Medicion;
-import com.santotomas.lia.monitoreoambiental.model.MedicionTemp;
-import com.santotomas.lia.monitoreoambiental.repository.CentralRepository;
-import com.santotomas.lia.monitoreoambiental.repository.MedicionRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import jakarta.annotation.PostConstruct;
 
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -24,12 +28,12 @@ import org.slf4j.LoggerFactory;
 public class MedicionAmbientalService {
 
     private static final Logger logger = LoggerFactory.getLogger(MedicionAmbientalService.class);
-    private static final java.time.format.DateTimeFormatter DATE_FORMATTER = java.time.format.DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm:ss");
 
-    private final MedicionRepository medicionRepository;
-    private final CentralRepository centralRepository;
+    private final EscrituraMedicionesService escrituraMedicionesService;
+    private final RegistroCentrales registroCentrales;
+    private final CalidadAireService calidadAireService;
 
-    private final Map<String, MedicionTemp> currentMeasurements = new ConcurrentHashMap<>();
+    private final EnsambladorMediciones ensamblador;
     private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
 
     @Value("${mqtt.topics.temperature}")
@@ -47,129 +51,235 @@ public class MedicionAmbientalService {
     @Value("${mqtt.topics.fecha}")
     private String dateTopic;
 
+    private final AtomicLong sinCentral = new AtomicLong();
+
+    private final MeterRegistry meterRegistry;
+    /** Contador de mensajes por tópico, para no buscarlo en el registro en cada mensaje. */
+    private final Map<String, Counter> mensajesPorTopico = new ConcurrentHashMap<>();
+    private final Counter completasTopicos;
+    private final Counter completasEmpaquetado;
+    private final Counter expiradas;
+
+    /** Cada cuánto se resume la ingesta en el log; los avisos repetidos se limitan a uno por motivo en ese lapso. */
+    @Value("${mediciones.log.intervalo-resumen-segundos:60}")
+    private long intervaloResumenSegundos;
+
+    private final Map<String, AtomicLong> ultimoAviso = new ConcurrentHashMap<>();
+    private double mensajesResumidos;
+    private double completasResumidas;
+    private double erroresResumidos;
+
     private static final String DEFAULT_CENTRAL_NAME = "LIA";
     private Central defaultCentral;
 
-    public MedicionAmbientalService(MedicionRepository medicionRepository, CentralRepository centralRepository) {
-        this.medicionRepository = medicionRepository;
-        this.centralRepository = centralRepository;
+    public MedicionAmbientalService(EscrituraMedicionesService escrituraMedicionesService, RegistroCentrales registroCentrales,
+                                    CalidadAireService calidadAireService, MeterRegistry meterRegistry) {
+        this.escrituraMedicionesService = escrituraMedicionesService;
+        this.registroCentrales = registroCentrales;
+        this.calidadAireService = calidadAireService;
+        this.meterRegistry = meterRegistry;
+        Timer latencia = Timer.builder("mediciones.ensamblaje.latencia")
+                .description("Tiempo entre el primer y el último campo de una medición")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.ensamblador = new EnsambladorMediciones(this::medicionEnsamblada,
+                nanos -> latencia.record(nanos, TimeUnit.NANOSECONDS));
+        this.completasTopicos = completas("topicos");
+        this.completasEmpaquetado = completas("empaquetado");
+        this.expiradas = Counter.builder("mediciones.expiradas")
+                .description("Mediciones incompletas descartadas por antigüedad")
+                .register(meterRegistry);
+        FunctionCounter.builder("mediciones.sin_central", sinCentral, AtomicLong::get)
+                .description("Mediciones completas sin central asociada a su tópico")
+                .register(meterRegistry);
+    }
+
+    private Counter completas(String origen) {
+        return Counter.builder("mediciones.completas")
+                .description("Mediciones completas entregadas a la escritura")
+                .tag("origen", origen)
+                .register(meterRegistry);
+    }
+
+    private Counter mensajes(String topic) {
+        return mensajesPorTopico.computeIfAbsent(topic, t -> {
+            int barra = t.lastIndexOf('/');
+            String tipo = barra < 0 ? "otro" : t.substring(barra + 1);
+            return Counter.builder("mediciones.mqtt.mensajes")
+                    .description("Mensajes MQTT recibidos")
+                    .tag("tipo", tipo)
+                    .tag("estacion", barra < 0 ? t : t.substring(0, barra))
+                    .register(meterRegistry);
+        });
+    }
+
+    private void error(String motivo) {
+        meterRegistry.counter("mediciones.mqtt.errores", "motivo", motivo).increment();
+    }
+
+    /**
+     * Indica si corresponde escribir un aviso de este motivo: uno por intervalo de resumen, para que
+     * un equipo mal configurado no llene el log con un aviso por mensaje. Los omitidos quedan en
+     * {@code mediciones.mqtt.errores} y en el resumen periódico.
+     */
+    private boolean avisar(String motivo) {
+        long ahora = System.currentTimeMillis();
+        AtomicLong ultimo = ultimoAviso.computeIfAbsent(motivo, m -> new AtomicLong());
+        long previo = ultimo.get();
+        return ahora - previo >= TimeUnit.SECONDS.toMillis(intervaloResumenSegundos) && ultimo.compareAndSet(previo, ahora);
+    }
+
+    private static double total(MeterRegistry registry, String nombre) {
+        return registry.find(nombre).counters().stream().mapToDouble(Counter::count).sum();
+    }
+
+    private void registrarResumen() {
+        double mensajes = total(meterRegistry, "mediciones.mqtt.mensajes");
+        double completas = completasTopicos.count() + completasEmpaquetado.count();
+        double errores = total(meterRegistry, "mediciones.mqtt.errores");
+        if (mensajes > mensajesResumidos || errores > erroresResumidos) {
+            logger.info("Ingesta en los últimos {} s: {} mensajes, {} mediciones completas, {} errores",
+                    intervaloResumenSegundos, (long) (mensajes - mensajesResumidos),
+                    (long) (completas - completasResumidas), (long) (errores - erroresResumidos));
+        }
+        mensajesResumidos = mensajes;
+        completasResumidas = completas;
+        erroresResumidos = errores;
     }
 
     @PostConstruct
     public void init() {
         logger.trace("Inicializando MedicionAmbientalService...");
-        defaultCentral = centralRepository.findByNombreCentral(DEFAULT_CENTRAL_NAME);
+        defaultCentral = registroCentrales.porNombre(DEFAULT_CENTRAL_NAME);
         if (defaultCentral == null) {
             logger.error("Central '{}' no encontrada en la base de datos. Por favor, asegúrese de insertarla.", DEFAULT_CENTRAL_NAME);
             throw new IllegalStateException("Central por defecto no encontrada: " + DEFAULT_CENTRAL_NAME);
         }
         logger.info("Central por defecto cargada: {}", defaultCentral.getNombreCentral());
         scheduler.scheduleAtFixedRate(this::cleanOldIncompleteMeasurements, 5, 5, TimeUnit.MINUTES);
+        if (intervaloResumenSegundos > 0) {
+            scheduler.scheduleAtFixedRate(this::registrarResumen, intervaloResumenSegundos, intervaloResumenSegundos, TimeUnit.SECONDS);
+        }
     }
 
-    public void processMqttMessage(String topic, String payload) {
-        logger.trace("Procesando mensaje MQTT - Tópico: [{}], Payload: [{}]", topic, payload);
-        // DEPURACIÓN: Mostrar topic y payload crudos
-        System.out.println("[DEPURACION] Tópico recibido: '" + topic + "' | Payload: '" + payload + "'");
-        // Eliminar slash inicial si existe
-        if (topic.startsWith("/")) {
-            topic = topic.substring(1);
-        }
-        // Extraer nombre de estación y tipo de dato del tópico: colegio1/Aire/tt → colegio1, tt
-        String[] parts = topic.split("/");
-        if (parts.length < 3) {
-            logger.warn("Tópico MQTT inesperado: {}", topic);
+    /**
+     * Mensaje tal como llega del adaptador. Los del tópico {@code <topico_base>/packed} traen
+     * mediciones completas y no pasan por el ensamblador; el resto son los cinco tópicos de siempre.
+     */
+    public void processMqttMessage(String topic, byte[] payload) {
+        if (!topic.endsWith(DecodificadorEmpaquetado.SUFIJO)) {
+            processMqttMessage(topic, new String(payload, StandardCharsets.UTF_8));
             return;
         }
-        String nombreEstacion = parts[0];
-        String tipoDato = parts[parts.length - 1]; // ej: 'tt', 'hh', 'pm25', 'pm10', 'fecha'
-        currentMeasurements.putIfAbsent(nombreEstacion, new MedicionTemp());
-        MedicionTemp tempMeasurement = currentMeasurements.get(nombreEstacion);
-        tempMeasurement.setLastUpdateTime(System.currentTimeMillis());
-
+        mensajes(topic).increment();
+        String prefijo = topic.substring(0, topic.length() - DecodificadorEmpaquetado.SUFIJO.length());
         try {
-            if (tipoDato.equals("tt")) {
-                logger.info("[DEPURACION] Temperatura recibida para {}: {}", nombreEstacion, payload);
-                tempMeasurement.setTemperatura(Float.valueOf(payload));
-                logger.debug("Temperatura recibida: {} para {}", payload, nombreEstacion);
-            } else if (tipoDato.equals("hh")) {
-                logger.info("[DEPURACION] Humedad recibida para {}: {}", nombreEstacion, payload);
-                tempMeasurement.setHumedad(Float.valueOf(payload));
-                logger.debug("Humedad recibida: {} para {}", payload, nombreEstacion);
-            } else if (tipoDato.equals("pm25")) {
-                logger.info("[DEPURACION] PM2.5 recibido para {}: {}", nombreEstacion, payload);
-                tempMeasurement.setPm25(Float.valueOf(payload));
-                logger.debug("PM2.5 recibido: {} para {}", payload, nombreEstacion);
-            } else if (tipoDato.equals("pm10")) {
-                logger.info("[DEPURACION] PM10 recibido para {}: {}", nombreEstacion, payload);
-                tempMeasurement.setPm10(Float.valueOf(payload));
-                logger.debug("PM10 recibido: {} para {}", payload, nombreEstacion);
-            } else if (tipoDato.equals("fecha")) {
-                logger.info("[DEPURACION] Fecha recibida para {}: {}", nombreEstacion, payload);
-                tempMeasurement.setFechaStr(payload);
-                logger.debug("Fecha recibida: {} para {}", payload, nombreEstacion);
-            } else {
-                logger.warn("Tipo de dato desconocido en tópico: {}", topic);
-                return;
-            }
-
-            // DEPURACIÓN: Mostrar el estado actual del objeto temporal
-            System.out.println("[DEPURACION] Estado actual de MedicionTemp para '" + nombreEstacion + "': " + tempMeasurement);
-            logger.trace("Estado actual de MedicionTemp para {}: {}", nombreEstacion, tempMeasurement);
+            List<Medicion> lote = new ArrayList<>();
+            int mediciones = DecodificadorEmpaquetado.decodificar(prefijo, payload, (p, fecha, tt, hh, pm25, pm10) -> {
+                Medicion m = crearMedicion(p, fecha, tt, hh, pm25, pm10);
+                if (m != null) lote.add(m);
+            });
+            // Todas las mediciones del mensaje comparten una sola sincronización de la bitácora
+            if (!lote.isEmpty()) escrituraMedicionesService.encolarLote(lote);
+            completasEmpaquetado.increment(mediciones);
+            if (logger.isTraceEnabled()) logger.trace("Mensaje empaquetado de {} con {} mediciones", prefijo, mediciones);
+        } catch (NumberFormatException e) {
+            error("empaquetado_invalido");
+            if (avisar("empaquetado_invalido")) logger.error("Mensaje empaquetado inválido del tópico '{}' ({} bytes): {}", topic, payload.length, e.getMessage());
+        } catch (Exception e) {
+            logger.error("Error inesperado al procesar mensaje MQTT del tópico '{}': {}", topic, e.getMessage(), e);
+        }
+    }
 
-            if (tempMeasurement.isReadyToPersist()) {
-                logger.info("Todos los datos recibidos para {}. Persistiendo medición...", nombreEstacion);
-                persistMeasurement(nombreEstacion, tempMeasurement);
-                currentMeasurements.remove(nombreEstacion);
+    public void processMqttMessage(String topic, String payload) {
+        mensajes(topic).increment();
+        try {
+            EnsambladorMediciones.Resultado resultado = ensamblador.procesar(topic, payload);
+            switch (resultado) {
+                case TOPICO_INVALIDO -> {
+                    error("topico_invalido");
+                    if (avisar("topico_invalido")) logger.warn("Tópico MQTT inesperado: {}", topic);
+                }
+                case CAMPO_DESCONOCIDO -> {
+                    error("campo_desconocido");
+                    if (avisar("campo_desconocido")) logger.warn("Tipo de dato desconocido en tópico: {}", topic);
+                }
+                default -> {
+                    if (logger.isTraceEnabled()) logger.trace("Dato recibido en {}: {} ({})", topic, payload, resultado);
+                }
             }
         } catch (NumberFormatException e) {
-            logger.error("Error al parsear payload '{}' del tópico '{}': {}", payload, topic, e.getMessage(), e);
+            error("parseo");
+            if (avisar("parseo")) logger.error("Error al parsear payload '{}' del tópico '{}': {}", payload, topic, e.getMessage());
         } catch (Exception e) {
             logger.error("Error inesperado al procesar mensaje MQTT del tópico '{}': {}", topic, e.getMessage(), e);
         }
     }
 
-    private void persistMeasurement(String nombreEstacion, MedicionTemp tempMeasurement) {
+    private void medicionEnsamblada(String prefijo, long fecha, float temperatura, float humedad, float pm25, float pm10) {
+        completasTopicos.increment();
+        persistMeasurement(prefijo, fecha, temperatura, humedad, pm25, pm10);
+    }
+
+    private void persistMeasurement(String prefijo, long fecha, float temperatura, float humedad, float pm25, float pm10) {
         try {
-            logger.trace("Persistiendo medición para {}: {}", nombreEstacion, tempMeasurement);
-            // Extraer el tópico base del nombreEstacion (que en realidad es el topico base)
-            String topicoBase = nombreEstacion;
-            Central central = centralRepository.findByTopicoBase(topicoBase);
-            if (central == null) {
-                logger.error("Central con topico_base '{}' no encontrada en la base de datos. No se guardará la medición.", topicoBase);
-                return;
+            logger.trace("Todos los datos recibidos para {}. Persistiendo medición...", prefijo);
+            Medicion medicion = crearMedicion(prefijo, fecha, temperatura, humedad, pm25, pm10);
+            if (medicion == null) return;
+
+            // La inserción y la notificación SSE las hace el hilo de escritura diferida
+            if (escrituraMedicionesService.encolar(medicion) && logger.isTraceEnabled()) {
+                logger.trace("Medición encolada para central '{}' en {}", medicion.getCentral().getNombreCentral(), medicion.getFecha());
             }
-            Medicion medicion = new Medicion();
-            medicion.setCentral(central);
-            medicion.setTemperatura(tempMeasurement.getTemperatura());
-            medicion.setHumedad(tempMeasurement.getHumedad());
-            medicion.setPm25(tempMeasurement.getPm25());
-            medicion.setPm10(tempMeasurement.getPm10());
-            // Parsear la fecha como hora local y guardar como LocalDateTime
-            String fechaStr = tempMeasurement.getFechaStr();
-            logger.debug("Fecha recibida (string): {}", fechaStr);
-            java.time.LocalDateTime fechaLocal = java.time.LocalDateTime.parse(fechaStr, DATE_FORMATTER);
-            logger.debug("Fecha parseada (LocalDateTime): {}", fechaLocal);
-            medicion.setFecha(fechaLocal);
-
-            medicionRepository.save(medicion);
-            logger.info("Medición guardada para central '{}' en {}", central.getNombreCentral(), medicion.getFecha());
-
-            // Notificar a los clientes SSE
-            MedicionSseController.enviarNuevaMedicion(medicion);
         } catch (Exception e) {
             logger.error("Error al guardar la medición: {}", e.getMessage(), e);
         }
     }
 
+    /** Medición lista para encolar, con su índice de calidad del aire; {@code null} si la central no existe. */
+    private Medicion crearMedicion(String prefijo, long fecha, float temperatura, float humedad, float pm25, float pm10) {
+        Central central = registroCentrales.porPrefijoTopico(prefijo);
+        if (central == null) {
+            sinCentral.incrementAndGet();
+            if (avisar("sin_central")) logger.error("Central con topico_base '{}' no encontrada en la base de datos. No se guardará la medición.", prefijo);
+            return null;
+        }
+        Medicion medicion = new Medicion();
+        medicion.setCentral(central);
+        // Las mediciones empaquetadas pueden traer valores faltantes (NaN)
+        medicion.setTemperatura(nulo(temperatura));
+        medicion.setHumedad(nulo(humedad));
+        medicion.setPm25(nulo(pm25));
+        medicion.setPm10(nulo(pm10));
+        medicion.setFecha(LocalDateTime.ofEpochSecond(fecha, 0, ZoneOffset.UTC));
+        calidadAireService.asignar(medicion);
+        return medicion;
+    }
+
+    private static Float nulo(float v) {
+        return Float.isNaN(v) ? null : v;
+    }
+
+    /**
+     * Descarta el ensamblaje en curso de una estación que dejó de estar suscrita.
+     *
+     * @return {@code true} si se perdió una medición incompleta
+     */
+    public boolean olvidarEstacion(String prefijo) {
+        return ensamblador.olvidarEstacion(prefijo);
+    }
+
+    /** Mediciones completas cuyo tópico ya no corresponde a ninguna central, p. ej. tras cambiarla. */
+    public long getMedicionesSinCentral() {
+        return sinCentral.get();
+    }
+
     private void cleanOldIncompleteMeasurements() {
         long threshold = System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(10);
-        currentMeasurements.entrySet().removeIf(entry -> {
-            if (entry.getValue().getLastUpdateTime() < threshold && !entry.getValue().isReadyToPersist()) {
-                logger.warn("Limpiando medición incompleta antigua para la clave '{}' (última actualización hace más de 10 min).", entry.getKey());
-                return true;
-            }
-            return false;
-        });
+        int descartadas = ensamblador.limpiarIncompletas(threshold);
+        if (descartadas > 0) {
+            expiradas.increment(descartadas);
+            logger.warn("Limpiadas {} mediciones incompletas antiguas (última actualización hace más de 10 min).", descartadas);
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,11 @@
+package com.santotomas.lia.monitoreoambiental.service;
+
+import com.santotomas.lia.monitoreoambiental.model.Medicion;
+
+import java.util.List;
+
+/**
+ * Se publica desde el hilo de escritura diferida cada vez que un lote queda confirmado
+ * en la base de datos. Las mediciones ya tienen id asignado.
+ */
+public record MedicionesPersistidasEvent(List<Medicion> mediciones) {}
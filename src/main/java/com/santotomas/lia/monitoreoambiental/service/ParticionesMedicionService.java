@@ -0,0 +1,151 @@
+package com.santotomas.lia.monitoreoambiental.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mantenimiento de la tabla medicion cuando usa el diseño particionado por mes
+ * (perfil {@code particionado}). Crea por adelantado las particiones de los meses
+ * siguientes y aplica la retención eliminando particiones completas, lo que evita
+ * los DELETE masivos sobre la tabla.
+ */
+@Service
+public class ParticionesMedicionService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ParticionesMedicionService.class);
+    private static final DateTimeFormatter NOMBRE_MES = DateTimeFormatter.ofPattern("'p'yyyyMM");
+    private static final String PARTICION_FUTURO = "p_futuro";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+    @Value("${mediciones.particionado.habilitado:false}")
+    private boolean habilitado;
+
+    @Value("${mediciones.particionado.retencion-meses:0}")
+    private int retencionMeses;
+
+    @Value("${mediciones.particionado.meses-adelanto:3}")
+    private int mesesAdelanto;
+
+    public ParticionesMedicionService(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @PostConstruct
+    public void init() {
+        if (!habilitado) return;
+        scheduler.execute(this::avisarFilasSinFecha);
+        scheduler.scheduleAtFixedRate(this::mantener, 0, 1, TimeUnit.DAYS);
+    }
+
+    /** La migración al diseño particionado traslada a medicion_sin_fecha las filas sin fecha. */
+    private void avisarFilasSinFecha() {
+        try {
+            Integer tablas = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM information_schema.TABLES "
+                    + "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'medicion_sin_fecha'", Integer.class);
+            if (tablas == null || tablas == 0) return;
+            Long filas = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM medicion_sin_fecha", Long.class);
+            if (filas != null && filas > 0) {
+                logger.warn("{} mediciones sin fecha quedaron fuera de medicion, en la tabla medicion_sin_fecha; "
+                        + "corrija su fecha y vuelva a insertarlas o bórrelas.", filas);
+            }
+        } catch (Exception e) {
+            logger.error("No se pudo revisar medicion_sin_fecha: {}", e.getMessage());
+        }
+    }
+
+    /** Crea los meses que faltan y elimina los vencidos. */
+    public synchronized void mantener() {
+        try {
+            List<String> particiones = jdbcTemplate.queryForList(
+                    "SELECT PARTITION_NAME FROM information_schema.PARTITIONS " +
+                    "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'medicion' AND PARTITION_NAME IS NOT NULL " +
+                    "ORDER BY PARTITION_ORDINAL_POSITION", String.class);
+            if (particiones.isEmpty()) {
+                logger.warn("La tabla medicion no está particionada; revise que la migración del perfil 'particionado' se haya aplicado.");
+                return;
+            }
+            crearMesesFuturos(particiones);
+            if (retencionMeses > 0) {
+                eliminarMesesVencidos(particiones);
+            }
+        } catch (Exception e) {
+            logger.error("Error en el mantenimiento de particiones de medicion: {}", e.getMessage(), e);
+        }
+    }
+
+    private void crearMesesFuturos(List<String> particiones) {
+        YearMonth ultimo = particiones.stream()
+                .filter(p -> !PARTICION_FUTURO.equals(p))
+                .map(ParticionesMedicionService::mesDeParticion)
+                .filter(Objects::nonNull)
+                .max(YearMonth::compareTo)
+                .orElse(null);
+        YearMonth desde;
+        if (ultimo != null) {
+            desde = ultimo.plusMonths(1);
+        } else {
+            // Primera vez: p_futuro tiene todos los datos, se parte desde el mes más antiguo
+            Date minimo = jdbcTemplate.queryForObject("SELECT DATE(MIN(fecha)) FROM medicion", Date.class);
+            desde = minimo != null ? YearMonth.from(minimo.toLocalDate()) : YearMonth.now();
+        }
+        YearMonth hasta = YearMonth.now().plusMonths(mesesAdelanto);
+        if (desde.isAfter(hasta)) return;
+
+        StringBuilder sql = new StringBuilder("ALTER TABLE medicion REORGANIZE PARTITION ")
+                .append(PARTICION_FUTURO).append(" INTO (");
+        for (YearMonth mes = desde; !mes.isAfter(hasta); mes = mes.plusMonths(1)) {
+            LocalDate limite = mes.plusMonths(1).atDay(1);
+            sql.append("PARTITION ").append(mes.format(NOMBRE_MES))
+               .append(" VALUES LESS THAN (TO_DAYS('").append(limite).append("')), ");
+        }
+        sql.append("PARTITION ").append(PARTICION_FUTURO).append(" VALUES LESS THAN MAXVALUE)");
+        jdbcTemplate.execute(sql.toString());
+        logger.info("Particiones de medicion creadas desde {} hasta {}", desde, hasta);
+    }
+
+    private void eliminarMesesVencidos(List<String> particiones) {
+        YearMonth primerMesConservado = YearMonth.now().minusMonths(retencionMeses);
+        List<String> vencidas = new ArrayList<>();
+        for (String p : particiones) {
+            YearMonth mes = mesDeParticion(p);
+            if (mes != null && mes.isBefore(primerMesConservado)) {
+                vencidas.add(p);
+            }
+        }
+        if (vencidas.isEmpty()) return;
+        jdbcTemplate.execute("ALTER TABLE medicion DROP PARTITION " + String.join(", ", vencidas));
+        logger.info("Particiones de medicion eliminadas por retención ({} meses): {}", retencionMeses, vencidas);
+    }
+
+    private static YearMonth mesDeParticion(String nombre) {
+        if (nombre == null || nombre.length() != 7 || nombre.charAt(0) != 'p') return null;
+        try {
+            return YearMonth.parse(nombre, NOMBRE_MES);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        scheduler.shutdownNow();
+    }
+}
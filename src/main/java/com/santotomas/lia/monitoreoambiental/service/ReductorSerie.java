@@ -0,0 +1,150 @@
+package com.santotomas.lia.monitoreoambiental.service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reduce una serie temporal a un número acotado de puntos sin guardarla completa.
+ * <p>
+ * El rango se divide en cubetas de igual duración. De cada cubeta se conservan solo los
+ * candidatos que pueden definir la forma del gráfico (primer, último, mínimo y máximo
+ * punto) y el promedio, así que la memoria depende de la cantidad de cubetas y no del
+ * largo del rango. Al terminar se aplica Largest-Triangle-Three-Buckets sobre esos
+ * candidatos, o se devuelven el mínimo y el máximo de cada cubeta.
+ * Si la serie completa cabe en el número de puntos pedido se devuelve sin reducir.
+ */
+public class ReductorSerie {
+
+    public record Punto(long x, double y) {}
+
+    private static final int PRIMERO = 0, ULTIMO = 1, MINIMO = 2, MAXIMO = 3;
+
+    private static final class Cubeta {
+        final long[] x = new long[4];
+        final double[] y = new double[4];
+        long n;
+        double sumaX;
+        double sumaY;
+
+        void agregar(long px, double py) {
+            if (n == 0) {
+                for (int i = 0; i < 4; i++) {
+                    x[i] = px;
+                    y[i] = py;
+                }
+            } else {
+                x[ULTIMO] = px;
+                y[ULTIMO] = py;
+                if (py < y[MINIMO]) { x[MINIMO] = px; y[MINIMO] = py; }
+                if (py > y[MAXIMO]) { x[MAXIMO] = px; y[MAXIMO] = py; }
+            }
+            n++;
+            sumaX += px;
+            sumaY += py;
+        }
+    }
+
+    private final long inicio;
+    private final double anchoCubeta;
+    private final Cubeta[] cubetas;
+    private final int maxPuntos;
+    /** Puntos crudos mientras no superen {@code maxPuntos}; después se descartan. */
+    private List<Punto> crudos = new ArrayList<>();
+
+    /**
+     * @param inicio    primer instante del rango (la unidad de x la decide quien llama)
+     * @param fin       último instante del rango
+     * @param maxPuntos cantidad máxima de puntos del resultado, al menos 3
+     * @param cubetas   cantidad de cubetas de tiempo
+     */
+    public ReductorSerie(long inicio, long fin, int maxPuntos, int cubetas) {
+        if (maxPuntos < 3 || cubetas < 1) {
+            throw new IllegalArgumentException("Se necesitan al menos 3 puntos");
+        }
+        this.inicio = inicio;
+        this.anchoCubeta = Math.max(1.0, (double) (fin - inicio + 1) / cubetas);
+        this.cubetas = new Cubeta[cubetas];
+        this.maxPuntos = maxPuntos;
+    }
+
+    /** Agrega un punto; se espera que lleguen ordenados por x. */
+    public void agregar(long x, double y) {
+        if (Double.isNaN(y)) return;
+        if (crudos != null) {
+            crudos.add(new Punto(x, y));
+            if (crudos.size() > maxPuntos) crudos = null;
+        }
+        int i = (int) Math.min(cubetas.length - 1, Math.max(0, (long) ((x - inicio) / anchoCubeta)));
+        Cubeta c = cubetas[i];
+        if (c == null) {
+            c = cubetas[i] = new Cubeta();
+        }
+        c.agregar(x, y);
+    }
+
+    /** Serie reducida con LTTB: el primer punto, un punto por cubeta y el último punto. */
+    public List<Punto> lttb() {
+        if (crudos != null) return crudos;
+        List<Cubeta> llenas = llenas();
+        List<Punto> resultado = new ArrayList<>(llenas.size() + 2);
+        Cubeta primera = llenas.get(0);
+        Cubeta ultima = llenas.get(llenas.size() - 1);
+        long ax = primera.x[PRIMERO];
+        double ay = primera.y[PRIMERO];
+        resultado.add(new Punto(ax, ay));
+        for (int b = 0; b < llenas.size(); b++) {
+            Cubeta c = llenas.get(b);
+            double cx, cy;
+            if (b + 1 < llenas.size()) {
+                Cubeta sig = llenas.get(b + 1);
+                cx = sig.sumaX / sig.n;
+                cy = sig.sumaY / sig.n;
+            } else {
+                cx = ultima.x[ULTIMO];
+                cy = ultima.y[ULTIMO];
+            }
+            int elegido = -1;
+            double mayorArea = -1;
+            for (int k = 0; k < 4; k++) {
+                if (c.x[k] == ax) continue; // ya elegido o mismo instante
+                double area = Math.abs((ax - cx) * (c.y[k] - ay) - (ax - c.x[k]) * (cy - ay));
+                if (area > mayorArea) {
+                    mayorArea = area;
+                    elegido = k;
+                }
+            }
+            if (elegido >= 0) {
+                ax = c.x[elegido];
+                ay = c.y[elegido];
+                resultado.add(new Punto(ax, ay));
+            }
+        }
+        if (ax != ultima.x[ULTIMO]) {
+            resultado.add(new Punto(ultima.x[ULTIMO], ultima.y[ULTIMO]));
+        }
+        return resultado;
+    }
+
+    /** Mínimo y máximo de cada cubeta, en orden de tiempo. */
+    public List<Punto> minMax() {
+        if (crudos != null) return crudos;
+        List<Punto> resultado = new ArrayList<>(cubetas.length * 2);
+        for (Cubeta c : llenas()) {
+            int a = c.x[MINIMO] <= c.x[MAXIMO] ? MINIMO : MAXIMO;
+            int b = a == MINIMO ? MAXIMO : MINIMO;
+            resultado.add(new Punto(c.x[a], c.y[a]));
+            if (c.x[b] != c.x[a]) {
+                resultado.add(new Punto(c.x[b], c.y[b]));
+            }
+        }
+        return resultado;
+    }
+
+    private List<Cubeta> llenas() {
+        List<Cubeta> llenas = new ArrayList<>();
+        for (Cubeta c : cubetas) {
+            if (c != null) llenas.add(c);
+        }
+        return llenas;
+    }
+}
@@ -0,0 +1,105 @@
+package com.santotomas.lia.monitoreoambiental.service;
+
+import com.santotomas.lia.monitoreoambiental.model.Central;
+import com.santotomas.lia.monitoreoambiental.repository.CentralRepository;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Copia en memoria de la tabla central con índices por id, nombre y tópico base.
+ * Evita una consulta por cada medición recibida y por cada fila de las consultas agrupadas.
+ * El índice es inmutable y se reemplaza completo en cada {@link #refrescar()}, por lo que
+ * los lectores nunca ven un estado a medio actualizar.
+ */
+@Service
+public class RegistroCentrales {
+
+    private static final Logger logger = LoggerFactory.getLogger(RegistroCentrales.class);
+
+    private record Indice(List<Central> todas,
+                          Map<Integer, Central> porId,
+                          Map<String, Central> porNombre,
+                          Map<String, Central> porPrefijo) {}
+
+    private final CentralRepository centralRepository;
+    private volatile Indice indice = new Indice(List.of(), Map.of(), Map.of(), Map.of());
+
+    public RegistroCentrales(CentralRepository centralRepository) {
+        this.centralRepository = centralRepository;
+    }
+
+    @PostConstruct
+    public void init() {
+        refrescar();
+    }
+
+    /** Vuelve a leer todas las centrales y reemplaza el índice de forma atómica. */
+    public synchronized void refrescar() {
+        List<Central> todas = new ArrayList<>();
+        Map<Integer, Central> porId = new HashMap<>();
+        Map<String, Central> porNombre = new HashMap<>();
+        Map<String, Central> porPrefijo = new HashMap<>();
+        for (Central c : centralRepository.findAll()) {
+            // Copia sin la colección perezosa de mediciones
+            Central copia = new Central(c.getIdCentral(), c.getNombreCentral(), c.getTopicoBase(),
+                    c.getDescripcion(), c.getUbicacion(), null);
+            todas.add(copia);
+            porId.put(copia.getIdCentral(), copia);
+            porNombre.put(copia.getNombreCentral(), copia);
+            String prefijo = prefijoTopico(copia.getTopicoBase());
+            if (prefijo != null) {
+                porPrefijo.put(prefijo, copia);
+            }
+        }
+        indice = new Indice(Collections.unmodifiableList(todas), porId, porNombre, porPrefijo);
+        logger.info("Registro de centrales actualizado: {} centrales", todas.size());
+    }
+
+    public List<Central> todas() {
+        return indice.todas();
+    }
+
+    public Central porId(Integer id) {
+        return id == null ? null : indice.porId().get(id);
+    }
+
+    public Central porNombre(String nombre) {
+        return nombre == null ? null : indice.porNombre().get(nombre);
+    }
+
+    /** Busca la central cuyo tópico base (sin barras finales) coincide con el prefijo de un tópico MQTT. */
+    public Central porPrefijoTopico(String prefijo) {
+        return prefijo == null ? null : indice.porPrefijo().get(prefijo);
+    }
+
+    /** Ids de las centrales nombradas en una lista separada por comas; los nombres desconocidos se omiten. */
+    public List<Integer> idsPorNombres(String nombres) {
+        List<Integer> ids = new ArrayList<>();
+        for (String nombre : nombres.split(",")) {
+            Central c = porNombre(nombre);
+            if (c != null) ids.add(c.getIdCentral());
+        }
+        return ids;
+    }
+
+    public String nombrePorId(Integer id) {
+        Central c = porId(id);
+        return c != null ? c.getNombreCentral() : "?";
+    }
+
+    /** Quita las barras finales del tópico base: {@code /colegio1/Aire/} → {@code /colegio1/Aire}. */
+    public static String prefijoTopico(String topicoBase) {
+        if (topicoBase == null || topicoBase.isBlank()) return null;
+        int fin = topicoBase.length();
+        while (fin > 0 && topicoBase.charAt(fin - 1) == '/') fin--;
+        return fin == 0 ? null : topicoBase.substring(0, fin);
+    }
+}
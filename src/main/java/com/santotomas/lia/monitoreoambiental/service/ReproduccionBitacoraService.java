@@ -0,0 +1,102 @@
+package com.santotomas.lia.monitoreoambiental.service;
+
+import com.santotomas.lia.monitoreoambiental.model.Central;
+import com.santotomas.lia.monitoreoambiental.model.Medicion;
+import com.santotomas.lia.monitoreoambiental.repository.BitacoraMediciones;
+import com.santotomas.lia.monitoreoambiental.repository.MedicionStore;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Inserta en el {@link MedicionStore} las mediciones de la bitácora que no llegaron a la base de
+ * datos: las que quedaron sin confirmar al detenerse el proceso y las que la escritura diferida
+ * no pudo guardar. Usa {@link MedicionStore#agregarNuevas}, así que reinsertar una medición que
+ * sí alcanzó a guardarse no la duplica. Si la base de datos sigue caída se reintenta en la
+ * siguiente ejecución.
+ */
+@Service
+public class ReproduccionBitacoraService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReproduccionBitacoraService.class);
+
+    private final BitacoraMediciones bitacora;
+    private final MedicionStore medicionStore;
+    private final RegistroCentrales registroCentrales;
+    private final CalidadAireService calidadAireService;
+    private final ApplicationEventPublisher eventPublisher;
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+    @Value("${mediciones.wal.intervalo-reproduccion-segundos:10}")
+    private long intervaloSegundos;
+
+    @Value("${mediciones.escritura.tamano-lote:500}")
+    private int tamanoLote;
+
+    public ReproduccionBitacoraService(BitacoraMediciones bitacora, MedicionStore medicionStore,
+                                       RegistroCentrales registroCentrales, CalidadAireService calidadAireService,
+                                       ApplicationEventPublisher eventPublisher) {
+        this.bitacora = bitacora;
+        this.medicionStore = medicionStore;
+        this.registroCentrales = registroCentrales;
+        this.calidadAireService = calidadAireService;
+        this.eventPublisher = eventPublisher;
+    }
+
+    @PostConstruct
+    public void init() {
+        if (!bitacora.isHabilitada()) return;
+        scheduler.scheduleWithFixedDelay(this::reproducir, 0, intervaloSegundos, TimeUnit.SECONDS);
+    }
+
+    /** Reproduce lotes mientras haya pendientes; se detiene en el primer lote que falla. */
+    void reproducir() {
+        long total = 0;
+        try {
+            while (bitacora.hayQueReproducir()) {
+                List<BitacoraMediciones.Registro> lote = bitacora.pendientesDeReproducir(tamanoLote);
+                if (lote.isEmpty()) break;
+                List<Medicion> mediciones = new ArrayList<>(lote.size());
+                for (BitacoraMediciones.Registro r : lote) {
+                    Central central = registroCentrales.porId(r.medicion().getCentral().getIdCentral());
+                    if (central == null) {
+                        logger.warn("Central {} ya no existe; se omite la medición {} de la bitácora.",
+                                r.medicion().getCentral().getIdCentral(), r.secuencia());
+                        continue;
+                    }
+                    r.medicion().setCentral(central);
+                    mediciones.add(r.medicion());
+                }
+                // La bitácora no guarda el índice: se calcula de nuevo con las horas previas ya guardadas
+                calidadAireService.asignarLote(mediciones);
+                List<Medicion> nuevas = mediciones.isEmpty() ? List.of() : medicionStore.agregarNuevas(mediciones);
+                bitacora.confirmarReproducidas(lote);
+                total += nuevas.size();
+                if (!nuevas.isEmpty()) {
+                    eventPublisher.publishEvent(new MedicionesPersistidasEvent(nuevas));
+                }
+            }
+        } catch (Exception e) {
+            logger.warn("No se pudo reproducir la bitácora, se reintentará en {} s: {}", intervaloSegundos, e.getMessage());
+        }
+        if (total > 0) {
+            logger.info("Reproducidas {} mediciones desde la bitácora.", total);
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        scheduler.shutdownNow();
+    }
+}
@@ -0,0 +1,88 @@
+package com.santotomas.lia.monitoreoambiental.service;
+
+import com.santotomas.lia.monitoreoambiental.dto.FiltroMediciones;
+import com.santotomas.lia.monitoreoambiental.dto.ResumenMedicionesDTO;
+import com.santotomas.lia.monitoreoambiental.repository.MedicionStore;
+import com.santotomas.lia.monitoreoambiental.repository.RollupRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Estadísticas de un rango calculadas en una sola pasada. Para rangos cortos se recorren
+ * las mediciones con el cursor de solo avance; para rangos largos se usan los agregados
+ * por hora, que dan cantidad, promedio, mínimo, máximo y desviación exactos sin leer la
+ * tabla medicion. En ese caso los percentiles se estiman sobre los promedios horarios,
+ * ponderados por la cantidad de mediciones de cada hora.
+ */
+@Service
+public class ResumenMedicionesService {
+
+    public static final String FUENTE_CRUDO = "crudo";
+    public static final String FUENTE_AGREGADO = "agregado";
+
+    private final MedicionStore medicionStore;
+    private final RollupRepository rollupRepository;
+
+    /** Rangos de más días que este se resumen desde los agregados por hora. */
+    @Value("${mediciones.resumen.dias-max-crudo:31}")
+    private long diasMaxCrudo;
+
+    public ResumenMedicionesService(MedicionStore medicionStore, RollupRepository rollupRepository) {
+        this.medicionStore = medicionStore;
+        this.rollupRepository = rollupRepository;
+    }
+
+    /**
+     * @param fuente {@code crudo}, {@code agregado} o {@code null} para elegir según el largo del rango
+     */
+    public ResumenMedicionesDTO resumir(List<Integer> centralesIds, List<String> nombres,
+                                        LocalDate inicio, LocalDate fin, String fuente) {
+        if (fin.isBefore(inicio)) {
+            throw new IllegalArgumentException("fechaFin es anterior a fechaInicio");
+        }
+        if (!medicionStore.mantieneAgregados()) {
+            // Sin tablas de agregados siempre se recorren las mediciones
+            fuente = FUENTE_CRUDO;
+        } else if (fuente == null || fuente.isBlank()) {
+            fuente = ChronoUnit.DAYS.between(inicio, fin) + 1 > diasMaxCrudo ? FUENTE_AGREGADO : FUENTE_CRUDO;
+        }
+        EstadisticaVariable[] stats = new EstadisticaVariable[RollupRepository.VARIABLES.size()];
+        for (int i = 0; i < stats.length; i++) {
+            stats[i] = new EstadisticaVariable();
+        }
+        switch (fuente) {
+            case FUENTE_CRUDO -> {
+                FiltroMediciones filtro = new FiltroMediciones(centralesIds, inicio.atStartOfDay(), fin.atTime(23, 59, 59),
+                        null, null, null, null, null, null, null, null);
+                medicionStore.recorrer(filtro, true, (id, idCentral, fecha, tt, hh, pm25, pm10, ica) -> {
+                    stats[0].agregar(tt);
+                    stats[1].agregar(hh);
+                    stats[2].agregar(pm25);
+                    stats[3].agregar(pm10);
+                    return true;
+                });
+            }
+            case FUENTE_AGREGADO -> rollupRepository.recorrerHoras(centralesIds, inicio, fin,
+                    (v, n, suma, sumaCuadrados, min, max) -> {
+                        stats[v].agregarResumen(n, suma, sumaCuadrados, min, max);
+                        stats[v].agregarAlHistograma(suma / n, n);
+                    });
+            default -> throw new IllegalArgumentException("Fuente no válida: " + fuente);
+        }
+
+        Map<String, ResumenMedicionesDTO.Variable> variables = new LinkedHashMap<>();
+        for (int i = 0; i < stats.length; i++) {
+            EstadisticaVariable s = stats[i];
+            variables.put(RollupRepository.VARIABLES.get(i), new ResumenMedicionesDTO.Variable(s.getN(),
+                    s.getMedia(), s.getMin(), s.getMax(), s.getDesviacion(),
+                    s.percentil(0.50), s.percentil(0.95), s.percentil(0.99)));
+        }
+        return new ResumenMedicionesDTO(nombres, inicio, fin, fuente, variables);
+    }
+}
@@ -0,0 +1,75 @@
+package com.santotomas.lia.monitoreoambiental.service;
+
+import com.santotomas.lia.monitoreoambiental.model.Central;
+import com.santotomas.lia.monitoreoambiental.repository.RollupRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Reconstrucción de los agregados por hora y día a partir de las mediciones crudas.
+ * Se puede lanzar desde el endpoint de administración o al iniciar con {@code --reconstruir-rollups}.
+ */
+@Service
+public class RollupMedicionesService implements ApplicationRunner {
+
+    private static final Logger logger = LoggerFactory.getLogger(RollupMedicionesService.class);
+    static final String OPCION_RECONSTRUIR = "reconstruir-rollups";
+
+    private final RollupRepository rollupRepository;
+    private final RegistroCentrales registroCentrales;
+    private final TransactionTemplate transactionTemplate;
+    private final AgrupadasCache agrupadasCache;
+    private final VersionesMediciones versionesMediciones;
+
+    public RollupMedicionesService(RollupRepository rollupRepository, RegistroCentrales registroCentrales,
+                                   PlatformTransactionManager transactionManager, AgrupadasCache agrupadasCache,
+                                   VersionesMediciones versionesMediciones) {
+        this.rollupRepository = rollupRepository;
+        this.registroCentrales = registroCentrales;
+        this.agrupadasCache = agrupadasCache;
+        this.versionesMediciones = versionesMediciones;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (args.containsOption(OPCION_RECONSTRUIR)) {
+            reconstruirTodas();
+        }
+    }
+
+    /**
+     * Reconstruye central por central, cada una en su propia transacción. Mientras dura la
+     * transacción las inserciones de la ingesta para esa central esperan al bloqueo de la
+     * lectura sobre medicion, así que los agregados quedan consistentes con la tabla.
+     *
+     * @return cantidad de centrales procesadas
+     */
+    public synchronized int reconstruirTodas() {
+        int procesadas = 0;
+        for (Central c : registroCentrales.todas()) {
+            reconstruir(c.getIdCentral());
+            procesadas++;
+        }
+        return procesadas;
+    }
+
+    public void reconstruir(Integer idCentral) {
+        long inicio = System.currentTimeMillis();
+        transactionTemplate.executeWithoutResult(status -> rollupRepository.reconstruir(idCentral));
+        // Los periodos guardados de /agrupadas pueden no coincidir con los agregados nuevos
+        agrupadasCache.invalidar(idCentral);
+        // y los ETag de /agrupadas, /resumen y /serie deben cambiar para que no se responda 304
+        if (idCentral != null) {
+            versionesMediciones.invalidar(idCentral);
+        } else {
+            for (Central c : registroCentrales.todas()) versionesMediciones.invalidar(c.getIdCentral());
+        }
+        logger.info("Agregados de la central {} reconstruidos en {} ms", idCentral, System.currentTimeMillis() - inicio);
+    }
+}
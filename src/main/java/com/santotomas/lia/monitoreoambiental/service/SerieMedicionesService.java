@@ -0,0 +1,55 @@
+package com.santotomas.lia.monitoreoambiental.service;
+
+import com.santotomas.lia.monitoreoambiental.dto.PuntoSerieDTO;
+import com.santotomas.lia.monitoreoambiental.repository.MedicionStore;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+
+/**
+ * Series reducidas para gráficos: se recorre el rango con el cursor de solo avance y se
+ * entregan a lo más {@code puntos} valores, sin importar cuántas mediciones haya.
+ */
+@Service
+public class SerieMedicionesService {
+
+    public static final String METODO_LTTB = "lttb";
+    public static final String METODO_MINMAX = "minmax";
+
+    private final MedicionStore medicionStore;
+
+    @Value("${mediciones.serie.max-puntos:5000}")
+    private int maxPuntos;
+
+    public SerieMedicionesService(MedicionStore medicionStore) {
+        this.medicionStore = medicionStore;
+    }
+
+    public List<PuntoSerieDTO> serie(int idCentral, String variable, LocalDateTime inicio, LocalDateTime fin,
+                                     int puntos, String metodo) {
+        if (puntos < 3 || puntos > maxPuntos) {
+            throw new IllegalArgumentException("puntos debe estar entre 3 y " + maxPuntos);
+        }
+        boolean lttb = switch (metodo) {
+            case METODO_LTTB -> true;
+            case METODO_MINMAX -> false;
+            default -> throw new IllegalArgumentException("Método no válido: " + metodo);
+        };
+        // LTTB agrega el primer y el último punto; min/max entrega dos por cubeta
+        int cubetas = lttb ? puntos - 2 : puntos / 2;
+        ReductorSerie reductor = new ReductorSerie(segundos(inicio), segundos(fin), puntos, cubetas);
+        medicionStore.recorrerVariable(idCentral, variable, inicio, fin,
+                (fecha, valor) -> reductor.agregar(segundos(fecha), valor));
+        List<ReductorSerie.Punto> reducida = lttb ? reductor.lttb() : reductor.minMax();
+        return reducida.stream()
+                .map(p -> new PuntoSerieDTO(LocalDateTime.ofEpochSecond(p.x(), 0, ZoneOffset.UTC), p.y()))
+                .toList();
+    }
+
+    private static long segundos(LocalDateTime fecha) {
+        return fecha.toEpochSecond(ZoneOffset.UTC);
+    }
+}
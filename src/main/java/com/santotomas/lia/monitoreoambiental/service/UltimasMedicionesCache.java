@@ -0,0 +1,227 @@
+package com.santotomas.lia.monitoreoambiental.service;
+
+import com.santotomas.lia.monitoreoambiental.dto.MedicionDTO;
+import com.santotomas.lia.monitoreoambiental.model.Central;
+import com.santotomas.lia.monitoreoambiental.model.Medicion;
+import com.santotomas.lia.monitoreoambiental.repository.MedicionStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Últimas N mediciones de cada central en memoria, para que /ultima y /ultimas no
+ * consulten la base de datos en cada sondeo del panel. Se carga desde la base al
+ * iniciar (o la primera vez que se pide una central) y luego se alimenta con los
+ * lotes que confirma la escritura diferida.
+ * <p>
+ * Las centrales que esta instancia no recibe completas ({@link AsignacionIngesta}) las persisten
+ * también otras instancias: para ellas se compara, a lo más cada {@code refrescoMs}, la medición
+ * más reciente de la base con la del anillo y se vuelve a leer si cambió.
+ */
+@Service
+public class UltimasMedicionesCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(UltimasMedicionesCache.class);
+
+    /** Contenido de una central en un instante; la versión cambia con cada medición agregada. */
+    public record Instantanea(String etag, List<MedicionDTO> mediciones) {}
+
+    @Value("${mediciones.ultimas.capacidad:120}")
+    private int capacidad;
+
+    @Value("${mediciones.ultimas.refresco-ms:2000}")
+    private long refrescoMs;
+
+    private final MedicionStore medicionStore;
+    private final RegistroCentrales registroCentrales;
+    private final AsignacionIngesta asignacionIngesta;
+    private final Map<Integer, Anillo> anillos = new ConcurrentHashMap<>();
+    /** Distingue las versiones de una ejecución de las de la anterior. */
+    private final long arranque = System.currentTimeMillis();
+
+    public UltimasMedicionesCache(MedicionStore medicionStore, RegistroCentrales registroCentrales,
+                                  AsignacionIngesta asignacionIngesta) {
+        this.medicionStore = medicionStore;
+        this.registroCentrales = registroCentrales;
+        this.asignacionIngesta = asignacionIngesta;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void precargar() {
+        for (Central c : registroCentrales.todas()) {
+            anillo(c.getIdCentral());
+        }
+        logger.info("Caché de últimas mediciones cargada para {} centrales", anillos.size());
+    }
+
+    @EventListener
+    public void medicionesPersistidas(MedicionesPersistidasEvent evento) {
+        for (Medicion m : evento.mediciones()) {
+            if (m.getCentral() == null || m.getFecha() == null) continue;
+            anillo(m.getCentral().getIdCentral()).agregar(new MedicionDTO(m.getId(), m.getFecha(),
+                    m.getTemperatura(), m.getHumedad(), m.getPm25(), m.getPm10(), m.getIca(), m.getIcaContaminante()));
+        }
+    }
+
+    /** Cantidad máxima que se puede pedir; para límites mayores hay que ir a la base de datos. */
+    public int getCapacidad() {
+        return capacidad;
+    }
+
+    /** Las {@code limit} mediciones más recientes de la central, de la más nueva a la más antigua. */
+    public Instantanea ultimas(int idCentral, int limit) {
+        if (limit > capacidad) {
+            throw new IllegalArgumentException("limit no puede superar " + capacidad);
+        }
+        return vigente(idCentral).ultimas(idCentral, limit);
+    }
+
+    /**
+     * Versión del contenido de la central: cambia con cada medición que entra al anillo, también
+     * las que se descubren al comparar con la base.
+     */
+    public long version(int idCentral) {
+        return vigente(idCentral).version();
+    }
+
+    /** Vuelve a leer una central ya cargada, p. ej. después de recalcular sus índices. */
+    public void recargar(int idCentral) {
+        Anillo anillo = anillos.get(idCentral);
+        if (anillo == null) return;
+        List<MedicionDTO> filas = medicionStore.ultimas(idCentral, capacidad);
+        anillo.reemplazar(filas);
+    }
+
+    private Anillo anillo(int idCentral) {
+        Anillo anillo = anillos.get(idCentral);
+        if (anillo != null) return anillo;
+        // Se carga fuera del mapa para no retener su bloqueo durante la consulta; si otro hilo
+        // cargó la misma central a la vez, se usa el suyo y este se descarta
+        Anillo cargado = cargar(idCentral);
+        anillo = anillos.putIfAbsent(idCentral, cargado);
+        return anillo != null ? anillo : cargado;
+    }
+
+    /** El anillo de la central, comparado con la base si otras instancias también la persisten. */
+    private Anillo vigente(int idCentral) {
+        Anillo anillo = anillo(idCentral);
+        if (asignacionIngesta.completa(idCentral)) return anillo;
+        long ahora = System.nanoTime();
+        long revisado = anillo.revisado.get();
+        // Solo un hilo por intervalo consulta la base; el resto responde con lo que hay
+        if (ahora - revisado < TimeUnit.MILLISECONDS.toNanos(refrescoMs)
+                || !anillo.revisado.compareAndSet(revisado, ahora)) {
+            return anillo;
+        }
+        try {
+            List<MedicionDTO> ultima = medicionStore.ultimas(idCentral, 1);
+            if (!ultima.isEmpty() && !Objects.equals(ultima.get(0).getId(), anillo.idMasReciente())) {
+                anillo.reemplazar(medicionStore.ultimas(idCentral, capacidad));
+            }
+        } catch (RuntimeException e) {
+            logger.warn("No se pudo comparar la caché de últimas mediciones de la central {} con la base: {}",
+                    idCentral, e.getMessage());
+        }
+        return anillo;
+    }
+
+    private Anillo cargar(int idCentral) {
+        List<MedicionDTO> filas = medicionStore.ultimas(idCentral, capacidad);
+        Anillo anillo = new Anillo(capacidad);
+        for (int i = filas.size() - 1; i >= 0; i--) {
+            anillo.agregar(filas.get(i));
+        }
+        return anillo;
+    }
+
+    /** Arreglo circular ordenado por fecha ascendente; {@code inicio} apunta a la más antigua. */
+    private final class Anillo {
+        private final MedicionDTO[] buf;
+        private int inicio;
+        private int n;
+        private long version;
+        /** Última comparación con la base, en {@link System#nanoTime()}. */
+        final AtomicLong revisado = new AtomicLong(System.nanoTime());
+
+        Anillo(int capacidad) {
+            buf = new MedicionDTO[capacidad];
+        }
+
+        synchronized long version() {
+            return version;
+        }
+
+        synchronized Integer idMasReciente() {
+            return n == 0 ? null : get(n - 1).getId();
+        }
+
+        private MedicionDTO get(int i) {
+            return buf[(inicio + i) % buf.length];
+        }
+
+        private void set(int i, MedicionDTO m) {
+            buf[(inicio + i) % buf.length] = m;
+        }
+
+        synchronized void agregar(MedicionDTO m) {
+            // Lo normal es que llegue la más reciente y no haya que desplazar nada
+            int pos = n;
+            while (pos > 0 && get(pos - 1).getFecha().isAfter(m.getFecha())) pos--;
+            for (int j = pos - 1; j >= 0 && get(j).getFecha().equals(m.getFecha()); j--) {
+                if (Objects.equals(get(j).getId(), m.getId())) return; // ya cargada desde la base
+            }
+            if (n == buf.length) {
+                if (pos == 0) return; // más antigua que todo lo guardado
+                buf[inicio] = null;
+                inicio = (inicio + 1) % buf.length;
+                n--;
+                pos--;
+            }
+            for (int j = n; j > pos; j--) {
+                set(j, get(j - 1));
+            }
+            set(pos, m);
+            n++;
+            version++;
+        }
+
+        /**
+         * Reemplaza el contenido por {@code filas} (de la más nueva a la más antigua) y conserva
+         * las mediciones agregadas mientras se leían, si son más recientes.
+         */
+        synchronized void reemplazar(List<MedicionDTO> filas) {
+            List<MedicionDTO> recientes = new ArrayList<>();
+            for (int i = 0; i < n; i++) {
+                if (filas.isEmpty() || get(i).getFecha().isAfter(filas.get(0).getFecha())) recientes.add(get(i));
+            }
+            Arrays.fill(buf, null);
+            inicio = 0;
+            n = 0;
+            long anterior = version;
+            for (int i = filas.size() - 1; i >= 0; i--) agregar(filas.get(i));
+            for (MedicionDTO m : recientes) agregar(m);
+            version = anterior + 1;
+        }
+
+        synchronized Instantanea ultimas(int idCentral, int limit) {
+            int k = Math.min(Math.max(limit, 0), n);
+            List<MedicionDTO> lista = new ArrayList<>(k);
+            for (int i = n - 1; i >= n - k; i--) {
+                lista.add(get(i));
+            }
+            return new Instantanea("W/\"" + arranque + "-" + idCentral + "-" + version + "-" + k + "\"", lista);
+        }
+    }
+}
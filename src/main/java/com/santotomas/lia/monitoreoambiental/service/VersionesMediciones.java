@@ -0,0 +1,113 @@
+package com.santotomas.lia.monitoreoambiental.service;
+
+import com.santotomas.lia.monitoreoambiental.model.Medicion;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.CacheControl;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Validadores HTTP de las consultas de mediciones. Cada central tiene una versión que cambia con
+ * cada lote persistido que la incluye, así que el ETag de una consulta se obtiene de su URL y de
+ * las versiones de sus centrales, sin consultar la base de datos.
+ * <p>
+ * Eso vale para las centrales que esta instancia recibe completas ({@link AsignacionIngesta}). Las
+ * demás las persisten también otras instancias, así que su versión suma la del anillo de
+ * {@link UltimasMedicionesCache}, que compara su medición más reciente con la de la base cada
+ * {@code mediciones.ultimas.refresco-ms}: lo que guarde otra instancia cambia el ETag a más tardar
+ * en ese lapso. Una medición atrasada guardada por otra instancia se nota con la siguiente nueva.
+ * <p>
+ * Los ETag son débiles: Tomcat no comprime respuestas con ETag fuerte, y para {@code If-None-Match}
+ * en un GET la comparación débil basta.
+ */
+@Service
+public class VersionesMediciones {
+
+    /** ETag y Cache-Control de una respuesta. */
+    public record Validador(String etag, String cacheControl) {}
+
+    @Value("${mediciones.http.dias-historico:7}")
+    private int diasHistorico;
+
+    @Value("${mediciones.http.max-age-historico-segundos:86400}")
+    private long maxAgeHistorico;
+
+    private final AsignacionIngesta asignacionIngesta;
+    private final UltimasMedicionesCache ultimasMedicionesCache;
+    private final Map<Integer, AtomicLong> versiones = new ConcurrentHashMap<>();
+    /** Distingue las versiones de una ejecución de las de la anterior. */
+    private final long arranque = System.currentTimeMillis();
+    Clock reloj = Clock.systemDefaultZone();
+
+    public VersionesMediciones(AsignacionIngesta asignacionIngesta, UltimasMedicionesCache ultimasMedicionesCache) {
+        this.asignacionIngesta = asignacionIngesta;
+        this.ultimasMedicionesCache = ultimasMedicionesCache;
+    }
+
+    @EventListener
+    public void medicionesPersistidas(MedicionesPersistidasEvent evento) {
+        Integer anterior = null;
+        for (Medicion m : evento.mediciones()) {
+            if (m.getCentral() == null) continue;
+            Integer id = m.getCentral().getIdCentral();
+            // Los lotes suelen traer varias mediciones seguidas de la misma central
+            if (id.equals(anterior)) continue;
+            anterior = id;
+            versiones.computeIfAbsent(id, k -> new AtomicLong()).incrementAndGet();
+        }
+    }
+
+    /** Cambia la versión de una central cuyas mediciones guardadas se modificaron. */
+    public void invalidar(int idCentral) {
+        versiones.computeIfAbsent(idCentral, k -> new AtomicLong()).incrementAndGet();
+    }
+
+    public long version(int idCentral) {
+        AtomicLong v = versiones.get(idCentral);
+        long local = v != null ? v.get() : 0;
+        // Las dos versiones solo crecen, así que la suma cambia si cambia cualquiera
+        return asignacionIngesta.completa(idCentral) ? local : local + ultimasMedicionesCache.version(idCentral);
+    }
+
+    /**
+     * @param consulta ruta y parámetros de la petición; dos consultas iguales sobre las mismas
+     *                 versiones devuelven el mismo contenido
+     * @param fin      último día del rango, o {@code null} si no tiene fin
+     */
+    public Validador validador(List<Integer> centrales, String consulta, LocalDate fin) {
+        // FNV-1a de 64 bits sobre la consulta y la versión de cada central, en orden de id
+        long h = 0xcbf29ce484222325L;
+        for (byte b : consulta.getBytes(StandardCharsets.UTF_8)) {
+            h = (h ^ (b & 0xff)) * 0x100000001b3L;
+        }
+        for (int id : new TreeSet<>(centrales)) {
+            h = (h ^ id) * 0x100000001b3L;
+            h = (h ^ version(id)) * 0x100000001b3L;
+        }
+        String etag = "W/\"" + Long.toHexString(arranque) + "-" + Long.toHexString(h) + "\"";
+        return new Validador(etag, cacheControl(fin));
+    }
+
+    /**
+     * Un rango que terminó hace más de {@code diasHistorico} días ya no recibe mediciones nuevas
+     * en la práctica: el navegador lo reutiliza sin preguntar durante {@code maxAgeHistorico}.
+     * Lo demás se guarda pero se revalida con el ETag en cada uso. Son respuestas autenticadas,
+     * así que nunca se guardan en cachés compartidas.
+     */
+    public String cacheControl(LocalDate fin) {
+        if (fin != null && fin.isBefore(LocalDate.now(reloj).minusDays(diasHistorico))) {
+            return CacheControl.maxAge(maxAgeHistorico, TimeUnit.SECONDS).cachePrivate().getHeaderValue() + ", immutable";
+        }
+        return CacheControl.noCache().cachePrivate().getHeaderValue();
+    }
+}
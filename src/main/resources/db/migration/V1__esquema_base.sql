@@ -0,0 +1,38 @@
+-- Esquema base, equivalente a mysql-scripts-init/Base_datos.sql.
+-- En bases existentes Flyway registra esta versión como línea base y no la ejecuta.
+
+CREATE TABLE IF NOT EXISTS `central` (
+  `id_central` int NOT NULL AUTO_INCREMENT,
+  `nombre_central` varchar(50) NOT NULL,
+  `topico_base` varchar(100) NOT NULL,
+  `descripcion` text,
+  `ubicacion` varchar(255) DEFAULT NULL,
+  PRIMARY KEY (`id_central`),
+  UNIQUE KEY `nombre_central` (`nombre_central`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_0900_ai_ci;
+
+CREATE TABLE IF NOT EXISTS `medicion` (
+  `id` int NOT NULL AUTO_INCREMENT,
+  `fecha` datetime DEFAULT NULL,
+  `temperatura` float DEFAULT NULL,
+  `humedad` float DEFAULT NULL,
+  `pm25` float DEFAULT NULL,
+  `pm10` decimal(6,2) DEFAULT NULL,
+  `id_central` int DEFAULT NULL,
+  PRIMARY KEY (`id`),
+  KEY `id_central` (`id_central`),
+  CONSTRAINT `medicion_ibfk_1` FOREIGN KEY (`id_central`) REFERENCES `central` (`id_central`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_0900_ai_ci;
+
+CREATE TABLE IF NOT EXISTS `usuarios` (
+  `id` bigint NOT NULL AUTO_INCREMENT,
+  `activo` bit(1) NOT NULL,
+  `apellido` varchar(255) DEFAULT NULL,
+  `correo` varchar(255) NOT NULL,
+  `nombre` varchar(255) DEFAULT NULL,
+  `password` varchar(255) DEFAULT NULL,
+  `rol` int NOT NULL,
+  `rut` varchar(255) DEFAULT NULL,
+  PRIMARY KEY (`id`),
+  UNIQUE KEY `correo` (`correo`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_0900_ai_ci;
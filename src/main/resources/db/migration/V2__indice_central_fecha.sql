@@ -0,0 +1,5 @@
+-- Todas las consultas de mediciones filtran por central y rango de fechas y ordenan por fecha.
+-- El índice compuesto también sirve a la clave foránea, así que el índice simple sobra.
+ALTER TABLE `medicion`
+  ADD INDEX `idx_medicion_central_fecha` (`id_central`, `fecha`),
+  DROP INDEX `id_central`;
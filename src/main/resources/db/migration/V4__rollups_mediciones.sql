@@ -0,0 +1,77 @@
+-- Agregados por hora y por día de cada central: cantidad, suma, suma de cuadrados, mínimo y máximo
+-- de las cuatro variables. Los mantiene el proceso de ingesta en la misma transacción que inserta
+-- las mediciones; las semanas y los meses se derivan de la tabla diaria.
+
+CREATE TABLE `medicion_rollup_hora` (
+  `id_central` int NOT NULL,
+  `hora` datetime NOT NULL,
+  `n` int NOT NULL DEFAULT 0,
+  `n_temperatura` int NOT NULL DEFAULT 0,
+  `suma_temperatura` double NOT NULL DEFAULT 0,
+  `suma_cuad_temperatura` double NOT NULL DEFAULT 0,
+  `min_temperatura` double DEFAULT NULL,
+  `max_temperatura` double DEFAULT NULL,
+  `n_humedad` int NOT NULL DEFAULT 0,
+  `suma_humedad` double NOT NULL DEFAULT 0,
+  `suma_cuad_humedad` double NOT NULL DEFAULT 0,
+  `min_humedad` double DEFAULT NULL,
+  `max_humedad` double DEFAULT NULL,
+  `n_pm25` int NOT NULL DEFAULT 0,
+  `suma_pm25` double NOT NULL DEFAULT 0,
+  `suma_cuad_pm25` double NOT NULL DEFAULT 0,
+  `min_pm25` double DEFAULT NULL,
+  `max_pm25` double DEFAULT NULL,
+  `n_pm10` int NOT NULL DEFAULT 0,
+  `suma_pm10` double NOT NULL DEFAULT 0,
+  `suma_cuad_pm10` double NOT NULL DEFAULT 0,
+  `min_pm10` double DEFAULT NULL,
+  `max_pm10` double DEFAULT NULL,
+  PRIMARY KEY (`id_central`, `hora`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_0900_ai_ci;
+
+CREATE TABLE `medicion_rollup_dia` (
+  `id_central` int NOT NULL,
+  `dia` date NOT NULL,
+  `n` int NOT NULL DEFAULT 0,
+  `n_temperatura` int NOT NULL DEFAULT 0,
+  `suma_temperatura` double NOT NULL DEFAULT 0,
+  `suma_cuad_temperatura` double NOT NULL DEFAULT 0,
+  `min_temperatura` double DEFAULT NULL,
+  `max_temperatura` double DEFAULT NULL,
+  `n_humedad` int NOT NULL DEFAULT 0,
+  `suma_humedad` double NOT NULL DEFAULT 0,
+  `suma_cuad_humedad` double NOT NULL DEFAULT 0,
+  `min_humedad` double DEFAULT NULL,
+  `max_humedad` double DEFAULT NULL,
+  `n_pm25` int NOT NULL DEFAULT 0,
+  `suma_pm25` double NOT NULL DEFAULT 0,
+  `suma_cuad_pm25` double NOT NULL DEFAULT 0,
+  `min_pm25` double DEFAULT NULL,
+  `max_pm25` double DEFAULT NULL,
+  `n_pm10` int NOT NULL DEFAULT 0,
+  `suma_pm10` double NOT NULL DEFAULT 0,
+  `suma_cuad_pm10` double NOT NULL DEFAULT 0,
+  `min_pm10` double DEFAULT NULL,
+  `max_pm10` double DEFAULT NULL,
+  PRIMARY KEY (`id_central`, `dia`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_0900_ai_ci;
+
+-- Carga inicial desde los datos existentes
+INSERT INTO `medicion_rollup_hora`
+SELECT id_central, DATE_FORMAT(fecha, '%Y-%m-%d %H:00:00'), COUNT(*),
+       COUNT(temperatura), COALESCE(SUM(temperatura), 0), COALESCE(SUM(temperatura * temperatura), 0), MIN(temperatura), MAX(temperatura),
+       COUNT(humedad), COALESCE(SUM(humedad), 0), COALESCE(SUM(humedad * humedad), 0), MIN(humedad), MAX(humedad),
+       COUNT(pm25), COALESCE(SUM(pm25), 0), COALESCE(SUM(pm25 * pm25), 0), MIN(pm25), MAX(pm25),
+       COUNT(pm10), COALESCE(SUM(pm10), 0), COALESCE(SUM(pm10 * pm10), 0), MIN(pm10), MAX(pm10)
+FROM medicion
+WHERE fecha IS NOT NULL AND id_central IS NOT NULL
+GROUP BY id_central, DATE_FORMAT(fecha, '%Y-%m-%d %H:00:00');
+
+INSERT INTO `medicion_rollup_dia`
+SELECT id_central, DATE(hora), SUM(n),
+       SUM(n_temperatura), SUM(suma_temperatura), SUM(suma_cuad_temperatura), MIN(min_temperatura), MAX(max_temperatura),
+       SUM(n_humedad), SUM(suma_humedad), SUM(suma_cuad_humedad), MIN(min_humedad), MAX(max_humedad),
+       SUM(n_pm25), SUM(suma_pm25), SUM(suma_cuad_pm25), MIN(min_pm25), MAX(max_pm25),
+       SUM(n_pm10), SUM(suma_pm10), SUM(suma_cuad_pm10), MIN(min_pm10), MAX(max_pm10)
+FROM medicion_rollup_hora
+GROUP BY id_central, DATE(hora);
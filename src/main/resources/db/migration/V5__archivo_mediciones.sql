@@ -0,0 +1,12 @@
+-- Archivo de mediciones antiguas: un bloque columnar comprimido por central y día
+-- (formato en BloqueMediciones). Las filas archivadas se eliminan de medicion; los
+-- agregados por hora y día no cambian.
+
+CREATE TABLE `medicion_archivo` (
+  `id_central` int NOT NULL,
+  `dia` date NOT NULL,
+  `n` int NOT NULL,
+  `bloque` mediumblob NOT NULL,
+  PRIMARY KEY (`id_central`, `dia`),
+  KEY `idx_medicion_archivo_dia` (`dia`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_0900_ai_ci;
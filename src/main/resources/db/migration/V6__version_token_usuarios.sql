@@ -0,0 +1,4 @@
+-- Versión de los tokens JWT de cada usuario: va en el claim "ver" y se incrementa al desactivar
+-- al usuario o cambiar su rol, correo o contraseña, lo que invalida los tokens emitidos antes.
+
+ALTER TABLE `usuarios` ADD COLUMN `version_token` int NOT NULL DEFAULT 0;
@@ -0,0 +1,7 @@
+-- Índice de calidad del aire NowCast (escala 0-500) y su contaminante primario (1 PM2.5, 2 PM10),
+-- calculados al recibir cada medición. Las filas anteriores quedan en NULL hasta recalcularlas con
+-- POST /api/admin/calidad-aire/recalcular o al iniciar con --recalcular-calidad-aire.
+
+ALTER TABLE `medicion`
+  ADD COLUMN `ica` smallint DEFAULT NULL,
+  ADD COLUMN `ica_contaminante` tinyint DEFAULT NULL;
@@ -0,0 +1,32 @@
+-- Diseño opcional: medicion particionada por rango de fecha (perfil "particionado").
+-- MySQL no admite claves foráneas en tablas particionadas y exige que la columna de
+-- partición forme parte de la clave primaria, por eso se quita la FK y la PK pasa a (id, fecha).
+-- Se crea una sola partición abierta; ParticionesMedicionService la divide en meses al iniciar
+-- y luego crea los meses futuros y elimina los vencidos.
+
+ALTER TABLE `medicion` DROP FOREIGN KEY `medicion_ibfk_1`;
+
+-- Una fila sin fecha no tiene partición. Se traslada tal cual a medicion_sin_fecha en vez de
+-- inventarle una fecha, que la dejaría en la partición más antigua a merced de la retención;
+-- ParticionesMedicionService informa al iniciar cuántas filas quedaron ahí.
+CREATE TABLE `medicion_sin_fecha` LIKE `medicion`;
+
+INSERT INTO `medicion_sin_fecha` SELECT * FROM `medicion` WHERE `fecha` IS NULL;
+
+DELETE FROM `medicion` WHERE `fecha` IS NULL;
+
+-- En una tabla particionada el optimizador no usa la PK que InnoDB agrega al final de cada índice
+-- para ordenar, así que ORDER BY fecha DESC, id DESC volvería a ordenar todas las filas de la
+-- central (con 50M filas /ultimas pasa de 0,5 ms a 25 s, ver benchmarks/sql/resultados-50m.txt).
+-- El id va explícito en el índice.
+ALTER TABLE `medicion`
+  MODIFY `fecha` datetime NOT NULL,
+  DROP PRIMARY KEY,
+  ADD PRIMARY KEY (`id`, `fecha`),
+  DROP INDEX `idx_medicion_central_fecha`,
+  ADD INDEX `idx_medicion_central_fecha` (`id_central`, `fecha`, `id`);
+
+ALTER TABLE `medicion`
+  PARTITION BY RANGE (TO_DAYS(`fecha`)) (
+    PARTITION `p_futuro` VALUES LESS THAN MAXVALUE
+  );
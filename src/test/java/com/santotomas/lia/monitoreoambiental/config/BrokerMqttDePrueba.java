@@ -0,0 +1,203 @@
+package com.santotomas.lia.monitoreoambiental.config;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Broker MQTT 3.1.1 mínimo para tests, en un puerto local: solo QoS 0, filtros con {@code +} y
+ * {@code #} y suscripciones compartidas {@code $share/grupo/filtro}, que reparte por turnos entre
+ * los suscriptores del grupo como lo hace un broker real.
+ */
+final class BrokerMqttDePrueba implements AutoCloseable {
+
+    private final ServerSocket servidor;
+    private final List<Sesion> sesiones = new CopyOnWriteArrayList<>();
+    private final Map<String, Integer> turnos = new ConcurrentHashMap<>();
+
+    BrokerMqttDePrueba() throws IOException {
+        servidor = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        Thread aceptador = new Thread(this::aceptar, "broker-prueba");
+        aceptador.setDaemon(true);
+        aceptador.start();
+    }
+
+    String url() {
+        return "tcp://127.0.0.1:" + servidor.getLocalPort();
+    }
+
+    /** Espera hasta que los clientes conectados sumen {@code n} filtros suscritos. */
+    void esperarSuscripciones(int n) throws InterruptedException {
+        long limite = System.currentTimeMillis() + 10_000;
+        while (sesiones.stream().mapToInt(s -> s.filtros.size()).sum() < n) {
+            if (System.currentTimeMillis() > limite) {
+                throw new IllegalStateException("Los clientes no alcanzaron " + n + " suscripciones");
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    synchronized void publicar(String topic, byte[] payload) {
+        Map<String, List<Sesion>> grupos = new LinkedHashMap<>();
+        for (Sesion s : sesiones) {
+            for (String filtro : s.filtros) {
+                if (filtro.startsWith("$share/")) {
+                    int barra = filtro.indexOf('/', "$share/".length());
+                    if (coincide(filtro.substring(barra + 1), topic)) {
+                        grupos.computeIfAbsent(filtro, k -> new ArrayList<>()).add(s);
+                    }
+                } else if (coincide(filtro, topic)) {
+                    s.enviar(topic, payload);
+                }
+            }
+        }
+        grupos.forEach((filtro, miembros) -> {
+            int turno = turnos.merge(filtro, 1, Integer::sum);
+            miembros.get(turno % miembros.size()).enviar(topic, payload);
+        });
+    }
+
+    static boolean coincide(String filtro, String topic) {
+        String[] f = filtro.split("/", -1);
+        String[] t = topic.split("/", -1);
+        for (int i = 0; i < f.length; i++) {
+            if (f[i].equals("#")) return true;
+            if (i >= t.length || !(f[i].equals("+") || f[i].equals(t[i]))) return false;
+        }
+        return f.length == t.length;
+    }
+
+    private void aceptar() {
+        while (!servidor.isClosed()) {
+            try {
+                Sesion s = new Sesion(servidor.accept());
+                sesiones.add(s);
+                Thread lector = new Thread(s::leer, "broker-prueba-sesion");
+                lector.setDaemon(true);
+                lector.start();
+            } catch (IOException e) {
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        servidor.close();
+        for (Sesion s : sesiones) s.cerrar();
+    }
+
+    private final class Sesion {
+        private final Socket socket;
+        private final Set<String> filtros = ConcurrentHashMap.newKeySet();
+
+        Sesion(Socket socket) {
+            this.socket = socket;
+        }
+
+        void leer() {
+            try (InputStream in = socket.getInputStream()) {
+                int cabecera;
+                while ((cabecera = in.read()) >= 0) {
+                    DataInputStream cuerpo = new DataInputStream(new ByteArrayInputStream(in.readNBytes(largo(in))));
+                    switch (cabecera >> 4) {
+                        case 1 -> escribir(0x20, new byte[]{0, 0}); // CONNECT -> CONNACK aceptado
+                        case 3 -> {
+                            String topic = cuerpo.readUTF();
+                            if ((cabecera & 0x06) != 0) cuerpo.readUnsignedShort();
+                            publicar(topic, cuerpo.readAllBytes());
+                        }
+                        case 8 -> {
+                            int id = cuerpo.readUnsignedShort();
+                            ByteArrayOutputStream ack = new ByteArrayOutputStream();
+                            ack.write(id >> 8);
+                            ack.write(id);
+                            while (cuerpo.available() > 0) {
+                                filtros.add(cuerpo.readUTF());
+                                cuerpo.readByte();
+                                ack.write(0); // QoS 0 concedido
+                            }
+                            escribir(0x90, ack.toByteArray());
+                        }
+                        case 10 -> {
+                            int id = cuerpo.readUnsignedShort();
+                            while (cuerpo.available() > 0) filtros.remove(cuerpo.readUTF());
+                            escribir(0xB0, new byte[]{(byte) (id >> 8), (byte) id});
+                        }
+                        case 12 -> escribir(0xD0, new byte[0]);
+                        default -> {
+                            // DISCONNECT: el cliente cierra la conexión
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                // conexión cerrada
+            } finally {
+                sesiones.remove(this);
+                cerrar();
+            }
+        }
+
+        void enviar(String topic, byte[] payload) {
+            byte[] t = topic.getBytes(StandardCharsets.UTF_8);
+            byte[] cuerpo = new byte[2 + t.length + payload.length];
+            cuerpo[0] = (byte) (t.length >> 8);
+            cuerpo[1] = (byte) t.length;
+            System.arraycopy(t, 0, cuerpo, 2, t.length);
+            System.arraycopy(payload, 0, cuerpo, 2 + t.length, payload.length);
+            try {
+                escribir(0x30, cuerpo);
+            } catch (IOException e) {
+                cerrar();
+            }
+        }
+
+        synchronized void escribir(int cabecera, byte[] cuerpo) throws IOException {
+            OutputStream out = socket.getOutputStream();
+            out.write(cabecera);
+            int largo = cuerpo.length;
+            do {
+                int b = largo % 128;
+                largo /= 128;
+                out.write(largo > 0 ? b | 0x80 : b);
+            } while (largo > 0);
+            out.write(cuerpo);
+            out.flush();
+        }
+
+        void cerrar() {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+                // ya cerrado
+            }
+        }
+    }
+
+    private static int largo(InputStream in) throws IOException {
+        int valor = 0;
+        int multiplicador = 1;
+        int b;
+        do {
+            b = in.read();
+            if (b < 0) throw new IOException("Fin de la conexión");
+            valor += (b & 0x7F) * multiplicador;
+            multiplicador *= 128;
+        } while ((b & 0x80) != 0);
+        return valor;
+    }
+}
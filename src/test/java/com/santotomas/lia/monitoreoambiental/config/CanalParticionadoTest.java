@@ -0,0 +1,124 @@
+package com.santotomas.lia.monitoreoambiental.config;
+
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.integration.mqtt.core.DefaultMqttPahoClientFactory;
+import org.springframework.integration.mqtt.inbound.MqttPahoMessageDrivenChannelAdapter;
+import org.springframework.integration.mqtt.support.DefaultPahoMessageConverter;
+import org.springframework.integration.mqtt.support.MqttHeaders;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CanalParticionadoTest {
+
+    private static final int ESTACIONES = 8;
+    private static final int MENSAJES = 500;
+
+    private final CanalParticionado canal = new CanalParticionado("prueba", 4, 16,
+            m -> MqttConfig.prefijoEstacion(m.getHeaders().get(MqttHeaders.RECEIVED_TOPIC, String.class)));
+
+    @AfterEach
+    void tearDown() {
+        canal.destroy();
+    }
+
+    /** Igual que en la aplicación, pero sin conectar: el test llama al callback de Paho como lo haría el broker. */
+    private MqttPahoMessageDrivenChannelAdapter cliente(String id) {
+        MqttPahoMessageDrivenChannelAdapter adapter =
+                new MqttPahoMessageDrivenChannelAdapter(id, new DefaultMqttPahoClientFactory(), "#");
+        adapter.setConverter(new DefaultPahoMessageConverter());
+        adapter.setOutputChannel(canal);
+        return adapter;
+    }
+
+    @Test
+    void conservaElOrdenPorEstacionYUsaVariosHilos() throws Exception {
+        Map<String, List<Integer>> recibidos = new ConcurrentHashMap<>();
+        Set<String> hilos = ConcurrentHashMap.newKeySet();
+        CountDownLatch fin = new CountDownLatch(ESTACIONES * MENSAJES);
+        canal.subscribe(m -> {
+            String estacion = MqttConfig.prefijoEstacion(m.getHeaders().get(MqttHeaders.RECEIVED_TOPIC, String.class));
+            recibidos.computeIfAbsent(estacion, k -> Collections.synchronizedList(new ArrayList<>()))
+                    .add(Integer.parseInt((String) m.getPayload()));
+            hilos.add(Thread.currentThread().getName());
+            fin.countDown();
+        });
+
+        // Dos conexiones, cada una con la mitad de las estaciones, entregando desde su propio hilo
+        List<Thread> conexiones = new ArrayList<>();
+        for (int c = 0; c < 2; c++) {
+            int primera = c;
+            MqttPahoMessageDrivenChannelAdapter adapter = cliente("cliente-" + c);
+            Thread t = new Thread(() -> {
+                try {
+                    for (int i = 0; i < MENSAJES; i++) {
+                        for (int e = primera; e < ESTACIONES; e += 2) {
+                            MqttMessage mensaje = new MqttMessage(Integer.toString(i).getBytes(StandardCharsets.UTF_8));
+                            adapter.messageArrived("/colegio" + e + "/Aire/" + (i % 2 == 0 ? "tt" : "hh"), mensaje);
+                        }
+                    }
+                } catch (Exception ex) {
+                    throw new IllegalStateException(ex);
+                }
+            });
+            conexiones.add(t);
+            t.start();
+        }
+        for (Thread t : conexiones) t.join();
+        assertTrue(fin.await(10, TimeUnit.SECONDS));
+
+        assertEquals(ESTACIONES, recibidos.size());
+        for (List<Integer> valores : recibidos.values()) {
+            for (int i = 0; i < MENSAJES; i++) {
+                assertEquals(i, valores.get(i));
+            }
+        }
+        assertTrue(hilos.size() > 1, "Las estaciones deberían repartirse en varias particiones: " + hilos);
+        assertEquals(0, canal.getPendientes());
+    }
+
+    @Test
+    void unaColaLlenaFrenaAlEmisorSinPerderMensajes() throws Exception {
+        CountDownLatch liberar = new CountDownLatch(1);
+        List<Integer> recibidos = Collections.synchronizedList(new ArrayList<>());
+        canal.subscribe(m -> {
+            try {
+                liberar.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            recibidos.add(Integer.parseInt((String) m.getPayload()));
+        });
+        MqttPahoMessageDrivenChannelAdapter adapter = cliente("lento");
+        Thread emisor = new Thread(() -> {
+            try {
+                for (int i = 0; i < 100; i++) {
+                    adapter.messageArrived("/colegio1/Aire/tt", new MqttMessage(Integer.toString(i).getBytes(StandardCharsets.UTF_8)));
+                }
+            } catch (Exception ex) {
+                throw new IllegalStateException(ex);
+            }
+        });
+        emisor.start();
+        emisor.join(500);
+        // Uno en proceso y 16 en la cola: el emisor queda esperando
+        assertTrue(emisor.isAlive());
+        liberar.countDown();
+        emisor.join(5000);
+        assertFalse(emisor.isAlive());
+        long limite = System.currentTimeMillis() + 5000;
+        while (recibidos.size() < 100 && System.currentTimeMillis() < limite) Thread.sleep(10);
+        for (int i = 0; i < 100; i++) assertEquals(i, recibidos.get(i));
+    }
+}
@@ -0,0 +1,215 @@
+package com.santotomas.lia.monitoreoambiental.config;
+
+import com.santotomas.lia.monitoreoambiental.model.Central;
+import com.santotomas.lia.monitoreoambiental.service.EnsambladorMediciones;
+import com.santotomas.lia.monitoreoambiental.service.MedicionAmbientalService;
+import com.santotomas.lia.monitoreoambiental.service.RegistroCentrales;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.integration.mqtt.core.DefaultMqttPahoClientFactory;
+import org.springframework.integration.mqtt.inbound.MqttPahoMessageDrivenChannelAdapter;
+import org.springframework.integration.mqtt.support.MqttHeaders;
+import org.springframework.messaging.SubscribableChannel;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class MqttConfigTest {
+
+    private static List<Central> centrales(int n) {
+        List<Central> centrales = new ArrayList<>();
+        for (int i = 1; i <= n; i++) {
+            centrales.add(new Central(i, "C" + i, "/colegio" + i + "/Aire/", null, null, null));
+        }
+        return centrales;
+    }
+
+    @Test
+    void lasVariablesDeUnaEstacionVanPorLaMismaConexion() {
+        List<List<String>> porCliente = MqttConfig.repartirTopicos(centrales(6), 3, 1, 0, "");
+        assertEquals(3, porCliente.size());
+        for (List<String> topics : porCliente) {
+            assertEquals(12, topics.size());
+            Set<String> estaciones = new HashSet<>();
+            topics.forEach(t -> estaciones.add(MqttConfig.prefijoEstacion(t)));
+            assertEquals(2, estaciones.size());
+        }
+        assertTrue(porCliente.get(1).contains("/colegio1/Aire/tt"));
+        assertTrue(porCliente.get(1).contains("/colegio1/Aire/packed"));
+    }
+
+    @Test
+    void conGrupoCompartidoSoloElTopicoEmpaquetadoEsCompartido() {
+        Set<String> porVariable = new HashSet<>();
+        for (int instancia = 0; instancia < 2; instancia++) {
+            Set<String> empaquetados = new HashSet<>();
+            List<List<String>> porCliente = MqttConfig.repartirTopicos(centrales(5), 2, 2, instancia, "monitoreo");
+            for (List<String> topics : porCliente) {
+                for (String t : topics) {
+                    if (t.endsWith("/packed")) {
+                        assertTrue(t.startsWith("$share/monitoreo//colegio"), t);
+                        empaquetados.add(t);
+                    } else {
+                        assertTrue(t.startsWith("/colegio"), t);
+                        assertTrue(porVariable.add(t), "Tópico repetido entre instancias: " + t);
+                    }
+                }
+            }
+            // Cada instancia comparte el tópico empaquetado de todas las centrales
+            assertEquals(5, empaquetados.size());
+        }
+        assertEquals(25, porVariable.size());
+    }
+
+    @Test
+    void conGrupoCompartidoCadaMedicionSeEnsamblaEnUnaSolaInstancia() throws Exception {
+        int mediciones = 20;
+        int paquetes = 10;
+        List<Central> centrales = centrales(4);
+        RegistroCentrales registro = registro(centrales);
+        Map<String, Integer> completas = new ConcurrentHashMap<>();
+        List<AtomicInteger> empaquetadosPorInstancia = List.of(new AtomicInteger(), new AtomicInteger());
+        CountDownLatch fin = new CountDownLatch(centrales.size() * (mediciones + paquetes));
+        List<MqttConfig> instancias = new ArrayList<>();
+        ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+        scheduler.initialize();
+        DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory();
+        beanFactory.registerSingleton("taskScheduler", scheduler);
+        BrokerMqttDePrueba broker = new BrokerMqttDePrueba();
+        try {
+            for (int i = 0; i < 2; i++) {
+                EnsambladorMediciones ensamblador = new EnsambladorMediciones((prefijo, fecha, tt, hh, pm25, pm10) -> {
+                    completas.merge(prefijo, 1, Integer::sum);
+                    fin.countDown();
+                });
+                AtomicInteger empaquetados = empaquetadosPorInstancia.get(i);
+                MedicionAmbientalService servicio = mock(MedicionAmbientalService.class);
+                doAnswer(inv -> {
+                    String topic = inv.getArgument(0);
+                    if (topic.endsWith("/packed")) {
+                        empaquetados.incrementAndGet();
+                        fin.countDown();
+                    } else {
+                        ensamblador.procesar(topic, new String((byte[]) inv.getArgument(1), StandardCharsets.UTF_8));
+                    }
+                    return null;
+                }).when(servicio).processMqttMessage(anyString(), any(byte[].class));
+                MqttConfig config = new MqttConfig(servicio, registro, beanFactory);
+                ReflectionTestUtils.setField(config, "brokerUrl", broker.url());
+                ReflectionTestUtils.setField(config, "clientId", "prueba-" + i);
+                ReflectionTestUtils.setField(config, "clientes", 1);
+                ReflectionTestUtils.setField(config, "instancias", 2);
+                ReflectionTestUtils.setField(config, "instancia", i);
+                ReflectionTestUtils.setField(config, "grupoCompartido", "monitoreo");
+                ReflectionTestUtils.setField(config, "particiones", 1);
+                ReflectionTestUtils.setField(config, "capacidadParticion", 1000);
+                config.start();
+                instancias.add(config);
+                for (MqttPahoMessageDrivenChannelAdapter adapter : adaptadores(config)) {
+                    ((SubscribableChannel) adapter.getOutputChannel()).subscribe(m -> config.handleMqttMessage(
+                            (byte[]) m.getPayload(), m.getHeaders().get(MqttHeaders.RECEIVED_TOPIC, String.class)));
+                }
+            }
+            // Por instancia: el tópico empaquetado de las 4 centrales y las 5 variables de sus 2 centrales
+            broker.esperarSuscripciones(2 * (4 + 2 * 5));
+
+            for (int k = 0; k < mediciones; k++) {
+                for (Central c : centrales) {
+                    String base = RegistroCentrales.prefijoTopico(c.getTopicoBase());
+                    broker.publicar(base + "/tt", bytes("21.5"));
+                    broker.publicar(base + "/hh", bytes("40"));
+                    broker.publicar(base + "/pm25", bytes("12"));
+                    broker.publicar(base + "/pm10", bytes("20"));
+                    broker.publicar(base + "/fecha", bytes(String.format("20/01/2025 10:%02d:00", k)));
+                    if (k < paquetes) broker.publicar(base + "/packed", bytes("20/01/2025 10:00:00;21.5;40;12;20"));
+                }
+            }
+
+            assertTrue(fin.await(10, TimeUnit.SECONDS), "Faltan mensajes: " + fin.getCount());
+            for (Central c : centrales) {
+                assertEquals(mediciones, completas.get(RegistroCentrales.prefijoTopico(c.getTopicoBase())));
+            }
+            // El broker repartió los mensajes empaquetados entre las dos instancias, sin repetirlos
+            assertEquals(centrales.size() * paquetes,
+                    empaquetadosPorInstancia.get(0).get() + empaquetadosPorInstancia.get(1).get());
+            assertTrue(empaquetadosPorInstancia.get(0).get() > 0 && empaquetadosPorInstancia.get(1).get() > 0);
+        } finally {
+            // Los clientes se desconectan antes de cerrar el broker; al revés, Paho espera 30 s al detenerse
+            for (MqttConfig config : instancias) {
+                List<MqttPahoMessageDrivenChannelAdapter> adaptadores = adaptadores(config);
+                adaptadores.forEach(a -> a.setDisconnectCompletionTimeout(100));
+                config.stop();
+                adaptadores.forEach(a -> ((CanalParticionado) a.getOutputChannel()).destroy());
+            }
+            broker.close();
+            scheduler.shutdown();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<MqttPahoMessageDrivenChannelAdapter> adaptadores(MqttConfig config) {
+        return (List<MqttPahoMessageDrivenChannelAdapter>) ReflectionTestUtils.getField(config, "adaptadores");
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static RegistroCentrales registro(List<Central> centrales) {
+        return new RegistroCentrales(null) {
+            @Override
+            public List<Central> todas() {
+                return centrales;
+            }
+        };
+    }
+
+    @Test
+    void sincronizarSoloCambiaLosTopicosDeLasCentralesModificadas() {
+        List<Central> centrales = centrales(4);
+        RegistroCentrales registro = registro(centrales);
+        MedicionAmbientalService medicionService = mock(MedicionAmbientalService.class);
+        when(medicionService.olvidarEstacion("/colegio3/Aire")).thenReturn(true);
+        MqttConfig config = new MqttConfig(medicionService, registro, null);
+        ReflectionTestUtils.setField(config, "clientes", 2);
+        ReflectionTestUtils.setField(config, "instancias", 1);
+        ReflectionTestUtils.setField(config, "grupoCompartido", "");
+        // Adaptadores sin conectar: addTopic y removeTopic solo actualizan la lista de tópicos
+        List<MqttPahoMessageDrivenChannelAdapter> adaptadores = new ArrayList<>();
+        for (List<String> topics : MqttConfig.repartirTopicos(centrales, 2, 1, 0, "")) {
+            adaptadores.add(new MqttPahoMessageDrivenChannelAdapter("c", new DefaultMqttPahoClientFactory(),
+                    topics.toArray(new String[0])));
+        }
+        ReflectionTestUtils.setField(config, "adaptadores", adaptadores);
+        ReflectionTestUtils.setField(config, "iniciado", true);
+
+        centrales.get(2).setTopicoBase("/colegio3/Patio/");
+        centrales.add(new Central(5, "C5", "/colegio5/Aire/", null, null, null));
+        MqttConfig.CambioSuscripciones cambio = config.sincronizarSuscripciones();
+
+        assertEquals(12, cambio.agregados().size());
+        assertEquals(6, cambio.quitados().size());
+        assertTrue(cambio.quitados().stream().allMatch(t -> t.startsWith("/colegio3/Aire/")));
+        assertEquals(1, cambio.incompletasDescartadas());
+        verify(medicionService).olvidarEstacion("/colegio3/Aire");
+        assertTrue(Arrays.asList(adaptadores.get(1).getTopic()).contains("/colegio3/Patio/tt"));
+        assertTrue(Arrays.asList(adaptadores.get(0).getTopic()).contains("/colegio4/Aire/tt"));
+
+        MqttConfig.CambioSuscripciones sinCambios = config.sincronizarSuscripciones();
+        assertTrue(sinCambios.agregados().isEmpty() && sinCambios.quitados().isEmpty());
+    }
+}
@@ -0,0 +1,36 @@
+package com.santotomas.lia.monitoreoambiental.controller;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MedicionExportControllerTest {
+
+    private static final String CENTRAL = "Sala \"A\", piso 2";
+    private static final LocalDateTime FECHA = LocalDateTime.of(2025, 1, 20, 10, 30);
+
+    @Test
+    void csvPoneEntreComillasUnNombreConComasYComillas() {
+        StringBuilder sb = new StringBuilder();
+        MedicionExportController.escribirCsv(sb, 7, CENTRAL, FECHA, 21.5f, 40f, 12f, Float.NaN);
+        assertEquals("7,\"Sala \"\"A\"\", piso 2\",2025-01-20T10:30:00,21.5,40.0,12.0,\n", sb.toString());
+
+        sb.setLength(0);
+        MedicionExportController.escribirCsv(sb, 8, "Central1", FECHA, 1f, 2f, 3f, 4f);
+        assertTrue(sb.toString().startsWith("8,Central1,"));
+    }
+
+    @Test
+    void ndjsonEscapaElNombreDeLaCentral() throws Exception {
+        StringBuilder sb = new StringBuilder();
+        MedicionExportController.escribirJson(sb, 7, CENTRAL, FECHA, 21.5f, 40f, 12f, Float.NaN);
+        assertTrue(sb.toString().endsWith("}\n"));
+        JsonNode fila = new ObjectMapper().readTree(sb.toString());
+        assertEquals(CENTRAL, fila.get("central").asText());
+        assertTrue(fila.get("pm10").isNull());
+    }
+}
@@ -0,0 +1,149 @@
+package com.santotomas.lia.monitoreoambiental.repository;
+
+import com.santotomas.lia.monitoreoambiental.model.Central;
+import com.santotomas.lia.monitoreoambiental.model.Medicion;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BitacoraMedicionesTest {
+
+    private static final LocalDateTime T0 = LocalDateTime.of(2024, 5, 1, 12, 0);
+    private final Central central = new Central(7, "LIA", "/colegio1/Aire/", null, null, null);
+
+    @TempDir
+    Path directorio;
+
+    private BitacoraMediciones bitacora;
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        bitacora.cerrar();
+    }
+
+    private BitacoraMediciones abrir(long bytesPorSegmento) throws IOException {
+        BitacoraMediciones b = new BitacoraMediciones();
+        ReflectionTestUtils.setField(b, "habilitada", true);
+        ReflectionTestUtils.setField(b, "directorio", directorio.toString());
+        ReflectionTestUtils.setField(b, "bytesPorSegmento", bytesPorSegmento);
+        b.abrir();
+        return b;
+    }
+
+    private long agregar(int minuto) throws IOException {
+        return bitacora.agregar(new Medicion(null, T0.plusMinutes(minuto), 20f + minuto, 50f, null, 12.5f, central));
+    }
+
+    private static List<Long> secuencias(List<BitacoraMediciones.Registro> registros) {
+        return registros.stream().map(BitacoraMediciones.Registro::secuencia).toList();
+    }
+
+    private long segmentos() throws IOException {
+        try (Stream<Path> archivos = Files.list(directorio)) {
+            return archivos.filter(p -> p.toString().endsWith(BitacoraMediciones.EXTENSION)).count();
+        }
+    }
+
+    @Test
+    void loNoConfirmadoSeReproduceAlReabrir() throws Exception {
+        bitacora = abrir(1 << 20);
+        assertEquals(1, agregar(0));
+        assertEquals(2, agregar(1));
+        assertEquals(3, agregar(2));
+        bitacora.confirmar(1);
+        assertFalse(bitacora.hayQueReproducir());
+        bitacora.cerrar();
+
+        bitacora = abrir(1 << 20);
+        List<BitacoraMediciones.Registro> pendientes = bitacora.pendientesDeReproducir(10);
+        assertEquals(List.of(2L, 3L), secuencias(pendientes));
+        Medicion m = pendientes.get(1).medicion();
+        assertEquals(7, m.getCentral().getIdCentral());
+        assertEquals(T0.plusMinutes(2), m.getFecha());
+        assertEquals(22f, m.getTemperatura());
+        assertNull(m.getPm25());
+        assertEquals(12.5f, m.getPm10());
+
+        bitacora.confirmarReproducidas(pendientes);
+        assertFalse(bitacora.hayQueReproducir());
+        assertEquals(4, agregar(3));
+        assertEquals(3, bitacora.confirmadaHasta());
+    }
+
+    @Test
+    void unLoteSeAgregaJuntoConSecuenciasSeguidas() throws Exception {
+        bitacora = abrir(1 << 20);
+        agregar(0);
+        // Más registros de los que caben en el búfer inicial de 64 KB
+        List<Medicion> lote = new ArrayList<>();
+        for (int i = 1; i <= 2000; i++) {
+            lote.add(new Medicion(null, T0.plusMinutes(i), 20f + i, 50f, null, 12.5f, central));
+        }
+        long[] secuencias = bitacora.agregar(lote);
+        assertEquals(2000, secuencias.length);
+        assertEquals(2, secuencias[0]);
+        assertEquals(2001, secuencias[1999]);
+        assertEquals(2002, agregar(2001));
+        bitacora.confirmar(1);
+        bitacora.cerrar();
+
+        bitacora = abrir(1 << 20);
+        List<BitacoraMediciones.Registro> pendientes = bitacora.pendientesDeReproducir(5000);
+        assertEquals(2001, pendientes.size());
+        assertEquals(T0.plusMinutes(2000), pendientes.get(1999).medicion().getFecha());
+    }
+
+    @Test
+    void lasFallidasSeReproducenYLosSegmentosConfirmadosSeBorran() throws Exception {
+        // Cada segmento se cierra al llegar a dos registros
+        bitacora = abrir(2L * BitacoraMediciones.LARGO_REGISTRO);
+        for (int i = 0; i < 6; i++) agregar(i);
+        assertEquals(3, segmentos());
+
+        bitacora.marcarFallidas(5);
+        bitacora.confirmar(1, 2, 3, 4, 6);
+        assertEquals(4, bitacora.confirmadaHasta());
+        assertEquals(1, segmentos());
+        assertTrue(bitacora.hayQueReproducir());
+
+        List<BitacoraMediciones.Registro> pendientes = bitacora.pendientesDeReproducir(10);
+        assertEquals(List.of(5L), secuencias(pendientes));
+        bitacora.confirmarReproducidas(pendientes);
+        assertFalse(bitacora.hayQueReproducir());
+        assertEquals(6, bitacora.confirmadaHasta());
+    }
+
+    @Test
+    void unRegistroDanadoMarcaElFinDelSegmento() throws Exception {
+        bitacora = abrir(1 << 20);
+        for (int i = 0; i < 3; i++) agregar(i);
+        bitacora.cerrar();
+
+        Path segmento = directorio.resolve(BitacoraMediciones.nombreSegmento(1));
+        try (RandomAccessFile f = new RandomAccessFile(segmento.toFile(), "rw")) {
+            long posicion = 2L * BitacoraMediciones.LARGO_REGISTRO + 20;
+            f.seek(posicion);
+            int b = f.read();
+            f.seek(posicion);
+            f.write(b ^ 0xFF);
+        }
+
+        bitacora = abrir(1 << 20);
+        assertEquals(List.of(1L, 2L), secuencias(bitacora.pendientesDeReproducir(10)));
+        // La secuencia dañada se vuelve a asignar en un segmento nuevo
+        assertEquals(3, agregar(5));
+        assertEquals(2, segmentos());
+    }
+}
@@ -0,0 +1,71 @@
+package com.santotomas.lia.monitoreoambiental.repository;
+
+import com.santotomas.lia.monitoreoambiental.model.CodigoCalidadAire;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BloqueMedicionesTest {
+
+    /** Un día de lecturas por minuto con valores de sensor redondeados como los envía la central. */
+    private static BloqueMediciones.Columnas diaTipico(long semilla) {
+        Random r = new Random(semilla);
+        BloqueMediciones.Columnas c = new BloqueMediciones.Columnas(16);
+        long fecha = 1_737_450_000L;
+        int id = 500_000;
+        for (int i = 0; i < 1440; i++) {
+            fecha += i % 97 == 0 ? 61 : 60; // algún segundo de desfase
+            id += 5;                          // cinco centrales intercaladas
+            float tt = Math.round((18 + 6 * Math.sin(i / 229.0) + r.nextGaussian() * 0.1) * 10) / 10f;
+            float hh = Math.round(55 + 10 * Math.cos(i / 229.0) + r.nextGaussian() * 0.5);
+            float pm25 = Math.round(Math.max(0, 12 + r.nextGaussian() * 3));
+            float pm10 = i == 700 ? Float.NaN : Math.round(Math.max(0, 20 + r.nextGaussian() * 5) * 100) / 100f;
+            // El índice cambia poco de un minuto al siguiente; sin índice en las primeras horas
+            int ica = i < 120 ? 0 : CodigoCalidadAire.codificar(40 + i / 60, CodigoCalidadAire.PM25);
+            c.agregar(id, fecha, tt, hh, pm25, pm10, ica);
+        }
+        return c;
+    }
+
+    @Test
+    void idaYVueltaSinPerdida() {
+        BloqueMediciones.Columnas original = diaTipico(1);
+        BloqueMediciones.Columnas leido = BloqueMediciones.decodificar(BloqueMediciones.codificar(original));
+        assertEquals(original.tamano(), leido.tamano());
+        for (int i = 0; i < original.tamano(); i++) {
+            assertEquals(original.id(i), leido.id(i));
+            assertEquals(original.fecha(i), leido.fecha(i));
+            assertEquals(original.ica(i), leido.ica(i));
+            for (int v = 0; v < 4; v++) {
+                assertEquals(Float.floatToIntBits(original.valor(v, i)), Float.floatToIntBits(leido.valor(v, i)));
+            }
+        }
+        assertTrue(Float.isNaN(leido.valor(3, 700)));
+    }
+
+    @Test
+    void ocupaPocosBytesPorFila() {
+        byte[] bloque = BloqueMediciones.codificar(diaTipico(2));
+        double bytesPorFila = (double) bloque.length / 1440;
+        // Una fila de InnoDB con su índice secundario ocupa del orden de 60 a 80 bytes
+        assertTrue(bytesPorFila < 10, "bytes por fila: " + bytesPorFila);
+    }
+
+    @Test
+    void casosBorde() {
+        assertEquals(0, BloqueMediciones.decodificar(BloqueMediciones.codificar(new BloqueMediciones.Columnas(0))).tamano());
+        BloqueMediciones.Columnas c = new BloqueMediciones.Columnas(1);
+        c.agregar(Integer.MAX_VALUE, 0, -40.5f, Float.NaN, 0f, 999.99f, 0);
+        c.agregar(1, Long.MAX_VALUE / 2, Float.MAX_VALUE, -0f, Float.MIN_VALUE, 1f,
+                CodigoCalidadAire.codificar(500, CodigoCalidadAire.PM10));
+        BloqueMediciones.Columnas leido = BloqueMediciones.decodificar(BloqueMediciones.codificar(c));
+        assertEquals(1, leido.id(1));
+        assertEquals(Long.MAX_VALUE / 2, leido.fecha(1));
+        assertEquals(Float.MAX_VALUE, leido.valor(0, 1));
+        assertEquals(Float.floatToIntBits(-0f), Float.floatToIntBits(leido.valor(1, 1)));
+        assertTrue(Float.isNaN(leido.valor(1, 0)));
+        assertEquals(500, CodigoCalidadAire.indice(leido.ica(1)));
+    }
+}
@@ -0,0 +1,95 @@
+package com.santotomas.lia.monitoreoambiental.repository;
+
+import com.santotomas.lia.monitoreoambiental.model.Central;
+import com.santotomas.lia.monitoreoambiental.model.Medicion;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EmbebidoMedicionStoreTest extends MedicionStoreContrato {
+
+    private static final int FILAS_POR_SEGMENTO = 300;
+
+    private final Central a = new Central(1, "LIA", "/colegio1/Aire/", null, null, null);
+    private final Central b = new Central(2, "PATIO", "/colegio1/Patio/", null, null, null);
+
+    @TempDir
+    Path directorio;
+
+    private EmbebidoMedicionStore store;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        store = abrir();
+    }
+
+    @AfterEach
+    void tearDown() {
+        store.cerrar();
+    }
+
+    private EmbebidoMedicionStore abrir() throws IOException {
+        EmbebidoMedicionStore s = new EmbebidoMedicionStore();
+        ReflectionTestUtils.setField(s, "directorio", directorio.toString());
+        ReflectionTestUtils.setField(s, "filasPorSegmento", FILAS_POR_SEGMENTO);
+        ReflectionTestUtils.setField(s, "forzarEscritura", false);
+        s.abrir();
+        return s;
+    }
+
+    @Override
+    MedicionStore store() {
+        return store;
+    }
+
+    @Override
+    Central centralA() {
+        return a;
+    }
+
+    @Override
+    Central centralB() {
+        return b;
+    }
+
+    @Test
+    void losDatosSobrevivenAlReabrirYLosIdsContinuan() throws IOException {
+        List<Medicion> antes = cargar(a, 1000);
+        store.cerrar();
+        store = abrir();
+        assertEquals(4, Files.list(directorio.resolve("central-1")).count());
+        assertEquals(1000, store.contar(filtro(T0, T0.plusDays(1), a)));
+        Medicion nueva = medicion(a, 2000, 1f, 1f);
+        store.agregar(new ArrayList<>(List.of(nueva)));
+        assertEquals(antes.get(999).getId() + 1, nueva.getId());
+    }
+
+    @Test
+    void rangoQueCruzaSegmentosUsaElIndice() {
+        List<Medicion> lote = cargar(a, 1000);
+        assertEquals(List.of(lote.get(299).getId(), lote.get(300).getId(), lote.get(301).getId()),
+                ids(filtro(T0.plusMinutes(299), T0.plusMinutes(301), a), true));
+        assertEquals(List.of(lote.get(601).getId(), lote.get(600).getId()),
+                ids(filtro(T0.plusMinutes(600), T0.plusMinutes(601), a), false));
+    }
+
+    @Test
+    void medicionesAtrasadasSeEntreganEnOrden() {
+        List<Medicion> lote = cargar(a, 10);
+        Medicion atrasada = medicion(a, 4, 99f, 1f);
+        store.agregar(new ArrayList<>(List.of(atrasada)));
+        List<Integer> ids = ids(filtro(T0.plusMinutes(3), T0.plusMinutes(5), a), true);
+        assertEquals(List.of(lote.get(3).getId(), lote.get(4).getId(), atrasada.getId(), lote.get(5).getId()), ids);
+        assertEquals(lote.get(9).getId(), store.ultimas(1, 1).get(0).getId());
+    }
+}
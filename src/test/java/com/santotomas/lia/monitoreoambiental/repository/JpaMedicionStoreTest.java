@@ -0,0 +1,63 @@
+package com.santotomas.lia.monitoreoambiental.repository;
+
+import com.santotomas.lia.monitoreoambiental.model.Central;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Contrato de {@link MedicionStore} contra MySQL. Necesita la base de datos configurada,
+ * así que solo corre con {@code -Dcontrato.mysql=true}; crea dos centrales propias y las
+ * borra al terminar.
+ */
+@SpringBootTest
+@EnabledIfSystemProperty(named = "contrato.mysql", matches = "true")
+class JpaMedicionStoreTest extends MedicionStoreContrato {
+
+    @Autowired
+    private JpaMedicionStore store;
+
+    @Autowired
+    private CentralRepository centralRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private Central a;
+    private Central b;
+
+    @BeforeEach
+    void setUp() {
+        long sufijo = System.nanoTime();
+        a = centralRepository.save(new Central(null, "contrato-a-" + sufijo, "/contrato/a/" + sufijo + "/", null, null, null));
+        b = centralRepository.save(new Central(null, "contrato-b-" + sufijo, "/contrato/b/" + sufijo + "/", null, null, null));
+    }
+
+    @AfterEach
+    void tearDown() {
+        for (Central c : new Central[]{a, b}) {
+            for (String tabla : new String[]{"medicion", "medicion_rollup_hora", "medicion_rollup_dia"}) {
+                jdbcTemplate.update("DELETE FROM " + tabla + " WHERE id_central = ?", c.getIdCentral());
+            }
+            centralRepository.deleteById(c.getIdCentral());
+        }
+    }
+
+    @Override
+    MedicionStore store() {
+        return store;
+    }
+
+    @Override
+    Central centralA() {
+        return a;
+    }
+
+    @Override
+    Central centralB() {
+        return b;
+    }
+}
@@ -0,0 +1,211 @@
+package com.santotomas.lia.monitoreoambiental.repository;
+
+import com.santotomas.lia.monitoreoambiental.dto.CursorMedicion;
+import com.santotomas.lia.monitoreoambiental.dto.FiltroMediciones;
+import com.santotomas.lia.monitoreoambiental.dto.MedicionDTO;
+import com.santotomas.lia.monitoreoambiental.model.Central;
+import com.santotomas.lia.monitoreoambiental.model.Medicion;
+import com.santotomas.lia.monitoreoambiental.model.CodigoCalidadAire;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Comportamiento que debe cumplir toda implementación de {@link MedicionStore}. Cada
+ * implementación extiende esta clase y entrega un almacenamiento vacío y dos centrales.
+ */
+abstract class MedicionStoreContrato {
+
+    static final LocalDateTime T0 = LocalDateTime.of(2021, 3, 1, 10, 0);
+
+    abstract MedicionStore store();
+
+    abstract Central centralA();
+
+    abstract Central centralB();
+
+    FiltroMediciones filtro(LocalDateTime inicio, LocalDateTime fin, Central... centrales) {
+        List<Integer> ids = new ArrayList<>();
+        for (Central c : centrales) ids.add(c.getIdCentral());
+        return new FiltroMediciones(ids, inicio, fin, null, null, null, null, null, null, null, null);
+    }
+
+    static Medicion medicion(Central c, int minuto, Float temperatura, Float pm25) {
+        return new Medicion(null, T0.plusMinutes(minuto), temperatura, 50f, pm25, 20.25f, c);
+    }
+
+    /** Guarda una medición por minuto de 0 a {@code minutos - 1}; la temperatura es el minuto. */
+    List<Medicion> cargar(Central c, int minutos) {
+        List<Medicion> lote = new ArrayList<>();
+        for (int i = 0; i < minutos; i++) lote.add(medicion(c, i, (float) i, 10f));
+        store().agregar(lote);
+        return lote;
+    }
+
+    List<Integer> ids(FiltroMediciones filtro, boolean ascendente) {
+        List<Integer> ids = new ArrayList<>();
+        store().recorrer(filtro, ascendente, (id, central, fecha, tt, hh, pm25, pm10, ica) -> ids.add(id));
+        return ids;
+    }
+
+    @Test
+    void agregarAsignaIdsYUltimasDevuelveLaMasReciente() {
+        List<Medicion> lote = cargar(centralA(), 5);
+        lote.forEach(m -> assertNotNull(m.getId()));
+        List<MedicionDTO> ultimas = store().ultimas(centralA().getIdCentral(), 3);
+        assertEquals(List.of(lote.get(4).getId(), lote.get(3).getId(), lote.get(2).getId()),
+                ultimas.stream().map(MedicionDTO::getId).toList());
+        assertEquals(T0.plusMinutes(4), ultimas.get(0).getFecha());
+        assertEquals(4f, ultimas.get(0).getTemperatura());
+        assertEquals(20.25f, ultimas.get(0).getPm10());
+        assertTrue(store().ultimas(centralB().getIdCentral(), 3).isEmpty());
+    }
+
+    @Test
+    void agregarNuevasOmiteLasYaGuardadas() {
+        cargar(centralA(), 3);
+        List<Medicion> repetidas = new ArrayList<>();
+        repetidas.add(medicion(centralA(), 1, 1f, 10f));
+        repetidas.add(medicion(centralA(), 3, 3f, 10f));
+        repetidas.add(medicion(centralB(), 1, 1f, 10f));
+        List<Medicion> nuevas = store().agregarNuevas(repetidas);
+        assertEquals(List.of(repetidas.get(1), repetidas.get(2)),
+                nuevas.stream().sorted((x, y) -> x.getCentral().getIdCentral() - y.getCentral().getIdCentral()).toList());
+        assertEquals(4, store().contar(filtro(T0, T0.plusHours(1), centralA())));
+        assertEquals(1, store().contar(filtro(T0, T0.plusHours(1), centralB())));
+    }
+
+    @Test
+    void recorrerIntercalaCentralesPorFechaEId() {
+        List<Medicion> a = cargar(centralA(), 3);
+        List<Medicion> b = cargar(centralB(), 3);
+        FiltroMediciones todo = filtro(T0, T0.plusHours(1), centralA(), centralB());
+        List<Integer> esperado = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            esperado.add(Math.min(a.get(i).getId(), b.get(i).getId()));
+            esperado.add(Math.max(a.get(i).getId(), b.get(i).getId()));
+        }
+        assertEquals(esperado, ids(todo, true));
+        List<Integer> descendente = new ArrayList<>(esperado);
+        Collections.reverse(descendente);
+        assertEquals(descendente, ids(todo, false));
+    }
+
+    @Test
+    void recorrerAplicaRangoYFiltrosDeValor() {
+        List<Medicion> lote = new ArrayList<>();
+        lote.add(medicion(centralA(), 0, 5f, 10f));
+        lote.add(medicion(centralA(), 1, 15f, 10f));
+        lote.add(medicion(centralA(), 2, null, 10f));
+        lote.add(medicion(centralA(), 3, 25f, 10f));
+        lote.add(medicion(centralA(), 4, 35f, 10f));
+        store().agregar(lote);
+
+        assertEquals(List.of(lote.get(1).getId(), lote.get(2).getId(), lote.get(3).getId()),
+                ids(filtro(T0.plusMinutes(1), T0.plusMinutes(3), centralA()), true));
+        FiltroMediciones conMinimo = new FiltroMediciones(List.of(centralA().getIdCentral()), T0, T0.plusHours(1),
+                10f, 30f, null, null, null, null, null, null);
+        // La fila sin temperatura no cumple el mínimo, como en SQL
+        assertEquals(List.of(lote.get(1).getId(), lote.get(3).getId()), ids(conMinimo, true));
+        assertEquals(2, store().contar(conMinimo));
+        assertEquals(5, store().contar(filtro(T0, T0.plusHours(1), centralA())));
+    }
+
+    @Test
+    void elVisitantePuedeDetenerElRecorrido() {
+        cargar(centralA(), 10);
+        List<Integer> vistos = new ArrayList<>();
+        store().recorrer(filtro(T0, T0.plusHours(1), centralA()), true, (id, central, fecha, tt, hh, pm25, pm10, ica) -> {
+            vistos.add(id);
+            return vistos.size() < 4;
+        });
+        assertEquals(4, vistos.size());
+    }
+
+    @Test
+    void paginaPorDesplazamientoYPorCursor() {
+        List<Medicion> lote = cargar(centralA(), 10);
+        FiltroMediciones todo = filtro(T0, T0.plusHours(1), centralA());
+        List<MedicionDTO> segunda = store().pagina(todo, null, 3, 3);
+        assertEquals(List.of(lote.get(6).getId(), lote.get(5).getId(), lote.get(4).getId()),
+                segunda.stream().map(MedicionDTO::getId).toList());
+
+        CursorMedicion cursor = new CursorMedicion(lote.get(6).getFecha(), lote.get(6).getId());
+        List<MedicionDTO> siguiente = store().pagina(todo, cursor, 0, 2);
+        assertEquals(List.of(lote.get(5).getId(), lote.get(4).getId()),
+                siguiente.stream().map(MedicionDTO::getId).toList());
+    }
+
+    @Test
+    void recorrerVariableOmiteNulos() {
+        List<Medicion> lote = new ArrayList<>();
+        lote.add(medicion(centralA(), 0, 5f, 1f));
+        lote.add(medicion(centralA(), 1, 6f, null));
+        lote.add(medicion(centralA(), 2, 7f, 3f));
+        store().agregar(lote);
+        List<Float> valores = new ArrayList<>();
+        store().recorrerVariable(centralA().getIdCentral(), "pm25", T0, T0.plusHours(1), (fecha, v) -> valores.add(v));
+        assertEquals(List.of(1f, 3f), valores);
+    }
+
+    @Test
+    void guardaYActualizaElIndiceDeCalidadDelAire() {
+        List<Medicion> lote = new ArrayList<>();
+        lote.add(medicion(centralA(), 0, 1f, 10f));
+        lote.add(medicion(centralA(), 1, 2f, 40f));
+        lote.get(1).setIca(112);
+        lote.get(1).setIcaContaminante(CodigoCalidadAire.PM25);
+        store().agregar(lote);
+
+        MedicionDTO ultima = store().ultimas(centralA().getIdCentral(), 1).get(0);
+        assertEquals(112, ultima.getIndiceCalidadAire());
+        assertEquals("PM2.5", ultima.getContaminantePrimario());
+        assertEquals(40f, ultima.getValorMedido());
+
+        Medicion primera = lote.get(0);
+        store().actualizarIndices(centralA().getIdCentral(), List.of(new MedicionStore.NuevoIndice(primera.getId(),
+                primera.getFecha(), CodigoCalidadAire.codificar(60, CodigoCalidadAire.PM10))));
+        List<Integer> codigos = new ArrayList<>();
+        store().recorrer(filtro(T0, T0.plusHours(1), centralA()), true,
+                (id, central, fecha, tt, hh, pm25, pm10, ica) -> codigos.add(ica));
+        assertEquals(List.of(CodigoCalidadAire.codificar(60, CodigoCalidadAire.PM10),
+                CodigoCalidadAire.codificar(112, CodigoCalidadAire.PM25)), codigos);
+        assertEquals(60, store().pagina(filtro(T0, T0.plusHours(1), centralA()), null, 1, 1).get(0).getIndiceCalidadAire());
+    }
+
+    @Test
+    void agrupadasPromediaPorPeriodo() {
+        List<Medicion> lote = new ArrayList<>();
+        lote.add(medicion(centralA(), 0, 10f, 1f));
+        lote.add(medicion(centralA(), 30, 20f, 1f));
+        lote.add(medicion(centralA(), 60, 40f, 1f));
+        lote.add(medicion(centralA(), 24 * 60, null, 1f));
+        store().agregar(lote);
+
+        List<RollupRepository.FilaAgrupada> horas = store().agrupadas(List.of(centralA().getIdCentral()),
+                "temperatura", "hora", T0.toLocalDate(), T0.toLocalDate());
+        assertEquals(List.of("2021-03-01T10:00:00", "2021-03-01T11:00:00"),
+                horas.stream().map(RollupRepository.FilaAgrupada::fecha).toList());
+        assertEquals(15.0, horas.get(0).valor(), 1e-9);
+        assertEquals(40.0, horas.get(1).valor(), 1e-9);
+
+        List<RollupRepository.FilaAgrupada> dias = store().agrupadas(List.of(centralA().getIdCentral()),
+                "temperatura", "dia", null, null);
+        assertEquals(2, dias.size());
+        assertEquals("2021-03-01", dias.get(0).fecha());
+        assertEquals(70.0 / 3, dias.get(0).valor(), 1e-9);
+        assertNull(dias.get(1).valor());
+
+        List<RollupRepository.FilaAgrupada> meses = store().agrupadas(List.of(centralA().getIdCentral()),
+                "temperatura", "mes", LocalDate.of(2021, 3, 1), LocalDate.of(2021, 3, 31));
+        assertEquals("2021-03", meses.get(0).fecha());
+        assertThrows(IllegalArgumentException.class, () -> store().agrupadas(List.of(centralA().getIdCentral()),
+                "viento", "dia", null, null));
+    }
+}
@@ -0,0 +1,72 @@
+package com.santotomas.lia.monitoreoambiental.security;
+
+import com.santotomas.lia.monitoreoambiental.model.Usuario;
+import com.santotomas.lia.monitoreoambiental.repository.UsuarioRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.lang.reflect.Proxy;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SesionesJwtTest {
+
+    private final JwtUtil jwtUtil = new JwtUtil();
+    private final Usuario usuario = new Usuario(1L, true, "Pérez", "ana@lia.cl", "Ana", "x", 1, null, 0);
+    private int consultas;
+    private SesionesJwt sesiones;
+
+    @BeforeEach
+    void setUp() {
+        UsuarioRepository repositorio = (UsuarioRepository) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{UsuarioRepository.class}, (proxy, metodo, args) -> {
+                    assertEquals("findByCorreo", metodo.getName());
+                    consultas++;
+                    return usuario.getCorreo().equals(args[0]) ? usuario : null;
+                });
+        sesiones = new SesionesJwt(jwtUtil, repositorio);
+        ReflectionTestUtils.setField(sesiones, "revalidacionSegundos", 60L);
+        ReflectionTestUtils.setField(sesiones, "maxTokens", 100);
+    }
+
+    @Test
+    void elRolSaleDelTokenYLaBaseSeConsultaSoloAlVerificarlo() {
+        String token = jwtUtil.generateToken("ana@lia.cl", 1, 0);
+        for (int i = 0; i < 3; i++) {
+            User principal = sesiones.autenticar(token);
+            assertEquals("ana@lia.cl", principal.getUsername());
+            assertEquals(List.of("ROLE_ADMIN"), principal.getAuthorities().stream().map(GrantedAuthority::getAuthority).toList());
+        }
+        assertEquals(1, consultas);
+    }
+
+    @Test
+    void cambiarLaVersionRevocaLosTokensAnteriores() {
+        String token = jwtUtil.generateToken("ana@lia.cl", 1, 0);
+        assertNotNull(sesiones.autenticar(token));
+
+        usuario.setActivo(false);
+        usuario.setVersionToken(1);
+        // Sin invalidar sigue en la caché hasta la revalidación
+        assertNotNull(sesiones.autenticar(token));
+        sesiones.invalidar("ana@lia.cl");
+        assertNull(sesiones.autenticar(token));
+
+        usuario.setActivo(true);
+        assertNull(sesiones.autenticar(token));
+        assertNotNull(sesiones.autenticar(jwtUtil.generateToken("ana@lia.cl", 1, 1)));
+    }
+
+    @Test
+    void rechazaTokensAlterados() {
+        String token = jwtUtil.generateToken("ana@lia.cl", 1, 0);
+        String alterado = token.substring(0, token.length() - 2) + (token.endsWith("A") ? "BB" : "AA");
+        assertNull(sesiones.autenticar(alterado));
+        assertNull(sesiones.autenticar("no-es-un-token"));
+        assertEquals(0, consultas);
+    }
+}
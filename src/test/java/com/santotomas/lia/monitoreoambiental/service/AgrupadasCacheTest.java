@@ -0,0 +1,119 @@
+package com.santotomas.lia.monitoreoambiental.service;
+
+import com.santotomas.lia.monitoreoambiental.model.Central;
+import com.santotomas.lia.monitoreoambiental.model.Medicion;
+import com.santotomas.lia.monitoreoambiental.repository.MedicionStore;
+import com.santotomas.lia.monitoreoambiental.repository.RollupRepository.FilaAgrupada;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class AgrupadasCacheTest {
+
+    private static final LocalDate D1 = LocalDate.of(2025, 1, 20);
+    private static final LocalDate D3 = LocalDate.of(2025, 1, 22);
+
+    private final Central central = new Central(1, "LIA", "/colegio1/Aire/", null, null, null);
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final AsignacionIngesta asignacion = new AsignacionIngesta();
+    private MedicionStore store;
+    private AgrupadasCache cache;
+
+    @BeforeEach
+    void setUp() {
+        store = mock(MedicionStore.class);
+        // Un valor por día del rango pedido, salvo el 21 que no tiene mediciones
+        when(store.agrupadas(anyList(), eq("pm25"), eq("dia"), any(), any())).thenAnswer(inv -> {
+            List<Integer> centrales = inv.getArgument(0);
+            LocalDate inicio = inv.getArgument(3);
+            LocalDate fin = inv.getArgument(4);
+            List<FilaAgrupada> filas = new ArrayList<>();
+            if (inicio == null) return filas;
+            for (int id : centrales) {
+                for (LocalDate d = inicio; !d.isAfter(fin); d = d.plusDays(1)) {
+                    if (d.getDayOfMonth() != 21) filas.add(new FilaAgrupada(id, d.toString(), (double) d.getDayOfMonth()));
+                }
+            }
+            return filas;
+        });
+        cache = new AgrupadasCache(store, asignacion, registry);
+        ReflectionTestUtils.setField(cache, "maxPeriodos", 100);
+        fijarAhora(LocalDateTime.of(2025, 2, 1, 12, 0));
+    }
+
+    private void fijarAhora(LocalDateTime ahora) {
+        cache.reloj = Clock.fixed(ahora.toInstant(ZoneOffset.UTC), ZoneId.of("UTC"));
+    }
+
+    private List<String> fechas(LocalDate inicio, LocalDate fin) {
+        return cache.agrupadas(List.of(1), "pm25", "dia", inicio, fin).stream().map(FilaAgrupada::fecha).toList();
+    }
+
+    private double conteo(String result) {
+        return registry.get("cache.gets").tag("cache", AgrupadasCache.NOMBRE).tag("result", result).counter().count();
+    }
+
+    @Test
+    void losPeriodosCerradosSeSirvenDesdeMemoria() {
+        assertEquals(List.of("2025-01-20", "2025-01-22"), fechas(D1, D3));
+        assertEquals(List.of("2025-01-20", "2025-01-22"), fechas(D1, D3));
+        verify(store, times(1)).agrupadas(anyList(), anyString(), anyString(), any(), any());
+        assertEquals(3, conteo("hit"));
+        assertEquals(3, conteo("miss"));
+    }
+
+    @Test
+    void soloConsultaLosPeriodosQueFaltan() {
+        fechas(D1, D1);
+        assertEquals(List.of("2025-01-20", "2025-01-22", "2025-01-23"), fechas(D1, D3.plusDays(1)));
+        verify(store).agrupadas(List.of(1), "pm25", "dia", D1.plusDays(1), D3.plusDays(1));
+    }
+
+    @Test
+    void elPeriodoAbiertoSiempreSeConsulta() {
+        fijarAhora(D3.atTime(10, 0));
+        fechas(D1, D3);
+        fechas(D1, D3);
+        fechas(D1, D3);
+        verify(store, times(2)).agrupadas(List.of(1), "pm25", "dia", D3, D3);
+    }
+
+    @Test
+    void unaMedicionAtrasadaInvalidaSuPeriodo() {
+        fechas(D1, D3);
+        Medicion m = new Medicion(10, D1.atTime(8, 30), 20f, 40f, 1f, 2f, central);
+        cache.medicionesPersistidas(new MedicionesPersistidasEvent(List.of(m)));
+        fechas(D1, D3);
+        verify(store).agrupadas(List.of(1), "pm25", "dia", D1, D1);
+    }
+
+    @Test
+    void conGrupoCompartidoNoGuardaPeriodos() {
+        // Otra instancia puede guardar mediciones atrasadas de la central sin que esta se entere
+        ReflectionTestUtils.setField(asignacion, "grupoCompartido", "ingesta");
+        assertEquals(List.of("2025-01-20", "2025-01-22"), fechas(D1, D3));
+        assertEquals(List.of("2025-01-20", "2025-01-22"), fechas(D1, D3));
+        verify(store, times(2)).agrupadas(List.of(1), "pm25", "dia", D1, D3);
+        assertEquals(0, conteo("hit"));
+    }
+
+    @Test
+    void sinRangoNoUsaLaCache() {
+        cache.agrupadas(List.of(1), "pm25", "dia", null, null);
+        cache.agrupadas(List.of(1), "pm25", "dia", null, null);
+        verify(store, times(2)).agrupadas(List.of(1), "pm25", "dia", null, null);
+    }
+}
@@ -0,0 +1,98 @@
+package com.santotomas.lia.monitoreoambiental.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DecodificadorEmpaquetadoTest {
+
+    private final List<String> recibidas = new ArrayList<>();
+    private final EnsambladorMediciones.Receptor receptor =
+            (prefijo, fecha, tt, hh, pm25, pm10) -> recibidas.add(prefijo + "|" + fecha + "|" + tt + "|" + hh + "|" + pm25 + "|" + pm10);
+
+    private int decodificar(String payload) {
+        return DecodificadorEmpaquetado.decodificar("/lia/Aire", payload.getBytes(StandardCharsets.UTF_8), receptor);
+    }
+
+    @Test
+    void textoConVariasMedicionesEsIgualAlModoDeCincoTopicos() {
+        List<String> legado = new ArrayList<>();
+        EnsambladorMediciones ensamblador = new EnsambladorMediciones(
+                (prefijo, fecha, tt, hh, pm25, pm10) -> legado.add(prefijo + "|" + fecha + "|" + tt + "|" + hh + "|" + pm25 + "|" + pm10));
+        String[][] lecturas = {
+                {"21/01/2025 09:16:30", "21.5", "40.25", "3.1", "7.75"},
+                {"21/01/2025 09:17:30", "-0.35", "99", "0.05", "1234.5"},
+        };
+        StringBuilder empaquetado = new StringBuilder();
+        for (String[] l : lecturas) {
+            ensamblador.procesar("/lia/Aire/tt", l[1]);
+            ensamblador.procesar("/lia/Aire/hh", l[2]);
+            ensamblador.procesar("/lia/Aire/pm25", l[3]);
+            ensamblador.procesar("/lia/Aire/pm10", l[4]);
+            ensamblador.procesar("/lia/Aire/fecha", l[0]);
+            empaquetado.append(String.join(",", l)).append("\r\n");
+        }
+
+        assertEquals(2, decodificar(empaquetado.toString()));
+        assertEquals(legado, recibidas);
+    }
+
+    @Test
+    void aceptaPuntoYComaValoresFaltantesYExponentes() {
+        assertEquals(2, decodificar(" 01/02/2025 10:00:00 , 1e1,nan,,2.5E-1 ; 01/02/2025 10:01:00,1,2,3,4;"));
+        assertTrue(recibidas.get(0).endsWith("|10.0|NaN|NaN|0.25"));
+    }
+
+    @Test
+    void unaLineaInvalidaRechazaTodoElMensaje() {
+        NumberFormatException e = assertThrows(NumberFormatException.class,
+                () -> decodificar("01/02/2025 10:00:00,1,2,3,4\n01/02/2025 10:01:00,1,2,x,4\n"));
+        assertTrue(e.getMessage().startsWith("Línea 2"), e.getMessage());
+        assertTrue(recibidas.isEmpty());
+        assertThrows(NumberFormatException.class, () -> decodificar("01/02/2025 10:00:00,1,2,3"));
+        assertThrows(NumberFormatException.class, () -> decodificar("01/02/2025 10:00:00,1,2,3,4,5"));
+        assertThrows(NumberFormatException.class, () -> decodificar("\n \n"));
+        assertTrue(recibidas.isEmpty());
+    }
+
+    @Test
+    void tramaBinaria() {
+        long fecha = EnsambladorMediciones.parsearFecha("21/01/2025 09:16:30");
+        ByteBuffer b = ByteBuffer.allocate(1 + 2 * DecodificadorEmpaquetado.LARGO_REGISTRO_BINARIO);
+        b.put(DecodificadorEmpaquetado.VERSION_BINARIA);
+        b.putLong(fecha).putFloat(21.5f).putFloat(40f).putFloat(3.1f).putFloat(7f);
+        b.putLong(fecha + 60).putFloat(22f).putFloat(41f).putFloat(Float.NaN).putFloat(8f);
+
+        assertEquals(2, DecodificadorEmpaquetado.decodificar("/lia/Aire", b.array(), receptor));
+        assertEquals(List.of("/lia/Aire|" + fecha + "|21.5|40.0|3.1|7.0", "/lia/Aire|" + (fecha + 60) + "|22.0|41.0|NaN|8.0"), recibidas);
+
+        byte[] cortada = new byte[b.capacity() - 3];
+        System.arraycopy(b.array(), 0, cortada, 0, cortada.length);
+        assertThrows(NumberFormatException.class, () -> DecodificadorEmpaquetado.decodificar("/lia/Aire", cortada, receptor));
+    }
+
+    @Test
+    void unaFechaFueraDeRangoRechazaTodaLaTrama() {
+        long fecha = EnsambladorMediciones.parsearFecha("21/01/2025 09:16:30");
+        for (long invalida : new long[]{Long.MIN_VALUE, Long.MAX_VALUE, -30_610_224_001L, 253_402_300_800L}) {
+            ByteBuffer b = ByteBuffer.allocate(1 + 2 * DecodificadorEmpaquetado.LARGO_REGISTRO_BINARIO);
+            b.put(DecodificadorEmpaquetado.VERSION_BINARIA);
+            b.putLong(fecha).putFloat(21.5f).putFloat(40f).putFloat(3.1f).putFloat(7f);
+            b.putLong(invalida).putFloat(22f).putFloat(41f).putFloat(4f).putFloat(8f);
+
+            NumberFormatException e = assertThrows(NumberFormatException.class,
+                    () -> DecodificadorEmpaquetado.decodificar("/lia/Aire", b.array(), receptor));
+            assertTrue(e.getMessage().startsWith("Registro 2"), e.getMessage());
+        }
+        assertTrue(recibidas.isEmpty());
+
+        // En texto el año tiene cuatro dígitos, pero puede quedar bajo 1000
+        assertThrows(NumberFormatException.class, () -> decodificar("01/02/2025 10:00:00,1,2,3,4\n01/02/0999 10:00:00,1,2,3,4"));
+        assertTrue(recibidas.isEmpty());
+    }
+}
@@ -0,0 +1,43 @@
+package com.santotomas.lia.monitoreoambiental.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DifusorMedicionesTest {
+
+    private static String texto(Set<ResponseBodyEmitter.DataWithMediaType> partes) {
+        StringBuilder sb = new StringBuilder();
+        for (ResponseBodyEmitter.DataWithMediaType d : partes) {
+            sb.append(d.getData() instanceof byte[] b ? new String(b, StandardCharsets.UTF_8) : d.getData());
+        }
+        return sb.toString();
+    }
+
+    @Test
+    void elEventoSeArmaUnaVezYSeReutiliza() {
+        byte[] json = "{\"id\":1}".getBytes(StandardCharsets.UTF_8);
+        DifusorMediciones.EventoPreparado evento = DifusorMediciones.EventoPreparado.nuevo()
+                .id("7").name("nueva-medicion").data(json, MediaType.APPLICATION_JSON);
+
+        Set<ResponseBodyEmitter.DataWithMediaType> partes = evento.build();
+        assertSame(partes, evento.build());
+        assertEquals("id:7\nevent:nueva-medicion\ndata:{\"id\":1}\n\n", texto(partes));
+        assertTrue(partes.stream().anyMatch(d -> d.getData() == json && MediaType.APPLICATION_JSON.equals(d.getMediaType())));
+    }
+
+    @Test
+    void cadaMetodoDevuelveUnEventoNuevo() {
+        DifusorMediciones.EventoPreparado latido = DifusorMediciones.EventoPreparado.nuevo().comment("latido");
+        DifusorMediciones.EventoPreparado otro = latido.reconnectTime(5000).data("x");
+
+        assertEquals(":latido\n\n", texto(latido.build()));
+        assertEquals(":latido\nretry:5000\ndata:x\n\n", texto(otro.build()));
+        assertThrows(UnsupportedOperationException.class, () -> latido.build().clear());
+    }
+}
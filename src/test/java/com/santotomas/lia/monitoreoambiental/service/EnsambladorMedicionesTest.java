@@ -0,0 +1,112 @@
+package com.santotomas.lia.monitoreoambiental.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EnsambladorMedicionesTest {
+
+    @Test
+    void emiteUnaVezCuandoLlegaElQuintoCampo() {
+        List<String> emitidas = new ArrayList<>();
+        EnsambladorMediciones ensamblador = new EnsambladorMediciones(
+                (prefijo, fecha, tt, hh, pm25, pm10) -> emitidas.add(prefijo + "|" + tt + "|" + hh + "|" + pm25 + "|" + pm10));
+
+        assertEquals(EnsambladorMediciones.Resultado.PARCIAL, ensamblador.procesar("/lia/Aire/tt", "21.5"));
+        ensamblador.procesar("/lia/Aire/hh", "40");
+        ensamblador.procesar("/lia/Aire/pm25", "3.1");
+        ensamblador.procesar("/lia/Aire/pm10", "7");
+        assertTrue(emitidas.isEmpty());
+        assertEquals(EnsambladorMediciones.Resultado.COMPLETA, ensamblador.procesar("/lia/Aire/fecha", "21/01/2025 09:16:30"));
+
+        assertEquals(List.of("/lia/Aire|21.5|40.0|3.1|7.0"), emitidas);
+    }
+
+    @Test
+    void informaUnaLatenciaPorMedicionCompleta() {
+        List<Long> latencias = new ArrayList<>();
+        EnsambladorMediciones ensamblador = new EnsambladorMediciones((p, f, a, b, c, d) -> {}, latencias::add);
+        for (int i = 0; i < 2; i++) {
+            ensamblador.procesar("/lia/Aire/tt", "21.5");
+            ensamblador.procesar("/lia/Aire/hh", "40");
+            ensamblador.procesar("/lia/Aire/pm25", "3.1");
+            ensamblador.procesar("/lia/Aire/pm10", "7");
+            assertEquals(i, latencias.size());
+            ensamblador.procesar("/lia/Aire/fecha", "21/01/2025 09:16:30");
+        }
+        assertEquals(2, latencias.size());
+        assertTrue(latencias.stream().allMatch(n -> n >= 0));
+    }
+
+    @Test
+    void rechazaTopicosYCamposInvalidos() {
+        EnsambladorMediciones ensamblador = new EnsambladorMediciones((p, f, a, b, c, d) -> fail());
+        assertEquals(EnsambladorMediciones.Resultado.TOPICO_INVALIDO, ensamblador.procesar("tt", "1"));
+        assertEquals(EnsambladorMediciones.Resultado.TOPICO_INVALIDO, ensamblador.procesar("/lia/tt", "1"));
+        assertEquals(EnsambladorMediciones.Resultado.CAMPO_DESCONOCIDO, ensamblador.procesar("/lia/Aire/co2", "1"));
+        assertThrows(NumberFormatException.class, () -> ensamblador.procesar("/lia/Aire/tt", "abc"));
+        assertThrows(NumberFormatException.class, () -> ensamblador.procesar("/lia/Aire/fecha", "31/02/2025 10:00:00"));
+    }
+
+    @Test
+    void olvidarEstacionDescartaLoIncompleto() {
+        List<String> emitidas = new ArrayList<>();
+        EnsambladorMediciones ensamblador = new EnsambladorMediciones((p, f, a, b, c, d) -> emitidas.add(p));
+        ensamblador.procesar("/lia/Aire/tt", "21.5");
+        ensamblador.procesar("/lia/Aire/hh", "40");
+        assertTrue(ensamblador.olvidarEstacion("/lia/Aire"));
+        assertFalse(ensamblador.olvidarEstacion("/lia/Aire"));
+        assertEquals(0, ensamblador.getEstacionesActivas());
+
+        // Si vuelve a suscribirse empieza de cero
+        for (String campo : new String[]{"pm25", "pm10", "fecha"}) {
+            ensamblador.procesar("/lia/Aire/" + campo, campo.equals("fecha") ? "21/01/2025 09:16:30" : "1");
+        }
+        assertTrue(emitidas.isEmpty());
+    }
+
+    @Test
+    void parseaFechaIgualQueDateTimeFormatter() {
+        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm:ss");
+        for (String s : List.of("01/01/1970 00:00:00", "29/02/2024 23:59:59", "21/01/2025 09:16:30", "31/12/2099 12:00:01")) {
+            long esperado = LocalDateTime.parse(s, formatter).toEpochSecond(ZoneOffset.UTC);
+            assertEquals(esperado, EnsambladorMediciones.parsearFecha(s), s);
+        }
+    }
+
+    @Test
+    void hilosConcurrentesEmitenCadaMedicionExactamenteUnaVez() throws Exception {
+        int estaciones = 20_000;
+        AtomicInteger emitidas = new AtomicInteger();
+        EnsambladorMediciones ensamblador = new EnsambladorMediciones((p, f, a, b, c, d) -> emitidas.incrementAndGet());
+        String[] campos = {"tt", "hh", "pm25", "pm10", "fecha"};
+        CountDownLatch inicio = new CountDownLatch(1);
+        List<Thread> hilos = new ArrayList<>();
+        // Un hilo por campo: las cinco partes de cada estación llegan en paralelo
+        for (String campo : campos) {
+            Thread t = new Thread(() -> {
+                try {
+                    inicio.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int e = 0; e < estaciones; e++) {
+                    ensamblador.procesar("/e" + e + "/Aire/" + campo, campo.equals("fecha") ? "01/01/2025 00:00:00" : "1.0");
+                }
+            });
+            hilos.add(t);
+            t.start();
+        }
+        inicio.countDown();
+        for (Thread t : hilos) t.join();
+        assertEquals(estaciones, emitidas.get());
+    }
+}
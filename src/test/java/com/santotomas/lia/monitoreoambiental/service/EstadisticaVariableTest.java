@@ -0,0 +1,91 @@
+package com.santotomas.lia.monitoreoambiental.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EstadisticaVariableTest {
+
+    private static double[] muestra(long semilla, int n, double desplazamiento) {
+        Random r = new Random(semilla);
+        double[] v = new double[n];
+        for (int i = 0; i < n; i++) {
+            v[i] = Math.exp(r.nextGaussian()) * 20 + desplazamiento;
+        }
+        return v;
+    }
+
+    @Test
+    void momentosYExtremosExactos() {
+        double[] v = muestra(1, 10_000, -15);
+        EstadisticaVariable e = new EstadisticaVariable();
+        for (double x : v) e.agregar(x);
+
+        double media = Arrays.stream(v).average().orElseThrow();
+        double var = Arrays.stream(v).map(x -> (x - media) * (x - media)).sum() / (v.length - 1);
+        assertEquals(v.length, e.getN());
+        assertEquals(media, e.getMedia(), 1e-9);
+        assertEquals(Math.sqrt(var), e.getDesviacion(), 1e-9);
+        assertEquals(Arrays.stream(v).min().orElseThrow(), e.getMin());
+        assertEquals(Arrays.stream(v).max().orElseThrow(), e.getMax());
+    }
+
+    @Test
+    void percentilesConErrorRelativoAcotado() {
+        double[] v = muestra(2, 50_000, 0);
+        EstadisticaVariable e = new EstadisticaVariable();
+        for (double x : v) e.agregar(x);
+        double[] ordenados = v.clone();
+        Arrays.sort(ordenados);
+        for (double q : new double[]{0.5, 0.95, 0.99}) {
+            double exacto = ordenados[(int) Math.floor(q * (v.length - 1))];
+            assertEquals(exacto, e.percentil(q), exacto * 0.011, "p" + q);
+        }
+    }
+
+    @Test
+    void combinarEquivaleAAgregarTodo() {
+        double[] a = muestra(3, 3_000, -10);
+        double[] b = muestra(4, 7_000, 5);
+        EstadisticaVariable todo = new EstadisticaVariable();
+        EstadisticaVariable ea = new EstadisticaVariable();
+        EstadisticaVariable eb = new EstadisticaVariable();
+        for (double x : a) { todo.agregar(x); ea.agregar(x); }
+        for (double x : b) { todo.agregar(x); eb.agregar(x); }
+        ea.combinar(eb);
+
+        assertEquals(todo.getN(), ea.getN());
+        assertEquals(todo.getMedia(), ea.getMedia(), 1e-9);
+        assertEquals(todo.getDesviacion(), ea.getDesviacion(), 1e-9);
+        assertEquals(todo.getMin(), ea.getMin());
+        assertEquals(todo.getMax(), ea.getMax());
+        assertEquals(todo.percentil(0.95), ea.percentil(0.95));
+    }
+
+    @Test
+    void resumenPorGruposDaLosMismosMomentos() {
+        double[] v = muestra(5, 1_000, 0);
+        EstadisticaVariable directo = new EstadisticaVariable();
+        EstadisticaVariable porGrupos = new EstadisticaVariable();
+        for (int g = 0; g < 10; g++) {
+            double suma = 0, sumaCuad = 0, min = Double.MAX_VALUE, max = -Double.MAX_VALUE;
+            for (int i = g * 100; i < (g + 1) * 100; i++) {
+                directo.agregar(v[i]);
+                suma += v[i];
+                sumaCuad += v[i] * v[i];
+                min = Math.min(min, v[i]);
+                max = Math.max(max, v[i]);
+            }
+            porGrupos.agregarResumen(100, suma, sumaCuad, min, max);
+        }
+        assertEquals(directo.getN(), porGrupos.getN());
+        assertEquals(directo.getMedia(), porGrupos.getMedia(), 1e-9);
+        assertEquals(directo.getDesviacion(), porGrupos.getDesviacion(), 1e-6);
+        assertEquals(directo.getMin(), porGrupos.getMin());
+        assertEquals(directo.getMax(), porGrupos.getMax());
+        assertNull(new EstadisticaVariable().percentil(0.5));
+    }
+}
@@ -0,0 +1,80 @@
+package com.santotomas.lia.monitoreoambiental.service;
+
+import com.santotomas.lia.monitoreoambiental.model.CodigoCalidadAire;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IndiceCalidadAireTest {
+
+    private static final long T0 = LocalDateTime.of(2025, 1, 20, 0, 0).toEpochSecond(ZoneOffset.UTC);
+    private static final float SIN_DATO = Float.NaN;
+
+    private final IndiceCalidadAire.Ventana ventana = new IndiceCalidadAire.Ventana();
+
+    /** Una lectura por minuto durante la hora {@code hora} contada desde T0; devuelve el código de la última. */
+    private int hora(int hora, float pm25, float pm10) {
+        int codigo = CodigoCalidadAire.SIN_INDICE;
+        for (int m = 0; m < 60; m++) {
+            codigo = ventana.agregar(T0 + hora * 3600L + m * 60L, pm25, pm10);
+        }
+        return codigo;
+    }
+
+    @Test
+    void concentracionConstanteUsaLaTablaDeCortes() {
+        hora(0, 35f, SIN_DATO);
+        hora(1, 35f, SIN_DATO);
+        int codigo = hora(2, 35f, SIN_DATO);
+        assertEquals(99, CodigoCalidadAire.indice(codigo));
+        assertEquals(CodigoCalidadAire.PM25, CodigoCalidadAire.contaminante(codigo));
+
+        IndiceCalidadAire.Ventana pm10 = new IndiceCalidadAire.Ventana();
+        pm10.agregar(T0, SIN_DATO, 100f);
+        assertEquals(73, CodigoCalidadAire.indice(pm10.agregar(T0 + 3600, SIN_DATO, 100f)));
+    }
+
+    @Test
+    void nowCastPonderaLasHorasRecientes() {
+        hora(0, 10f, SIN_DATO);
+        // w = 0,5: (20 + 0,5 * 10) / 1,5 = 16,6 µg/m³
+        assertEquals(65, CodigoCalidadAire.indice(hora(1, 20f, SIN_DATO)));
+
+        IndiceCalidadAire.Ventana conHueco = new IndiceCalidadAire.Ventana();
+        conHueco.agregar(T0, 10f, SIN_DATO);
+        // La hora sin datos también gasta un factor w: (20 + 0,25 * 10) / 1,25 = 18
+        assertEquals(68, CodigoCalidadAire.indice(conHueco.agregar(T0 + 2 * 3600, 20f, SIN_DATO)));
+    }
+
+    @Test
+    void elContaminantePrimarioEsElDeMayorSubindice() {
+        hora(0, 35f, 100f);
+        int codigo = hora(1, 35f, 100f);
+        assertEquals(CodigoCalidadAire.PM25, CodigoCalidadAire.contaminante(codigo));
+        hora(2, 5f, 300f);
+        codigo = hora(3, 5f, 300f);
+        assertEquals(CodigoCalidadAire.PM10, CodigoCalidadAire.contaminante(codigo));
+        assertEquals("PM10", CodigoCalidadAire.nombre(CodigoCalidadAire.contaminante(codigo)));
+    }
+
+    @Test
+    void sinDosDeLasTresHorasRecientesNoHayIndice() {
+        assertEquals(CodigoCalidadAire.SIN_INDICE, hora(0, 20f, 40f));
+        assertEquals(CodigoCalidadAire.SIN_INDICE, hora(5, 20f, 40f));
+        assertNull(CodigoCalidadAire.indice(CodigoCalidadAire.SIN_INDICE));
+        assertEquals("-", CodigoCalidadAire.nombre(null));
+    }
+
+    @Test
+    void unaLecturaFueraDeLaVentanaNoTieneIndice() {
+        hora(30, 20f, 40f);
+        hora(31, 20f, 40f);
+        assertEquals(CodigoCalidadAire.SIN_INDICE, ventana.agregar(T0 + 2 * 3600, 20f, 40f));
+        // Una atrasada dentro de la ventana sí usa las horas que tenía antes
+        hora(28, 20f, 40f);
+        assertNotEquals(CodigoCalidadAire.SIN_INDICE, ventana.agregar(T0 + 29 * 3600, 20f, 40f));
+    }
+}
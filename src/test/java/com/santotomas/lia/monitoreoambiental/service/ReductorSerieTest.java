@@ -0,0 +1,53 @@
+package com.santotomas.lia.monitoreoambiental.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReductorSerieTest {
+
+    /** Un día cada 30 s con una onda suave y un pico aislado al mediodía. */
+    private static ReductorSerie llenar(int puntos, int cubetas) {
+        ReductorSerie r = new ReductorSerie(0, 86_399, puntos, cubetas);
+        for (long x = 0; x < 86_400; x += 30) {
+            r.agregar(x, x == 43_200 ? 500 : 20 + 5 * Math.sin(x / 3600.0));
+        }
+        return r;
+    }
+
+    private static void assertOrdenada(List<ReductorSerie.Punto> serie) {
+        for (int i = 1; i < serie.size(); i++) {
+            assertTrue(serie.get(i - 1).x() < serie.get(i).x());
+        }
+    }
+
+    @Test
+    void lttbRespetaElTopeYConservaExtremosYPico() {
+        List<ReductorSerie.Punto> serie = llenar(100, 98).lttb();
+        assertTrue(serie.size() <= 100);
+        assertEquals(0, serie.get(0).x());
+        assertEquals(86_370, serie.get(serie.size() - 1).x());
+        assertTrue(serie.contains(new ReductorSerie.Punto(43_200, 500)));
+        assertOrdenada(serie);
+    }
+
+    @Test
+    void minMaxIncluyeElMinimoYElMaximoDeCadaCubeta() {
+        List<ReductorSerie.Punto> serie = llenar(100, 50).minMax();
+        assertTrue(serie.size() <= 100);
+        assertTrue(serie.contains(new ReductorSerie.Punto(43_200, 500)));
+        assertOrdenada(serie);
+    }
+
+    @Test
+    void serieCortaSeDevuelveSinReducir() {
+        ReductorSerie r = new ReductorSerie(0, 1000, 10, 8);
+        for (int x = 0; x < 10; x++) {
+            r.agregar(x * 100, x);
+        }
+        assertEquals(10, r.lttb().size());
+        assertTrue(new ReductorSerie(0, 1000, 10, 8).lttb().isEmpty());
+    }
+}
@@ -0,0 +1,97 @@
+package com.santotomas.lia.monitoreoambiental.service;
+
+import com.santotomas.lia.monitoreoambiental.dto.MedicionDTO;
+import com.santotomas.lia.monitoreoambiental.model.Central;
+import com.santotomas.lia.monitoreoambiental.model.Medicion;
+import com.santotomas.lia.monitoreoambiental.repository.MedicionStore;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class UltimasMedicionesCacheTest {
+
+    private static final LocalDateTime T0 = LocalDateTime.of(2025, 1, 21, 9, 0);
+
+    private final Central central = new Central(1, "LIA", "/colegio1/Aire/", null, null, null);
+    private final MedicionStore store = mock(MedicionStore.class);
+    private final AsignacionIngesta asignacion = new AsignacionIngesta();
+    private UltimasMedicionesCache cache;
+
+    @BeforeEach
+    void setUp() {
+        // En la base ya están las mediciones 1 y 2
+        when(store.ultimas(eq(1), anyInt())).thenReturn(List.of(
+                new MedicionDTO(2, T0.plusMinutes(2), 20f, 40f, 1f, 2f),
+                new MedicionDTO(1, T0.plusMinutes(1), 20f, 40f, 1f, 2f)));
+        cache = new UltimasMedicionesCache(store, mock(RegistroCentrales.class), asignacion);
+        ReflectionTestUtils.setField(cache, "capacidad", 4);
+    }
+
+    private void persistir(int id, int minuto) {
+        Medicion m = new Medicion(id, T0.plusMinutes(minuto), 20f, 40f, 1f, 2f, central);
+        cache.medicionesPersistidas(new MedicionesPersistidasEvent(List.of(m)));
+    }
+
+    private List<Integer> ids(int limit) {
+        return cache.ultimas(1, limit).mediciones().stream().map(MedicionDTO::getId).toList();
+    }
+
+    @Test
+    void ordenaPorFechaDescendenteYDescartaDuplicados() {
+        persistir(2, 2); // ya cargada desde la base
+        persistir(4, 4);
+        persistir(3, 3); // llega atrasada
+        assertEquals(List.of(4, 3, 2, 1), ids(4));
+        assertEquals(List.of(4, 3), ids(2));
+    }
+
+    @Test
+    void alLlenarseQuitaLaMasAntigua() {
+        persistir(3, 3);
+        persistir(4, 4);
+        persistir(5, 5);
+        assertEquals(List.of(5, 4, 3, 2), ids(4));
+        persistir(0, 0); // más antigua que todo lo guardado
+        assertEquals(List.of(5, 4, 3, 2), ids(4));
+    }
+
+    @Test
+    void elEtagCambiaSoloConMedicionesNuevas() {
+        String antes = cache.ultimas(1, 2).etag();
+        assertEquals(antes, cache.ultimas(1, 2).etag());
+        persistir(3, 3);
+        assertNotEquals(antes, cache.ultimas(1, 2).etag());
+        assertThrows(IllegalArgumentException.class, () -> cache.ultimas(1, 5));
+    }
+
+    @Test
+    void unaCentralQueTambienPersistenOtrasInstanciasSeComparaConLaBase() {
+        ReflectionTestUtils.setField(asignacion, "grupoCompartido", "monitoreo");
+        ReflectionTestUtils.setField(cache, "refrescoMs", 0L);
+        String antes = cache.ultimas(1, 2).etag();
+        assertEquals(antes, cache.ultimas(1, 2).etag());
+
+        // Otra instancia guardó la medición 3
+        when(store.ultimas(eq(1), anyInt())).thenReturn(List.of(
+                new MedicionDTO(3, T0.plusMinutes(3), 20f, 40f, 1f, 2f),
+                new MedicionDTO(2, T0.plusMinutes(2), 20f, 40f, 1f, 2f),
+                new MedicionDTO(1, T0.plusMinutes(1), 20f, 40f, 1f, 2f)));
+        assertEquals(List.of(3, 2, 1), ids(4));
+        assertNotEquals(antes, cache.ultimas(1, 2).etag());
+
+        // Con la medición de la base ya en el anillo no se vuelve a leer
+        long version = cache.version(1);
+        assertEquals(version, cache.version(1));
+        verify(store, times(2)).ultimas(1, 4);
+    }
+}
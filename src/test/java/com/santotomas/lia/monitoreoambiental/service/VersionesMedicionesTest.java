@@ -0,0 +1,81 @@
+package com.santotomas.lia.monitoreoambiental.service;
+
+import com.santotomas.lia.monitoreoambiental.model.Central;
+import com.santotomas.lia.monitoreoambiental.model.Medicion;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class VersionesMedicionesTest {
+
+    private static final LocalDate HOY = LocalDate.of(2025, 3, 10);
+
+    private final AsignacionIngesta asignacion = new AsignacionIngesta();
+    private final UltimasMedicionesCache ultimas = mock(UltimasMedicionesCache.class);
+    private VersionesMediciones versiones;
+
+    @BeforeEach
+    void setUp() {
+        versiones = new VersionesMediciones(asignacion, ultimas);
+        ReflectionTestUtils.setField(versiones, "diasHistorico", 7);
+        ReflectionTestUtils.setField(versiones, "maxAgeHistorico", 86400L);
+        versiones.reloj = Clock.fixed(HOY.atTime(12, 0).toInstant(ZoneOffset.UTC), ZoneId.of("UTC"));
+    }
+
+    private void persistir(int idCentral) {
+        Central c = new Central(idCentral, "C" + idCentral, "/c" + idCentral + "/", null, null, null);
+        Medicion m = new Medicion(1, LocalDateTime.of(2025, 1, 1, 0, 0), 20f, 40f, 1f, 2f, c);
+        versiones.medicionesPersistidas(new MedicionesPersistidasEvent(List.of(m)));
+    }
+
+    private String etag(String consulta, Integer... centrales) {
+        return versiones.validador(List.of(centrales), consulta, null).etag();
+    }
+
+    @Test
+    void elEtagCambiaSoloConMedicionesDeLasCentralesConsultadas() {
+        String antes = etag("/rango?central=A,B", 1, 2);
+        assertTrue(antes.startsWith("W/\""));
+        assertEquals(antes, etag("/rango?central=A,B", 2, 1));
+        assertNotEquals(antes, etag("/rango?central=A", 1, 2));
+
+        persistir(3);
+        assertEquals(antes, etag("/rango?central=A,B", 1, 2));
+        persistir(2);
+        assertNotEquals(antes, etag("/rango?central=A,B", 1, 2));
+    }
+
+    @Test
+    void soloLosRangosAntiguosSonInmutables() {
+        assertEquals("max-age=86400, private, immutable", versiones.cacheControl(HOY.minusDays(8)));
+        assertEquals("no-cache, private", versiones.cacheControl(HOY.minusDays(7)));
+        assertEquals("no-cache, private", versiones.cacheControl(null));
+    }
+
+    @Test
+    void unaCentralQueTambienPersistenOtrasInstanciasUsaLaVersionDeLaBase() {
+        String local = etag("/rango?central=A", 1);
+        when(ultimas.version(1)).thenReturn(5L);
+        // Con la central completa en esta instancia no se consulta la caché
+        assertEquals(local, etag("/rango?central=A", 1));
+        verifyNoInteractions(ultimas);
+
+        ReflectionTestUtils.setField(asignacion, "grupoCompartido", "monitoreo");
+        String antes = etag("/rango?central=A", 1);
+        assertNotEquals(local, antes);
+        assertEquals(antes, etag("/rango?central=A", 1));
+        // Otra instancia guardó una medición y la caché la encontró en la base
+        when(ultimas.version(1)).thenReturn(6L);
+        assertNotEquals(antes, etag("/rango?central=A", 1));
+    }
+}